@@ -1,36 +1,88 @@
 package eu.leneurone.timelog.activities;
 
+import android.app.AlertDialog;
+import android.app.LoaderManager;
+import android.app.ProgressDialog;
+import android.content.DialogInterface;
+import android.content.Intent;
+import android.content.Loader;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.os.Trace;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
-import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import eu.leneurone.timelog.R;
 import eu.leneurone.timelog.exceptions.IncoherentMarkersException;
 import eu.leneurone.timelog.fragments.DatePickerFragment;
 import eu.leneurone.timelog.fragments.TimePickerFragment;
+import eu.leneurone.timelog.fragments.TransferFragment;
+import eu.leneurone.timelog.loaders.WorklogLoader;
 import eu.leneurone.timelog.math.TotalCalculator;
+import eu.leneurone.timelog.math.WorkRules;
+import eu.leneurone.timelog.model.DayWorklog;
 import eu.leneurone.timelog.model.Marker;
 import eu.leneurone.timelog.model.Time;
+import eu.leneurone.timelog.services.LastStateSnapshot;
 import eu.leneurone.timelog.services.StorageService;
-import eu.leneurone.timelog.services.impl.StorageServiceImpl;
+import eu.leneurone.timelog.services.StoragePreferences;
+import eu.leneurone.timelog.services.StorageServiceFactory;
+import eu.leneurone.timelog.services.WorkRulesPreferences;
+import eu.leneurone.timelog.services.WorklogExporter;
+import eu.leneurone.timelog.services.WorklogImporter;
+import eu.leneurone.timelog.services.impl.TotalsIndexStorageService;
+import eu.leneurone.timelog.services.impl.WriteBehindStorageService;
+import eu.leneurone.timelog.utils.Clock;
+import eu.leneurone.timelog.utils.EpochDays;
 import eu.leneurone.timelog.utils.TimeUtils;
 import eu.leneurone.timelog.validators.TimesValidator;
+import eu.leneurone.timelog.widgets.TodayWidgetProvider;
 
 /**
  * Main screen of the app
  */
-public class MainActivity extends AppCompatActivity implements DatePickerFragment.FragmentResultInterested, TimePickerFragment.FragmentResultInterested {
+public class MainActivity extends AppCompatActivity implements DatePickerFragment.FragmentResultInterested, TimePickerFragment.FragmentResultInterested,
+        LoaderManager.LoaderCallbacks<WorklogLoader.Result>, TransferFragment.Callbacks {
+
+    /**
+     * id of the loader of the displayed day
+     */
+    private static final int WORKLOG_LOADER_ID = 0;
+
+    /**
+     * key of the displayed day, in the saved state and in the arguments of the loader
+     */
+    private static final String ARG_DAY = "day";
+
+    /**
+     * request codes of the document picker, by export format, and for the import
+     */
+    private static final int REQUEST_EXPORT_CSV = 1;
+    private static final int REQUEST_EXPORT_JSON = 2;
+    private static final int REQUEST_IMPORT_CSV = 3;
+
+    /**
+     * number of rejected lines detailed in the summary of an import
+     */
+    private static final int IMPORT_ERRORS_SHOWN = 10;
 
     /**
      * Stores the chosen date
@@ -39,35 +91,332 @@ public class MainActivity extends AppCompatActivity implements DatePickerFragmen
     /**
      * stores the chosen times for the 4 markers
      */
-    private Map<Marker, Time> times = new HashMap<>(4);
+    private DayWorklog worklog = new DayWorklog();
+    /**
+     * the stored times of the displayed day, null until loaded
+     */
+    private DayWorklog storedWorklog;
     /**
      * stores the total time of the previous days of the week
      */
     private Time weekTime;
+    /**
+     * stores the overtime balance of the previous days, null if unknown
+     */
+    private Time balance;
+    /**
+     * uptime when the activity was created, until the first load is done (then 0)
+     */
+    private long startupTime;
 
     /**
      * storage service
      */
-    StorageService service = new StorageServiceImpl();
+    WriteBehindStorageService service = StorageServiceFactory.getStorageService();
+
+    /**
+     * computes the overtime balance
+     */
+    TotalsIndexStorageService totalsService = StorageServiceFactory.getTotalsService();
+
+    /**
+     * updates the totals of today at each minute, while the activity is in the foreground
+     */
+    private final Handler tickHandler = new Handler();
+    private final Runnable ticker = new Runnable() {
+        @Override
+        public void run() {
+            onTick();
+        }
+    };
+    /**
+     * whether the activity is in the foreground
+     */
+    private boolean resumed;
+
+    /**
+     * the calculation settings of the displayed totals
+     */
+    private WorkRules displayedRules;
+
+    /**
+     * runs the exports and the imports, across the recreations of the activity
+     */
+    private TransferFragment transfers;
+
+    /**
+     * the progress of the running export or import, or null
+     */
+    private ProgressDialog transferDialog;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
-        super.onCreate(savedInstanceState);
-        setContentView(R.layout.activity_main);
+        Trace.beginSection("MainActivity.onCreate");
+        try {
+            startupTime = SystemClock.uptimeMillis();
+            super.onCreate(savedInstanceState);
+            TotalCalculator.setWorkRules(WorkRulesPreferences.read(getApplicationContext()));
+            displayedRules = TotalCalculator.getWorkRules();
+            setContentView(R.layout.activity_main);
+
+            Toolbar toolbar = (Toolbar) findViewById(R.id.toolbar);
+            setSupportActionBar(toolbar);
+            //noinspection ConstantConditions
+            getSupportActionBar().setDisplayShowTitleEnabled(true);
+
+            calendar = Calendar.getInstance();
+            if (savedInstanceState != null) {
+                // keep the displayed date when the activity is recreated (e.g. on rotation)
+                calendar.setTimeInMillis(savedInstanceState.getLong(ARG_DAY, calendar.getTimeInMillis()));
+            }
+
+            // init the displayed date to the current day
+            setTvDisplayDate();
+            setButtonsVisibility(isToday());
+
+            // the saved data is loaded in the background : meanwhile, display the last known state
+            LastStateSnapshot snapshot = isToday() ? LastStateSnapshot.read(getApplicationContext()) : null;
+            if (snapshot != null && snapshot.isAbout(EpochDays.of(calendar))) {
+                displayTimes(snapshot.getWorklog());
+                try {
+                    displayTotals(snapshot.getWorklog(), snapshot.getWeekTime());
+                } catch (IncoherentMarkersException e) {
+                    displayPlaceholders();
+                }
+                // the data can be saved once it is loaded
+                findViewById(R.id.btnSave).setEnabled(false);
+            } else {
+                displayPlaceholders();
+            }
+            getLoaderManager().initLoader(WORKLOG_LOADER_ID, getLoaderArgs(), this);
+
+            configureButtons();
+            // the export or the import started before the activity was recreated goes on
+            transfers = TransferFragment.get(getFragmentManager());
+            if (transfers.isExporting()) {
+                showExportProgress(transfers.getExportPercent());
+            } else if (transfers.isImporting()) {
+                showImportProgress();
+            }
+            if (savedInstanceState == null) {
+                // the legacy day files are converted in the background, until they're all done
+                StorageServiceFactory.getMigration().migrateAsync(getApplicationContext());
+                // the old years are compacted in the background when the app is opened
+                StorageServiceFactory.getArchiveService().archiveAsync(
+                        StoragePreferences.readArchiveAge(getApplicationContext()), Clock.SYSTEM, getApplicationContext());
+            }
+        } finally {
+            Trace.endSection();
+        }
+    }
 
-        Toolbar toolbar = (Toolbar) findViewById(R.id.toolbar);
-        setSupportActionBar(toolbar);
-        //noinspection ConstantConditions
-        getSupportActionBar().setDisplayShowTitleEnabled(true);
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putLong(ARG_DAY, calendar.getTimeInMillis());
+    }
 
-        calendar = Calendar.getInstance();
+    @Override
+    protected void onResume() {
+        super.onResume();
+        resumed = true;
+        if (displayedRules != TotalCalculator.getWorkRules()) {
+            // the settings have been changed : the totals must be computed again
+            displayedRules = TotalCalculator.getWorkRules();
+            loadSavedData();
+        } else if (weekTime != null && isToday()) {
+            // the time has passed while in the background
+            refreshTotal();
+            startTicker();
+        }
+    }
 
-        // init the displayed date to the current day
-        setTvDisplayDate();
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_main, menu);
+        return true;
+    }
 
-        loadSavedData();
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.action_settings) {
+            startActivity(new Intent(this, SettingsActivity.class));
+            return true;
+        }
+        if (item.getItemId() == R.id.action_export_csv || item.getItemId() == R.id.action_export_json) {
+            boolean csv = item.getItemId() == R.id.action_export_csv;
+            // the user chooses where the file is written
+            startActivityForResult(new Intent(Intent.ACTION_CREATE_DOCUMENT)
+                    .addCategory(Intent.CATEGORY_OPENABLE)
+                    .setType(csv ? "text/csv" : "application/json")
+                    .putExtra(Intent.EXTRA_TITLE, csv ? "timelog.csv" : "timelog.json"),
+                    csv ? REQUEST_EXPORT_CSV : REQUEST_EXPORT_JSON);
+            return true;
+        }
+        if (item.getItemId() == R.id.action_import_csv) {
+            startActivityForResult(new Intent(Intent.ACTION_OPEN_DOCUMENT)
+                    .addCategory(Intent.CATEGORY_OPENABLE)
+                    .setType("text/*"),
+                    REQUEST_IMPORT_CSV);
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (resultCode != RESULT_OK || data == null || data.getData() == null) {
+            return;
+        }
+        if (requestCode == REQUEST_EXPORT_CSV) {
+            export(data.getData(), WorklogExporter.Format.CSV);
+        } else if (requestCode == REQUEST_EXPORT_JSON) {
+            export(data.getData(), WorklogExporter.Format.JSON);
+        } else if (requestCode == REQUEST_IMPORT_CSV) {
+            importCsv(data.getData());
+        }
+    }
+
+    /**
+     * Exports all the logged days in the background, with a cancellable progress dialog
+     * @param uri the chosen document (not null)
+     * @param format the format of the document (not null)
+     */
+    private void export(@NonNull Uri uri, @NonNull WorklogExporter.Format format) {
+        showExportProgress(0);
+        transfers.export(uri, format, getApplicationContext());
+    }
+
+    /**
+     * Imports the days of a CSV file in the background, then shows the summary of the import
+     * @param uri the chosen document (not null)
+     */
+    private void importCsv(@NonNull Uri uri) {
+        showImportProgress();
+        transfers.importCsv(uri, getApplicationContext());
+    }
 
-        configureButtons();
+    private void showExportProgress(int percent) {
+        transferDialog = new ProgressDialog(this);
+        transferDialog.setMessage(getString(R.string.export_progress));
+        transferDialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+        transferDialog.setMax(100);
+        transferDialog.setProgress(percent);
+        transferDialog.setCancelable(false);
+        transferDialog.setButton(DialogInterface.BUTTON_NEGATIVE, getString(android.R.string.cancel), new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface d, int which) {
+                transfers.cancelExport();
+            }
+        });
+        transferDialog.show();
+    }
+
+    private void showImportProgress() {
+        transferDialog = new ProgressDialog(this);
+        transferDialog.setMessage(getString(R.string.import_progress));
+        transferDialog.setIndeterminate(true);
+        transferDialog.setCancelable(false);
+        transferDialog.show();
+    }
+
+    private void dismissTransferDialog() {
+        if (transferDialog != null) {
+            transferDialog.dismiss();
+            transferDialog = null;
+        }
+    }
+
+    @Override
+    public void onSaveDone(int epochDay, @NonNull DayWorklog savedWorklog, @NonNull Time savedWeekTime, @Nullable IOException error) {
+        if (error == null) {
+            updateSnapshot(epochDay, savedWorklog, savedWeekTime);
+            // show feedback toast
+            Toast.makeText(getApplicationContext(), R.string.saveOK, Toast.LENGTH_SHORT).show();
+        } else {
+            showStorageError();
+        }
+    }
+
+    @Override
+    public void onExportProgress(int percent) {
+        if (transferDialog != null) {
+            transferDialog.setProgress(percent);
+        }
+    }
+
+    @Override
+    public void onExportDone(int exportedDays) {
+        dismissTransferDialog();
+        if (exportedDays >= 0) {
+            Toast.makeText(this, getString(R.string.export_done, exportedDays), Toast.LENGTH_SHORT).show();
+        } else {
+            Toast.makeText(this, exportedDays == TransferFragment.EXPORT_CANCELLED ? R.string.export_cancelled : R.string.export_failed, Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    @Override
+    public void onImportDone(@Nullable WorklogImporter.Report report) {
+        dismissTransferDialog();
+        if (report == null) {
+            Toast.makeText(this, R.string.import_failed, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        showImportReport(report);
+        // the displayed day may have been imported
+        refreshDisplay();
+    }
+
+    private void showImportReport(@NonNull WorklogImporter.Report report) {
+        StringBuilder message = new StringBuilder(getString(R.string.import_summary, report.getImportedDays(), report.getRejectedRows()));
+        List<WorklogImporter.RowError> errors = report.getErrors();
+        for (int i = 0; i < errors.size() && i < IMPORT_ERRORS_SHOWN; i++) {
+            message.append('\n').append(getString(R.string.import_row_error, errors.get(i).getRow(), getString(getReasonText(errors.get(i).getReason()))));
+        }
+        if (report.getRejectedRows() > IMPORT_ERRORS_SHOWN) {
+            message.append("\n...");
+        }
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.import_done)
+                .setMessage(message)
+                .setNeutralButton(android.R.string.ok, new DialogInterface.OnClickListener() {
+                    public void onClick(DialogInterface dialog, int which) {
+                        dialog.dismiss();
+                    }
+                })
+                .show();
+    }
+
+    private static int getReasonText(@NonNull WorklogImporter.Reason reason) {
+        switch (reason) {
+            case MISSING_COLUMNS:
+                return R.string.import_error_columns;
+            case INVALID_DATE:
+                return R.string.import_error_date;
+            case INVALID_TIME:
+                return R.string.import_error_time;
+            case NO_TIME:
+                return R.string.import_error_empty;
+            default:
+                return R.string.import_error_incoherent;
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        // the dialog is shown again by the next activity if the job is still running
+        dismissTransferDialog();
+        super.onDestroy();
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        resumed = false;
+        stopTicker();
+        // the pending saves aren't waited for : the writer thread goes on once the activity is
+        // paused, and the UI thread mustn't block on the disk
     }
 
     @Override
@@ -78,9 +427,51 @@ public class MainActivity extends AppCompatActivity implements DatePickerFragmen
 
     @Override
     public void onTimeSet(@NonNull Marker marker, @NonNull Time time) {
-        times.put(marker, time);
+        worklog.set(marker, time);
         displayTime(marker, time);
+        if (weekTime != null) {
+            refreshTotal();
+        }
+    }
+
+    @Override
+    public Loader<WorklogLoader.Result> onCreateLoader(int id, Bundle args) {
+        return new WorklogLoader(getApplicationContext(), args.getInt(ARG_DAY), service, totalsService);
+    }
+
+    @Override
+    public void onLoadFinished(Loader<WorklogLoader.Result> loader, WorklogLoader.Result data) {
+        // the times set while loading take precedence over the saved ones
+        DayWorklog loadedWorklog = new DayWorklog(data.getWorklog());
+        for (Marker marker : Marker.values()) {
+            if (worklog.contains(marker)) {
+                loadedWorklog.setMinutes(marker, worklog.getMinutes(marker));
+            }
+        }
+        worklog = loadedWorklog;
+        storedWorklog = data.getWorklog();
+        weekTime = data.getWeekTime();
+        balance = data.getBalance();
+        clearTimesDisplay();
+        displayTimes(worklog);
         refreshTotal();
+        startTicker();
+        if (isToday()) {
+            // displayed at the next startup, until the data is loaded, and by the widget
+            new LastStateSnapshot(data.getDay(), data.getWorklog(), weekTime).write(getApplicationContext());
+            TodayWidgetProvider.requestUpdate(getApplicationContext());
+        }
+        if (startupTime != 0) {
+            reportFullyDrawn();
+            Logger.getLogger(MainActivity.class.getName()).log(Level.FINE, "Startup load done in {0} ms",
+                    SystemClock.uptimeMillis() - startupTime);
+            startupTime = 0;
+        }
+    }
+
+    @Override
+    public void onLoaderReset(Loader<WorklogLoader.Result> loader) {
+        // nothing to release : the loaded data has been copied
     }
 
     // this method is called when choosing a date using the DatePicker, or with the previous / next buttons
@@ -88,44 +479,85 @@ public class MainActivity extends AppCompatActivity implements DatePickerFragmen
         setTvDisplayDate();
 
         // mask the "Now" buttons if the selected date is not today
-        setButtonsVisibility(calendar.get(Calendar.YEAR) == Calendar.getInstance().get(Calendar.YEAR)
-                && calendar.get(Calendar.DAY_OF_YEAR) == Calendar.getInstance().get(Calendar.DAY_OF_YEAR));
+        setButtonsVisibility(isToday());
 
         clearTimes();
         loadSavedData();
     }
 
+    // displays the given day, found by the logged days lookups
+    @Override
+    public void onLoggedDayFound(int epochDay) {
+        if (epochDay == StorageService.NO_DAY) {
+            Toast.makeText(getApplicationContext(), R.string.no_logged_day, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        calendar.setTime(EpochDays.toCalendar(epochDay).getTime());
+        refreshDisplay();
+    }
+
+    private boolean isToday() {
+        return isToday(EpochDays.of(calendar));
+    }
+
+    private static boolean isToday(int epochDay) {
+        return epochDay == Clock.SYSTEM.today();
+    }
+
     private void setTvDisplayDate() {
         SimpleDateFormat format = new SimpleDateFormat("dd/MM/yyyy", Locale.FRANCE);
         ((TextView) findViewById(R.id.tvDate)).setText(format.format(calendar.getTime()));
     }
 
-    // this method is called at startup or when changing the displayed day with the datepicker or the
-    // previous / next buttons
+    // this method is called when changing the displayed day with the datepicker or the previous /
+    // next buttons : the data of the day and of the previous days of the same week is loaded in the
+    // background, then displayed by onLoadFinished
     private void loadSavedData() {
-        // load data for the displayed date
-        times = service.loadDayWorklog(calendar.getTime(), getApplicationContext());
-        for (Map.Entry<Marker, Time> timeEntry : times.entrySet()) {
-            displayTime(timeEntry.getKey(), timeEntry.getValue());
-        }
+        weekTime = null;
+        balance = null;
+        storedWorklog = null;
+        stopTicker();
+        displayPlaceholders();
+        getLoaderManager().restartLoader(WORKLOG_LOADER_ID, getLoaderArgs(), this);
+    }
 
-        // load data for the previous days of the same week
-        Map<Calendar, Map<Marker, Time>> weekData = service.loadWeekWorklog(calendar, getApplicationContext());
-        try {
-            weekTime = TotalCalculator.calculateTotalTime(weekData);
-        } catch (IncoherentMarkersException e) {
-            weekTime = new Time(0,0);
+    private Bundle getLoaderArgs() {
+        Bundle args = new Bundle();
+        args.putInt(ARG_DAY, EpochDays.of(calendar));
+        return args;
+    }
+
+    private void displayTimes(@NonNull DayWorklog worklog) {
+        for (Marker marker : Marker.values()) {
+            if (worklog.contains(marker)) {
+                displayTime(marker, worklog.get(marker));
+            }
         }
+    }
 
-        refreshTotal();
+    // displayed while the data is loading. The save button is disabled until the data is loaded,
+    // so that the saved times can't be overwritten by the times set meanwhile
+    private void displayPlaceholders() {
+        findViewById(R.id.btnSave).setEnabled(false);
+        ((TextView) findViewById(R.id.morningTime)).setText(R.string.time_placeholder);
+        ((TextView) findViewById(R.id.lunchStartTime)).setText(R.string.time_placeholder);
+        ((TextView) findViewById(R.id.lunchEndTime)).setText(R.string.time_placeholder);
+        ((TextView) findViewById(R.id.eveningTime)).setText(R.string.time_placeholder);
+        ((TextView) findViewById(R.id.tvTotal)).setText(R.string.time_placeholder);
+        ((TextView) findViewById(R.id.tvWeekTotal)).setText(R.string.time_placeholder);
+        ((TextView) findViewById(R.id.tvBalance)).setText(R.string.time_placeholder);
     }
 
     private void clearTimes() {
+        clearTimesDisplay();
+        worklog.clear();
+    }
+
+    private void clearTimesDisplay() {
         ((TextView) findViewById(R.id.morningTime)).setText("");
         ((TextView) findViewById(R.id.lunchStartTime)).setText("");
         ((TextView) findViewById(R.id.lunchEndTime)).setText("");
         ((TextView) findViewById(R.id.eveningTime)).setText("");
-        times.clear();
     }
 
     // this method is used to display total after loading saved data, changing the value of a marker
@@ -133,11 +565,7 @@ public class MainActivity extends AppCompatActivity implements DatePickerFragmen
     private void refreshTotal() {
         // compute and display total work time
         try {
-            // current displayed day total time
-            Time totalTime = TotalCalculator.calculateTotalTime(calendar, times);
-            ((TextView) findViewById(R.id.tvTotal)).setText(TimeUtils.formatTime(totalTime));
-            // current week total time
-            ((TextView) findViewById(R.id.tvWeekTotal)).setText(TimeUtils.formatTime(TotalCalculator.sum(weekTime, totalTime)));
+            displayTotals(worklog, weekTime);
             // clear previous validation errors
             clearValidationTv();
         } catch (IncoherentMarkersException e) {
@@ -145,6 +573,49 @@ public class MainActivity extends AppCompatActivity implements DatePickerFragmen
         }
     }
 
+    // schedules the next update of the totals, at the beginning of the next minute, if the
+    // displayed day is today and is loaded
+    private void startTicker() {
+        tickHandler.removeCallbacks(ticker);
+        if (resumed && weekTime != null && isToday()) {
+            tickHandler.postDelayed(ticker, Clock.SYSTEM.millisToNextMinute());
+        }
+    }
+
+    private void stopTicker() {
+        tickHandler.removeCallbacks(ticker);
+    }
+
+    // only the total of today changes : the total of the previous days of the week is kept
+    private void onTick() {
+        if (weekTime == null || !isToday()) {
+            // the day has changed : the displayed totals are final
+            return;
+        }
+        try {
+            displayTotals(worklog, weekTime);
+        } catch (IncoherentMarkersException e) {
+            // already reported when the markers were set
+        }
+        startTicker();
+    }
+
+    private void displayTotals(@NonNull DayWorklog worklog, @NonNull Time weekTime) throws IncoherentMarkersException {
+        // current displayed day total time
+        Time totalTime = TotalCalculator.calculateTotalTime(EpochDays.of(calendar), worklog, Clock.SYSTEM);
+        ((TextView) findViewById(R.id.tvTotal)).setText(TimeUtils.formatTime(totalTime));
+        // current week total time
+        ((TextView) findViewById(R.id.tvWeekTotal)).setText(TimeUtils.formatTime(TotalCalculator.sum(weekTime, totalTime)));
+        // overtime balance, including the current displayed day if it has been worked
+        if (balance != null) {
+            int dayBalance = totalTime.toMinutes() != 0 ? totalTime.toMinutes()
+                    - TotalCalculator.getWorkRules().getDailyTargetMinutes(EpochDays.dayOfWeek(EpochDays.of(calendar))) : 0;
+            ((TextView) findViewById(R.id.tvBalance)).setText(TimeUtils.formatDuration(TotalCalculator.sum(balance, Time.ofMinutes(dayBalance))));
+        } else {
+            ((TextView) findViewById(R.id.tvBalance)).setText(R.string.time_placeholder);
+        }
+    }
+
     private void displayTime(Marker marker, Time time) {
         String formattedTime = TimeUtils.formatTime(time);
         switch (marker) {
@@ -197,6 +668,24 @@ public class MainActivity extends AppCompatActivity implements DatePickerFragmen
             }
         });
 
+        // a long click jumps to the previous / next day having saved data
+        findViewById(R.id.previousDayLayout).setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                // the lookup may read the storage : the day is displayed once it's found
+                transfers.findLoggedDay(EpochDays.of(calendar), false, getApplicationContext());
+                return true;
+            }
+        });
+
+        findViewById(R.id.nextDayLayout).setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                transfers.findLoggedDay(EpochDays.of(calendar), true, getApplicationContext());
+                return true;
+            }
+        });
+
         configureTimePickerButton(R.id.btnChangeMorningTime, Marker.MORNING);
         configureTimePickerButton(R.id.btnChangeLunchStartTime, Marker.LUNCH_START);
         configureTimePickerButton(R.id.btnChangeLunchEndTime, Marker.LUNCH_END);
@@ -211,13 +700,12 @@ public class MainActivity extends AppCompatActivity implements DatePickerFragmen
             @Override
             public void onClick(View v) {
                 try {
-                    TimesValidator.validateMarkersCoherency(times);
+                    TimesValidator.validateMarkersCoherency(worklog);
                     // clear previous validation error (if any)
                     clearValidationTv();
-                    // store the data
-                    service.storeDayWorklog(calendar.getTime(), times, getApplicationContext());
-                    // show feedback toast
-                    Toast.makeText(getApplicationContext(), R.string.saveOK, Toast.LENGTH_SHORT).show();
+                    // store the data in the background : the result is given to the activity
+                    // displayed when the save is done
+                    transfers.save(EpochDays.of(calendar), worklog, weekTime, getApplicationContext());
                 } catch (IncoherentMarkersException e) {
                     handleIncoherentMarkersException(e);
                 }
@@ -227,11 +715,33 @@ public class MainActivity extends AppCompatActivity implements DatePickerFragmen
         findViewById(R.id.btnRefresh).setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                refreshTotal();
+                if (weekTime != null) {
+                    refreshTotal();
+                }
             }
         });
     }
 
+    // keeps the snapshot displayed by the widget up to date after a save
+    private void updateSnapshot(int savedDay, @NonNull DayWorklog savedWorklog, @NonNull Time savedWeekTime) {
+        if (isToday(savedDay)) {
+            new LastStateSnapshot(savedDay, savedWorklog, savedWeekTime).write(getApplicationContext());
+        } else if (storedWorklog != null && savedDay == EpochDays.of(calendar)) {
+            // a previous day of the week of the snapshot may have changed
+            try {
+                int delta = TotalCalculator.calculatePastDayTotalMinutes(savedWorklog)
+                        - TotalCalculator.calculatePastDayTotalMinutes(storedWorklog);
+                LastStateSnapshot.updateWeekTime(getApplicationContext(), savedDay, delta);
+            } catch (IncoherentMarkersException e) {
+                // the snapshot will be written again when today is displayed
+            }
+        }
+        if (savedDay == EpochDays.of(calendar)) {
+            storedWorklog = savedWorklog;
+        }
+        TodayWidgetProvider.requestUpdate(getApplicationContext());
+    }
+
     private void clearValidationTv() {
         ((TextView) findViewById(R.id.validation)).setText("");
         for (Marker marker : Marker.values()) {
@@ -240,10 +750,28 @@ public class MainActivity extends AppCompatActivity implements DatePickerFragmen
         findViewById(R.id.btnSave).setEnabled(true);
     }
 
+    private void showStorageError() {
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.technical_error)
+                .setMessage(R.string.technical_error_msg)
+                .setNeutralButton(android.R.string.ok, new DialogInterface.OnClickListener() {
+                    public void onClick(DialogInterface dialog, int which) {
+                        dialog.dismiss();
+                    }
+                })
+                .setIcon(android.R.drawable.ic_dialog_alert)
+                .show();
+    }
+
     private void handleIncoherentMarkersException(IncoherentMarkersException e) {
         ((TextView) findViewById(R.id.validation)).setText(R.string.error_incoherent_markers);
-        highlightTime(e.getEarliest(), getResources().getColor(R.color.colorAccent));
-        highlightTime(e.getLatest(), getResources().getColor(R.color.colorAccent));
+        // the markers are unknown if the times don't come from them : nothing is highlighted
+        if (e.getEarliest() != null) {
+            highlightTime(e.getEarliest(), getResources().getColor(R.color.colorAccent));
+        }
+        if (e.getLatest() != null) {
+            highlightTime(e.getLatest(), getResources().getColor(R.color.colorAccent));
+        }
 
         findViewById(R.id.btnSave).setEnabled(false);
     }
@@ -272,8 +800,8 @@ public class MainActivity extends AppCompatActivity implements DatePickerFragmen
             @Override
             public void onClick(View v) {
                 TimePickerFragment picker = new TimePickerFragment();
-                if (times.containsKey(marker)) {
-                    picker.setTime(marker, times.get(marker));
+                if (worklog.contains(marker)) {
+                    picker.setTime(marker, worklog.get(marker));
                 } else {
                     picker.setMarker(marker);
                 }
@@ -287,8 +815,7 @@ public class MainActivity extends AppCompatActivity implements DatePickerFragmen
         findViewById(buttonId).setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                Calendar calendar = Calendar.getInstance();
-                onTimeSet(marker, new Time(calendar.get(Calendar.HOUR_OF_DAY), calendar.get(Calendar.MINUTE)));
+                onTimeSet(marker, Time.ofMinutes(Clock.SYSTEM.minutesOfDay()));
             }
         });
     }
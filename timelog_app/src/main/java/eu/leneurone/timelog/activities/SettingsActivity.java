@@ -0,0 +1,22 @@
+package eu.leneurone.timelog.activities;
+
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+
+import eu.leneurone.timelog.fragments.SettingsFragment;
+
+/**
+ * Settings screen
+ */
+public class SettingsActivity extends AppCompatActivity {
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        if (savedInstanceState == null) {
+            getFragmentManager().beginTransaction()
+                    .replace(android.R.id.content, new SettingsFragment())
+                    .commit();
+        }
+    }
+}
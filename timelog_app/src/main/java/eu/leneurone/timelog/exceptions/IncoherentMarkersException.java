@@ -1,28 +1,50 @@
 package eu.leneurone.timelog.exceptions;
 
+import android.support.annotation.Nullable;
+
 import eu.leneurone.timelog.model.Marker;
 
 /**
  * exception for uncoherent marker - time pairs
+ * <br />
+ * Incoherent markers are an expected outcome of the validation, not a bug : the exception has no
+ * stack trace, so throwing it is cheap.
+ * <br />
+ * The markers are unknown when the incoherent times don't come from markers (e.g. the punches of
+ * an {@link eu.leneurone.timelog.model.IntervalDay} built from intervals).
  */
 public class IncoherentMarkersException extends Exception {
 
     private Marker earliest;
     private Marker latest;
 
-    public IncoherentMarkersException(Marker earliest, Marker latest) {
+    public IncoherentMarkersException(@Nullable Marker earliest, @Nullable Marker latest) {
         this.earliest = earliest;
         this.latest = latest;
     }
 
+    /**
+     * @return the marker which should be the earliest, or null if it's unknown
+     */
+    @Nullable
     public Marker getEarliest() {
         return earliest;
     }
 
+    /**
+     * @return the marker which should be the latest, or null if it's unknown
+     */
+    @Nullable
     public Marker getLatest() {
         return latest;
     }
 
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        // the stack trace isn't needed
+        return this;
+    }
+
     @Override
     public String getMessage() {
         if (latest != null && earliest != null) {
@@ -0,0 +1,48 @@
+package eu.leneurone.timelog.fragments;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+
+import eu.leneurone.timelog.R;
+import eu.leneurone.timelog.math.TotalCalculator;
+import eu.leneurone.timelog.math.WorkRules;
+import eu.leneurone.timelog.services.StorageServiceFactory;
+import eu.leneurone.timelog.services.WorkRulesPreferences;
+
+/**
+ * Fragment editing the calculation settings : the lunch duration, the start of the afternoon and
+ * the work time expected for each day of the week. The new settings apply as soon as they're changed.
+ */
+public class SettingsFragment extends android.preference.PreferenceFragment implements SharedPreferences.OnSharedPreferenceChangeListener {
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        addPreferencesFromResource(R.xml.preferences);
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        getPreferenceManager().getSharedPreferences().registerOnSharedPreferenceChangeListener(this);
+    }
+
+    @Override
+    public void onPause() {
+        getPreferenceManager().getSharedPreferences().unregisterOnSharedPreferenceChangeListener(this);
+        super.onPause();
+    }
+
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences preferences, String key) {
+        Context context = getActivity().getApplicationContext();
+        WorkRules previous = TotalCalculator.getWorkRules();
+        WorkRules rules = WorkRulesPreferences.read(context);
+        TotalCalculator.setWorkRules(rules);
+        if (rules.getLunchDurationMinutes() != previous.getLunchDurationMinutes()) {
+            // the indexed totals of the days depend on the lunch duration (the targets don't)
+            StorageServiceFactory.getTotalsService().rebuildAsync(context);
+        }
+    }
+}
@@ -25,7 +25,7 @@ public class TimePickerFragment extends DialogFragment implements TimePickerDial
 
     public void setMarker(@NonNull Marker marker) {
         this.marker = marker;
-        this.time = new Time(marker.getHour(), marker.getMinute());
+        this.time = Time.of(marker.getHour(), marker.getMinute());
     }
 
     @Override
@@ -36,7 +36,7 @@ public class TimePickerFragment extends DialogFragment implements TimePickerDial
 
     @Override
     public void onTimeSet(TimePicker view, int hourOfDay, int minute) {
-        listener.onTimeSet(this.marker, new Time(hourOfDay, minute));
+        listener.onTimeSet(this.marker, Time.of(hourOfDay, minute));
     }
 
     public interface FragmentResultInterested {
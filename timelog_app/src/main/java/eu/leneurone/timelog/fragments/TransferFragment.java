@@ -0,0 +1,331 @@
+package eu.leneurone.timelog.fragments;
+
+import android.app.Activity;
+import android.app.Fragment;
+import android.app.FragmentManager;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.model.Time;
+import eu.leneurone.timelog.services.SaveHandle;
+import eu.leneurone.timelog.services.StorageService;
+import eu.leneurone.timelog.services.StorageServiceFactory;
+import eu.leneurone.timelog.services.WorklogExporter;
+import eu.leneurone.timelog.services.WorklogImporter;
+import eu.leneurone.timelog.utils.Clock;
+
+/**
+ * Fragment without view running the saves, the lookups of the logged days, the exports and the
+ * imports in the background.
+ * <br />
+ * It's retained when the activity is recreated (e.g. on rotation), so a job outlives the activity
+ * which started it. The progress is given to the attached activity, and the results are only given
+ * to a resumed activity : the results coming while no activity is resumed are kept until the next
+ * one is.
+ */
+public class TransferFragment extends Fragment {
+
+    /** the tag of the fragment */
+    private static final String TAG = "transfer";
+
+    /** the result of an export which has been cancelled */
+    public static final int EXPORT_CANCELLED = -1;
+
+    /** the result of an export which has failed */
+    public static final int EXPORT_FAILED = -2;
+
+    /**
+     * The activity receiving the progress and the results of the jobs, on the UI thread
+     */
+    public interface Callbacks {
+
+        /**
+         * @param epochDay the saved day, as an epoch day
+         * @param worklog the saved worklog (not null)
+         * @param weekTime the total time of the previous days of the week, when the day was saved
+         *                 (not null)
+         * @param error the error of the save, or null if the day has been saved
+         */
+        void onSaveDone(int epochDay, @NonNull DayWorklog worklog, @NonNull Time weekTime, @Nullable IOException error);
+
+        /**
+         * @param epochDay the found logged day, or {@link StorageService#NO_DAY} if there's none
+         */
+        void onLoggedDayFound(int epochDay);
+
+        /**
+         * @param percent the progress of the running export, from 0 to 100
+         */
+        void onExportProgress(int percent);
+
+        /**
+         * @param exportedDays the number of exported days, or {@link #EXPORT_CANCELLED} or
+         *                     {@link #EXPORT_FAILED}
+         */
+        void onExportDone(int exportedDays);
+
+        /**
+         * @param report the summary of the import, or null if the import has failed
+         */
+        void onImportDone(@Nullable WorklogImporter.Report report);
+    }
+
+    /** runs the progress and the results on the UI thread */
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    /** the running export, or null. The following fields are only accessed on the UI thread. */
+    private WorklogExporter exporter;
+
+    /** the progress of the running export */
+    private int exportPercent;
+
+    /** whether an import is running */
+    private boolean importing;
+
+    /** the results waiting for a resumed activity, in order */
+    private final List<Runnable> pendingResults = new ArrayList<>();
+
+    /** the attached activity, or null */
+    private Callbacks callbacks;
+
+    /**
+     * @param manager the fragment manager of the activity (not null)
+     * @return the fragment of the activity, added if it isn't yet
+     */
+    @NonNull
+    public static TransferFragment get(@NonNull FragmentManager manager) {
+        TransferFragment fragment = (TransferFragment) manager.findFragmentByTag(TAG);
+        if (fragment == null) {
+            fragment = new TransferFragment();
+            manager.beginTransaction().add(fragment, TAG).commit();
+        }
+        return fragment;
+    }
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setRetainInstance(true);
+    }
+
+    @Override
+    public void onAttach(Activity activity) {
+        super.onAttach(activity);
+        callbacks = (Callbacks) activity;
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        List<Runnable> results = new ArrayList<>(pendingResults);
+        pendingResults.clear();
+        for (Runnable result : results) {
+            result.run();
+        }
+    }
+
+    @Override
+    public void onDetach() {
+        super.onDetach();
+        callbacks = null;
+    }
+
+    /**
+     * @return true if an export is running
+     */
+    public boolean isExporting() {
+        return exporter != null;
+    }
+
+    /**
+     * @return the progress of the running export, from 0 to 100
+     */
+    public int getExportPercent() {
+        return exportPercent;
+    }
+
+    /**
+     * @return true if an import is running
+     */
+    public boolean isImporting() {
+        return importing;
+    }
+
+    /**
+     * Saves a day in the background
+     * @param epochDay the day, as an epoch day
+     * @param worklog the worklog (not null). It is copied, so it can be modified once this method
+     *                returns.
+     * @param weekTime the total time of the previous days of the week (not null)
+     * @param context the context (not null)
+     */
+    public void save(final int epochDay, @NonNull DayWorklog worklog, @NonNull final Time weekTime, @NonNull Context context) {
+        final DayWorklog savedWorklog = new DayWorklog(worklog);
+        StorageServiceFactory.getStorageService().storeDayAsync(epochDay, savedWorklog, context.getApplicationContext())
+                .addListener(new SaveHandle.Listener() {
+                    @Override
+                    public void onSaveCompleted(final IOException error) {
+                        handler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                deliver(new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        callbacks.onSaveDone(epochDay, savedWorklog, weekTime, error);
+                                    }
+                                });
+                            }
+                        });
+                    }
+                });
+    }
+
+    /**
+     * Looks for the previous or the next logged day in the background
+     * @param epochDay the day the lookup starts from, as an epoch day
+     * @param next true to look for the next logged day, false for the previous one
+     * @param context the context (not null)
+     */
+    public void findLoggedDay(final int epochDay, final boolean next, @NonNull Context context) {
+        final Context appContext = context.getApplicationContext();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                StorageService service = StorageServiceFactory.getStorageService();
+                final int found = next ? service.findNextLoggedDay(epochDay, appContext) : service.findPreviousLoggedDay(epochDay, appContext);
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        deliver(new Runnable() {
+                            @Override
+                            public void run() {
+                                callbacks.onLoggedDayFound(found);
+                            }
+                        });
+                    }
+                });
+            }
+        }, "TimeLog-lookup").start();
+    }
+
+    /**
+     * Exports all the logged days in the background
+     * @param uri the chosen document (not null)
+     * @param format the format of the document (not null)
+     * @param context the context (not null)
+     */
+    public void export(@NonNull final Uri uri, @NonNull WorklogExporter.Format format, @NonNull Context context) {
+        final WorklogExporter runningExporter = new WorklogExporter(StorageServiceFactory.getStorageService(), format, Clock.SYSTEM);
+        final Context appContext = context.getApplicationContext();
+        exporter = runningExporter;
+        exportPercent = 0;
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                int count;
+                try (Writer output = new OutputStreamWriter(appContext.getContentResolver().openOutputStream(uri), "UTF-8")) {
+                    count = runningExporter.export(output, new WorklogExporter.ProgressListener() {
+                        @Override
+                        public void onProgress(int exportedDays, final int percent) {
+                            handler.post(new Runnable() {
+                                @Override
+                                public void run() {
+                                    exportPercent = percent;
+                                    if (callbacks != null) {
+                                        callbacks.onExportProgress(percent);
+                                    }
+                                }
+                            });
+                        }
+                    }, appContext);
+                } catch (IOException | RuntimeException ex) {
+                    Logger.getLogger(TransferFragment.class.getName()).log(Level.SEVERE, null, ex);
+                    count = EXPORT_FAILED;
+                }
+                final int exportedDays = count;
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        exporter = null;
+                        deliver(new Runnable() {
+                            @Override
+                            public void run() {
+                                callbacks.onExportDone(exportedDays);
+                            }
+                        });
+                    }
+                });
+            }
+        }, "TimeLog-export").start();
+    }
+
+    /**
+     * Cancels the running export, if any
+     */
+    public void cancelExport() {
+        if (exporter != null) {
+            exporter.cancel();
+        }
+    }
+
+    /**
+     * Imports the days of a CSV file in the background
+     * @param uri the chosen document (not null)
+     * @param context the context (not null)
+     */
+    public void importCsv(@NonNull final Uri uri, @NonNull Context context) {
+        final WorklogImporter importer = new WorklogImporter(StorageServiceFactory.getStorageService());
+        final Context appContext = context.getApplicationContext();
+        importing = true;
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                WorklogImporter.Report report;
+                try (Reader input = new InputStreamReader(appContext.getContentResolver().openInputStream(uri), "UTF-8")) {
+                    report = importer.importDays(input, appContext);
+                } catch (IOException | RuntimeException ex) {
+                    Logger.getLogger(TransferFragment.class.getName()).log(Level.SEVERE, null, ex);
+                    report = null;
+                }
+                final WorklogImporter.Report result = report;
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        importing = false;
+                        deliver(new Runnable() {
+                            @Override
+                            public void run() {
+                                callbacks.onImportDone(result);
+                            }
+                        });
+                    }
+                });
+            }
+        }, "TimeLog-import").start();
+    }
+
+    // gives the result to the activity if it's resumed, or keeps it until an activity is
+    private void deliver(@NonNull Runnable result) {
+        if (callbacks != null && isResumed()) {
+            result.run();
+        } else {
+            pendingResults.add(result);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package eu.leneurone.timelog.loaders;
+
+import android.content.AsyncTaskLoader;
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import eu.leneurone.timelog.exceptions.IncoherentMarkersException;
+import eu.leneurone.timelog.math.BatchTotalCalculator;
+import eu.leneurone.timelog.math.TotalCalculator;
+import eu.leneurone.timelog.math.WorklogColumns;
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.model.Time;
+import eu.leneurone.timelog.services.StorageService;
+import eu.leneurone.timelog.services.impl.TotalsIndexStorageService;
+import eu.leneurone.timelog.utils.Clock;
+
+/**
+ * Loads in the background the worklog of a day, the total time of the previous days of its week, and
+ * the overtime balance of all the previous days.
+ * Being a loader, the loaded data survives the configuration changes of the activity.
+ */
+public class WorklogLoader extends AsyncTaskLoader<WorklogLoader.Result> {
+
+    /**
+     * Data loaded for a day
+     */
+    public static class Result {
+        private final int day;
+        private final DayWorklog worklog;
+        private final Time weekTime;
+        private final Time balance;
+
+        Result(int day, @NonNull DayWorklog worklog, @NonNull Time weekTime, @Nullable Time balance) {
+            this.day = day;
+            this.worklog = worklog;
+            this.weekTime = weekTime;
+            this.balance = balance;
+        }
+
+        /**
+         * @return the day, as an epoch day
+         */
+        public int getDay() {
+            return day;
+        }
+
+        /**
+         * @return the worklog of the day
+         */
+        @NonNull
+        public DayWorklog getWorklog() {
+            return worklog;
+        }
+
+        /**
+         * @return the total time of the previous days of the week
+         */
+        @NonNull
+        public Time getWeekTime() {
+            return weekTime;
+        }
+
+        /**
+         * @return the overtime balance of the previous days, or null if it couldn't have been computed
+         */
+        @Nullable
+        public Time getBalance() {
+            return balance;
+        }
+    }
+
+    /** the day, as an epoch day */
+    private final int day;
+
+    private final StorageService service;
+
+    private final TotalsIndexStorageService totalsService;
+
+    private Result result;
+
+    /**
+     * @param context the context (not null)
+     * @param epochDay the day to load, as an epoch day
+     * @param service the storage service (not null)
+     * @param totalsService the service computing the balance (not null)
+     */
+    public WorklogLoader(@NonNull Context context, int epochDay, @NonNull StorageService service,
+                         @NonNull TotalsIndexStorageService totalsService) {
+        super(context);
+        this.day = epochDay;
+        this.service = service;
+        this.totalsService = totalsService;
+    }
+
+    @Override
+    public Result loadInBackground() {
+        DayWorklog worklog = service.loadDay(day, getContext());
+        Time weekTime;
+        try {
+            // the days of the week are totalled with the same current time
+            weekTime = BatchTotalCalculator.calculateTotalTime(WorklogColumns.of(service.loadWeek(day, getContext())), Clock.SYSTEM);
+        } catch (IncoherentMarkersException e) {
+            weekTime = Time.of(0, 0);
+        }
+        Time balance;
+        try {
+            balance = totalsService.getBalanceBefore(day, TotalCalculator.getWorkRules(), getContext());
+        } catch (IOException ex) {
+            Logger.getLogger(WorklogLoader.class.getName()).log(Level.WARNING, null, ex);
+            balance = null;
+        }
+        return new Result(day, worklog, weekTime, balance);
+    }
+
+    @Override
+    public void deliverResult(Result data) {
+        result = data;
+        if (isStarted()) {
+            super.deliverResult(data);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (result != null) {
+            deliverResult(result);
+        }
+        if (takeContentChanged() || result == null) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        onStopLoading();
+        result = null;
+    }
+}
@@ -0,0 +1,148 @@
+package eu.leneurone.timelog.math;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import eu.leneurone.timelog.exceptions.IncoherentMarkersException;
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.model.Time;
+import eu.leneurone.timelog.utils.Clock;
+
+/**
+ * Computes the total work time of long lists of days (months, years...), stored in
+ * {@link WorklogColumns}. The calculation rules are the ones of {@link TotalCalculator}, and the
+ * results are the same.
+ * <br />
+ * The current day and time are read once for the whole calculation. Large lists are split into
+ * slices which are computed in parallel, by default one per processor.
+ */
+public final class BatchTotalCalculator {
+
+    /** lists of days shorter than this are computed on the calling thread only */
+    static final int PARALLEL_THRESHOLD = 4096;
+
+    /** the threads computing the slices, created on first use */
+    private static ExecutorService executor;
+
+    private BatchTotalCalculator() {
+    }
+
+    /**
+     * Calculates the total work time of all the days, using all the processors for large lists
+     * @param columns the days (not null)
+     * @param clock gives the current day and time (not null)
+     * @return the total time
+     * @throws IncoherentMarkersException if the markers of at least one day are incoherent
+     */
+    @NonNull
+    public static Time calculateTotalTime(@NonNull WorklogColumns columns, @NonNull Clock clock) throws IncoherentMarkersException {
+        return calculateTotalTime(columns, clock, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Calculates the total work time of all the days
+     * @param columns the days (not null)
+     * @param clock gives the current day and time (not null)
+     * @param parallelism the number of slices computed in parallel for large lists
+     * @return the total time
+     * @throws IncoherentMarkersException if the markers of at least one day are incoherent
+     */
+    @NonNull
+    public static Time calculateTotalTime(@NonNull WorklogColumns columns, @NonNull Clock clock, int parallelism) throws IncoherentMarkersException {
+        // the same settings apply to all the days
+        RuleTable table = TotalCalculator.getRuleTable();
+        int today = clock.today();
+        int nowMinutes = clock.minutesOfDay();
+        if (columns.size() < PARALLEL_THRESHOLD || parallelism < 2) {
+            return Time.ofMinutes(sumMinutes(table, columns, 0, columns.size(), today, nowMinutes));
+        }
+        return Time.ofMinutes(sumMinutesInParallel(table, columns, parallelism, today, nowMinutes));
+    }
+
+    /**
+     * Calculates the total work time of a slice of the days, on the calling thread
+     * @param table the calculation rules (not null)
+     * @param columns the days (not null)
+     * @param from the index of the first day of the slice
+     * @param to the index following the last day of the slice
+     * @param today the current day, as an epoch day
+     * @param nowMinutes the current time, in minutes from midnight
+     * @return the total time, in minutes
+     * @throws IncoherentMarkersException if the markers of at least one day are incoherent
+     */
+    static int sumMinutes(@NonNull RuleTable table, @NonNull WorklogColumns columns, int from, int to, int today, int nowMinutes) throws IncoherentMarkersException {
+        // reused for all the days of the slice
+        DayWorklog worklog = new DayWorklog();
+        int total = 0;
+        for (int i = from; i < to; i++) {
+            if (columns.masks[i] != 0) {
+                columns.copyTo(i, worklog);
+                total += TotalCalculator.calculateTotalMinutes(table, worklog, columns.epochDays[i] == today, nowMinutes);
+            }
+        }
+        return total;
+    }
+
+    // splits the days in slices : the first one is computed by the calling thread
+    private static int sumMinutesInParallel(@NonNull final RuleTable table, @NonNull final WorklogColumns columns, int slices, final int today, final int nowMinutes) throws IncoherentMarkersException {
+        int sliceSize = (columns.size() + slices - 1) / slices;
+        List<Future<Integer>> futures = new ArrayList<>(slices - 1);
+        ExecutorService executor = getExecutor();
+        for (int from = sliceSize; from < columns.size(); from += sliceSize) {
+            final int sliceFrom = from;
+            final int sliceTo = Math.min(from + sliceSize, columns.size());
+            futures.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws IncoherentMarkersException {
+                    return sumMinutes(table, columns, sliceFrom, sliceTo, today, nowMinutes);
+                }
+            }));
+        }
+        try {
+            int total = sumMinutes(table, columns, 0, Math.min(sliceSize, columns.size()), today, nowMinutes);
+            // the slices are joined in order, so the error reported is the one of the earliest slice
+            for (Future<Integer> future : futures) {
+                total += future.get();
+            }
+            return total;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IncoherentMarkersException) {
+                throw (IncoherentMarkersException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // the result is still expected : compute it on the calling thread
+            return sumMinutes(table, columns, 0, columns.size(), today, nowMinutes);
+        } finally {
+            for (Future<Integer> future : futures) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    // the threads are daemons, so they don't prevent the app from exiting
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    Thread thread = new Thread(runnable, "TimeLog-total-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+}
@@ -0,0 +1,68 @@
+package eu.leneurone.timelog.math;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Binary indexed tree (Fenwick tree) over a fixed number of int values : updating a value and
+ * summing a range of values both take O(log n).
+ */
+public class FenwickTree {
+
+    /** tree[i] holds the sum of the values of indexes (i - lowestBit(i), i] (1-based) */
+    private final long[] tree;
+
+    /**
+     * Builds the tree in O(n)
+     * @param values the initial values (not null, not modified)
+     */
+    public FenwickTree(@NonNull int[] values) {
+        tree = new long[values.length + 1];
+        for (int i = 1; i <= values.length; i++) {
+            tree[i] += values[i - 1];
+            int parent = i + (i & -i);
+            if (parent <= values.length) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+
+    /**
+     * @return the number of values
+     */
+    public int size() {
+        return tree.length - 1;
+    }
+
+    /**
+     * Adds a delta to a value
+     * @param index the index of the value, from 0
+     * @param delta the delta to add
+     */
+    public void add(int index, long delta) {
+        for (int i = index + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * @param end the index following the last value to sum
+     * @return the sum of the values of indexes [0, end)
+     */
+    public long prefixSum(int end) {
+        long sum = 0;
+        for (int i = Math.min(end, size()); i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * @param from the index of the first value to sum
+     * @param to the index following the last value to sum
+     * @return the sum of the values of indexes [from, to), or 0 if from isn't before to
+     */
+    public long rangeSum(int from, int to) {
+        from = Math.max(from, 0);
+        return from < to ? prefixSum(to) - prefixSum(from) : 0;
+    }
+}
@@ -0,0 +1,137 @@
+package eu.leneurone.timelog.math;
+
+import android.support.annotation.NonNull;
+
+import eu.leneurone.timelog.model.Time;
+
+/**
+ * Histogram of values in minutes, from 0 to the end of the day (times of day, or durations within a
+ * day), with one bucket per minute. Adding or removing a value is O(1), and the percentiles are
+ * read by a scan of the buckets : the memory and the cost don't depend on the number of values.
+ * <br />
+ * The values out of the day are counted in the first or the last bucket.
+ */
+public class MinuteHistogram {
+
+    /** the number of buckets : one per minute of the day */
+    public static final int BUCKET_COUNT = Time.MINUTES_PER_DAY;
+
+    /** the counts, by minute. Null while the histogram has never had a value. */
+    private int[] counts;
+
+    /** the number of values */
+    private int count;
+
+    /** the sum of the values, for the mean */
+    private long sum;
+
+    public MinuteHistogram() {
+    }
+
+    /**
+     * Copy constructor
+     * @param other the histogram to copy (not null)
+     */
+    public MinuteHistogram(@NonNull MinuteHistogram other) {
+        addAll(other);
+    }
+
+    /**
+     * @param minutes the value to count
+     */
+    public void add(int minutes) {
+        if (counts == null) {
+            counts = new int[BUCKET_COUNT];
+        }
+        int bucket = bucketOf(minutes);
+        counts[bucket]++;
+        count++;
+        sum += bucket;
+    }
+
+    /**
+     * Removes a value previously added
+     * @param minutes the value
+     */
+    public void remove(int minutes) {
+        int bucket = bucketOf(minutes);
+        if (counts == null || counts[bucket] == 0) {
+            throw new IllegalArgumentException("No value " + minutes + " in the histogram");
+        }
+        counts[bucket]--;
+        count--;
+        sum -= bucket;
+    }
+
+    /**
+     * Adds all the values of another histogram
+     * @param other the histogram (not null)
+     */
+    public void addAll(@NonNull MinuteHistogram other) {
+        if (other.count == 0) {
+            return;
+        }
+        if (counts == null) {
+            counts = new int[BUCKET_COUNT];
+        }
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+    }
+
+    /**
+     * @return the number of values
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return the mean of the values, in minutes, or -1 if there's no value
+     */
+    public double getMean() {
+        return count > 0 ? (double) sum / count : -1;
+    }
+
+    /**
+     * @param percent the percentile, from 0 to 100 : 50 for the median
+     * @return the smallest value such as at least the given percentage of the values are lower or
+     * equal, or -1 if there's no value
+     */
+    public int getPercentile(int percent) {
+        if (count == 0) {
+            return -1;
+        }
+        // the rank of the value, from 1 (nearest rank method)
+        long rank = Math.max(1, ((long) Math.max(0, Math.min(100, percent)) * count + 99) / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return i;
+            }
+        }
+        // not reached : the counts add up to count
+        return BUCKET_COUNT - 1;
+    }
+
+    /**
+     * @return the lowest value, or -1 if there's no value
+     */
+    public int getMin() {
+        return getPercentile(0);
+    }
+
+    /**
+     * @return the highest value, or -1 if there's no value
+     */
+    public int getMax() {
+        return getPercentile(100);
+    }
+
+    private static int bucketOf(int minutes) {
+        return Math.max(0, Math.min(BUCKET_COUNT - 1, minutes));
+    }
+}
@@ -0,0 +1,110 @@
+package eu.leneurone.timelog.math;
+
+import android.support.annotation.NonNull;
+
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.model.Marker;
+
+/**
+ * The calculation rules of the total work time of a day, compiled from {@link WorkRules} into a
+ * table giving the rule to apply for each set of markers, for today and for the other days. A
+ * calculation is then a single table lookup.
+ * <br />
+ * A RuleTable is immutable.
+ */
+final class RuleTable {
+
+    /** no work time */
+    private static final byte NONE = 0;
+
+    /** all the markers : lunch_start - morning + evening - lunch_end */
+    private static final byte FULL_DAY = 1;
+
+    /** no lunch markers : evening - morning - lunch duration */
+    private static final byte DAY_BOUNDS = 2;
+
+    /** the morning only : lunch_start - morning */
+    private static final byte MORNING = 3;
+
+    /** arrival only, today : now - morning, minus the lunch duration once in the afternoon */
+    private static final byte SINCE_ARRIVAL = 4;
+
+    /** back from lunch, today : lunch_start - morning + now - lunch_end */
+    private static final byte SINCE_LUNCH_END = 5;
+
+    /** offset of the rules of today in the table */
+    private static final int TODAY = 1 << DayWorklog.MARKER_COUNT;
+
+    /** the rules, by marker mask for the other days, then by marker mask for today */
+    private final byte[] rules = new byte[2 * TODAY];
+
+    private final WorkRules workRules;
+
+    RuleTable(@NonNull WorkRules workRules) {
+        this.workRules = workRules;
+        int morning = DayWorklog.bit(Marker.MORNING);
+        int morningMarkers = morning | DayWorklog.bit(Marker.LUNCH_START);
+        int dayBounds = morning | DayWorklog.bit(Marker.EVENING);
+        int allButEvening = morningMarkers | DayWorklog.bit(Marker.LUNCH_END);
+        int allButLunchEnd = morningMarkers | DayWorklog.bit(Marker.EVENING);
+        for (int offset : new int[]{0, TODAY}) {
+            rules[offset + DayWorklog.ALL_MARKERS] = FULL_DAY;
+            rules[offset + dayBounds] = DAY_BOUNDS;
+            rules[offset + morningMarkers] = MORNING;
+        }
+        // the other days : the time since the last marker isn't counted
+        rules[allButEvening] = MORNING;
+        rules[allButLunchEnd] = MORNING;
+        // today
+        rules[TODAY + morning] = SINCE_ARRIVAL;
+        rules[TODAY + allButEvening] = SINCE_LUNCH_END;
+    }
+
+    /**
+     * @return the settings this table has been compiled from
+     */
+    @NonNull
+    WorkRules getWorkRules() {
+        return workRules;
+    }
+
+    /**
+     * @param mask the markers of the day
+     * @return true if the total of a day having these markers depends on whether the day is today
+     */
+    boolean dependsOnToday(int mask) {
+        return rules[mask] != rules[TODAY + mask];
+    }
+
+    /**
+     * Calculates the total work time of a day. The markers must be coherent.
+     * @param worklog the time markers (not null)
+     * @param isToday whether the day is the current day
+     * @param nowMinutes the current time, in minutes from midnight (only used for the current day)
+     * @return the total work time, in minutes
+     */
+    int calculateTotalMinutes(@NonNull DayWorklog worklog, boolean isToday, int nowMinutes) {
+        switch (rules[(isToday ? TODAY : 0) + worklog.getMask()]) {
+            case FULL_DAY:
+                return diffInMinutes(worklog, Marker.LUNCH_START, Marker.MORNING)
+                        + diffInMinutes(worklog, Marker.EVENING, Marker.LUNCH_END);
+            case DAY_BOUNDS:
+                return diffInMinutes(worklog, Marker.EVENING, Marker.MORNING) - workRules.getLunchDurationMinutes();
+            case MORNING:
+                return diffInMinutes(worklog, Marker.LUNCH_START, Marker.MORNING);
+            case SINCE_ARRIVAL:
+                return nowMinutes - worklog.getMinutes(Marker.MORNING)
+                        - (nowMinutes < workRules.getAfternoonStartMinutes() ? 0 : workRules.getLunchDurationMinutes());
+            case SINCE_LUNCH_END:
+                return diffInMinutes(worklog, Marker.LUNCH_START, Marker.MORNING)
+                        + nowMinutes - worklog.getMinutes(Marker.LUNCH_END);
+            default:
+                return 0;
+        }
+    }
+
+    // calculates the difference in minutes between the times of 2 markers
+    private static int diffInMinutes(@NonNull DayWorklog worklog, @NonNull Marker later, @NonNull Marker earlier) {
+        return worklog.getMinutes(later) - worklog.getMinutes(earlier);
+    }
+}
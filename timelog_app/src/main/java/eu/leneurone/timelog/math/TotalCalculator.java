@@ -6,8 +6,13 @@ import java.util.Calendar;
 import java.util.Map;
 
 import eu.leneurone.timelog.exceptions.IncoherentMarkersException;
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.model.IntervalDay;
 import eu.leneurone.timelog.model.Marker;
 import eu.leneurone.timelog.model.Time;
+import eu.leneurone.timelog.utils.Clock;
+import eu.leneurone.timelog.utils.EpochDays;
+import eu.leneurone.timelog.validators.IntervalsValidator;
 import eu.leneurone.timelog.validators.TimesValidator;
 
 /**
@@ -15,102 +20,155 @@ import eu.leneurone.timelog.validators.TimesValidator;
  */
 public class TotalCalculator {
 
+    /** the calculation rules, compiled from the current settings */
+    private static volatile RuleTable ruleTable = new RuleTable(WorkRules.DEFAULT);
+
+    private TotalCalculator() {
+    }
+
     /**
-     * default lunch duration in minutes
+     * @return the current settings of the calculations
      */
-    private static final int DEFAULT_LUNCH_DURATION_IN_MINUTES = 60;
+    @NonNull
+    public static WorkRules getWorkRules() {
+        return ruleTable.getWorkRules();
+    }
 
-    private TotalCalculator() {
+    /**
+     * Changes the settings of the calculations. The rules are compiled once here, so the
+     * calculations don't depend on the settings.
+     * @param workRules the new settings (not null)
+     */
+    public static void setWorkRules(@NonNull WorkRules workRules) {
+        ruleTable = new RuleTable(workRules);
     }
 
     /**
      * Calculates the total work time, given the target day (to choose between today calculation rules
      * and another day calculation rules) and the time markers.
-     * @param theDay the day for which the total time must be calculated
-     * @param times the time markers
+     * @param epochDay the day for which the total time must be calculated, as an epoch day
+     * @param worklog the time markers
+     * @param clock gives the current day and time (not null)
      * @return the calculated total time
-     * @throws IncoherentMarkersException if the provided markers are incoherent : see {@link TimesValidator#validateMarkersCoherency(Map)}.
+     * @throws IncoherentMarkersException if the provided markers are incoherent : see {@link TimesValidator#validateMarkersCoherency(DayWorklog)}.
+     */
+    public static Time calculateTotalTime(int epochDay, @NonNull DayWorklog worklog, @NonNull Clock clock) throws IncoherentMarkersException {
+        return Time.ofMinutes(calculateTotalMinutes(epochDay, worklog, clock));
+    }
+
+    /**
+     * Calculates the total work time of a day with the rules of the days other than today : the
+     * time since the last marker isn't counted.
+     * @param worklog the time markers (not null)
+     * @return the calculated total time, in minutes
+     * @throws IncoherentMarkersException if the provided markers are incoherent : see {@link TimesValidator#validateMarkersCoherency(DayWorklog)}.
+     */
+    public static int calculatePastDayTotalMinutes(@NonNull DayWorklog worklog) throws IncoherentMarkersException {
+        return calculateTotalMinutes(worklog, false, 0);
+    }
+
+    /**
+     * Calendar based version of {@link #calculateTotalTime(int, DayWorklog, Clock)}, using the
+     * system clock
+     */
+    public static Time calculateTotalTime(@NonNull Calendar theDay, @NonNull DayWorklog worklog) throws IncoherentMarkersException {
+        return calculateTotalTime(EpochDays.of(theDay), worklog, Clock.SYSTEM);
+    }
+
+    /**
+     * Map based version of {@link #calculateTotalTime(Calendar, DayWorklog)}
      */
     public static Time calculateTotalTime(@NonNull Calendar theDay, @NonNull Map<Marker, Time> times) throws IncoherentMarkersException {
-        if (times.isEmpty()) {
-            // fail fast
-            return new Time(0, 0);
-        }
+        return calculateTotalTime(theDay, DayWorklog.fromMap(times));
+    }
 
-        TimesValidator.validateMarkersCoherency(times);
+    /**
+     * Calculates the total work time of a day of intervals. The days coming from the markers model
+     * keep the calculation rules of the markers (see {@link #calculateTotalTime(int, DayWorklog, Clock)}).
+     * The other days are the sum of their intervals, in a single pass : the open interval counts
+     * until now for today, and isn't counted for the other days.
+     * @param epochDay the day, as an epoch day
+     * @param day the intervals (not null)
+     * @param clock gives the current day and time (not null)
+     * @return the calculated total time
+     * @throws IncoherentMarkersException if the intervals are incoherent : see {@link IntervalsValidator#validateIntervals(IntervalDay)}.
+     */
+    public static Time calculateTotalTime(int epochDay, @NonNull IntervalDay day, @NonNull Clock clock) throws IncoherentMarkersException {
+        if (day.getMarkerMask() != 0) {
+            //noinspection ConstantConditions : a day from the markers model maps back
+            return Time.ofMinutes(calculateTotalMinutes(epochDay, day.toWorklog(), clock));
+        }
+        // the clock is only read when needed
+        boolean isToday = day.isOpen() && epochDay == clock.today();
+        return Time.ofMinutes(calculateIntervalsTotalMinutes(day, isToday, isToday ? clock.minutesOfDay() : 0));
+    }
 
-        // compute work time (in minutes)
+    /**
+     * Calculates the total work time of a day of intervals not coming from the markers model, in
+     * minutes
+     * @param day the intervals (not null)
+     * @param isToday whether the day is the current day
+     * @param nowMinutes the current time, in minutes from midnight (only used for the current day)
+     * @return the total work time, in minutes
+     * @throws IncoherentMarkersException if the intervals are incoherent
+     */
+    static int calculateIntervalsTotalMinutes(@NonNull IntervalDay day, boolean isToday, int nowMinutes) throws IncoherentMarkersException {
+        IntervalsValidator.validateIntervals(day);
+        int count = day.getPunchCount();
         int total = 0;
-
-        Calendar today = Calendar.getInstance();
-
-        if (times.size() == 4) {
-            // the 4 markers are set : easy
-            // morning = lunch_start - morning
-            // afternoon = evening - lunch_end
-            // total = morning + afternoon
-            total = diffInMinutes(times.get(Marker.LUNCH_START), times.get(Marker.MORNING))
-                    + diffInMinutes(times.get(Marker.EVENING), times.get(Marker.LUNCH_END));
-        } else if (times.size() == 2
-                && times.containsKey(Marker.MORNING)
-                && times.containsKey(Marker.EVENING)) {
-            // just start and end : we remove 1 hour of standard lunch break
-            // total = evening - morning - 1 hour
-            total = diffInMinutes(times.get(Marker.EVENING), times.get(Marker.MORNING)) - DEFAULT_LUNCH_DURATION_IN_MINUTES;
-        } else if (times.size() == 2
-                && times.containsKey(Marker.MORNING)
-                && times.containsKey(Marker.LUNCH_START)) {
-            // the morning markers are set : total = lunch_start - morning
-            total = diffInMinutes(times.get(Marker.LUNCH_START), times.get(Marker.MORNING));
-        } else if (times.size() == 3
-                && times.containsKey(Marker.MORNING)
-                && times.containsKey(Marker.LUNCH_START)
-                && !isToday(today, theDay)) {
-            // the morning markers and one of the evening markers are set, and we're not today :
-            // total = lunch_start - morning
-            total = diffInMinutes(times.get(Marker.LUNCH_START), times.get(Marker.MORNING));
-        } else if (isToday(today, theDay)) {
-            // try some things only if the day is today
-            if (times.size() == 1 && times.containsKey(Marker.MORNING)) {
-                if (today.get(Calendar.HOUR_OF_DAY) < 13) {
-                    // we are still in the morning : total = now - morning
-                    total = diffInMinutes(calendarToTime(today), times.get(Marker.MORNING));
-                } else {
-                    // we are in the afternoon, so we remove 1 hour of standard lunch break
-                    // total = now - morning - 1 hour
-                    total = diffInMinutes(calendarToTime(today), times.get(Marker.MORNING)) - DEFAULT_LUNCH_DURATION_IN_MINUTES;
-                }
-            } else if (times.size() == 3
-                    && times.containsKey(Marker.MORNING)
-                    && times.containsKey(Marker.LUNCH_START)
-                    && times.containsKey(Marker.LUNCH_END)) {
-                // we are in the afternoon, and all the previous markers are set :
-                // morning = lunch_start - morning
-                // afternoon = now - lunch_end
-                // total = morning + afternoon
-                total = diffInMinutes(times.get(Marker.LUNCH_START), times.get(Marker.MORNING))
-                        + diffInMinutes(calendarToTime(today), times.get(Marker.LUNCH_END));
-            }
+        for (int i = 1; i < count; i += 2) {
+            total += day.getPunch(i) - day.getPunch(i - 1);
         }
-        return minutesToTime(total);
+        if (isToday && day.isOpen()) {
+            // the open interval lasts until now
+            total += Math.max(nowMinutes - day.getPunch(count - 1), 0);
+        }
+        return total;
     }
 
     /**
      * Calculates the total time for a list of days
-     * @param data the data for all the days
+     * @param data the data for all the days, by epoch day
+     * @param clock gives the current day and time (not null)
      * @return the total time, which consists on the addition of all the times of the days contained
-     * in the data map. The calculation rules of the {@link TotalCalculator#calculateTotalTime(Calendar, Map)}
+     * in the data map. The calculation rules of the {@link TotalCalculator#calculateTotalTime(int, DayWorklog, Clock)}
      * method apply for each individual day.
      * <br />
-     * @throws IncoherentMarkersException if an {@link IncoherentMarkersException} is thrown by the {@link TotalCalculator#calculateTotalTime(Calendar, Map)}
+     * @throws IncoherentMarkersException if an {@link IncoherentMarkersException} is thrown by the {@link TotalCalculator#calculateTotalTime(int, DayWorklog, Clock)}
      * method for at least one day.
      */
-    public static Time calculateTotalTime(Map<Calendar, Map<Marker, Time>> data) throws IncoherentMarkersException {
-        Time totalTime = new Time(0, 0);
+    public static Time calculateTotalTimeOfDays(@NonNull Map<Integer, DayWorklog> data, @NonNull Clock clock) throws IncoherentMarkersException {
+        // the total is accumulated in minutes : only the final value may need an allocation
+        int total = 0;
+        for(Map.Entry<Integer, DayWorklog> entry : data.entrySet()) {
+            total += calculateTotalMinutes(entry.getKey(), entry.getValue(), clock);
+        }
+        return Time.ofMinutes(total);
+    }
+
+    /**
+     * Version of {@link #calculateTotalTimeOfDays(Map, Clock)} using the system clock
+     */
+    public static Time calculateTotalTimeOfDays(@NonNull Map<Integer, DayWorklog> data) throws IncoherentMarkersException {
+        return calculateTotalTimeOfDays(data, Clock.SYSTEM);
+    }
+
+    /**
+     * Map based version of {@link #calculateTotalTimeOfDays(Map, Clock)}
+     */
+    public static Time calculateTotalTime(@NonNull Map<Calendar, Map<Marker, Time>> data, @NonNull Clock clock) throws IncoherentMarkersException {
+        int total = 0;
         for(Map.Entry<Calendar, Map<Marker, Time>> entry : data.entrySet()) {
-            totalTime = sum(totalTime, calculateTotalTime(entry.getKey(), entry.getValue()));
+            total += calculateTotalMinutes(EpochDays.of(entry.getKey()), DayWorklog.fromMap(entry.getValue()), clock);
         }
-        return totalTime;
+        return Time.ofMinutes(total);
+    }
+
+    /**
+     * Map based version of {@link #calculateTotalTimeOfDays(Map)}
+     */
+    public static Time calculateTotalTime(Map<Calendar, Map<Marker, Time>> data) throws IncoherentMarkersException {
+        return calculateTotalTime(data, Clock.SYSTEM);
     }
 
     /**
@@ -120,32 +178,52 @@ public class TotalCalculator {
      * @return the sum of the 2 times
      */
     public static Time sum(@NonNull Time time1, @NonNull Time time2) {
-        return minutesToTime(timeToMinutesFromMidnight(time1) + timeToMinutesFromMidnight(time2));
-    }
-
-    private static boolean isToday(@NonNull Calendar today, @NonNull Calendar theDay) {
-        return theDay.get(Calendar.YEAR) == today.get(Calendar.YEAR)
-                && theDay.get(Calendar.DAY_OF_YEAR) == today.get(Calendar.DAY_OF_YEAR);
+        return Time.ofMinutes(time1.toMinutes() + time2.toMinutes());
     }
 
-    // builds a Time from the hours and minutes of the calendar
-    private static Time calendarToTime(@NonNull Calendar calendar) {
-        return new Time(calendar.get(Calendar.HOUR_OF_DAY), calendar.get(Calendar.MINUTE));
+    // the total work time of a day, in minutes
+    private static int calculateTotalMinutes(int epochDay, @NonNull DayWorklog worklog, @NonNull Clock clock) throws IncoherentMarkersException {
+        RuleTable table = ruleTable;
+        if (!table.dependsOnToday(worklog.getMask())) {
+            // the clock is only read when needed
+            return calculateTotalMinutes(table, worklog, false, 0);
+        }
+        boolean isToday = epochDay == clock.today();
+        return calculateTotalMinutes(table, worklog, isToday, isToday ? clock.minutesOfDay() : 0);
     }
 
-    // calculates the difference in minutes between 2 times
-    private static int diffInMinutes(@NonNull Time later, @NonNull Time earlier) {
-        return timeToMinutesFromMidnight(later) - timeToMinutesFromMidnight(earlier);
+    /**
+     * @return the calculation rules, compiled from the current settings
+     */
+    @NonNull
+    static RuleTable getRuleTable() {
+        return ruleTable;
     }
 
-    // convert a Time into minutes from midnight
-    private static int timeToMinutesFromMidnight(@NonNull Time time) {
-        return time.getHour() * 60 + time.getMinute();
+    /**
+     * Calculates the total work time of a day, in minutes, with the current settings
+     * @see #calculateTotalMinutes(RuleTable, DayWorklog, boolean, int)
+     */
+    static int calculateTotalMinutes(@NonNull DayWorklog worklog, boolean isToday, int nowMinutes) throws IncoherentMarkersException {
+        return calculateTotalMinutes(ruleTable, worklog, isToday, nowMinutes);
     }
 
-    // convert a number of minutes to a time (with hour and minutes)
-    @NonNull
-    private static Time minutesToTime(int minutes) {
-        return new Time(minutes / 60, minutes % 60);
+    /**
+     * Calculates the total work time of a day, in minutes. This is shared by the scalar and the
+     * batch calculations.
+     * @param table the calculation rules (not null)
+     * @param worklog the time markers (not null)
+     * @param isToday whether the day is the current day
+     * @param nowMinutes the current time, in minutes from midnight (only used for the current day)
+     * @return the total work time, in minutes
+     * @throws IncoherentMarkersException if the provided markers are incoherent
+     */
+    static int calculateTotalMinutes(@NonNull RuleTable table, @NonNull DayWorklog worklog, boolean isToday, int nowMinutes) throws IncoherentMarkersException {
+        if (worklog.isEmpty()) {
+            // fail fast
+            return 0;
+        }
+        TimesValidator.validateMarkersCoherency(worklog);
+        return table.calculateTotalMinutes(worklog, isToday, nowMinutes);
     }
 }
@@ -0,0 +1,91 @@
+package eu.leneurone.timelog.math;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * The settings of the total time calculations : the lunch break assumed when it isn't logged, the
+ * start of the afternoon, and the work time expected for each day of the week.
+ * <br />
+ * A WorkRules is immutable.
+ */
+public final class WorkRules {
+
+    /** default lunch duration in minutes */
+    public static final int DEFAULT_LUNCH_DURATION_IN_MINUTES = 60;
+
+    /** default start of the afternoon (13:00) in minutes from midnight */
+    public static final int DEFAULT_AFTERNOON_START_IN_MINUTES = 13 * 60;
+
+    /** default work time expected for a working day, in minutes */
+    public static final int DEFAULT_DAILY_TARGET_IN_MINUTES = 8 * 60;
+
+    /** the default rules : 8 hours from Monday to Friday */
+    public static final WorkRules DEFAULT = new WorkRules(DEFAULT_LUNCH_DURATION_IN_MINUTES, DEFAULT_AFTERNOON_START_IN_MINUTES,
+            new int[]{DEFAULT_DAILY_TARGET_IN_MINUTES, DEFAULT_DAILY_TARGET_IN_MINUTES, DEFAULT_DAILY_TARGET_IN_MINUTES,
+                    DEFAULT_DAILY_TARGET_IN_MINUTES, DEFAULT_DAILY_TARGET_IN_MINUTES, 0, 0});
+
+    private final int lunchDurationMinutes;
+
+    private final int afternoonStartMinutes;
+
+    /** the expected work time, by day of the week from Monday */
+    private final int[] dailyTargetMinutes;
+
+    /**
+     * @param lunchDurationMinutes the lunch break assumed when it isn't logged, in minutes
+     * @param afternoonStartMinutes the start of the afternoon, in minutes from midnight
+     * @param dailyTargetMinutes the work time expected for each day of the week, from Monday, in
+     *                           minutes (not null, 7 values, copied)
+     */
+    public WorkRules(int lunchDurationMinutes, int afternoonStartMinutes, @NonNull int[] dailyTargetMinutes) {
+        if (dailyTargetMinutes.length != 7) {
+            throw new IllegalArgumentException("One target per day of the week is expected");
+        }
+        this.lunchDurationMinutes = lunchDurationMinutes;
+        this.afternoonStartMinutes = afternoonStartMinutes;
+        this.dailyTargetMinutes = dailyTargetMinutes.clone();
+    }
+
+    public int getLunchDurationMinutes() {
+        return lunchDurationMinutes;
+    }
+
+    public int getAfternoonStartMinutes() {
+        return afternoonStartMinutes;
+    }
+
+    /**
+     * @param dayOfWeek the day of the week, from 1 (Monday) to 7 (Sunday)
+     * @return the work time expected on this day of the week, in minutes
+     */
+    public int getDailyTargetMinutes(int dayOfWeek) {
+        return dailyTargetMinutes[dayOfWeek - 1];
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        WorkRules rules = (WorkRules) o;
+        return lunchDurationMinutes == rules.lunchDurationMinutes
+                && afternoonStartMinutes == rules.afternoonStartMinutes
+                && Arrays.equals(dailyTargetMinutes, rules.dailyTargetMinutes);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * lunchDurationMinutes + afternoonStartMinutes) + Arrays.hashCode(dailyTargetMinutes);
+    }
+
+    @Override
+    public String toString() {
+        return "WorkRules{lunch=" + lunchDurationMinutes + ", afternoon=" + afternoonStartMinutes
+                + ", targets=" + Arrays.toString(dailyTargetMinutes) + '}';
+    }
+}
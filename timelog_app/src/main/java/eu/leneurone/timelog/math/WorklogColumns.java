@@ -0,0 +1,105 @@
+package eu.leneurone.timelog.math;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.model.Marker;
+
+/**
+ * Worklogs of a list of days, stored by column in primitive arrays : the epoch days, the presence
+ * masks, and one column of minutes per marker. This is the input of {@link BatchTotalCalculator}.
+ */
+public class WorklogColumns {
+
+    /** the markers (Marker.values() returns a new array on each call) */
+    private static final Marker[] MARKERS = Marker.values();
+
+    /** number of days */
+    private int size;
+
+    /** the days, as epoch days */
+    int[] epochDays;
+
+    /** the presence masks of the days (see {@link DayWorklog#getMask()}) */
+    byte[] masks;
+
+    /** the times of the markers, in minutes from midnight : one column per marker, by ordinal */
+    int[][] minutes;
+
+    /**
+     * @param capacity the initial number of days which can be added without growing the columns
+     */
+    public WorklogColumns(int capacity) {
+        epochDays = new int[capacity];
+        masks = new byte[capacity];
+        minutes = new int[DayWorklog.MARKER_COUNT][capacity];
+    }
+
+    /**
+     * Builds the columns from worklogs, in chronological order
+     * @param data the worklogs, by epoch day (not null)
+     * @return the columns
+     */
+    @NonNull
+    public static WorklogColumns of(@NonNull Map<Integer, DayWorklog> data) {
+        Map<Integer, DayWorklog> byEpochDay = new TreeMap<>(data);
+        WorklogColumns columns = new WorklogColumns(byEpochDay.size());
+        for (Map.Entry<Integer, DayWorklog> entry : byEpochDay.entrySet()) {
+            columns.add(entry.getKey(), entry.getValue());
+        }
+        return columns;
+    }
+
+    /**
+     * Adds a day
+     * @param epochDay the day, as an epoch day
+     * @param worklog the worklog of the day (not null)
+     */
+    public void add(int epochDay, @NonNull DayWorklog worklog) {
+        if (size == epochDays.length) {
+            grow();
+        }
+        epochDays[size] = epochDay;
+        masks[size] = (byte) worklog.getMask();
+        for (Marker marker : MARKERS) {
+            minutes[marker.ordinal()][size] = worklog.getMinutes(marker);
+        }
+        size++;
+    }
+
+    /**
+     * @return the number of days
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Copies the worklog of a day into a reusable worklog
+     * @param index the index of the day
+     * @param worklog the destination (not null)
+     */
+    void copyTo(int index, @NonNull DayWorklog worklog) {
+        worklog.clear();
+        int mask = masks[index];
+        for (Marker marker : MARKERS) {
+            if ((mask & DayWorklog.bit(marker)) != 0) {
+                worklog.setMinutes(marker, minutes[marker.ordinal()][index]);
+            }
+        }
+    }
+
+    // doubles the capacity of the columns
+    private void grow() {
+        int capacity = Math.max(16, epochDays.length * 2);
+        epochDays = Arrays.copyOf(epochDays, capacity);
+        masks = Arrays.copyOf(masks, capacity);
+        for (int i = 0; i < minutes.length; i++) {
+            minutes[i] = Arrays.copyOf(minutes[i], capacity);
+        }
+    }
+}
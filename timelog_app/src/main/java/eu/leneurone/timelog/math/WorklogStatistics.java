@@ -0,0 +1,165 @@
+package eu.leneurone.timelog.math;
+
+import android.support.annotation.NonNull;
+
+import eu.leneurone.timelog.exceptions.IncoherentMarkersException;
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.model.Marker;
+import eu.leneurone.timelog.utils.EpochDays;
+import eu.leneurone.timelog.validators.TimesValidator;
+
+/**
+ * Statistics of the habits over a set of days : the distribution of the time of each marker, of the
+ * length of the day (from the morning to the evening) and of the length of the lunch break, for all
+ * the days and by day of the week.
+ * <br />
+ * Each measure is kept in a {@link MinuteHistogram} per day of the week, so the days are counted in
+ * a single pass, in any order, and a saved day is updated by removing its previous worklog and
+ * adding the new one. The days whose markers are incoherent aren't counted.
+ * <br />
+ * This class isn't thread safe : the callers must synchronize the calls.
+ */
+public class WorklogStatistics {
+
+    /** the measured values */
+    public enum Measure {
+        /** the time of the morning marker */
+        MORNING,
+        /** the time of the lunch start marker */
+        LUNCH_START,
+        /** the time of the lunch end marker */
+        LUNCH_END,
+        /** the time of the evening marker */
+        EVENING,
+        /** the time from the morning marker to the evening marker, for the days having both */
+        DAY_LENGTH,
+        /** the time from the lunch start marker to the lunch end marker, for the days having both */
+        LUNCH_LENGTH;
+
+        /**
+         * @param marker the marker (not null)
+         * @return the measure of the time of the marker
+         */
+        @NonNull
+        public static Measure of(@NonNull Marker marker) {
+            return MEASURES[marker.ordinal()];
+        }
+    }
+
+    /** the measures (Measure.values() returns a new array on each call) */
+    private static final Measure[] MEASURES = Measure.values();
+
+    /** the markers (Marker.values() returns a new array on each call) */
+    private static final Marker[] MARKERS = Marker.values();
+
+    /** the number of days of a week */
+    private static final int DAYS_PER_WEEK = 7;
+
+    /** the histograms, by measure then by day of the week (Monday first) */
+    private final MinuteHistogram[][] histograms = new MinuteHistogram[MEASURES.length][DAYS_PER_WEEK];
+
+    /** the number of counted days */
+    private int dayCount;
+
+    public WorklogStatistics() {
+        for (MinuteHistogram[] byDayOfWeek : histograms) {
+            for (int i = 0; i < DAYS_PER_WEEK; i++) {
+                byDayOfWeek[i] = new MinuteHistogram();
+            }
+        }
+    }
+
+    /**
+     * Copy constructor
+     * @param other the statistics to copy (not null)
+     */
+    public WorklogStatistics(@NonNull WorklogStatistics other) {
+        for (int measure = 0; measure < MEASURES.length; measure++) {
+            for (int i = 0; i < DAYS_PER_WEEK; i++) {
+                histograms[measure][i] = new MinuteHistogram(other.histograms[measure][i]);
+            }
+        }
+        dayCount = other.dayCount;
+    }
+
+    /**
+     * Counts a day
+     * @param epochDay the day
+     * @param worklog its worklog (not null). Nothing is counted if it's empty or incoherent.
+     */
+    public void add(int epochDay, @NonNull DayWorklog worklog) {
+        update(epochDay, worklog, true);
+    }
+
+    /**
+     * Stops counting a day, e.g. before counting its new worklog
+     * @param epochDay the day
+     * @param worklog the worklog counted for this day (not null)
+     */
+    public void remove(int epochDay, @NonNull DayWorklog worklog) {
+        update(epochDay, worklog, false);
+    }
+
+    /**
+     * @return the number of counted days
+     */
+    public int getDayCount() {
+        return dayCount;
+    }
+
+    /**
+     * @param measure the measure (not null)
+     * @return the distribution of the measure over all the counted days
+     */
+    @NonNull
+    public MinuteHistogram get(@NonNull Measure measure) {
+        MinuteHistogram histogram = new MinuteHistogram();
+        for (MinuteHistogram dayHistogram : histograms[measure.ordinal()]) {
+            histogram.addAll(dayHistogram);
+        }
+        return histogram;
+    }
+
+    /**
+     * @param measure the measure (not null)
+     * @param dayOfWeek the day of the week, from 1 (Monday) to 7 (Sunday)
+     * @return the distribution of the measure over the counted days of this day of the week
+     */
+    @NonNull
+    public MinuteHistogram get(@NonNull Measure measure, int dayOfWeek) {
+        return new MinuteHistogram(histograms[measure.ordinal()][dayOfWeek - 1]);
+    }
+
+    private void update(int epochDay, @NonNull DayWorklog worklog, boolean add) {
+        if (worklog.isEmpty()) {
+            return;
+        }
+        try {
+            TimesValidator.validateMarkersCoherency(worklog);
+        } catch (IncoherentMarkersException e) {
+            return;
+        }
+        int dayOfWeek = EpochDays.dayOfWeek(epochDay) - 1;
+        for (Marker marker : MARKERS) {
+            if (worklog.contains(marker)) {
+                update(Measure.of(marker), dayOfWeek, worklog.getMinutes(marker), add);
+            }
+        }
+        if (worklog.contains(Marker.MORNING) && worklog.contains(Marker.EVENING)) {
+            update(Measure.DAY_LENGTH, dayOfWeek, worklog.getMinutes(Marker.EVENING) - worklog.getMinutes(Marker.MORNING), add);
+        }
+        if (worklog.contains(Marker.LUNCH_START) && worklog.contains(Marker.LUNCH_END)) {
+            update(Measure.LUNCH_LENGTH, dayOfWeek, worklog.getMinutes(Marker.LUNCH_END) - worklog.getMinutes(Marker.LUNCH_START), add);
+        }
+        dayCount += add ? 1 : -1;
+    }
+
+    private void update(@NonNull Measure measure, int dayOfWeek, int minutes, boolean add) {
+        MinuteHistogram histogram = histograms[measure.ordinal()][dayOfWeek];
+        if (add) {
+            histogram.add(minutes);
+        } else {
+            histogram.remove(minutes);
+        }
+    }
+}
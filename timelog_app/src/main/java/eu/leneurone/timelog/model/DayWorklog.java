@@ -0,0 +1,170 @@
+package eu.leneurone.timelog.model;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The times of the markers of a day.
+ * <br />
+ * The set markers are stored as a presence mask (bit n is set if the marker of ordinal n is set),
+ * and their times as minutes from midnight, indexed by the ordinal of the marker : reading or
+ * writing a marker involves no hashing, no boxing and no allocation.
+ */
+public class DayWorklog {
+
+    /** the number of markers */
+    public static final int MARKER_COUNT = Marker.values().length;
+
+    /** the mask of a day with all the markers set */
+    public static final int ALL_MARKERS = (1 << MARKER_COUNT) - 1;
+
+    /** the set markers : bit n is set if the marker of ordinal n is set */
+    private int mask;
+
+    /** the times of the markers, in minutes from midnight, indexed by ordinal (0 if not set) */
+    private final int[] minutes = new int[MARKER_COUNT];
+
+    public DayWorklog() {
+    }
+
+    /**
+     * Copy constructor
+     * @param other the worklog to copy (not null)
+     */
+    public DayWorklog(@NonNull DayWorklog other) {
+        this.mask = other.mask;
+        System.arraycopy(other.minutes, 0, this.minutes, 0, MARKER_COUNT);
+    }
+
+    /**
+     * Adapter for the map based code
+     * @param times the marker - time pairs (not null)
+     * @return the worklog
+     */
+    @NonNull
+    public static DayWorklog fromMap(@NonNull Map<Marker, Time> times) {
+        DayWorklog worklog = new DayWorklog();
+        for (Map.Entry<Marker, Time> entry : times.entrySet()) {
+            worklog.set(entry.getKey(), entry.getValue());
+        }
+        return worklog;
+    }
+
+    /**
+     * Adapter for the map based code
+     * @return the marker - time pairs, in a new map
+     */
+    @NonNull
+    public Map<Marker, Time> toMap() {
+        Map<Marker, Time> times = new HashMap<>(4);
+        for (Marker marker : Marker.values()) {
+            if (contains(marker)) {
+                times.put(marker, Time.ofMinutes(minutes[marker.ordinal()]));
+            }
+        }
+        return times;
+    }
+
+    /**
+     * @param marker the marker (not null)
+     * @return the bit of the marker in the presence mask
+     */
+    public static int bit(@NonNull Marker marker) {
+        return 1 << marker.ordinal();
+    }
+
+    /**
+     * @return the presence mask : bit n is set if the marker of ordinal n is set
+     */
+    public int getMask() {
+        return mask;
+    }
+
+    public boolean contains(@NonNull Marker marker) {
+        return (mask & bit(marker)) != 0;
+    }
+
+    /**
+     * @param marker the marker (not null)
+     * @return the time of the marker, or null if it isn't set
+     */
+    @Nullable
+    public Time get(@NonNull Marker marker) {
+        return contains(marker) ? Time.ofMinutes(minutes[marker.ordinal()]) : null;
+    }
+
+    /**
+     * @param marker the marker (not null)
+     * @return the time of the marker in minutes from midnight, or 0 if it isn't set
+     */
+    public int getMinutes(@NonNull Marker marker) {
+        return minutes[marker.ordinal()];
+    }
+
+    /**
+     * Sets the time of a marker
+     * @param marker the marker (not null)
+     * @param time the time (not null)
+     */
+    public void set(@NonNull Marker marker, @NonNull Time time) {
+        setMinutes(marker, time.toMinutes());
+    }
+
+    /**
+     * Sets the time of a marker
+     * @param marker the marker (not null)
+     * @param minutesFromMidnight the time, in minutes from midnight
+     */
+    public void setMinutes(@NonNull Marker marker, int minutesFromMidnight) {
+        mask |= bit(marker);
+        minutes[marker.ordinal()] = minutesFromMidnight;
+    }
+
+    public void remove(@NonNull Marker marker) {
+        mask &= ~bit(marker);
+        minutes[marker.ordinal()] = 0;
+    }
+
+    public void clear() {
+        mask = 0;
+        Arrays.fill(minutes, 0);
+    }
+
+    /**
+     * @return the number of set markers
+     */
+    public int size() {
+        return Integer.bitCount(mask);
+    }
+
+    public boolean isEmpty() {
+        return mask == 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        DayWorklog worklog = (DayWorklog) o;
+        return mask == worklog.mask && Arrays.equals(minutes, worklog.minutes);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * mask + Arrays.hashCode(minutes);
+    }
+
+    @Override
+    public String toString() {
+        return toMap().toString();
+    }
+}
@@ -0,0 +1,230 @@
+package eu.leneurone.timelog.model;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * The work intervals of a day, as any number of punches : in, out, in, out...
+ * <br />
+ * The punches are stored in minutes from midnight, in a primitive array kept in the chronologic
+ * order : the interval n goes from the punch 2n to the punch 2n + 1. An odd number of punches means
+ * that the last interval is still open (the user is at work). The intervals of a coherent day are
+ * ordered and don't overlap : see {@link eu.leneurone.timelog.validators.IntervalsValidator}.
+ * <br />
+ * The days of the four markers model are mapped losslessly (see {@link #fromWorklog(DayWorklog)}) :
+ * their punches are the set markers, in the order of the enum declaration, and the mask of these
+ * markers is kept, so the day can be mapped back, and its total keeps the calculation rules of the
+ * markers. Such a day can't be given more punches : its markers would be lost.
+ */
+public class IntervalDay {
+
+    /** the markers (Marker.values() returns a new array on each call) */
+    private static final Marker[] MARKERS = Marker.values();
+
+    /** the punches, in minutes from midnight. Only the first punchCount ones are used. */
+    private int[] punches;
+
+    /** the number of punches */
+    private int punchCount;
+
+    /** the markers the punches come from, or 0 if the day doesn't come from the markers model */
+    private int markerMask;
+
+    public IntervalDay() {
+        this.punches = new int[4];
+    }
+
+    /**
+     * Copy constructor
+     * @param other the day to copy (not null)
+     */
+    public IntervalDay(@NonNull IntervalDay other) {
+        this.punches = Arrays.copyOf(other.punches, Math.max(other.punchCount, 4));
+        this.punchCount = other.punchCount;
+        this.markerMask = other.markerMask;
+    }
+
+    /**
+     * Maps a day of the markers model. No data is lost, even if the markers are incoherent.
+     * @param worklog the worklog (not null)
+     * @return the day, whose punches are the set markers in the order of the enum declaration
+     */
+    @NonNull
+    public static IntervalDay fromWorklog(@NonNull DayWorklog worklog) {
+        IntervalDay day = new IntervalDay();
+        int mask = worklog.getMask();
+        for (Marker marker : MARKERS) {
+            if ((mask & DayWorklog.bit(marker)) != 0) {
+                day.append(worklog.getMinutes(marker));
+            }
+        }
+        day.markerMask = mask;
+        return day;
+    }
+
+    /**
+     * Maps the day back to the markers model
+     * @return the worklog, or null if the day doesn't come from the markers model
+     */
+    @Nullable
+    public DayWorklog toWorklog() {
+        if (markerMask == 0 && punchCount > 0) {
+            return null;
+        }
+        DayWorklog worklog = new DayWorklog();
+        int punch = 0;
+        for (Marker marker : MARKERS) {
+            if ((markerMask & DayWorklog.bit(marker)) != 0) {
+                worklog.setMinutes(marker, punches[punch++]);
+            }
+        }
+        return worklog;
+    }
+
+    /**
+     * Adds a punch after the last one : it opens an interval, or closes the open one
+     * @param minutesFromMidnight the time of the punch
+     * @throws IllegalStateException if the day comes from the markers model
+     */
+    public void punch(int minutesFromMidnight) {
+        checkNotFromMarkers();
+        append(minutesFromMidnight);
+    }
+
+    /**
+     * Adds a closed interval, at its place in the chronologic order. The open interval, if any,
+     * stays the last one.
+     * @param startMinutes the start of the interval, in minutes from midnight
+     * @param endMinutes the end of the interval, in minutes from midnight
+     * @throws IllegalStateException if the day comes from the markers model
+     */
+    public void addInterval(int startMinutes, int endMinutes) {
+        checkNotFromMarkers();
+        ensureCapacity(punchCount + 2);
+        // the intervals are sorted by their start
+        int position = 2 * getClosedIntervalCount();
+        while (position > 0 && punches[position - 2] > startMinutes) {
+            position -= 2;
+        }
+        System.arraycopy(punches, position, punches, position + 2, punchCount - position);
+        punches[position] = startMinutes;
+        punches[position + 1] = endMinutes;
+        punchCount += 2;
+    }
+
+    /**
+     * @return the number of punches
+     */
+    public int getPunchCount() {
+        return punchCount;
+    }
+
+    /**
+     * @param index the index of the punch, from 0
+     * @return the time of the punch, in minutes from midnight
+     */
+    public int getPunch(int index) {
+        if (index >= punchCount) {
+            throw new IndexOutOfBoundsException("Punch " + index + " of " + punchCount);
+        }
+        return punches[index];
+    }
+
+    /**
+     * @return the number of intervals, including the open one
+     */
+    public int getIntervalCount() {
+        return (punchCount + 1) / 2;
+    }
+
+    /**
+     * @return true if the last interval has no end yet
+     */
+    public boolean isOpen() {
+        return (punchCount & 1) != 0;
+    }
+
+    /**
+     * @return the markers the punches come from, or 0 if the day doesn't come from the markers
+     * model
+     */
+    public int getMarkerMask() {
+        return markerMask;
+    }
+
+    public void clear() {
+        punchCount = 0;
+        markerMask = 0;
+    }
+
+    public boolean isEmpty() {
+        return punchCount == 0;
+    }
+
+    // the punches of a day mapped from the markers are the markers : the day must be cleared first
+    private void checkNotFromMarkers() {
+        if (markerMask != 0) {
+            throw new IllegalStateException("The day comes from the markers model : " + this);
+        }
+    }
+
+    // the number of intervals having an end
+    private int getClosedIntervalCount() {
+        return punchCount / 2;
+    }
+
+    private void append(int minutesFromMidnight) {
+        ensureCapacity(punchCount + 1);
+        punches[punchCount++] = minutesFromMidnight;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > punches.length) {
+            punches = Arrays.copyOf(punches, Math.max(capacity, 2 * punches.length));
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        IntervalDay day = (IntervalDay) o;
+        if (punchCount != day.punchCount || markerMask != day.markerMask) {
+            return false;
+        }
+        for (int i = 0; i < punchCount; i++) {
+            if (punches[i] != day.punches[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 31 * markerMask + punchCount;
+        for (int i = 0; i < punchCount; i++) {
+            result = 31 * result + punches[i];
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < punchCount; i++) {
+            builder.append(i % 2 == 0 ? (i > 0 ? ", " : "") : " - ").append(Time.ofMinutes(punches[i]));
+        }
+        if (isOpen()) {
+            builder.append(" - ...");
+        }
+        return builder.append(']').toString();
+    }
+}
@@ -2,36 +2,96 @@ package eu.leneurone.timelog.model;
 
 import android.support.annotation.NonNull;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 
 /**
  * encapsulates a marker, and the hour and minutes chosen by the user
  * WARNING the order of the item in the declaration is important and must be chronologic, as
  * this is used to validate the data coherency before save
+ * <br />
+ * A time is immutable, and is stored as a number of minutes. It also represents durations, such as
+ * the total time of a day or of a week, which may exceed 24 hours (or be negative). The times of
+ * the day are shared : use {@link #of(int, int)} or {@link #ofMinutes(int)} rather than the
+ * constructor.
  */
 public class Time implements Comparable<Time>, Serializable {
-    /** the hour */
-    private Integer hour;
 
-    /** the minutes */
-    private Integer minute;
+    /** the serial version of the former class (with an Integer hour and an Integer minute) */
+    private static final long serialVersionUID = -1080426713585499463L;
+
+    /** the serialized form is still the one of the former class, so the existing files can be read */
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("hour", Integer.class),
+            new ObjectStreamField("minute", Integer.class)
+    };
+
+    /** number of minutes in a day */
+    public static final int MINUTES_PER_DAY = 24 * 60;
+
+    /** the shared instances, for each minute of the day */
+    private static final Time[] MINUTES_OF_DAY = new Time[MINUTES_PER_DAY];
+
+    static {
+        for (int i = 0; i < MINUTES_PER_DAY; i++) {
+            MINUTES_OF_DAY[i] = new Time(i);
+        }
+    }
+
+    /** the number of minutes (only modified when deserializing) */
+    private int minutes;
 
     public Time(Integer hour, Integer minute) {
-        this.hour = hour;
-        this.minute = minute;
+        this(hour * 60 + minute);
+    }
+
+    private Time(int minutes) {
+        this.minutes = minutes;
     }
 
-    public Integer getHour() {
-        return hour;
+    /**
+     * @param hour the hour
+     * @param minute the minutes
+     * @return the time. No allocation is performed for a time of the day.
+     */
+    @NonNull
+    public static Time of(int hour, int minute) {
+        return ofMinutes(hour * 60 + minute);
+    }
+
+    /**
+     * @param minutes a number of minutes, possibly more than a day, or negative
+     * @return the time. No allocation is performed for a time of the day.
+     */
+    @NonNull
+    public static Time ofMinutes(int minutes) {
+        if (minutes >= 0 && minutes < MINUTES_PER_DAY) {
+            return MINUTES_OF_DAY[minutes];
+        }
+        return new Time(minutes);
     }
 
-    public Integer getMinute() {
-        return minute;
+    public int getHour() {
+        return minutes / 60;
+    }
+
+    public int getMinute() {
+        return minutes % 60;
+    }
+
+    /**
+     * @return the time as a number of minutes (from midnight, for a time of the day)
+     */
+    public int toMinutes() {
+        return minutes;
     }
 
     @Override
     public String toString() {
-        return hour + ":" + minute;
+        return getHour() + ":" + getMinute();
     }
 
     @Override
@@ -44,38 +104,41 @@ public class Time implements Comparable<Time>, Serializable {
         }
 
         Time time = (Time) o;
-        return getHour().equals(time.getHour()) && getMinute().equals(time.getMinute());
-
+        return minutes == time.minutes;
     }
 
     @Override
     public int hashCode() {
-        int result = getHour().hashCode();
-        result = 31 * result + getMinute().hashCode();
-        return result;
+        // same value as the former Integer based implementation
+        return 31 * getHour() + getMinute();
     }
 
     @Override
     public int compareTo(@NonNull Time another) {
-        if(this.equals(another)) {
-            return 0;
-        }
+        return minutes < another.minutes ? -1 : (minutes == another.minutes ? 0 : 1);
+    }
 
-        if(this.getHour() > another.getHour()) {
-            return 1;
-        } else if (this.getHour() < another.getHour()) {
-            return -1;
-        } else {
-            // hours are equals
-            if(this.getMinute() > another.getMinute()) {
-                return 1;
-            } else {
-                // the minutes can't be equals, or the method equals called before would have return
-                // true and this code wouldn't have been executed.
-                return -1;
-            }
-        }
+    // writes the former serialized form
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("hour", Integer.valueOf(getHour()));
+        fields.put("minute", Integer.valueOf(getMinute()));
+        out.writeFields();
     }
 
+    // reads the former serialized form
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        Integer hour = (Integer) fields.get("hour", null);
+        Integer minute = (Integer) fields.get("minute", null);
+        if (hour == null || minute == null) {
+            throw new IOException("Incomplete time");
+        }
+        minutes = hour * 60 + minute;
+    }
 
+    // the deserialized times of the day are replaced by the shared instances
+    private Object readResolve() {
+        return ofMinutes(minutes);
+    }
 }
@@ -0,0 +1,176 @@
+package eu.leneurone.timelog.services;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import eu.leneurone.timelog.exceptions.IncoherentMarkersException;
+import eu.leneurone.timelog.math.TotalCalculator;
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.model.Marker;
+import eu.leneurone.timelog.model.Time;
+import eu.leneurone.timelog.utils.Clock;
+import eu.leneurone.timelog.utils.EpochDays;
+
+/**
+ * Tiny copy of the last known state of the current day : its markers, and the total time of the
+ * previous days of its week. It is stored in the preferences, so it can be displayed before the
+ * worklog is read from the storage, and by the home screen widget which never reads the storage.
+ */
+public class LastStateSnapshot {
+
+    /** the name of the preferences file holding the snapshot */
+    private static final String PREFERENCES_NAME = "timeLogSnapshot";
+
+    private static final String KEY_DAY = "day";
+    private static final String KEY_WEEK_MINUTES = "weekMinutes";
+    private static final String KEY_UPDATE_TIME = "updateTime";
+
+    /** the day, as yyyyMMdd (the stored format doesn't depend on the time zone) */
+    private final int day;
+
+    /** the markers of the day */
+    private final DayWorklog worklog;
+
+    /** the total time of the previous days of the week */
+    private final Time weekTime;
+
+    /** when the snapshot was written, in milliseconds since the epoch */
+    private final long updateTime;
+
+    /**
+     * @param epochDay the day, as an epoch day
+     * @param worklog the markers of the day (not null, copied)
+     * @param weekTime the total time of the previous days of the week (not null)
+     */
+    public LastStateSnapshot(int epochDay, @NonNull DayWorklog worklog, @NonNull Time weekTime) {
+        this(EpochDays.toDayKey(epochDay), new DayWorklog(worklog), weekTime, System.currentTimeMillis());
+    }
+
+    private LastStateSnapshot(int day, @NonNull DayWorklog worklog, @NonNull Time weekTime, long updateTime) {
+        this.day = day;
+        this.worklog = worklog;
+        this.weekTime = weekTime;
+        this.updateTime = updateTime;
+    }
+
+    /**
+     * @param epochDay the day, as an epoch day
+     * @return true if the snapshot is about the given day
+     */
+    public boolean isAbout(int epochDay) {
+        return this.day == EpochDays.toDayKey(epochDay);
+    }
+
+    @NonNull
+    public DayWorklog getWorklog() {
+        return new DayWorklog(worklog);
+    }
+
+    @NonNull
+    public Time getWeekTime() {
+        return weekTime;
+    }
+
+    public long getUpdateTime() {
+        return updateTime;
+    }
+
+    /**
+     * @return the day, as an epoch day
+     */
+    public int getEpochDay() {
+        return EpochDays.of(day / 10000, day / 100 % 100, day % 100);
+    }
+
+    /**
+     * Calculates the total time of the current day, with the rules of {@link TotalCalculator}
+     * @param clock gives the current day and time (not null)
+     * @return the total time of the current day : 0 if the snapshot is about a previous day
+     * @throws IncoherentMarkersException if the markers of the snapshot are incoherent
+     */
+    @NonNull
+    public Time calculateTodayTime(@NonNull Clock clock) throws IncoherentMarkersException {
+        int epochDay = getEpochDay();
+        return epochDay == clock.today() ? TotalCalculator.calculateTotalTime(epochDay, worklog, clock) : Time.ofMinutes(0);
+    }
+
+    /**
+     * Calculates the total time of the current week, with the rules of {@link TotalCalculator}
+     * @param clock gives the current day and time (not null)
+     * @return the total time of the current week, up to the day of the snapshot : 0 if the
+     * snapshot is about a previous week
+     * @throws IncoherentMarkersException if the markers of the snapshot are incoherent
+     */
+    @NonNull
+    public Time calculateWeekTime(@NonNull Clock clock) throws IncoherentMarkersException {
+        int epochDay = getEpochDay();
+        if (EpochDays.mondayOf(epochDay) != EpochDays.mondayOf(clock.today())) {
+            return Time.ofMinutes(0);
+        }
+        return TotalCalculator.sum(weekTime, TotalCalculator.calculateTotalTime(epochDay, worklog, clock));
+    }
+
+    /**
+     * Stores the snapshot, replacing the previous one. The write is performed in the background.
+     * @param context the context (not null)
+     */
+    public void write(@NonNull Context context) {
+        SharedPreferences.Editor editor = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE).edit()
+                .putInt(KEY_DAY, day)
+                .putInt(KEY_WEEK_MINUTES, weekTime.toMinutes())
+                .putLong(KEY_UPDATE_TIME, updateTime);
+        for (Marker marker : Marker.values()) {
+            if (worklog.contains(marker)) {
+                editor.putInt(marker.name(), worklog.getMinutes(marker));
+            } else {
+                editor.remove(marker.name());
+            }
+        }
+        editor.apply();
+    }
+
+    /**
+     * Updates the stored snapshot after a day has been saved : if the day is one of the previous
+     * days of the week of the snapshot, its total time changes by the given delta
+     * @param context the context (not null)
+     * @param epochDay the saved day, as an epoch day
+     * @param deltaMinutes the change of the total time of the saved day, in minutes
+     */
+    public static void updateWeekTime(@NonNull Context context, int epochDay, int deltaMinutes) {
+        LastStateSnapshot snapshot = read(context);
+        if (snapshot == null || deltaMinutes == 0) {
+            return;
+        }
+        int snapshotDay = snapshot.getEpochDay();
+        if (epochDay < snapshotDay && epochDay >= EpochDays.mondayOf(snapshotDay)) {
+            context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE).edit()
+                    .putInt(KEY_WEEK_MINUTES, snapshot.weekTime.toMinutes() + deltaMinutes)
+                    .apply();
+        }
+    }
+
+    /**
+     * Reads the stored snapshot
+     * @param context the context (not null)
+     * @return the snapshot, or null if none has been stored yet
+     */
+    @Nullable
+    public static LastStateSnapshot read(@NonNull Context context) {
+        SharedPreferences preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        if (!preferences.contains(KEY_DAY)) {
+            return null;
+        }
+        DayWorklog worklog = new DayWorklog();
+        for (Marker marker : Marker.values()) {
+            if (preferences.contains(marker.name())) {
+                int minutes = preferences.getInt(marker.name(), 0);
+                worklog.setMinutes(marker, minutes);
+            }
+        }
+        int weekMinutes = preferences.getInt(KEY_WEEK_MINUTES, 0);
+        return new LastStateSnapshot(preferences.getInt(KEY_DAY, 0), worklog,
+                Time.ofMinutes(weekMinutes), preferences.getLong(KEY_UPDATE_TIME, 0));
+    }
+}
@@ -0,0 +1,95 @@
+package eu.leneurone.timelog.services;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handle on a save performed in the background : it can be observed to know when the data has been
+ * written, and whether an error occurred.
+ */
+public class SaveHandle {
+
+    /**
+     * Observer of a save
+     */
+    public interface Listener {
+        /**
+         * Called once the save is done, on the thread which performed it (or on the thread which
+         * registered the listener, if the save was already done)
+         * @param error the error which occurred, or null if the data has been saved
+         */
+        void onSaveCompleted(@Nullable IOException error);
+    }
+
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private final List<Listener> listeners = new ArrayList<>(1);
+
+    private IOException error;
+
+    /**
+     * Registers a listener, called once the save is done
+     * @param listener the listener (not null)
+     */
+    public void addListener(@NonNull Listener listener) {
+        synchronized (listeners) {
+            if (!isDone()) {
+                listeners.add(listener);
+                return;
+            }
+        }
+        listener.onSaveCompleted(error);
+    }
+
+    /**
+     * @return true if the save is done (successfully or not)
+     */
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    /**
+     * @return the error which occurred, or null if the save succeeded or is not done yet
+     */
+    @Nullable
+    public IOException getError() {
+        return isDone() ? error : null;
+    }
+
+    /**
+     * Waits for the end of the save
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout (not null)
+     * @return true if the save is done, false if the timeout elapsed before
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public boolean await(long timeout, @NonNull TimeUnit unit) throws InterruptedException {
+        return done.await(timeout, unit);
+    }
+
+    /**
+     * Marks the save as done, and notifies the listeners
+     * @param error the error which occurred, or null if the data has been saved
+     */
+    public void complete(@Nullable IOException error) {
+        List<Listener> toNotify;
+        synchronized (listeners) {
+            if (isDone()) {
+                return;
+            }
+            this.error = error;
+            done.countDown();
+            toNotify = new ArrayList<>(listeners);
+            listeners.clear();
+        }
+        for (Listener listener : toNotify) {
+            listener.onSaveCompleted(error);
+        }
+    }
+}
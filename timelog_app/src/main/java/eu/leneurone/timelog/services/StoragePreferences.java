@@ -0,0 +1,48 @@
+package eu.leneurone.timelog.services;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.NonNull;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads the storage settings chosen by the user in the settings screen. A missing or invalid value
+ * stands for its default.
+ */
+public final class StoragePreferences {
+
+    /** the number of years kept in the day files before the current one, older years are archived */
+    public static final String KEY_ARCHIVE_AGE = "archiveAge";
+
+    /** the default number of years kept in the day files */
+    public static final int DEFAULT_ARCHIVE_AGE = 2;
+
+    private StoragePreferences() {
+    }
+
+    /**
+     * @param context the context (not null)
+     * @return the number of years kept in the day files before the current one (at least 1)
+     */
+    public static int readArchiveAge(@NonNull Context context) {
+        // the preferences edited by the settings screen
+        SharedPreferences preferences = context.getSharedPreferences(context.getPackageName() + "_preferences", Context.MODE_PRIVATE);
+        String value = preferences.getString(KEY_ARCHIVE_AGE, null);
+        if (value == null || value.isEmpty()) {
+            return DEFAULT_ARCHIVE_AGE;
+        }
+        try {
+            int age = Integer.parseInt(value.trim());
+            if (age >= 1) {
+                return age;
+            }
+        } catch (NumberFormatException e) {
+            // handled below
+        }
+        Logger.getLogger(StoragePreferences.class.getName()).log(Level.WARNING,
+                "Invalid setting {0} : {1}", new Object[]{KEY_ARCHIVE_AGE, value});
+        return DEFAULT_ARCHIVE_AGE;
+    }
+}
@@ -3,41 +3,128 @@ package eu.leneurone.timelog.services;
 import android.content.Context;
 import android.support.annotation.NonNull;
 
+import java.io.IOException;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.Map;
 
+import eu.leneurone.timelog.model.DayWorklog;
 import eu.leneurone.timelog.model.Marker;
 import eu.leneurone.timelog.model.Time;
+import eu.leneurone.timelog.utils.EpochDays;
 
 /**
  * Storage service, handling marker and time data
+ * <br />
+ * The worklogs are handled as {@link DayWorklog}, and the days are identified by their epoch day
+ * (see {@link EpochDays}). The methods using maps of marker - time pairs are adapters for the map
+ * based code.
  */
 public interface StorageService {
+
+    /** returned by the logged days lookups when there is no such day */
+    int NO_DAY = Integer.MIN_VALUE;
+
     /**
      * Stores the worklog for a day
-     * @param day the day (not null)
-     * @param times the worklog (not null)
+     * @param epochDay the day, as an epoch day (see {@link EpochDays})
+     * @param worklog the worklog (not null)
+     * @param context the application context (not null)
+     * @throws IOException if the worklog couldn't have been stored
+     */
+    void storeDay(int epochDay, @NonNull DayWorklog worklog, @NonNull Context context) throws IOException;
+
+    /**
+     * Stores the worklogs of several days at once. The implementations may make them durable
+     * together, which is cheaper than storing the days one by one.
+     * @param worklogs the worklogs, by epoch day (not null)
      * @param context the application context (not null)
+     * @throws IOException if the worklogs couldn't have been stored : some of them may have been
      */
-    void storeDayWorklog(@NonNull Date day, @NonNull Map<Marker, Time> times, @NonNull Context context);
+    void storeDays(@NonNull Map<Integer, DayWorklog> worklogs, @NonNull Context context) throws IOException;
 
     /**
      * Read the stored worklog for a day
-     * @param day the day (not null)
+     * @param epochDay the day, as an epoch day (see {@link EpochDays})
      * @param context the context (not null)
-     * @return the read data, or an empty if no data exists for the given day, or if it couldn't have been read.
+     * @return the read data, or an empty worklog if no data exists for the given day, or if it couldn't have been read.
      */
     @NonNull
-    Map<Marker, Time> loadDayWorklog(@NonNull Date day, @NonNull Context context);
+    DayWorklog loadDay(int epochDay, @NonNull Context context);
 
     /**
      * Read the stored worklog for all the days between the given day and the start of the week. The
      * first day of the week is Monday.
-     * @param day the day (not null)
+     * @param epochDay the day, as an epoch day (see {@link EpochDays})
      * @param context the context (not null)
-     * @return the data, or an empty map if no data exists for any of the days, or if the given day is a Monday.
+     * @return the data by epoch day, or an empty map if no data exists for any of the days, or if
+     * the given day is a Monday.
+     */
+    @NonNull
+    Map<Integer, DayWorklog> loadWeek(int epochDay, @NonNull Context context);
+
+    /**
+     * Read the stored worklog for all the days between two days (included), in a single pass over
+     * the storage.
+     * @param fromEpochDay the first day of the range
+     * @param toEpochDay the last day of the range
+     * @param context the context (not null)
+     * @return the data by epoch day, with one entry per day of the range (the worklog being empty if
+     * no data exists for the day, or if it couldn't have been read), or an empty map if from is after to.
+     */
+    @NonNull
+    Map<Integer, DayWorklog> loadDays(int fromEpochDay, int toEpochDay, @NonNull Context context);
+
+    /**
+     * Read the stored worklog for all the days between two days (included), like
+     * {@link #loadDays(int, int, Context)}, for a pass over a long history (exports, statistics) :
+     * the read days aren't kept in memory, so they don't evict the days likely to be displayed.
+     * @param fromEpochDay the first day of the range
+     * @param toEpochDay the last day of the range
+     * @param context the context (not null)
+     * @return the data by epoch day, as returned by {@link #loadDays(int, int, Context)}
+     */
+    @NonNull
+    Map<Integer, DayWorklog> scanDays(int fromEpochDay, int toEpochDay, @NonNull Context context);
+
+    /**
+     * Finds the latest day before the given one having a stored worklog
+     * @param epochDay the day, as an epoch day (see {@link EpochDays})
+     * @param context the context (not null)
+     * @return the found day, as an epoch day, or {@link #NO_DAY} if there's none
+     */
+    int findPreviousLoggedDay(int epochDay, @NonNull Context context);
+
+    /**
+     * Finds the earliest day after the given one having a stored worklog
+     * @param epochDay the day, as an epoch day (see {@link EpochDays})
+     * @param context the context (not null)
+     * @return the found day, as an epoch day, or {@link #NO_DAY} if there's none
+     */
+    int findNextLoggedDay(int epochDay, @NonNull Context context);
+
+    /**
+     * Map based version of {@link #storeDay(int, DayWorklog, Context)}
+     */
+    void storeDayWorklog(@NonNull Date day, @NonNull Map<Marker, Time> times, @NonNull Context context) throws IOException;
+
+    /**
+     * Map based version of {@link #loadDay(int, Context)}
+     */
+    @NonNull
+    Map<Marker, Time> loadDayWorklog(@NonNull Date day, @NonNull Context context);
+
+    /**
+     * Map based version of {@link #loadWeek(int, Context)}. The keys are copies of the given day,
+     * moved to each of the days.
      */
     @NonNull
     Map<Calendar, Map<Marker, Time>> loadWeekWorklog(@NonNull Calendar day, @NonNull Context context);
+
+    /**
+     * Map based version of {@link #loadDays(int, int, Context)}. The keys are copies of the first
+     * day, moved to each of the days.
+     */
+    @NonNull
+    Map<Calendar, Map<Marker, Time>> loadRange(@NonNull Calendar from, @NonNull Calendar to, @NonNull Context context);
 }
@@ -0,0 +1,91 @@
+package eu.leneurone.timelog.services;
+
+import android.support.annotation.NonNull;
+
+import eu.leneurone.timelog.services.impl.ArchiveStorageService;
+import eu.leneurone.timelog.services.impl.CachingStorageService;
+import eu.leneurone.timelog.services.impl.ConcurrentStorageServiceImpl;
+import eu.leneurone.timelog.services.impl.JournalStorageServiceImpl;
+import eu.leneurone.timelog.services.impl.LegacyDayMigration;
+import eu.leneurone.timelog.services.impl.MappedYearStorageServiceImpl;
+import eu.leneurone.timelog.services.impl.StatisticsStorageService;
+import eu.leneurone.timelog.services.impl.TotalsIndexStorageService;
+import eu.leneurone.timelog.services.impl.WriteBehindStorageService;
+
+/**
+ * Provides the storage service shared by all the screens of the app, so the cached data survives
+ * the activities
+ */
+public final class StorageServiceFactory {
+
+    private static WriteBehindStorageService storageService;
+
+    private static TotalsIndexStorageService totalsService;
+
+    private static ArchiveStorageService archiveService;
+
+    private static LegacyDayMigration migration;
+
+    private static StatisticsStorageService statisticsService;
+
+    private StorageServiceFactory() {
+    }
+
+    /**
+     * @return the storage service of the app : the saves are performed in the background and
+     * appended to the journal in front of the year files, the read days are cached, the totals of
+     * the saved days are indexed, the statistics follow the saves, and the old years are archived
+     */
+    @NonNull
+    public static synchronized WriteBehindStorageService getStorageService() {
+        if (storageService == null) {
+            ConcurrentStorageServiceImpl dayFiles = new ConcurrentStorageServiceImpl();
+            JournalStorageServiceImpl journal = new JournalStorageServiceImpl(new MappedYearStorageServiceImpl(), dayFiles);
+            migration = new LegacyDayMigration(dayFiles, journal);
+            archiveService = new ArchiveStorageService(journal);
+            totalsService = new TotalsIndexStorageService(archiveService);
+            statisticsService = new StatisticsStorageService(new CachingStorageService(totalsService));
+            storageService = new WriteBehindStorageService(statisticsService);
+        }
+        return storageService;
+    }
+
+    /**
+     * @return the service computing the totals of ranges of days, behind the storage service of the
+     * app : the days saved in the background are counted once written
+     */
+    @NonNull
+    public static synchronized TotalsIndexStorageService getTotalsService() {
+        getStorageService();
+        return totalsService;
+    }
+
+    /**
+     * @return the service archiving the old years, behind the storage service of the app
+     */
+    @NonNull
+    public static synchronized ArchiveStorageService getArchiveService() {
+        getStorageService();
+        return archiveService;
+    }
+
+    /**
+     * @return the migration of the legacy day files to the journal, behind the storage service of
+     * the app
+     */
+    @NonNull
+    public static synchronized LegacyDayMigration getMigration() {
+        getStorageService();
+        return migration;
+    }
+
+    /**
+     * @return the service computing the statistics of the days, behind the storage service of the
+     * app : the days saved in the background are counted once written
+     */
+    @NonNull
+    public static synchronized StatisticsStorageService getStatisticsService() {
+        getStorageService();
+        return statisticsService;
+    }
+}
@@ -0,0 +1,64 @@
+package eu.leneurone.timelog.services;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.NonNull;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import eu.leneurone.timelog.math.WorkRules;
+import eu.leneurone.timelog.utils.TimeUtils;
+
+/**
+ * Reads the calculation settings chosen by the user in the settings screen. The values are stored
+ * as hh:mm in the default preferences of the app ; a missing or invalid value stands for its
+ * default.
+ */
+public final class WorkRulesPreferences {
+
+    /** the lunch break assumed when it isn't logged */
+    public static final String KEY_LUNCH_DURATION = "lunchDuration";
+
+    /** the start of the afternoon */
+    public static final String KEY_AFTERNOON_START = "afternoonStart";
+
+    /** the work time expected for a day of the week, followed by the day of the week (1 = Monday) */
+    public static final String KEY_DAILY_TARGET_PREFIX = "dailyTarget";
+
+    private WorkRulesPreferences() {
+    }
+
+    /**
+     * @param context the context (not null)
+     * @return the settings stored in the preferences
+     */
+    @NonNull
+    public static WorkRules read(@NonNull Context context) {
+        // the preferences edited by the settings screen
+        SharedPreferences preferences = context.getSharedPreferences(context.getPackageName() + "_preferences", Context.MODE_PRIVATE);
+        WorkRules defaults = WorkRules.DEFAULT;
+        int[] targets = new int[7];
+        for (int dayOfWeek = 1; dayOfWeek <= 7; dayOfWeek++) {
+            targets[dayOfWeek - 1] = readMinutes(preferences, KEY_DAILY_TARGET_PREFIX + dayOfWeek,
+                    defaults.getDailyTargetMinutes(dayOfWeek));
+        }
+        return new WorkRules(readMinutes(preferences, KEY_LUNCH_DURATION, defaults.getLunchDurationMinutes()),
+                readMinutes(preferences, KEY_AFTERNOON_START, defaults.getAfternoonStartMinutes()), targets);
+    }
+
+    // a value in minutes, stored as hh:mm
+    private static int readMinutes(@NonNull SharedPreferences preferences, @NonNull String key, int defaultMinutes) {
+        String value = preferences.getString(key, null);
+        if (value == null || value.isEmpty()) {
+            return defaultMinutes;
+        }
+        int minutes = TimeUtils.parseMinutes(value);
+        if (minutes < 0) {
+            Logger.getLogger(WorkRulesPreferences.class.getName()).log(Level.WARNING,
+                    "Invalid setting {0} : {1}", new Object[]{key, value});
+            return defaultMinutes;
+        }
+        return minutes;
+    }
+}
@@ -0,0 +1,226 @@
+package eu.leneurone.timelog.services;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Map;
+
+import eu.leneurone.timelog.exceptions.IncoherentMarkersException;
+import eu.leneurone.timelog.math.TotalCalculator;
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.model.Marker;
+import eu.leneurone.timelog.utils.Clock;
+import eu.leneurone.timelog.utils.EpochDays;
+
+/**
+ * Exports all the logged days, in chronologic order, with their markers and their total, as CSV
+ * or JSON.
+ * <br />
+ * The days are read and written one month at a time, so the memory used doesn't depend on the
+ * length of the history. The export can be cancelled from another thread.
+ */
+public class WorklogExporter {
+
+    /** the output formats */
+    public enum Format {
+        /** a header line, then one line per day : date,morning,lunch_start,lunch_end,evening,total */
+        CSV,
+        /** an array of objects : {"date":..., "morning":..., ..., "total":...}, without the unset markers */
+        JSON
+    }
+
+    /**
+     * Notified of the progress of the export, on the exporting thread
+     */
+    public interface ProgressListener {
+
+        /**
+         * @param exportedDays the number of days written so far
+         * @param percent the progress, from 0 to 100
+         */
+        void onProgress(int exportedDays, int percent);
+    }
+
+    /** the earliest day looked for */
+    private static final int EARLIEST_DAY = EpochDays.of(1900, 1, 1);
+
+    /** the latest day looked for */
+    private static final int LATEST_DAY = EpochDays.of(2200, 1, 1);
+
+    /** the markers (Marker.values() returns a new array on each call) */
+    private static final Marker[] MARKERS = Marker.values();
+
+    /** the names of the markers in the JSON objects */
+    private static final String[] JSON_NAMES = {"morning", "lunchStart", "lunchEnd", "evening"};
+
+    private final StorageService service;
+
+    private final Format format;
+
+    private final Clock clock;
+
+    private volatile boolean cancelled;
+
+    /**
+     * @param service the storage to read (not null)
+     * @param format the output format (not null)
+     * @param clock gives the current day, whose total counts until now (not null)
+     */
+    public WorklogExporter(@NonNull StorageService service, @NonNull Format format, @NonNull Clock clock) {
+        this.service = service;
+        this.format = format;
+        this.clock = clock;
+    }
+
+    /**
+     * Stops the running export as soon as possible
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * @return true if the export has been cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Exports the logged days. The output isn't closed.
+     * @param output where the days are written (not null). It is buffered by this method.
+     * @param listener notified after each month, may be null
+     * @param context the context (not null)
+     * @return the number of exported days, or -1 if the export has been cancelled. The output is
+     * then incomplete.
+     * @throws IOException if the output couldn't have been written
+     */
+    public int export(@NonNull Writer output, @Nullable ProgressListener listener, @NonNull Context context) throws IOException {
+        BufferedWriter writer = new BufferedWriter(output, 16 * 1024);
+        int first = service.findNextLoggedDay(EARLIEST_DAY, context);
+        int last = service.findPreviousLoggedDay(LATEST_DAY, context);
+        writeStart(writer);
+        int count = 0;
+        int day = first;
+        while (day != StorageService.NO_DAY && day <= last) {
+            if (cancelled) {
+                writer.flush();
+                return -1;
+            }
+            int year = EpochDays.year(day);
+            int month = EpochDays.month(day);
+            int monthEnd = Math.min(last, month == 12 ? EpochDays.of(year + 1, 1, 1) - 1 : EpochDays.of(year, month + 1, 1) - 1);
+            Map<Integer, DayWorklog> worklogs = service.scanDays(day, monthEnd, context);
+            for (; day <= monthEnd; day++) {
+                DayWorklog worklog = worklogs.get(day);
+                if (worklog != null && !worklog.isEmpty()) {
+                    writeDay(writer, day, worklog, count == 0);
+                    count++;
+                }
+            }
+            if (listener != null) {
+                listener.onProgress(count, (int) ((monthEnd - first + 1) * 100L / (last - first + 1)));
+            }
+            day = service.findNextLoggedDay(monthEnd, context);
+        }
+        writeEnd(writer);
+        writer.flush();
+        return count;
+    }
+
+    private void writeStart(@NonNull Writer writer) throws IOException {
+        if (format == Format.CSV) {
+            writer.write("date");
+            for (Marker marker : MARKERS) {
+                writer.write(',');
+                writer.write(marker.name().toLowerCase(Locale.ROOT));
+            }
+            writer.write(",total\n");
+        } else {
+            writer.write('[');
+        }
+    }
+
+    private void writeEnd(@NonNull Writer writer) throws IOException {
+        if (format == Format.JSON) {
+            writer.write("\n]\n");
+        }
+    }
+
+    private void writeDay(@NonNull Writer writer, int epochDay, @NonNull DayWorklog worklog, boolean first) throws IOException {
+        // the total is left empty when the markers are incoherent
+        int total;
+        try {
+            total = TotalCalculator.calculateTotalTime(epochDay, worklog, clock).toMinutes();
+        } catch (IncoherentMarkersException e) {
+            total = -1;
+        }
+        int mask = worklog.getMask();
+        if (format == Format.CSV) {
+            writeDate(writer, epochDay);
+            for (Marker marker : MARKERS) {
+                writer.write(',');
+                if ((mask & DayWorklog.bit(marker)) != 0) {
+                    writeMinutes(writer, worklog.getMinutes(marker));
+                }
+            }
+            writer.write(',');
+            if (total >= 0) {
+                writeMinutes(writer, total);
+            }
+            writer.write('\n');
+        } else {
+            writer.write(first ? "\n{\"date\":\"" : ",\n{\"date\":\"");
+            writeDate(writer, epochDay);
+            writer.write('"');
+            for (Marker marker : MARKERS) {
+                if ((mask & DayWorklog.bit(marker)) != 0) {
+                    writer.write(",\"");
+                    writer.write(JSON_NAMES[marker.ordinal()]);
+                    writer.write("\":\"");
+                    writeMinutes(writer, worklog.getMinutes(marker));
+                    writer.write('"');
+                }
+            }
+            if (total >= 0) {
+                writer.write(",\"total\":\"");
+                writeMinutes(writer, total);
+                writer.write("\"}");
+            } else {
+                writer.write(",\"total\":null}");
+            }
+        }
+    }
+
+    // yyyy-MM-dd, without formatter
+    private static void writeDate(@NonNull Writer writer, int epochDay) throws IOException {
+        writeDigits(writer, EpochDays.year(epochDay), 4);
+        writer.write('-');
+        writeDigits(writer, EpochDays.month(epochDay), 2);
+        writer.write('-');
+        writeDigits(writer, EpochDays.dayOfMonth(epochDay), 2);
+    }
+
+    // hh:mm, without formatter
+    private static void writeMinutes(@NonNull Writer writer, int minutes) throws IOException {
+        writeDigits(writer, minutes / 60, 2);
+        writer.write(':');
+        writeDigits(writer, minutes % 60, 2);
+    }
+
+    // a positive value, left padded with zeros
+    private static void writeDigits(@NonNull Writer writer, int value, int width) throws IOException {
+        int divisor = 1;
+        for (int i = 1; i < width || value / divisor >= 10; i++) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            writer.write('0' + value / divisor % 10);
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package eu.leneurone.timelog.services;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import eu.leneurone.timelog.exceptions.IncoherentMarkersException;
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.model.Marker;
+import eu.leneurone.timelog.utils.EpochDays;
+import eu.leneurone.timelog.validators.TimesValidator;
+
+/**
+ * Imports days from a CSV timesheet : one line per day, with the date then the time of each marker
+ * (date,morning,lunch_start,lunch_end,evening). The following columns, like the total of the
+ * exports of {@link WorklogExporter}, are ignored.
+ * <br />
+ * The dates are read as yyyy-MM-dd or dd/MM/yyyy, the times as h:mm, and an empty time leaves the
+ * marker unset. The columns may be separated by commas or semicolons. A header line is skipped.
+ * <br />
+ * The file is read line by line. The invalid lines are reported and skipped, without stopping the
+ * import, and the valid days are stored by batches of {@link #BATCH_SIZE}, each batch being made
+ * durable at once. The imported days replace the stored ones.
+ */
+public class WorklogImporter {
+
+    /** the number of days stored at once */
+    public static final int BATCH_SIZE = 500;
+
+    /** the maximum number of errors kept in the report : the others are only counted */
+    public static final int MAX_REPORTED_ERRORS = 100;
+
+    /** the reasons of the rejection of a line */
+    public enum Reason {
+        /** less than a date and 4 times */
+        MISSING_COLUMNS,
+        /** the date isn't valid */
+        INVALID_DATE,
+        /** one of the times isn't valid */
+        INVALID_TIME,
+        /** no marker is set */
+        NO_TIME,
+        /** the times aren't in the chronologic order of the markers */
+        INCOHERENT_MARKERS
+    }
+
+    /**
+     * A rejected line
+     */
+    public static class RowError {
+
+        private final int row;
+
+        private final Reason reason;
+
+        public RowError(int row, @NonNull Reason reason) {
+            this.row = row;
+            this.reason = reason;
+        }
+
+        /**
+         * @return the number of the line, from 1
+         */
+        public int getRow() {
+            return row;
+        }
+
+        @NonNull
+        public Reason getReason() {
+            return reason;
+        }
+
+        @Override
+        public String toString() {
+            return "line " + row + " : " + reason;
+        }
+    }
+
+    /**
+     * The summary of an import
+     */
+    public static class Report {
+
+        private int importedDays;
+
+        private int rejectedRows;
+
+        private final List<RowError> errors = new ArrayList<>();
+
+        /**
+         * @return the number of stored days. A day found on several lines is counted once.
+         */
+        public int getImportedDays() {
+            return importedDays;
+        }
+
+        /**
+         * @return the number of rejected lines
+         */
+        public int getRejectedRows() {
+            return rejectedRows;
+        }
+
+        /**
+         * @return the first {@link #MAX_REPORTED_ERRORS} rejected lines, in the order of the file
+         */
+        @NonNull
+        public List<RowError> getErrors() {
+            return Collections.unmodifiableList(errors);
+        }
+
+        private void reject(int row, @NonNull Reason reason) {
+            rejectedRows++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(new RowError(row, reason));
+            }
+        }
+    }
+
+    /** the markers, in the order of the columns (Marker.values() returns a new array on each call) */
+    private static final Marker[] MARKERS = Marker.values();
+
+    private final StorageService service;
+
+    /**
+     * @param service the storage receiving the days (not null)
+     */
+    public WorklogImporter(@NonNull StorageService service) {
+        this.service = service;
+    }
+
+    /**
+     * Imports the days of a CSV file. The input isn't closed.
+     * @param input the content of the file (not null)
+     * @param context the application context (not null)
+     * @return the summary of the import
+     * @throws IOException if the input couldn't have been read, or the days couldn't have been
+     * stored : the previous batches are stored
+     */
+    @NonNull
+    public Report importDays(@NonNull Reader input, @NonNull Context context) throws IOException {
+        BufferedReader reader = new BufferedReader(input, 16 * 1024);
+        Report report = new Report();
+        Map<Integer, DayWorklog> batch = new HashMap<>();
+        // a day found on several lines is stored with its last line, and counted once
+        Set<Integer> importedDays = new HashSet<>();
+        DayWorklog worklog = new DayWorklog();
+        char separator = 0;
+        int row = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            row++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            if (separator == 0) {
+                separator = line.indexOf(';') >= 0 && line.indexOf(',') < 0 ? ';' : ',';
+                if (Character.isLetter(line.charAt(0))) {
+                    // the header
+                    continue;
+                }
+            }
+            String[] columns = line.split(separator == ';' ? ";" : ",", -1);
+            if (columns.length < 1 + MARKERS.length) {
+                report.reject(row, Reason.MISSING_COLUMNS);
+                continue;
+            }
+            int epochDay = parseDate(unquote(columns[0]));
+            if (epochDay == StorageService.NO_DAY) {
+                report.reject(row, Reason.INVALID_DATE);
+                continue;
+            }
+            Reason reason = parseTimes(columns, worklog);
+            if (reason != null) {
+                report.reject(row, reason);
+                continue;
+            }
+            batch.put(epochDay, new DayWorklog(worklog));
+            importedDays.add(epochDay);
+            if (batch.size() >= BATCH_SIZE) {
+                service.storeDays(batch, context);
+                batch = new HashMap<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            service.storeDays(batch, context);
+        }
+        report.importedDays = importedDays.size();
+        return report;
+    }
+
+    // reads the times in the worklog, and validates them : returns the reason of the rejection, or
+    // null if the worklog is valid
+    private static Reason parseTimes(@NonNull String[] columns, @NonNull DayWorklog worklog) {
+        worklog.clear();
+        for (int i = 0; i < MARKERS.length; i++) {
+            String value = unquote(columns[1 + i]);
+            if (value.isEmpty()) {
+                continue;
+            }
+            int minutes = parseTime(value);
+            if (minutes < 0) {
+                return Reason.INVALID_TIME;
+            }
+            worklog.setMinutes(MARKERS[i], minutes);
+        }
+        if (worklog.isEmpty()) {
+            return Reason.NO_TIME;
+        }
+        try {
+            TimesValidator.validateMarkersCoherency(worklog);
+        } catch (IncoherentMarkersException e) {
+            return Reason.INCOHERENT_MARKERS;
+        }
+        return null;
+    }
+
+    // yyyy-MM-dd or dd/MM/yyyy, or NO_DAY if the date isn't valid
+    static int parseDate(@NonNull String value) {
+        int year;
+        int month;
+        int day;
+        if (value.length() == 10 && value.charAt(4) == '-' && value.charAt(7) == '-') {
+            year = parseDigits(value, 0, 4);
+            month = parseDigits(value, 5, 7);
+            day = parseDigits(value, 8, 10);
+        } else if (value.length() == 10 && value.charAt(2) == '/' && value.charAt(5) == '/') {
+            day = parseDigits(value, 0, 2);
+            month = parseDigits(value, 3, 5);
+            year = parseDigits(value, 6, 10);
+        } else {
+            return StorageService.NO_DAY;
+        }
+        if (year < 1900 || month < 1 || month > 12 || day < 1) {
+            return StorageService.NO_DAY;
+        }
+        int epochDay = EpochDays.of(year, month, day);
+        // the day must exist in the month : 2015-02-30 isn't a valid date
+        return EpochDays.month(epochDay) == month && EpochDays.dayOfMonth(epochDay) == day ? epochDay : StorageService.NO_DAY;
+    }
+
+    // h:mm or hh:mm, in minutes from midnight, or -1 if the time isn't valid
+    static int parseTime(@NonNull String value) {
+        int colon = value.indexOf(':');
+        if (colon < 1 || colon > 2 || value.length() != colon + 3) {
+            return -1;
+        }
+        int hours = parseDigits(value, 0, colon);
+        int minutes = parseDigits(value, colon + 1, colon + 3);
+        if (hours < 0 || hours > 23 || minutes < 0 || minutes > 59) {
+            return -1;
+        }
+        return hours * 60 + minutes;
+    }
+
+    // the positive number written between the positions, or -1 if a character isn't a digit
+    private static int parseDigits(@NonNull String value, int start, int end) {
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    // the value without the spaces and the quotes added by the spreadsheets
+    @NonNull
+    private static String unquote(@NonNull String value) {
+        String trimmed = value.trim();
+        if (trimmed.length() >= 2 && trimmed.charAt(0) == '"' && trimmed.charAt(trimmed.length() - 1) == '"') {
+            trimmed = trimmed.substring(1, trimmed.length() - 1).trim();
+        }
+        return trimmed;
+    }
+}
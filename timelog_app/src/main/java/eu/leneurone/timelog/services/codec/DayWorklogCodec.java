@@ -0,0 +1,115 @@
+package eu.leneurone.timelog.services.codec;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.model.Marker;
+
+/**
+ * Fixed-width binary encoding of the worklog of a day.
+ * <br />
+ * A record is {@link #RECORD_SIZE} bytes long :
+ * <ul>
+ *     <li>the format version (1 byte, currently {@link #VERSION})</li>
+ *     <li>the presence mask (1 byte) : bit n is set if the marker of ordinal n is set</li>
+ *     <li>for each marker, in the order of the enum declaration, the time as minutes from midnight
+ *     (2 bytes, big endian, 0 if the marker is not set)</li>
+ * </ul>
+ * No reflection is involved, and the primitive accessors ({@link #readMask(byte[], int)},
+ * {@link #readMinutes(byte[], int, Marker)}) don't allocate anything.
+ */
+public final class DayWorklogCodec {
+
+    /** current version of the format */
+    public static final byte VERSION = 1;
+
+    /** size in bytes of an encoded day */
+    public static final int RECORD_SIZE = 2 + 2 * 4;
+
+    /** first byte of a Java serialization stream, as written by the legacy storage (0xACED) */
+    private static final byte LEGACY_MAGIC_0 = (byte) 0xAC;
+    private static final byte LEGACY_MAGIC_1 = (byte) 0xED;
+
+    /** the markers (Marker.values() returns a new array on each call) */
+    private static final Marker[] MARKERS = Marker.values();
+
+    private DayWorklogCodec() {
+    }
+
+    /**
+     * Encodes the worklog of a day
+     * @param worklog the worklog (not null)
+     * @param buffer the destination buffer (not null)
+     * @param offset the position of the record in the buffer. The buffer must contain at least
+     *               {@link #RECORD_SIZE} bytes after this position.
+     */
+    public static void encode(@NonNull DayWorklog worklog, @NonNull byte[] buffer, int offset) {
+        for (Marker marker : MARKERS) {
+            int minutes = worklog.getMinutes(marker);
+            int position = offset + 2 + 2 * marker.ordinal();
+            buffer[position] = (byte) (minutes >>> 8);
+            buffer[position + 1] = (byte) minutes;
+        }
+        buffer[offset] = VERSION;
+        buffer[offset + 1] = (byte) worklog.getMask();
+    }
+
+    /**
+     * Decodes the worklog of a day
+     * @param buffer the buffer containing the record (not null)
+     * @param offset the position of the record in the buffer
+     * @return the worklog
+     * @throws IOException if the record is not in a supported version
+     */
+    @NonNull
+    public static DayWorklog decode(@NonNull byte[] buffer, int offset) throws IOException {
+        int mask = readMask(buffer, offset);
+        DayWorklog worklog = new DayWorklog();
+        for (Marker marker : MARKERS) {
+            if ((mask & DayWorklog.bit(marker)) != 0) {
+                worklog.setMinutes(marker, readMinutes(buffer, offset, marker));
+            }
+        }
+        return worklog;
+    }
+
+    /**
+     * Reads the presence mask of a record
+     * @param buffer the buffer containing the record (not null)
+     * @param offset the position of the record in the buffer
+     * @return the mask : bit n is set if the marker of ordinal n is set
+     * @throws IOException if the record is not in a supported version
+     */
+    public static int readMask(@NonNull byte[] buffer, int offset) throws IOException {
+        if (buffer[offset] != VERSION) {
+            throw new IOException("Unsupported day worklog format version : " + buffer[offset]);
+        }
+        return buffer[offset + 1] & 0xFF;
+    }
+
+    /**
+     * Reads the time of a marker in a record. The presence mask must be checked before, since
+     * 0 is returned for the markers which are not set.
+     * @param buffer the buffer containing the record (not null)
+     * @param offset the position of the record in the buffer
+     * @param marker the marker (not null)
+     * @return the time of the marker, in minutes from midnight
+     */
+    public static int readMinutes(@NonNull byte[] buffer, int offset, @NonNull Marker marker) {
+        int position = offset + 2 + 2 * marker.ordinal();
+        return ((buffer[position] & 0xFF) << 8) | (buffer[position + 1] & 0xFF);
+    }
+
+    /**
+     * Checks whether the data has been written by the legacy storage (Java serialization of the
+     * worklog map), and must then be read with {@link LegacyDayWorklogReader}.
+     * @param buffer the beginning of the data (not null)
+     * @param length the number of bytes available in the buffer
+     * @return true if the data is a Java serialization stream
+     */
+    public static boolean isLegacy(@NonNull byte[] buffer, int length) {
+        return length >= 2 && buffer[0] == LEGACY_MAGIC_0 && buffer[1] == LEGACY_MAGIC_1;
+    }
+}
@@ -0,0 +1,142 @@
+package eu.leneurone.timelog.services.codec;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.model.IntervalDay;
+import eu.leneurone.timelog.model.Marker;
+
+/**
+ * Variable-width binary encoding of a day of intervals.
+ * <br />
+ * A record contains :
+ * <ul>
+ *     <li>the format version (1 byte, currently {@link #VERSION})</li>
+ *     <li>the markers the punches come from (1 byte, 0 if the day doesn't come from the markers
+ *     model)</li>
+ *     <li>the number of punches, as a varint</li>
+ *     <li>each punch, as the zigzag varint of its difference with the previous punch (with the
+ *     midnight for the first one)</li>
+ * </ul>
+ * The punches of a day are close, so most of them take 1 or 2 bytes. The records of
+ * {@link DayWorklogCodec} (version 1) are read too, and mapped with
+ * {@link IntervalDay#fromWorklog(DayWorklog)}.
+ */
+public final class IntervalDayCodec {
+
+    /** current version of the format, following the one of {@link DayWorklogCodec} */
+    public static final byte VERSION = 2;
+
+    /** the markers (Marker.values() returns a new array on each call) */
+    private static final Marker[] MARKERS = Marker.values();
+
+    private IntervalDayCodec() {
+    }
+
+    /**
+     * Encodes a day of intervals
+     * @param day the day (not null)
+     * @return the record
+     */
+    @NonNull
+    public static byte[] encode(@NonNull IntervalDay day) {
+        int count = day.getPunchCount();
+        // a varint takes 5 bytes at most
+        byte[] buffer = new byte[2 + 5 + 5 * count];
+        buffer[0] = VERSION;
+        buffer[1] = (byte) day.getMarkerMask();
+        int position = writeVarint(buffer, 2, count);
+        int previous = 0;
+        for (int i = 0; i < count; i++) {
+            int punch = day.getPunch(i);
+            position = writeVarint(buffer, position, zigzag(punch - previous));
+            previous = punch;
+        }
+        byte[] record = new byte[position];
+        System.arraycopy(buffer, 0, record, 0, position);
+        return record;
+    }
+
+    /**
+     * Decodes a day of intervals, from a record of this format or of {@link DayWorklogCodec}
+     * @param buffer the buffer containing the record (not null)
+     * @param offset the position of the record in the buffer
+     * @param length the number of bytes of the record
+     * @return the day
+     * @throws IOException if the record is truncated, or not in a supported version
+     */
+    @NonNull
+    public static IntervalDay decode(@NonNull byte[] buffer, int offset, int length) throws IOException {
+        int end = offset + length;
+        if (length >= 1 && buffer[offset] == DayWorklogCodec.VERSION) {
+            if (length < DayWorklogCodec.RECORD_SIZE) {
+                throw new IOException("Truncated day worklog record");
+            }
+            return IntervalDay.fromWorklog(DayWorklogCodec.decode(buffer, offset));
+        }
+        if (length < 3 || buffer[offset] != VERSION) {
+            throw new IOException("Unsupported interval day format version : " + (length > 0 ? buffer[offset] : -1));
+        }
+        int markerMask = buffer[offset + 1] & 0xFF;
+        int[] position = {offset + 2};
+        int count = readVarint(buffer, position, end);
+        IntervalDay day;
+        if (markerMask != 0) {
+            // the punches are the set markers
+            if (count != Integer.bitCount(markerMask) || (markerMask & ~DayWorklog.ALL_MARKERS) != 0) {
+                throw new IOException("Inconsistent interval day record");
+            }
+            DayWorklog worklog = new DayWorklog();
+            int previous = 0;
+            for (Marker marker : MARKERS) {
+                if ((markerMask & DayWorklog.bit(marker)) != 0) {
+                    previous += unzigzag(readVarint(buffer, position, end));
+                    worklog.setMinutes(marker, previous);
+                }
+            }
+            day = IntervalDay.fromWorklog(worklog);
+        } else {
+            day = new IntervalDay();
+            int previous = 0;
+            for (int i = 0; i < count; i++) {
+                previous += unzigzag(readVarint(buffer, position, end));
+                day.punch(previous);
+            }
+        }
+        return day;
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int writeVarint(@NonNull byte[] buffer, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return position;
+    }
+
+    private static int readVarint(@NonNull byte[] buffer, @NonNull int[] position, int end) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (position[0] >= end) {
+                throw new IOException("Truncated interval day record");
+            }
+            int b = buffer[position[0]++] & 0xFF;
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
@@ -0,0 +1,39 @@
+package eu.leneurone.timelog.services.codec;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.util.Map;
+
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.model.Marker;
+import eu.leneurone.timelog.model.Time;
+
+/**
+ * Reads the worklog of a day written by the first versions of the app, which stored the Java
+ * serialization of the worklog map.
+ */
+public final class LegacyDayWorklogReader {
+
+    private LegacyDayWorklogReader() {
+    }
+
+    /**
+     * Reads a legacy day worklog
+     * @param input the serialized data (not null). It is not closed by this method.
+     * @return the worklog
+     * @throws IOException if the data can't be read
+     */
+    @NonNull
+    public static DayWorklog read(@NonNull InputStream input) throws IOException {
+        ObjectInputStream objectInputStream = new ObjectInputStream(input);
+        try {
+            //noinspection unchecked
+            return DayWorklog.fromMap((Map<Marker, Time>) objectInputStream.readObject());
+        } catch (ClassNotFoundException | ClassCastException ex) {
+            throw new IOException("Unreadable legacy day worklog", ex);
+        }
+    }
+}
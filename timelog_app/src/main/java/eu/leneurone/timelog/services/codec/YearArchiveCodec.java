@@ -0,0 +1,264 @@
+package eu.leneurone.timelog.services.codec;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.model.Marker;
+import eu.leneurone.timelog.utils.EpochDays;
+
+/**
+ * Compressed encoding of the worklogs of a whole year, for the archived years.
+ * <br />
+ * An archive contains :
+ * <ul>
+ *     <li>the format version (1 byte, currently {@link #VERSION}) and the year (2 bytes)</li>
+ *     <li>the index : the bitset of the logged days (bit n is set if the day n + 1 of the year is
+ *     logged, 6 longs), then the offset of the first day of each month in the body (12 x 2 bytes)</li>
+ *     <li>the body : for each logged day, in chronological order, the presence mask (1 byte), then
+ *     for each set marker, the difference with the time of the same marker in the previous logged
+ *     day of the month, as a zigzag varint</li>
+ *     <li>the CRC32 of all the previous bytes (4 bytes)</li>
+ * </ul>
+ * The times of consecutive days are close, so most differences fit in 1 byte. The months are
+ * encoded independently : reading a day only decodes the beginning of its month.
+ */
+public final class YearArchiveCodec {
+
+    /** current version of the format */
+    public static final byte VERSION = 1;
+
+    /** number of longs of the bitset of the logged days (366 days) */
+    private static final int WORDS = 6;
+
+    /** position of the bitset of the logged days */
+    private static final int BITSET_POSITION = 3;
+
+    /** position of the offsets of the months */
+    private static final int MONTHS_POSITION = BITSET_POSITION + WORDS * 8;
+
+    /** size of the header and the index */
+    static final int HEADER_SIZE = MONTHS_POSITION + 12 * 2;
+
+    /** the markers (Marker.values() returns a new array on each call) */
+    private static final Marker[] MARKERS = Marker.values();
+
+    private YearArchiveCodec() {
+    }
+
+    /**
+     * Encodes the worklogs of a year
+     * @param year the year
+     * @param worklogs the worklogs, by epoch day (not null). The empty worklogs and the days of
+     *                 other years are ignored.
+     * @return the archive
+     */
+    @NonNull
+    public static byte[] encode(int year, @NonNull Map<Integer, DayWorklog> worklogs) {
+        int firstDay = EpochDays.of(year, 1, 1);
+        int dayCount = EpochDays.of(year + 1, 1, 1) - firstDay;
+        ByteArrayOutputStream body = new ByteArrayOutputStream(dayCount * 4);
+        byte[] header = new byte[HEADER_SIZE];
+        header[0] = VERSION;
+        header[1] = (byte) (year >>> 8);
+        header[2] = (byte) year;
+        int[] previous = new int[MARKERS.length];
+        int month = 0;
+        for (int i = 0; i < dayCount; i++) {
+            int epochDay = firstDay + i;
+            int dayMonth = EpochDays.month(epochDay);
+            if (dayMonth != month) {
+                // a new month : its days are decoded from here
+                month = dayMonth;
+                writeShort(header, MONTHS_POSITION + 2 * (month - 1), body.size());
+                for (int m = 0; m < previous.length; m++) {
+                    previous[m] = 0;
+                }
+            }
+            DayWorklog worklog = worklogs.get(epochDay);
+            if (worklog == null || worklog.isEmpty()) {
+                continue;
+            }
+            header[BITSET_POSITION + (i >>> 3)] |= (byte) (0x80 >>> (i & 7));
+            int mask = worklog.getMask();
+            body.write(mask);
+            for (Marker marker : MARKERS) {
+                if ((mask & DayWorklog.bit(marker)) != 0) {
+                    int minutes = worklog.getMinutes(marker);
+                    writeVarint(body, zigzag(minutes - previous[marker.ordinal()]));
+                    previous[marker.ordinal()] = minutes;
+                }
+            }
+        }
+        byte[] archive = new byte[HEADER_SIZE + body.size() + 4];
+        System.arraycopy(header, 0, archive, 0, HEADER_SIZE);
+        System.arraycopy(body.toByteArray(), 0, archive, HEADER_SIZE, body.size());
+        CRC32 checksum = new CRC32();
+        checksum.update(archive, 0, archive.length - 4);
+        writeInt(archive, archive.length - 4, (int) checksum.getValue());
+        return archive;
+    }
+
+    /**
+     * Checks the integrity of an archive. Must be called once before the other methods.
+     * @param archive the archive (not null)
+     * @return the year of the archive
+     * @throws IOException if the archive is corrupted or in a unsupported version
+     */
+    public static int check(@NonNull byte[] archive) throws IOException {
+        if (archive.length < HEADER_SIZE + 4) {
+            throw new IOException("Truncated archive");
+        }
+        if (archive[0] != VERSION) {
+            throw new IOException("Unsupported archive format version : " + archive[0]);
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(archive, 0, archive.length - 4);
+        if (readInt(archive, archive.length - 4) != (int) checksum.getValue()) {
+            throw new IOException("Corrupted archive");
+        }
+        return ((archive[1] & 0xFF) << 8) | (archive[2] & 0xFF);
+    }
+
+    /**
+     * @param archive the checked archive (not null)
+     * @param dayOfYear the day of the year, from 1
+     * @return true if the day is logged in the archive
+     */
+    public static boolean contains(@NonNull byte[] archive, int dayOfYear) {
+        int bit = dayOfYear - 1;
+        return (archive[BITSET_POSITION + (bit >>> 3)] & (0x80 >>> (bit & 7))) != 0;
+    }
+
+    /**
+     * Decodes the worklog of a day
+     * @param archive the checked archive (not null)
+     * @param epochDay the day, which must be in the year of the archive
+     * @return the worklog, or null if the day isn't logged
+     * @throws IOException if the archive is inconsistent
+     */
+    @Nullable
+    public static DayWorklog decodeDay(@NonNull byte[] archive, int epochDay) throws IOException {
+        int dayOfYear = EpochDays.dayOfYear(epochDay);
+        if (!contains(archive, dayOfYear)) {
+            return null;
+        }
+        // the days of the month before the wanted one are decoded too
+        int monthStart = EpochDays.dayOfYear(EpochDays.firstDayOfMonth(epochDay));
+        int[] position = {HEADER_SIZE + readShort(archive, MONTHS_POSITION + 2 * (EpochDays.month(epochDay) - 1))};
+        int[] previous = new int[MARKERS.length];
+        DayWorklog worklog = new DayWorklog();
+        for (int day = monthStart; day <= dayOfYear; day++) {
+            if (contains(archive, day)) {
+                decodeNext(archive, position, previous, worklog);
+            }
+        }
+        return worklog;
+    }
+
+    /**
+     * Decodes all the logged days
+     * @param archive the checked archive (not null)
+     * @return the worklogs of the logged days, by epoch day
+     * @throws IOException if the archive is inconsistent
+     */
+    @NonNull
+    public static Map<Integer, DayWorklog> decodeAll(@NonNull byte[] archive) throws IOException {
+        int year = ((archive[1] & 0xFF) << 8) | (archive[2] & 0xFF);
+        int firstDay = EpochDays.of(year, 1, 1);
+        int dayCount = EpochDays.of(year + 1, 1, 1) - firstDay;
+        Map<Integer, DayWorklog> worklogs = new HashMap<>();
+        int[] position = {HEADER_SIZE};
+        int[] previous = new int[MARKERS.length];
+        int month = 0;
+        for (int i = 0; i < dayCount; i++) {
+            int dayMonth = EpochDays.month(firstDay + i);
+            if (dayMonth != month) {
+                month = dayMonth;
+                for (int m = 0; m < previous.length; m++) {
+                    previous[m] = 0;
+                }
+            }
+            if (contains(archive, i + 1)) {
+                DayWorklog worklog = new DayWorklog();
+                decodeNext(archive, position, previous, worklog);
+                worklogs.put(firstDay + i, worklog);
+            }
+        }
+        return worklogs;
+    }
+
+    // decodes the day at the position, and moves the position after it
+    private static void decodeNext(@NonNull byte[] archive, @NonNull int[] position, @NonNull int[] previous,
+                                   @NonNull DayWorklog worklog) throws IOException {
+        worklog.clear();
+        int mask = readByte(archive, position);
+        for (Marker marker : MARKERS) {
+            if ((mask & DayWorklog.bit(marker)) != 0) {
+                int minutes = previous[marker.ordinal()] + unzigzag(readVarint(archive, position));
+                previous[marker.ordinal()] = minutes;
+                worklog.setMinutes(marker, minutes);
+            }
+        }
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarint(@NonNull ByteArrayOutputStream output, int value) {
+        while ((value & ~0x7F) != 0) {
+            output.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.write(value);
+    }
+
+    private static int readVarint(@NonNull byte[] archive, @NonNull int[] position) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = readByte(archive, position);
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    // a byte of the body : the CRC32 isn't part of it
+    private static int readByte(@NonNull byte[] archive, @NonNull int[] position) throws IOException {
+        if (position[0] >= archive.length - 4) {
+            throw new IOException("Inconsistent archive");
+        }
+        return archive[position[0]++] & 0xFF;
+    }
+
+    private static void writeShort(@NonNull byte[] buffer, int position, int value) {
+        buffer[position] = (byte) (value >>> 8);
+        buffer[position + 1] = (byte) value;
+    }
+
+    private static int readShort(@NonNull byte[] buffer, int position) {
+        return ((buffer[position] & 0xFF) << 8) | (buffer[position + 1] & 0xFF);
+    }
+
+    private static void writeInt(@NonNull byte[] buffer, int position, int value) {
+        writeShort(buffer, position, value >>> 16);
+        writeShort(buffer, position + 2, value);
+    }
+
+    private static int readInt(@NonNull byte[] buffer, int position) {
+        return (readShort(buffer, position) << 16) | readShort(buffer, position + 2);
+    }
+}
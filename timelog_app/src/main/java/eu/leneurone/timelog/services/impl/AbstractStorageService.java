@@ -0,0 +1,110 @@
+package eu.leneurone.timelog.services.impl;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.model.Marker;
+import eu.leneurone.timelog.model.Time;
+import eu.leneurone.timelog.services.StorageService;
+import eu.leneurone.timelog.utils.EpochDays;
+
+/**
+ * Base class of the storage services, implementing the behaviour which doesn't depend on the way
+ * the data is physically stored, and the map based adapters
+ */
+public abstract class AbstractStorageService implements StorageService {
+
+    @NonNull
+    @Override
+    public DayWorklog loadDay(int epochDay, @NonNull Context context) {
+        return readDay(epochDay, context);
+    }
+
+    @Override
+    public void storeDays(@NonNull Map<Integer, DayWorklog> worklogs, @NonNull Context context) throws IOException {
+        for (Map.Entry<Integer, DayWorklog> entry : worklogs.entrySet()) {
+            storeDay(entry.getKey(), entry.getValue(), context);
+        }
+    }
+
+    @NonNull
+    @Override
+    public Map<Integer, DayWorklog> loadWeek(int epochDay, @NonNull Context context) {
+        // we want days between the previous monday and the day before the given day : nothing if
+        // the given day is a monday
+        return loadDays(EpochDays.mondayOf(epochDay), epochDay - 1, context);
+    }
+
+    @NonNull
+    @Override
+    public Map<Integer, DayWorklog> loadDays(int fromEpochDay, int toEpochDay, @NonNull Context context) {
+        Map<Integer, DayWorklog> data = new HashMap<>();
+        for (int day = fromEpochDay; day <= toEpochDay; day++) {
+            data.put(day, readDay(day, context));
+        }
+        return data;
+    }
+
+    @NonNull
+    @Override
+    public Map<Integer, DayWorklog> scanDays(int fromEpochDay, int toEpochDay, @NonNull Context context) {
+        // nothing is kept in memory by default
+        return loadDays(fromEpochDay, toEpochDay, context);
+    }
+
+    /**
+     * Read the stored worklog for a day. This is called by {@link #loadDays(int, int, Context)}
+     * for each day of the range, in chronological order.
+     * @param epochDay the day, as an epoch day
+     * @param context the context (not null)
+     * @return the read data, or an empty worklog if no data exists for the given day, or if it couldn't have been read.
+     */
+    @NonNull
+    protected abstract DayWorklog readDay(int epochDay, @NonNull Context context);
+
+    @Override
+    public void storeDayWorklog(@NonNull Date day, @NonNull Map<Marker, Time> times, @NonNull Context context) throws IOException {
+        storeDay(EpochDays.of(day), DayWorklog.fromMap(times), context);
+    }
+
+    @NonNull
+    @Override
+    public Map<Marker, Time> loadDayWorklog(@NonNull Date day, @NonNull Context context) {
+        return loadDay(EpochDays.of(day), context).toMap();
+    }
+
+    @NonNull
+    @Override
+    public Map<Calendar, Map<Marker, Time>> loadWeekWorklog(@NonNull Calendar day, @NonNull Context context) {
+        int epochDay = EpochDays.of(day);
+        return toMaps(loadWeek(epochDay, context), day, epochDay);
+    }
+
+    @NonNull
+    @Override
+    public Map<Calendar, Map<Marker, Time>> loadRange(@NonNull Calendar from, @NonNull Calendar to, @NonNull Context context) {
+        int fromEpochDay = EpochDays.of(from);
+        return toMaps(loadDays(fromEpochDay, EpochDays.of(to), context), from, fromEpochDay);
+    }
+
+    // converts the worklogs to maps of marker - time pairs, keyed by copies of the reference day
+    // moved to each day
+    @NonNull
+    private static Map<Calendar, Map<Marker, Time>> toMaps(@NonNull Map<Integer, DayWorklog> data,
+                                                           @NonNull Calendar reference, int referenceEpochDay) {
+        Map<Calendar, Map<Marker, Time>> maps = new HashMap<>();
+        for (Map.Entry<Integer, DayWorklog> entry : data.entrySet()) {
+            Calendar key = (Calendar) reference.clone();
+            key.add(Calendar.DAY_OF_YEAR, entry.getKey() - referenceEpochDay);
+            maps.put(key, entry.getValue().toMap());
+        }
+        return maps;
+    }
+}
@@ -0,0 +1,381 @@
+package eu.leneurone.timelog.services.impl;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.services.SaveHandle;
+import eu.leneurone.timelog.services.codec.YearArchiveCodec;
+import eu.leneurone.timelog.utils.Clock;
+import eu.leneurone.timelog.utils.EpochDays;
+
+/**
+ * Storage service moving the old years from the journal to one compressed archive per year
+ * (see {@link YearArchiveCodec}), in front of the journal storage.
+ * <br />
+ * A year is either in the journal or in its archive. The reads fall through to the archive for
+ * the archived years, so the callers don't see the difference. Saving a day of an archived year
+ * moves the year back to the journal first : this should be rare.
+ */
+public class ArchiveStorageService extends AbstractStorageService {
+
+    /** the filename prefix of the archives, followed by the year : yyyy */
+    static final String FILENAME_PREFIX = "timeLogArchive_";
+
+    /** the suffix of the temporary files */
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    /** the earliest day looked for when archiving */
+    private static final int EARLIEST_DAY = EpochDays.of(1900, 1, 1);
+
+    /** the underlying storage : the journal */
+    private final JournalStorageServiceImpl delegate;
+
+    /** taken for reading by the accesses to the days, and for writing when a year is moved */
+    private final ReadWriteLock archiveLock = new ReentrantReadWriteLock();
+
+    /** the checked archives, by year. Null until the archive files are listed. Guarded by itself. */
+    private TreeMap<Integer, byte[]> archives;
+
+    /** archives the old years in the background */
+    private final ExecutorService archiver;
+
+    public ArchiveStorageService(@NonNull JournalStorageServiceImpl delegate) {
+        this.delegate = delegate;
+        this.archiver = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "TimeLog-archiver");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public void storeDay(int epochDay, @NonNull DayWorklog worklog, @NonNull Context context) throws IOException {
+        storeDays(Collections.singletonMap(epochDay, worklog), context);
+    }
+
+    @Override
+    public void storeDays(@NonNull Map<Integer, DayWorklog> worklogs, @NonNull Context context) throws IOException {
+        while (true) {
+            int archivedYear = 0;
+            archiveLock.readLock().lock();
+            try {
+                for (int epochDay : worklogs.keySet()) {
+                    if (getArchive(EpochDays.year(epochDay), context) != null) {
+                        archivedYear = EpochDays.year(epochDay);
+                        break;
+                    }
+                }
+                if (archivedYear == 0) {
+                    delegate.storeDays(worklogs, context);
+                    return;
+                }
+            } finally {
+                archiveLock.readLock().unlock();
+            }
+            restore(archivedYear, context);
+        }
+    }
+
+    @NonNull
+    @Override
+    protected DayWorklog readDay(int epochDay, @NonNull Context context) {
+        archiveLock.readLock().lock();
+        try {
+            byte[] archive = getArchive(EpochDays.year(epochDay), context);
+            if (archive == null) {
+                return delegate.loadDay(epochDay, context);
+            }
+            DayWorklog worklog = YearArchiveCodec.decodeDay(archive, epochDay);
+            return worklog != null ? worklog : new DayWorklog();
+        } catch (IOException ex) {
+            Logger.getLogger(ArchiveStorageService.class.getName()).log(Level.SEVERE, null, ex);
+            return new DayWorklog();
+        } finally {
+            archiveLock.readLock().unlock();
+        }
+    }
+
+    @NonNull
+    @Override
+    public Map<Integer, DayWorklog> loadDays(int fromEpochDay, int toEpochDay, @NonNull Context context) {
+        Map<Integer, DayWorklog> data = new HashMap<>();
+        archiveLock.readLock().lock();
+        try {
+            // year by year : an archive is decoded at once
+            int day = fromEpochDay;
+            while (day <= toEpochDay) {
+                int year = EpochDays.year(day);
+                int yearEnd = Math.min(toEpochDay, EpochDays.of(year + 1, 1, 1) - 1);
+                byte[] archive = getArchive(year, context);
+                if (archive == null) {
+                    data.putAll(delegate.loadDays(day, yearEnd, context));
+                } else {
+                    Map<Integer, DayWorklog> archived = decodeAll(archive);
+                    for (; day <= yearEnd; day++) {
+                        DayWorklog worklog = archived.get(day);
+                        data.put(day, worklog != null ? worklog : new DayWorklog());
+                    }
+                }
+                day = yearEnd + 1;
+            }
+        } finally {
+            archiveLock.readLock().unlock();
+        }
+        return data;
+    }
+
+    @Override
+    public int findPreviousLoggedDay(int epochDay, @NonNull Context context) {
+        archiveLock.readLock().lock();
+        try {
+            int found = delegate.findPreviousLoggedDay(epochDay, context);
+            for (Map.Entry<Integer, byte[]> entry : getArchives(context).headMap(EpochDays.year(epochDay), true).descendingMap().entrySet()) {
+                int firstDay = EpochDays.of(entry.getKey(), 1, 1);
+                if (found != NO_DAY && found >= EpochDays.of(entry.getKey() + 1, 1, 1)) {
+                    // the journal has a later day
+                    break;
+                }
+                for (int day = Math.min(epochDay - 1, EpochDays.of(entry.getKey() + 1, 1, 1) - 1); day >= firstDay; day--) {
+                    if (YearArchiveCodec.contains(entry.getValue(), day - firstDay + 1)) {
+                        return found == NO_DAY || day > found ? day : found;
+                    }
+                }
+            }
+            return found;
+        } finally {
+            archiveLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int findNextLoggedDay(int epochDay, @NonNull Context context) {
+        archiveLock.readLock().lock();
+        try {
+            int found = delegate.findNextLoggedDay(epochDay, context);
+            for (Map.Entry<Integer, byte[]> entry : getArchives(context).tailMap(EpochDays.year(epochDay), true).entrySet()) {
+                int firstDay = EpochDays.of(entry.getKey(), 1, 1);
+                if (found != NO_DAY && found < firstDay) {
+                    // the journal has an earlier day
+                    break;
+                }
+                int lastDay = EpochDays.of(entry.getKey() + 1, 1, 1) - 1;
+                for (int day = Math.max(epochDay + 1, firstDay); day <= lastDay; day++) {
+                    if (YearArchiveCodec.contains(entry.getValue(), day - firstDay + 1)) {
+                        return found == NO_DAY || day < found ? day : found;
+                    }
+                }
+            }
+            return found;
+        } finally {
+            archiveLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Archives the years older than the given age in the background
+     * @param maxAgeYears the number of years kept in the journal, before the current one
+     * @param clock gives the current year (not null)
+     * @param context the context (not null)
+     * @return the handle of the archiving
+     */
+    @NonNull
+    public SaveHandle archiveAsync(final int maxAgeYears, @NonNull final Clock clock, @NonNull Context context) {
+        final Context appContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+        final SaveHandle handle = new SaveHandle();
+        archiver.execute(new Runnable() {
+            @Override
+            public void run() {
+                IOException error = null;
+                try {
+                    archiveOldYears(maxAgeYears, clock, appContext);
+                } catch (IOException ex) {
+                    Logger.getLogger(ArchiveStorageService.class.getName()).log(Level.WARNING, null, ex);
+                    error = ex;
+                }
+                handle.complete(error);
+            }
+        });
+        return handle;
+    }
+
+    /**
+     * Archives the years older than the given age
+     * @param maxAgeYears the number of years kept in the journal, before the current one. The
+     *                    current year is never archived.
+     * @param clock gives the current year (not null)
+     * @param context the context (not null)
+     * @throws IOException if a year couldn't have been archived
+     */
+    public void archiveOldYears(int maxAgeYears, @NonNull Clock clock, @NonNull Context context) throws IOException {
+        int lastYear = EpochDays.year(clock.today()) - Math.max(maxAgeYears, 1);
+        int day = delegate.findNextLoggedDay(EARLIEST_DAY, context);
+        while (day != NO_DAY && EpochDays.year(day) <= lastYear) {
+            int year = EpochDays.year(day);
+            archive(year, context);
+            day = delegate.findNextLoggedDay(EpochDays.of(year + 1, 1, 1) - 1, context);
+        }
+    }
+
+    /**
+     * Moves a year from the journal to its archive. The archive is read back and checked before
+     * the days are removed from the journal.
+     * @param year the year
+     * @param context the context (not null)
+     * @throws IOException if the archive couldn't have been written
+     */
+    public void archive(int year, @NonNull Context context) throws IOException {
+        int firstDay = EpochDays.of(year, 1, 1);
+        int lastDay = EpochDays.of(year + 1, 1, 1) - 1;
+        archiveLock.writeLock().lock();
+        try {
+            if (getArchive(year, context) != null) {
+                // the days left by a crash hold the same data as the archive
+                delegate.deleteDays(firstDay, lastDay, context);
+                return;
+            }
+            Map<Integer, DayWorklog> worklogs = delegate.loadDays(firstDay, lastDay, context);
+            byte[] encoded = YearArchiveCodec.encode(year, worklogs);
+            String filename = buildFilename(year);
+            File file = new File(context.getFilesDir(), filename);
+            File temporaryFile = new File(context.getFilesDir(), filename + TEMPORARY_SUFFIX);
+            try (FileOutputStream output = new FileOutputStream(temporaryFile)) {
+                output.write(encoded);
+                output.getFD().sync();
+            }
+            if (!temporaryFile.renameTo(file)) {
+                temporaryFile.delete();
+                throw new IOException("Couldn't write " + filename);
+            }
+            // the days are only removed if the archive gives them back
+            byte[] archive = readArchive(file);
+            if (!decodeAll(archive).equals(withoutEmptyDays(worklogs))) {
+                file.delete();
+                throw new IOException("The archive of " + year + " doesn't match the journal");
+            }
+            synchronized (this) {
+                getArchives(context).put(year, archive);
+            }
+            delegate.deleteDays(firstDay, lastDay, context);
+        } finally {
+            archiveLock.writeLock().unlock();
+        }
+    }
+
+    // moves an archived year back to the journal
+    private void restore(int year, @NonNull Context context) throws IOException {
+        archiveLock.writeLock().lock();
+        try {
+            byte[] archive = getArchive(year, context);
+            if (archive == null) {
+                // already restored
+                return;
+            }
+            delegate.storeDays(decodeAll(archive), context);
+            // until the archive is removed, the year is still read from it
+            File file = new File(context.getFilesDir(), buildFilename(year));
+            if (!file.delete()) {
+                throw new IOException("Couldn't remove " + file.getName());
+            }
+            synchronized (this) {
+                getArchives(context).remove(year);
+            }
+        } finally {
+            archiveLock.writeLock().unlock();
+        }
+    }
+
+    // the checked archive of a year, or null if the year isn't archived
+    private synchronized byte[] getArchive(int year, @NonNull Context context) {
+        return getArchives(context).get(year);
+    }
+
+    // the archives, read on first use
+    @NonNull
+    private synchronized TreeMap<Integer, byte[]> getArchives(@NonNull Context context) {
+        if (archives == null) {
+            archives = new TreeMap<>();
+            String[] filenames = context.fileList();
+            if (filenames != null) {
+                for (String filename : filenames) {
+                    if (!filename.startsWith(FILENAME_PREFIX) || filename.length() != FILENAME_PREFIX.length() + 4) {
+                        continue;
+                    }
+                    try {
+                        byte[] archive = readArchive(new File(context.getFilesDir(), filename));
+                        archives.put(YearArchiveCodec.check(archive), archive);
+                    } catch (IOException ex) {
+                        // the days of the year haven't been removed if the archive is incomplete
+                        Logger.getLogger(ArchiveStorageService.class.getName()).log(Level.SEVERE, null, ex);
+                    }
+                }
+            }
+        }
+        return archives;
+    }
+
+    // reads and checks an archive file
+    @NonNull
+    private static byte[] readArchive(@NonNull File file) throws IOException {
+        try (InputStream input = new FileInputStream(file)) {
+            byte[] archive = new byte[(int) file.length()];
+            int read = 0;
+            while (read < archive.length) {
+                int count = input.read(archive, read, archive.length - read);
+                if (count < 0) {
+                    throw new IOException("Truncated archive " + file.getName());
+                }
+                read += count;
+            }
+            YearArchiveCodec.check(archive);
+            return archive;
+        }
+    }
+
+    @NonNull
+    private static Map<Integer, DayWorklog> decodeAll(@NonNull byte[] archive) {
+        try {
+            return YearArchiveCodec.decodeAll(archive);
+        } catch (IOException ex) {
+            // the archive has been checked : this can't happen
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @NonNull
+    private static Map<Integer, DayWorklog> withoutEmptyDays(@NonNull Map<Integer, DayWorklog> worklogs) {
+        Map<Integer, DayWorklog> logged = new HashMap<>();
+        for (Map.Entry<Integer, DayWorklog> entry : worklogs.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                logged.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return logged;
+    }
+
+    @NonNull
+    private static String buildFilename(int year) {
+        return FILENAME_PREFIX + year;
+    }
+}
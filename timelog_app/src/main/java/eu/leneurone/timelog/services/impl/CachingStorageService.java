@@ -0,0 +1,231 @@
+package eu.leneurone.timelog.services.impl;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.services.StorageService;
+import eu.leneurone.timelog.utils.EpochDays;
+
+/**
+ * Storage service keeping the latest read days in memory, in front of another storage service.
+ * <br />
+ * At most {@link #DEFAULT_MAX_DAYS} days are kept (the least recently used ones are evicted first).
+ * Saving a day goes through to the underlying storage, and drops the cached value. Each time a day
+ * is read, its neighbouring days and the days of the previous week are loaded in the background,
+ * so navigating day by day is served from memory. The scans of long ranges (see
+ * {@link #scanDays(int, int, Context)}) bypass the cache.
+ */
+public class CachingStorageService extends AbstractStorageService {
+
+    /** default maximum number of days kept in memory */
+    public static final int DEFAULT_MAX_DAYS = 64;
+
+    /** the underlying storage */
+    private final StorageService delegate;
+
+    /** the cached days, by epoch day, in access order */
+    private final LinkedHashMap<Integer, DayWorklog> cache;
+
+    /** loads the days in the background */
+    private final ExecutorService prefetchExecutor;
+
+    /** incremented each time a day is saved, to drop the prefetched data which could be outdated */
+    private long writeVersion;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    public CachingStorageService(@NonNull StorageService delegate) {
+        this(delegate, DEFAULT_MAX_DAYS);
+    }
+
+    public CachingStorageService(@NonNull StorageService delegate, final int maxDays) {
+        this.delegate = delegate;
+        this.cache = new LinkedHashMap<Integer, DayWorklog>(maxDays, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, DayWorklog> eldest) {
+                return size() > maxDays;
+            }
+        };
+        this.prefetchExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "TimeLog-prefetch");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public void storeDay(int epochDay, @NonNull DayWorklog worklog, @NonNull Context context) throws IOException {
+        try {
+            delegate.storeDay(epochDay, worklog, context);
+        } finally {
+            // even if the save failed, the stored data may have changed
+            synchronized (cache) {
+                writeVersion++;
+                cache.remove(epochDay);
+            }
+        }
+    }
+
+    @Override
+    public void storeDays(@NonNull Map<Integer, DayWorklog> worklogs, @NonNull Context context) throws IOException {
+        try {
+            delegate.storeDays(worklogs, context);
+        } finally {
+            synchronized (cache) {
+                writeVersion++;
+                for (Integer day : worklogs.keySet()) {
+                    cache.remove(day);
+                }
+            }
+        }
+    }
+
+    @NonNull
+    @Override
+    public DayWorklog loadDay(int epochDay, @NonNull Context context) {
+        DayWorklog worklog = readDay(epochDay, context);
+        prefetchAround(epochDay, context);
+        return worklog;
+    }
+
+    @NonNull
+    @Override
+    public Map<Integer, DayWorklog> loadDays(int fromEpochDay, int toEpochDay, @NonNull Context context) {
+        Map<Integer, DayWorklog> data = new HashMap<>();
+        boolean complete = true;
+        synchronized (cache) {
+            for (int day = fromEpochDay; day <= toEpochDay; day++) {
+                DayWorklog worklog = cache.get(day);
+                if (worklog == null) {
+                    complete = false;
+                    break;
+                }
+                data.put(day, new DayWorklog(worklog));
+            }
+        }
+        if (complete) {
+            hitCount.incrementAndGet();
+            return data;
+        }
+        missCount.incrementAndGet();
+        return loadAndCache(fromEpochDay, toEpochDay, context);
+    }
+
+    @NonNull
+    @Override
+    public Map<Integer, DayWorklog> scanDays(int fromEpochDay, int toEpochDay, @NonNull Context context) {
+        // read from the underlying storage, without going through the cache
+        return delegate.scanDays(fromEpochDay, toEpochDay, context);
+    }
+
+    @NonNull
+    @Override
+    protected DayWorklog readDay(int epochDay, @NonNull Context context) {
+        synchronized (cache) {
+            DayWorklog worklog = cache.get(epochDay);
+            if (worklog != null) {
+                hitCount.incrementAndGet();
+                // the callers may modify the returned worklog
+                return new DayWorklog(worklog);
+            }
+        }
+        missCount.incrementAndGet();
+        Map<Integer, DayWorklog> data = loadAndCache(epochDay, epochDay, context);
+        DayWorklog worklog = data.get(epochDay);
+        return worklog != null ? worklog : new DayWorklog();
+    }
+
+    @Override
+    public int findPreviousLoggedDay(int epochDay, @NonNull Context context) {
+        return delegate.findPreviousLoggedDay(epochDay, context);
+    }
+
+    @Override
+    public int findNextLoggedDay(int epochDay, @NonNull Context context) {
+        return delegate.findNextLoggedDay(epochDay, context);
+    }
+
+    /**
+     * @return the number of reads (of a day or of a range) served from memory
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return the number of reads (of a day or of a range) which needed the underlying storage
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Drops all the cached days
+     */
+    public void clear() {
+        synchronized (cache) {
+            writeVersion++;
+            cache.clear();
+        }
+    }
+
+    // loads a range from the underlying storage, and caches it if no day has been saved meanwhile
+    @NonNull
+    private Map<Integer, DayWorklog> loadAndCache(int fromEpochDay, int toEpochDay, @NonNull Context context) {
+        long version;
+        synchronized (cache) {
+            version = writeVersion;
+        }
+        Map<Integer, DayWorklog> data = delegate.loadDays(fromEpochDay, toEpochDay, context);
+        synchronized (cache) {
+            if (version == writeVersion) {
+                for (Map.Entry<Integer, DayWorklog> entry : data.entrySet()) {
+                    cache.put(entry.getKey(), new DayWorklog(entry.getValue()));
+                }
+            }
+        }
+        return data;
+    }
+
+    // loads in the background the days which are likely to be displayed next : all the days from
+    // the monday of the previous week to the next day
+    private void prefetchAround(int epochDay, @NonNull Context context) {
+        final Context appContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+        final int from = EpochDays.mondayOf(epochDay - 7);
+        final int to = epochDay + 1;
+        prefetchExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                int first = Integer.MAX_VALUE;
+                int last = Integer.MIN_VALUE;
+                synchronized (cache) {
+                    // only the span containing missing days is loaded
+                    for (int day = from; day <= to; day++) {
+                        if (!cache.containsKey(day)) {
+                            first = Math.min(first, day);
+                            last = day;
+                        }
+                    }
+                }
+                if (first <= last) {
+                    loadAndCache(first, last, appContext);
+                }
+            }
+        });
+    }
+}
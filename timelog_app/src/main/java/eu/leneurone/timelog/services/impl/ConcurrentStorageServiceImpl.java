@@ -0,0 +1,362 @@
+package eu.leneurone.timelog.services.impl;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.services.codec.DayWorklogCodec;
+import eu.leneurone.timelog.utils.EpochDays;
+
+/**
+ * Thread safe version of {@link StorageServiceImpl}, using the same files, for several callers
+ * (the UI, the background saves, the index rebuilds...).
+ * <br />
+ * The days are guarded by read-write locks striped by month : the days of a month are read in
+ * parallel, and written one at a time. A day is written in a temporary file, then renamed over its
+ * file, so a reader never gets a half-written day.
+ * <br />
+ * The saves are first appended to a {@link WriteAheadLog}, synced once per batch of days : the day
+ * files themselves are only synced at the checkpoints, when the log grows too big. After a crash,
+ * the log is replayed into the day files before the first access.
+ * <br />
+ * The days are now saved in the {@link JournalStorageServiceImpl journal} : the day files are only
+ * read and removed, until they have all been moved to the journal.
+ */
+public class ConcurrentStorageServiceImpl extends AbstractStorageService {
+
+    /** number of locks (a power of 2) : the months share the locks in turn */
+    private static final int STRIPE_COUNT = 16;
+
+    /** the suffix of the temporary files, which the index ignores */
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    /** the name of the write-ahead log file */
+    static final String LOG_FILENAME = "timeLogWal";
+
+    /** number of logged records triggering a checkpoint */
+    static final int CHECKPOINT_THRESHOLD = 256;
+
+    /** the days having a file */
+    private final DayPresenceIndex presenceIndex = new DayPresenceIndex(StorageServiceImpl.FILENAME_PREFIX);
+
+    /** the locks, by month */
+    private final ReadWriteLock[] stripes = new ReadWriteLock[STRIPE_COUNT];
+
+    /** taken for reading by the saves, and for writing by the checkpoints */
+    private final ReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+
+    /** the days written since the last checkpoint, whose files aren't synced yet. Guarded by itself. */
+    private final Set<Integer> unsyncedDays = new HashSet<>();
+
+    /** the write-ahead log, guarded by itself. Null until the log has been recovered. */
+    private volatile WriteAheadLog log;
+
+    public ConcurrentStorageServiceImpl() {
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            stripes[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    @Override
+    public void storeDay(int epochDay, @NonNull DayWorklog worklog, @NonNull Context context) throws IOException {
+        storeDays(Collections.singletonMap(epochDay, worklog), context);
+    }
+
+    /**
+     * Saves several days with a single sync of the log
+     */
+    @Override
+    public void storeDays(@NonNull Map<Integer, DayWorklog> worklogs, @NonNull Context context) throws IOException {
+        if (worklogs.isEmpty()) {
+            return;
+        }
+        WriteAheadLog log = recoverLog(context);
+        // the stripes are always locked in the same order, so 2 batches can't deadlock
+        SortedSet<Integer> stripeIndexes = new TreeSet<>();
+        for (int epochDay : worklogs.keySet()) {
+            stripeIndexes.add(stripeIndexOf(epochDay));
+        }
+        checkpointLock.readLock().lock();
+        try {
+            for (int index : stripeIndexes) {
+                stripes[index].writeLock().lock();
+            }
+            try {
+                synchronized (log) {
+                    log.append(worklogs);
+                }
+                // the saves are durable : the files can be written without syncing them
+                for (Map.Entry<Integer, DayWorklog> entry : worklogs.entrySet()) {
+                    writeDayUnlocked(entry.getKey(), entry.getValue(), false, context);
+                    synchronized (unsyncedDays) {
+                        unsyncedDays.add(entry.getKey());
+                    }
+                }
+            } finally {
+                for (int index : stripeIndexes) {
+                    stripes[index].writeLock().unlock();
+                }
+            }
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+        if (log.getRecordCount() >= CHECKPOINT_THRESHOLD) {
+            checkpoint(context);
+        }
+    }
+
+    /**
+     * Syncs the day files written since the last checkpoint, then empties the log
+     * @param context the application context (not null)
+     * @throws IOException if a file couldn't have been synced
+     */
+    public void checkpoint(@NonNull Context context) throws IOException {
+        WriteAheadLog log = recoverLog(context);
+        // no save can run meanwhile
+        checkpointLock.writeLock().lock();
+        try {
+            synchronized (unsyncedDays) {
+                for (int epochDay : unsyncedDays) {
+                    syncDayFile(epochDay, context);
+                }
+                unsyncedDays.clear();
+            }
+            synchronized (log) {
+                log.truncate();
+            }
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the files of a range of days, e.g. once they have been archived
+     * @param fromEpochDay the first day
+     * @param toEpochDay the last day
+     * @param context the application context (not null)
+     * @throws IOException if a file couldn't have been removed
+     */
+    public void deleteDays(int fromEpochDay, int toEpochDay, @NonNull Context context) throws IOException {
+        recoverLog(context);
+        int firstDay = presenceIndex.next(fromEpochDay - 1, context);
+        if (firstDay == NO_DAY || firstDay > toEpochDay) {
+            // no file to remove
+            return;
+        }
+        // the log mustn't replay the removed days
+        checkpoint(context);
+        for (int day = firstDay; day <= toEpochDay; day++) {
+            ReadWriteLock stripe = stripeOf(day);
+            stripe.writeLock().lock();
+            try {
+                File file = new File(context.getFilesDir(), StorageServiceImpl.buildFilename(day));
+                if (file.exists() && !file.delete()) {
+                    throw new IOException("Couldn't remove " + file.getName());
+                }
+                presenceIndex.remove(day, context);
+            } finally {
+                stripe.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Reads the file of a day, in the current format or in the legacy one (Java serialization)
+     * @param epochDay the day
+     * @param context the application context (not null)
+     * @return the day, or null if it has no file
+     * @throws IOException if the file couldn't have been read
+     */
+    @Nullable
+    public DayWorklog readDayFile(int epochDay, @NonNull Context context) throws IOException {
+        recoverLog(context);
+        ReadWriteLock stripe = stripeOf(epochDay);
+        stripe.readLock().lock();
+        try {
+            if (!presenceIndex.contains(epochDay, context)) {
+                return null;
+            }
+            try (InputStream input = context.openFileInput(StorageServiceImpl.buildFilename(epochDay))) {
+                return StorageServiceImpl.decodeDayFile(input);
+            } catch (FileNotFoundException e) {
+                return null;
+            }
+        } finally {
+            stripe.readLock().unlock();
+        }
+    }
+
+    @NonNull
+    @Override
+    protected DayWorklog readDay(int epochDay, @NonNull Context context) {
+        recoverLogQuietly(context);
+        ReadWriteLock stripe = stripeOf(epochDay);
+        stripe.readLock().lock();
+        try {
+            return readDayUnlocked(epochDay, context);
+        } finally {
+            stripe.readLock().unlock();
+        }
+    }
+
+    @NonNull
+    @Override
+    public Map<Integer, DayWorklog> loadDays(int fromEpochDay, int toEpochDay, @NonNull Context context) {
+        recoverLogQuietly(context);
+        // the lock is taken once per month
+        Map<Integer, DayWorklog> data = new HashMap<>();
+        int day = fromEpochDay;
+        while (day <= toEpochDay) {
+            int year = EpochDays.year(day);
+            int month = EpochDays.month(day);
+            int monthEnd = Math.min(toEpochDay, month == 12 ? EpochDays.of(year + 1, 1, 1) - 1 : EpochDays.of(year, month + 1, 1) - 1);
+            ReadWriteLock stripe = stripeOf(day);
+            stripe.readLock().lock();
+            try {
+                for (; day <= monthEnd; day++) {
+                    data.put(day, readDayUnlocked(day, context));
+                }
+            } finally {
+                stripe.readLock().unlock();
+            }
+        }
+        return data;
+    }
+
+    @Override
+    public int findPreviousLoggedDay(int epochDay, @NonNull Context context) {
+        recoverLogQuietly(context);
+        return presenceIndex.previous(epochDay, context);
+    }
+
+    @Override
+    public int findNextLoggedDay(int epochDay, @NonNull Context context) {
+        recoverLogQuietly(context);
+        return presenceIndex.next(epochDay, context);
+    }
+
+    // reads a day : the caller holds the lock of the day
+    @NonNull
+    private DayWorklog readDayUnlocked(int epochDay, @NonNull Context context) {
+        if (!presenceIndex.contains(epochDay, context)) {
+            // no file for this day : no need to try to open it
+            return new DayWorklog();
+        }
+        try (InputStream input = context.openFileInput(StorageServiceImpl.buildFilename(epochDay))) {
+            return StorageServiceImpl.decodeDayFile(input);
+        } catch (FileNotFoundException e) {
+            // do nothing : this is normal if no data has been saved for this day
+            return new DayWorklog();
+        } catch (IOException ex) {
+            Logger.getLogger(ConcurrentStorageServiceImpl.class.getName()).log(Level.SEVERE, null, ex);
+            return new DayWorklog();
+        }
+    }
+
+    // the log, once the saves it holds have been replayed into the day files
+    @NonNull
+    private WriteAheadLog recoverLog(@NonNull Context context) throws IOException {
+        WriteAheadLog recoveredLog = log;
+        if (recoveredLog != null) {
+            return recoveredLog;
+        }
+        synchronized (this) {
+            if (log == null) {
+                WriteAheadLog newLog = new WriteAheadLog(new File(context.getFilesDir(), LOG_FILENAME));
+                Map<Integer, DayWorklog> worklogs = newLog.recover();
+                if (!worklogs.isEmpty()) {
+                    // the files of these days may not have been written, or only partially
+                    Logger.getLogger(ConcurrentStorageServiceImpl.class.getName()).log(Level.INFO,
+                            "Replaying {0} logged days", worklogs.size());
+                    for (Map.Entry<Integer, DayWorklog> entry : worklogs.entrySet()) {
+                        writeDayUnlocked(entry.getKey(), entry.getValue(), true, context);
+                    }
+                    newLog.truncate();
+                }
+                log = newLog;
+            }
+            return log;
+        }
+    }
+
+    // the reads can't fail : if the log can't be recovered, the files are read as they are
+    private void recoverLogQuietly(@NonNull Context context) {
+        if (log != null) {
+            return;
+        }
+        try {
+            recoverLog(context);
+        } catch (IOException ex) {
+            Logger.getLogger(ConcurrentStorageServiceImpl.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    // writes the file of a day : the caller holds the lock of the day
+    private void writeDayUnlocked(int epochDay, @NonNull DayWorklog worklog, boolean sync, @NonNull Context context) throws IOException {
+        byte[] record = new byte[DayWorklogCodec.RECORD_SIZE];
+        DayWorklogCodec.encode(worklog, record, 0);
+        if (!worklog.isEmpty()) {
+            // the index is updated first, so it never misses a day having data
+            presenceIndex.add(epochDay, context);
+        }
+        String filename = StorageServiceImpl.buildFilename(epochDay);
+        File file = new File(context.getFilesDir(), filename);
+        File temporaryFile = new File(context.getFilesDir(), filename + TEMPORARY_SUFFIX);
+        try (FileOutputStream output = new FileOutputStream(temporaryFile)) {
+            output.write(record);
+            if (sync) {
+                output.getFD().sync();
+            }
+        }
+        if (!temporaryFile.renameTo(file)) {
+            temporaryFile.delete();
+            throw new IOException("Couldn't replace " + filename);
+        }
+        if (worklog.isEmpty()) {
+            presenceIndex.remove(epochDay, context);
+        }
+    }
+
+    // syncs the file of a day, if it still exists
+    private void syncDayFile(int epochDay, @NonNull Context context) throws IOException {
+        File file = new File(context.getFilesDir(), StorageServiceImpl.buildFilename(epochDay));
+        if (!file.exists()) {
+            return;
+        }
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            output.getFD().sync();
+        }
+    }
+
+    // the lock of the month of a day
+    @NonNull
+    private ReadWriteLock stripeOf(int epochDay) {
+        return stripes[stripeIndexOf(epochDay)];
+    }
+
+    // the index of the lock of the month of a day
+    private int stripeIndexOf(int epochDay) {
+        int month = EpochDays.year(epochDay) * 12 + EpochDays.month(epochDay) - 1;
+        // STRIPE_COUNT is a power of 2
+        return month & (STRIPE_COUNT - 1);
+    }
+}
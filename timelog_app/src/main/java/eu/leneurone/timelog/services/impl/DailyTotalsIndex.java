@@ -0,0 +1,261 @@
+package eu.leneurone.timelog.services.impl;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import eu.leneurone.timelog.math.FenwickTree;
+import eu.leneurone.timelog.utils.EpochDays;
+
+/**
+ * Persistent index of the total work time of each day, in minutes, covering whole years. The totals
+ * are kept in Fenwick trees, so the total time and the number of worked days (by day of the week) of
+ * any range of days are computed in O(log n).
+ * <br />
+ * The index file holds a header (version, state, fingerprint of the calculation rules, first day,
+ * number of days) followed by the total of each day. A day update rewrites only its total. The
+ * state is set to dirty during the updates : an index found dirty when opened has been interrupted,
+ * and must be rebuilt. An index computed with other rules than the current ones must be rebuilt too.
+ * <br />
+ * This class isn't thread safe : the callers must synchronize the calls.
+ */
+public class DailyTotalsIndex {
+
+    /** the name of the index file */
+    static final String INDEX_FILENAME = "timeLogTotalsIndex";
+
+    /** version of the format of the index file */
+    private static final int FORMAT_VERSION = 2;
+
+    /** the index is consistent with the stored data */
+    private static final int STATE_CLEAN = 0;
+
+    /** the index is being updated */
+    private static final int STATE_DIRTY = 1;
+
+    /** size of the header : version, state, rules fingerprint, first day, number of days */
+    static final int HEADER_SIZE = 5 * 4;
+
+    /** the index file, opened by {@link #open(Context)} */
+    private RandomAccessFile file;
+
+    /** the fingerprint of the rules of the indexed totals */
+    private int rulesFingerprint;
+
+    /** the first indexed day */
+    private int origin;
+
+    /** the totals of the days, in minutes, by day from the origin */
+    private int[] totals = new int[0];
+
+    /** the sums of the totals */
+    private FenwickTree minutesTree;
+
+    /** the sums of the worked days (1 if the total of the day isn't 0), by day of the week from Monday */
+    private final FenwickTree[] workedDaysTrees = new FenwickTree[7];
+
+    public DailyTotalsIndex() {
+        install(0, totals);
+    }
+
+    /**
+     * Opens and reads the index file
+     * @param context the context (not null)
+     * @param rulesFingerprint the fingerprint of the current calculation rules : it's written with
+     *                         the totals
+     * @return true if the index has been read, false if it's missing, inconsistent or computed with
+     * other rules : it is then empty, and must be rebuilt
+     * @throws IOException if the index file couldn't have been opened
+     */
+    public boolean open(@NonNull Context context, int rulesFingerprint) throws IOException {
+        close();
+        this.rulesFingerprint = rulesFingerprint;
+        File indexFile = new File(context.getFilesDir(), INDEX_FILENAME);
+        boolean exists = indexFile.exists();
+        file = new RandomAccessFile(indexFile, "rw");
+        if (exists && file.length() >= HEADER_SIZE) {
+            file.seek(0);
+            int version = file.readInt();
+            int state = file.readInt();
+            int fingerprint = file.readInt();
+            int firstDay = file.readInt();
+            int count = file.readInt();
+            if (version == FORMAT_VERSION && state == STATE_CLEAN && fingerprint == rulesFingerprint && count >= 0
+                    && file.length() == HEADER_SIZE + 4L * count) {
+                byte[] bytes = new byte[4 * count];
+                file.readFully(bytes);
+                int[] readTotals = new int[count];
+                ByteBuffer.wrap(bytes).asIntBuffer().get(readTotals);
+                install(firstDay, readTotals);
+                return true;
+            }
+        }
+        install(0, new int[0]);
+        return false;
+    }
+
+    /**
+     * @return the fingerprint of the rules of the indexed totals
+     */
+    public int getRulesFingerprint() {
+        return rulesFingerprint;
+    }
+
+    /**
+     * Closes the index file. The index must be opened again before any other use.
+     */
+    public void close() {
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                // nothing more can be done
+            }
+            file = null;
+        }
+    }
+
+    /**
+     * Marks the index as being updated. Must be called before the stored data is modified.
+     * @throws IOException if the index file couldn't have been written
+     */
+    public void beginUpdate() throws IOException {
+        writeState(STATE_DIRTY);
+    }
+
+    /**
+     * Marks the index as consistent with the stored data
+     * @throws IOException if the index file couldn't have been written
+     */
+    public void endUpdate() throws IOException {
+        writeState(STATE_CLEAN);
+    }
+
+    /**
+     * Sets the total of a day, extending the index to the year of the day if needed
+     * @param epochDay the day
+     * @param totalMinutes the total work time of the day, in minutes
+     * @throws IOException if the index file couldn't have been written
+     */
+    public void set(int epochDay, int totalMinutes) throws IOException {
+        if (epochDay < origin || epochDay >= origin + totals.length) {
+            if (totalMinutes == 0) {
+                // nothing to index
+                return;
+            }
+            extendTo(epochDay);
+        }
+        int i = epochDay - origin;
+        int previous = totals[i];
+        if (previous == totalMinutes) {
+            return;
+        }
+        totals[i] = totalMinutes;
+        minutesTree.add(i, (long) totalMinutes - previous);
+        workedDaysTrees[EpochDays.dayOfWeek(epochDay) - 1].add(i, (totalMinutes != 0 ? 1 : 0) - (previous != 0 ? 1 : 0));
+        file.seek(HEADER_SIZE + 4L * i);
+        file.writeInt(totalMinutes);
+    }
+
+    /**
+     * Replaces the whole index
+     * @param firstDay the first day of the totals
+     * @param newTotals the totals of the days, in minutes, by day from the first day (not null)
+     * @throws IOException if the index file couldn't have been written
+     */
+    public void replaceAll(int firstDay, @NonNull int[] newTotals) throws IOException {
+        install(firstDay, newTotals);
+        writeAll(STATE_CLEAN);
+    }
+
+    /**
+     * @param epochDay the day
+     * @return the indexed total of the day, in minutes
+     */
+    public int get(int epochDay) {
+        return epochDay >= origin && epochDay < origin + totals.length ? totals[epochDay - origin] : 0;
+    }
+
+    /**
+     * @param fromEpochDay the first day of the range
+     * @param toEpochDay the last day of the range (the range may exceed the indexed days)
+     * @return the sum of the totals of the days of the range, in minutes
+     */
+    public long sumMinutes(int fromEpochDay, int toEpochDay) {
+        return minutesTree.rangeSum(toIndex(fromEpochDay), toIndex(toEpochDay) + 1);
+    }
+
+    /**
+     * @param fromEpochDay the first day of the range
+     * @param toEpochDay the last day of the range (the range may exceed the indexed days)
+     * @param dayOfWeek the day of the week, from 1 (Monday) to 7 (Sunday)
+     * @return the number of days of the range, on this day of the week, having a total work time
+     */
+    public int countWorkedDays(int fromEpochDay, int toEpochDay, int dayOfWeek) {
+        return (int) workedDaysTrees[dayOfWeek - 1].rangeSum(toIndex(fromEpochDay), toIndex(toEpochDay) + 1);
+    }
+
+    // the index of a day in the totals, clamped to [-1, totals.length]
+    private int toIndex(int epochDay) {
+        long i = (long) epochDay - origin;
+        return (int) Math.max(-1, Math.min(i, totals.length));
+    }
+
+    // extends the index to cover the whole year of the day, and rewrites the file
+    private void extendTo(int epochDay) throws IOException {
+        int yearStart = EpochDays.firstDayOfYear(epochDay);
+        int nextYearStart = EpochDays.of(EpochDays.year(epochDay) + 1, 1, 1);
+        int newOrigin = totals.length == 0 ? yearStart : Math.min(origin, yearStart);
+        int newEnd = totals.length == 0 ? nextYearStart : Math.max(origin + totals.length, nextYearStart);
+        int[] newTotals = new int[newEnd - newOrigin];
+        if (totals.length > 0) {
+            System.arraycopy(totals, 0, newTotals, origin - newOrigin, totals.length);
+        }
+        install(newOrigin, newTotals);
+        // called during an update
+        writeAll(STATE_DIRTY);
+    }
+
+    // replaces the totals in memory
+    private void install(int firstDay, @NonNull int[] newTotals) {
+        origin = firstDay;
+        totals = newTotals;
+        minutesTree = new FenwickTree(newTotals);
+        // one tree per day of the week : the other days are counted as not worked
+        int[] workedDays = new int[newTotals.length];
+        int firstDayOfWeek = EpochDays.dayOfWeek(firstDay);
+        for (int d = 0; d < 7; d++) {
+            int offset = (d - (firstDayOfWeek - 1) + 7) % 7;
+            for (int i = offset; i < newTotals.length; i += 7) {
+                workedDays[i] = newTotals[i] != 0 ? 1 : 0;
+            }
+            workedDaysTrees[d] = new FenwickTree(workedDays);
+            for (int i = offset; i < newTotals.length; i += 7) {
+                workedDays[i] = 0;
+            }
+        }
+    }
+
+    private void writeAll(int state) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 4 * totals.length);
+        buffer.putInt(FORMAT_VERSION).putInt(state).putInt(rulesFingerprint).putInt(origin).putInt(totals.length);
+        buffer.asIntBuffer().put(totals);
+        file.setLength(buffer.capacity());
+        file.seek(0);
+        file.write(buffer.array());
+    }
+
+    private void writeState(int state) throws IOException {
+        if (file.length() < HEADER_SIZE) {
+            // new index
+            writeAll(state);
+            return;
+        }
+        file.seek(4);
+        file.writeInt(state);
+    }
+}
@@ -0,0 +1,302 @@
+package eu.leneurone.timelog.services.impl;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import eu.leneurone.timelog.services.StorageService;
+import eu.leneurone.timelog.utils.EpochDays;
+
+/**
+ * Persistent index of the days having a day file, kept as one bitset per year (bit n is set if the
+ * day n + 1 of the year has a file). It lets the storage answer the days without data from memory
+ * instead of failing to open their file, and find the previous or next logged day.
+ * <br />
+ * The index is read on first use. If it's missing or corrupted, it's rebuilt from the list of the
+ * files. A day is added to the index before its file is written, and removed after it has been
+ * emptied, so the index never misses a day having data.
+ */
+public class DayPresenceIndex {
+
+    /** the name of the index file */
+    static final String INDEX_FILENAME = "timeLogDaysIndex";
+
+    /** version of the format of the index file */
+    private static final int FORMAT_VERSION = 1;
+
+    /** number of longs of the bitset of a year (366 days) */
+    private static final int WORDS_PER_YEAR = 6;
+
+    /** number of bits of the bitset of a year */
+    private static final int BITS_PER_YEAR = WORDS_PER_YEAR * 64;
+
+    /** the filename prefix of the day files, followed by the day : yyyyMMdd */
+    private final String dayFilePrefix;
+
+    /** the bitsets, by year. Null until the index is read. */
+    private TreeMap<Integer, long[]> years;
+
+    /**
+     * @param dayFilePrefix the filename prefix of the day files, followed by the day : yyyyMMdd
+     */
+    public DayPresenceIndex(@NonNull String dayFilePrefix) {
+        this.dayFilePrefix = dayFilePrefix;
+    }
+
+    /**
+     * @param epochDay the day
+     * @param context the context (not null)
+     * @return true if the day may have a file, false if it has none
+     */
+    public synchronized boolean contains(int epochDay, @NonNull Context context) {
+        int key = EpochDays.toDayKey(epochDay);
+        long[] words = getYears(context).get(key / 10000);
+        if (words == null) {
+            return false;
+        }
+        int bit = EpochDays.dayOfYear(epochDay) - 1;
+        return (words[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    /**
+     * Adds a day to the index, and stores the index if it has changed. Must be called before the
+     * file of the day is written.
+     * @param epochDay the day
+     * @param context the context (not null)
+     * @throws IOException if the index couldn't have been stored
+     */
+    public synchronized void add(int epochDay, @NonNull Context context) throws IOException {
+        if (contains(epochDay, context)) {
+            return;
+        }
+        set(epochDay, true);
+        try {
+            write(context);
+        } catch (IOException ex) {
+            // the stored index must never miss a day : the next save of the day will try again
+            set(epochDay, false);
+            throw ex;
+        }
+    }
+
+    /**
+     * Removes a day from the index, and stores the index if it has changed. Must be called after
+     * the data of the day has been removed.
+     * @param epochDay the day
+     * @param context the context (not null)
+     * @throws IOException if the index couldn't have been stored
+     */
+    public synchronized void remove(int epochDay, @NonNull Context context) throws IOException {
+        if (!contains(epochDay, context)) {
+            return;
+        }
+        set(epochDay, false);
+        try {
+            write(context);
+        } catch (IOException ex) {
+            // the stored index still contains the day
+            set(epochDay, true);
+            throw ex;
+        }
+    }
+
+    /**
+     * @param epochDay the day
+     * @param context the context (not null)
+     * @return the latest logged day before the given day, or {@link StorageService#NO_DAY}
+     */
+    public synchronized int previous(int epochDay, @NonNull Context context) {
+        int year = EpochDays.year(epochDay);
+        int limit = EpochDays.dayOfYear(epochDay) - 1;
+        for (Map.Entry<Integer, long[]> entry : getYears(context).headMap(year, true).descendingMap().entrySet()) {
+            int bit = highestBitBefore(entry.getValue(), entry.getKey() == year ? limit : BITS_PER_YEAR);
+            if (bit >= 0) {
+                return EpochDays.of(entry.getKey(), 1, 1) + bit;
+            }
+        }
+        return StorageService.NO_DAY;
+    }
+
+    /**
+     * @param epochDay the day
+     * @param context the context (not null)
+     * @return the earliest logged day after the given day, or {@link StorageService#NO_DAY}
+     */
+    public synchronized int next(int epochDay, @NonNull Context context) {
+        int year = EpochDays.year(epochDay);
+        int start = EpochDays.dayOfYear(epochDay);
+        for (Map.Entry<Integer, long[]> entry : getYears(context).tailMap(year, true).entrySet()) {
+            int bit = lowestBitFrom(entry.getValue(), entry.getKey() == year ? start : 0);
+            if (bit >= 0) {
+                return EpochDays.of(entry.getKey(), 1, 1) + bit;
+            }
+        }
+        return StorageService.NO_DAY;
+    }
+
+    // the bitsets, read or rebuilt on first use
+    @NonNull
+    private TreeMap<Integer, long[]> getYears(@NonNull Context context) {
+        if (years == null) {
+            try {
+                years = read(context);
+            } catch (FileNotFoundException e) {
+                // no index yet (first use, or data written by a previous version of the app)
+                rebuild(context);
+            } catch (IOException ex) {
+                Logger.getLogger(DayPresenceIndex.class.getName()).log(Level.WARNING, null, ex);
+                rebuild(context);
+            }
+        }
+        return years;
+    }
+
+    // rebuilds the index from the list of the day files, and stores it
+    private void rebuild(@NonNull Context context) {
+        years = new TreeMap<>();
+        String[] filenames = context.fileList();
+        if (filenames != null) {
+            for (String filename : filenames) {
+                int key = parseDayKey(filename);
+                if (key != 0) {
+                    set(EpochDays.of(key / 10000, key / 100 % 100, key % 100), true);
+                }
+            }
+        }
+        try {
+            write(context);
+        } catch (IOException ex) {
+            // the index is usable anyway : it will be rebuilt again next time
+            Logger.getLogger(DayPresenceIndex.class.getName()).log(Level.WARNING, null, ex);
+        }
+    }
+
+    // sets or clears the bit of a day
+    private void set(int epochDay, boolean present) {
+        int year = EpochDays.year(epochDay);
+        long[] words = years.get(year);
+        if (words == null) {
+            words = new long[WORDS_PER_YEAR];
+            years.put(year, words);
+        }
+        int bit = EpochDays.dayOfYear(epochDay) - 1;
+        if (present) {
+            words[bit >>> 6] |= 1L << bit;
+        } else {
+            words[bit >>> 6] &= ~(1L << bit);
+        }
+    }
+
+    // the day of a day file (yyyyMMdd), or 0 if the file isn't a day file
+    private int parseDayKey(@NonNull String filename) {
+        if (!filename.startsWith(dayFilePrefix) || filename.length() != dayFilePrefix.length() + 8) {
+            return 0;
+        }
+        int key = 0;
+        for (int i = dayFilePrefix.length(); i < filename.length(); i++) {
+            char c = filename.charAt(i);
+            if (c < '0' || c > '9') {
+                return 0;
+            }
+            key = key * 10 + (c - '0');
+        }
+        int month = key / 100 % 100;
+        int dayOfMonth = key % 100;
+        return month >= 1 && month <= 12 && dayOfMonth >= 1 && dayOfMonth <= 31 ? key : 0;
+    }
+
+    // format : version, number of years, then for each year : year, bitset. Followed by the CRC32
+    // of all the previous bytes.
+    @NonNull
+    private static TreeMap<Integer, long[]> read(@NonNull Context context) throws IOException {
+        CRC32 checksum = new CRC32();
+        try (DataInputStream input = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(context.openFileInput(INDEX_FILENAME)), checksum))) {
+            if (input.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unknown days index version");
+            }
+            int count = input.readInt();
+            TreeMap<Integer, long[]> readYears = new TreeMap<>();
+            for (int i = 0; i < count; i++) {
+                int year = input.readInt();
+                long[] words = new long[WORDS_PER_YEAR];
+                for (int w = 0; w < WORDS_PER_YEAR; w++) {
+                    words[w] = input.readLong();
+                }
+                readYears.put(year, words);
+            }
+            int expected = (int) checksum.getValue();
+            if (input.readInt() != expected) {
+                throw new IOException("Corrupted days index");
+            }
+            return readYears;
+        }
+    }
+
+    private void write(@NonNull Context context) throws IOException {
+        CRC32 checksum = new CRC32();
+        try (DataOutputStream output = new DataOutputStream(new CheckedOutputStream(
+                new BufferedOutputStream(context.openFileOutput(INDEX_FILENAME, Context.MODE_PRIVATE)), checksum))) {
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(years.size());
+            for (Map.Entry<Integer, long[]> entry : years.entrySet()) {
+                output.writeInt(entry.getKey());
+                for (long word : entry.getValue()) {
+                    output.writeLong(word);
+                }
+            }
+            output.flush();
+            output.writeInt((int) checksum.getValue());
+        }
+    }
+
+    // the index of the highest set bit lower than limit, or -1
+    private static int highestBitBefore(@NonNull long[] words, int limit) {
+        int last = limit - 1;
+        if (last < 0) {
+            return -1;
+        }
+        int w = last >>> 6;
+        long word = words[w] & (-1L >>> (63 - (last & 63)));
+        while (true) {
+            if (word != 0) {
+                return w * 64 + 63 - Long.numberOfLeadingZeros(word);
+            }
+            if (--w < 0) {
+                return -1;
+            }
+            word = words[w];
+        }
+    }
+
+    // the index of the lowest set bit greater than or equal to start, or -1
+    private static int lowestBitFrom(@NonNull long[] words, int start) {
+        if (start >= BITS_PER_YEAR) {
+            return -1;
+        }
+        int w = start >>> 6;
+        long word = words[w] & (-1L << (start & 63));
+        while (true) {
+            if (word != 0) {
+                return w * 64 + Long.numberOfTrailingZeros(word);
+            }
+            if (++w == WORDS_PER_YEAR) {
+                return -1;
+            }
+            word = words[w];
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package eu.leneurone.timelog.services.impl;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.services.codec.DayWorklogCodec;
+import eu.leneurone.timelog.utils.EpochDays;
+
+/**
+ * Implements storage in a single append-only journal file on private local storage, in front of the
+ * {@link MappedYearStorageServiceImpl year files}.
+ * <br />
+ * Each save appends a fixed-size record (the day, followed by the day worklog encoded with
+ * {@link DayWorklogCodec}) at the end of the journal, and the journal is synced once per batch of
+ * days. The offset of the latest record of each day is kept in an in-memory index, which is rebuilt
+ * by reading the journal once when it is opened. When the journal contains
+ * {@link #CHECKPOINT_RECORDS} records, the latest record of each day is written in the slot of the
+ * day in its year file, and the journal is emptied. The days which aren't in the journal are read
+ * from the year files.
+ * <br />
+ * The day files written by the previous versions of the app are read for the days the journal
+ * and the year files don't hold, until {@link LegacyDayMigration} has moved them to the journal :
+ * saving a day removes its day file.
+ */
+public class JournalStorageServiceImpl extends AbstractStorageService {
+
+    /** the name of the journal file */
+    static final String JOURNAL_FILENAME = "timeLogJournal";
+
+    /** size of a record : day (int) + encoded day worklog */
+    static final int RECORD_SIZE = 4 + DayWorklogCodec.RECORD_SIZE;
+
+    /** number of records triggering a checkpoint into the year files */
+    static final int CHECKPOINT_RECORDS = 256;
+
+    /** the year files, holding the days written before the last checkpoint */
+    private final MappedYearStorageServiceImpl years;
+
+    /** the day files of the previous versions of the app, or null */
+    private final ConcurrentStorageServiceImpl dayFiles;
+
+    /** the journal file, opened on first use */
+    private RandomAccessFile journal;
+
+    /** the offset of the latest record of each logged day, the day being encoded as yyyyMMdd */
+    private final TreeMap<Integer, Long> index = new TreeMap<>();
+
+    /** the days whose latest record is empty : their slot in the year files is outdated */
+    private final TreeSet<Integer> emptiedDays = new TreeSet<>();
+
+    /** reused to read and write the records */
+    private final byte[] record = new byte[RECORD_SIZE];
+
+    public JournalStorageServiceImpl() {
+        this(new MappedYearStorageServiceImpl(), null);
+    }
+
+    /**
+     * @param years the year files (not null)
+     * @param dayFiles the day files of the previous versions of the app, read until they are
+     *                 migrated, or null
+     */
+    public JournalStorageServiceImpl(@NonNull MappedYearStorageServiceImpl years, @Nullable ConcurrentStorageServiceImpl dayFiles) {
+        this.years = years;
+        this.dayFiles = dayFiles;
+    }
+
+    @Override
+    public void storeDay(int epochDay, @NonNull DayWorklog worklog, @NonNull Context context) throws IOException {
+        storeDays(Collections.singletonMap(epochDay, worklog), context);
+    }
+
+    /**
+     * Saves several days with a single sync of the journal
+     */
+    @Override
+    public synchronized void storeDays(@NonNull Map<Integer, DayWorklog> worklogs, @NonNull Context context) throws IOException {
+        if (worklogs.isEmpty()) {
+            return;
+        }
+        openJournal(context);
+        for (Map.Entry<Integer, DayWorklog> entry : worklogs.entrySet()) {
+            appendRecord(EpochDays.toDayKey(entry.getKey()), entry.getValue());
+        }
+        journal.getFD().sync();
+        if (dayFiles != null) {
+            // the saved days are durable : their day files are outdated
+            for (int epochDay : worklogs.keySet()) {
+                dayFiles.deleteDays(epochDay, epochDay, context);
+            }
+        }
+        checkpointIfNeeded(context);
+    }
+
+    /**
+     * Removes a range of days, e.g. once they have been archived
+     * @param fromEpochDay the first day
+     * @param toEpochDay the last day
+     * @param context the application context (not null)
+     * @throws IOException if a day couldn't have been removed
+     */
+    public synchronized void deleteDays(int fromEpochDay, int toEpochDay, @NonNull Context context) throws IOException {
+        openJournal(context);
+        List<Integer> keys = new ArrayList<>();
+        int day = findNextLoggedDay(fromEpochDay - 1, context);
+        while (day != NO_DAY && day <= toEpochDay) {
+            keys.add(EpochDays.toDayKey(day));
+            day = findNextLoggedDay(day, context);
+        }
+        if (!keys.isEmpty()) {
+            DayWorklog empty = new DayWorklog();
+            for (int key : keys) {
+                appendRecord(key, empty);
+            }
+            journal.getFD().sync();
+        }
+        if (dayFiles != null) {
+            dayFiles.deleteDays(fromEpochDay, toEpochDay, context);
+        }
+        checkpointIfNeeded(context);
+    }
+
+    /**
+     * Moves the day file of a day to the journal. The encoded day is decoded back and compared with
+     * the day file before it's appended.
+     * @param epochDay the day
+     * @param context the application context (not null)
+     * @return true if the day has been moved, false if it had no day file, or if it has been saved
+     * in the journal since
+     * @throws IOException if the day couldn't have been moved : its day file is kept
+     */
+    public synchronized boolean migrateDayFile(int epochDay, @NonNull Context context) throws IOException {
+        if (dayFiles == null) {
+            return false;
+        }
+        openJournal(context);
+        int key = EpochDays.toDayKey(epochDay);
+        if (index.containsKey(key) || emptiedDays.contains(key) || !years.loadDay(epochDay, context).isEmpty()) {
+            // the day file of a saved day has been removed, unless the process was killed meanwhile
+            dayFiles.deleteDays(epochDay, epochDay, context);
+            return false;
+        }
+        DayWorklog worklog = dayFiles.readDayFile(epochDay, context);
+        if (worklog == null) {
+            return false;
+        }
+        encodeRecord(key, worklog);
+        if (!DayWorklogCodec.decode(record, 4).equals(worklog)) {
+            throw new IOException("Migrated day differs from its day file : " + StorageServiceImpl.buildFilename(epochDay));
+        }
+        appendRecord(key, worklog);
+        journal.getFD().sync();
+        dayFiles.deleteDays(epochDay, epochDay, context);
+        checkpointIfNeeded(context);
+        return true;
+    }
+
+    @Override
+    @NonNull
+    protected synchronized DayWorklog readDay(int epochDay, @NonNull Context context) {
+        try {
+            openJournal(context);
+            int key = EpochDays.toDayKey(epochDay);
+            Long offset = index.get(key);
+            if (offset == null) {
+                if (emptiedDays.contains(key)) {
+                    return new DayWorklog();
+                }
+                // the day hasn't been saved since the last checkpoint
+                DayWorklog worklog = years.loadDay(epochDay, context);
+                return worklog.isEmpty() && dayFiles != null ? dayFiles.loadDay(epochDay, context) : worklog;
+            }
+            journal.seek(offset);
+            journal.readFully(record);
+            return DayWorklogCodec.decode(record, 4);
+        } catch (IOException ex) {
+            Logger.getLogger(JournalStorageServiceImpl.class.getName()).log(Level.SEVERE, null, ex);
+            return new DayWorklog();
+        }
+    }
+
+    @NonNull
+    @Override
+    public synchronized Map<Integer, DayWorklog> loadDays(int fromEpochDay, int toEpochDay, @NonNull Context context) {
+        // the lock is held during the whole range reading
+        return super.loadDays(fromEpochDay, toEpochDay, context);
+    }
+
+    @Override
+    public synchronized int findPreviousLoggedDay(int epochDay, @NonNull Context context) {
+        try {
+            openJournal(context);
+        } catch (IOException ex) {
+            Logger.getLogger(JournalStorageServiceImpl.class.getName()).log(Level.SEVERE, null, ex);
+            return NO_DAY;
+        }
+        Integer key = index.lowerKey(EpochDays.toDayKey(epochDay));
+        int found = key != null ? toEpochDay(key) : NO_DAY;
+        int yearDay = years.findPreviousLoggedDay(epochDay, context);
+        while (yearDay != NO_DAY && emptiedDays.contains(EpochDays.toDayKey(yearDay))) {
+            yearDay = years.findPreviousLoggedDay(yearDay, context);
+        }
+        found = latest(found, yearDay);
+        return dayFiles != null ? latest(found, dayFiles.findPreviousLoggedDay(epochDay, context)) : found;
+    }
+
+    @Override
+    public synchronized int findNextLoggedDay(int epochDay, @NonNull Context context) {
+        try {
+            openJournal(context);
+        } catch (IOException ex) {
+            Logger.getLogger(JournalStorageServiceImpl.class.getName()).log(Level.SEVERE, null, ex);
+            return NO_DAY;
+        }
+        Integer key = index.higherKey(EpochDays.toDayKey(epochDay));
+        int found = key != null ? toEpochDay(key) : NO_DAY;
+        int yearDay = years.findNextLoggedDay(epochDay, context);
+        while (yearDay != NO_DAY && emptiedDays.contains(EpochDays.toDayKey(yearDay))) {
+            yearDay = years.findNextLoggedDay(yearDay, context);
+        }
+        found = earliest(found, yearDay);
+        return dayFiles != null ? earliest(found, dayFiles.findNextLoggedDay(epochDay, context)) : found;
+    }
+
+    /**
+     * Closes the journal file. It will be opened again on next use.
+     */
+    public synchronized void close() {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException ex) {
+                Logger.getLogger(JournalStorageServiceImpl.class.getName()).log(Level.WARNING, null, ex);
+            }
+            journal = null;
+            index.clear();
+            emptiedDays.clear();
+        }
+    }
+
+    // opens the journal if needed, and rebuilds the index by reading all the records
+    private void openJournal(@NonNull Context context) throws IOException {
+        if (journal != null) {
+            return;
+        }
+        File file = new File(context.getFilesDir(), JOURNAL_FILENAME);
+        index.clear();
+        emptiedDays.clear();
+        long offset = 0;
+        if (file.exists()) {
+            try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                while (true) {
+                    // an incomplete record at the end isn't indexed
+                    input.readFully(record);
+                    int key = ((record[0] & 0xFF) << 24) | ((record[1] & 0xFF) << 16) | ((record[2] & 0xFF) << 8) | (record[3] & 0xFF);
+                    indexRecord(key, offset, isEmptyRecord());
+                    offset += RECORD_SIZE;
+                }
+            } catch (EOFException e) {
+                // end of the journal reached
+            }
+        }
+        journal = new RandomAccessFile(file, "rw");
+        if (journal.length() != offset) {
+            // the last record is incomplete (interrupted write) : it is dropped
+            journal.setLength(offset);
+        }
+        checkpointIfNeeded(context);
+    }
+
+    // appends the record of a day, without syncing it
+    private void appendRecord(int key, @NonNull DayWorklog worklog) throws IOException {
+        long offset = journal.length();
+        encodeRecord(key, worklog);
+        journal.seek(offset);
+        journal.write(record);
+        indexRecord(key, offset, worklog.isEmpty());
+    }
+
+    // indexes the latest record of a day : an empty day is removed from the index, so it isn't
+    // found as a logged day
+    private void indexRecord(int key, long offset, boolean empty) {
+        if (empty) {
+            index.remove(key);
+            emptiedDays.add(key);
+        } else {
+            index.put(key, offset);
+            emptiedDays.remove(key);
+        }
+    }
+
+    // an unreadable record is kept : its day is reported when it's loaded
+    private boolean isEmptyRecord() {
+        try {
+            return DayWorklogCodec.readMask(record, 4) == 0;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    // the journal is usable if the checkpoint fails : it will be tried again later
+    private void checkpointIfNeeded(@NonNull Context context) {
+        try {
+            if (journal.length() >= CHECKPOINT_RECORDS * (long) RECORD_SIZE) {
+                checkpoint(context);
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(JournalStorageServiceImpl.class.getName()).log(Level.WARNING, null, ex);
+        }
+    }
+
+    // writes the latest record of each day in the year files, then empties the journal. If the
+    // process is killed meanwhile, the records are written again at the next checkpoint.
+    private void checkpoint(@NonNull Context context) throws IOException {
+        Map<Integer, DayWorklog> worklogs = new HashMap<>();
+        for (Map.Entry<Integer, Long> entry : index.entrySet()) {
+            journal.seek(entry.getValue());
+            journal.readFully(record);
+            worklogs.put(toEpochDay(entry.getKey()), DayWorklogCodec.decode(record, 4));
+        }
+        for (int key : emptiedDays) {
+            worklogs.put(toEpochDay(key), new DayWorklog());
+        }
+        years.storeDays(worklogs, context);
+        journal.setLength(0);
+        journal.getFD().sync();
+        index.clear();
+        emptiedDays.clear();
+    }
+
+    // fills the record buffer : day, then the encoded worklog
+    private void encodeRecord(int key, @NonNull DayWorklog worklog) {
+        record[0] = (byte) (key >>> 24);
+        record[1] = (byte) (key >>> 16);
+        record[2] = (byte) (key >>> 8);
+        record[3] = (byte) key;
+        DayWorklogCodec.encode(worklog, record, 4);
+    }
+
+    // the latest of 2 days, or NO_DAY if both are
+    private static int latest(int epochDay, int otherEpochDay) {
+        return epochDay == NO_DAY || (otherEpochDay != NO_DAY && otherEpochDay > epochDay) ? otherEpochDay : epochDay;
+    }
+
+    // the earliest of 2 days, or NO_DAY if both are
+    private static int earliest(int epochDay, int otherEpochDay) {
+        return epochDay == NO_DAY || (otherEpochDay != NO_DAY && otherEpochDay < epochDay) ? otherEpochDay : epochDay;
+    }
+
+    // the epoch day of a day key (yyyyMMdd)
+    private static int toEpochDay(int key) {
+        return EpochDays.of(key / 10000, key / 100 % 100, key % 100);
+    }
+}
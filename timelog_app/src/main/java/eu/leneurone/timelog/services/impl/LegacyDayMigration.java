@@ -0,0 +1,194 @@
+package eu.leneurone.timelog.services.impl;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import eu.leneurone.timelog.services.SaveHandle;
+import eu.leneurone.timelog.services.StorageService;
+import eu.leneurone.timelog.utils.EpochDays;
+
+/**
+ * Moves the day files written by the previous versions of the app (one file per day, in the Java
+ * serialization or in the fixed-width format) to the journal, in the background.
+ * <br />
+ * The logged days are migrated in chronologic order, by batches of {@link #BATCH_SIZE} days : see
+ * {@link JournalStorageServiceImpl#migrateDayFile(int, Context)}. The journal is locked only
+ * while a day is migrated, and it reads the day files it doesn't hold yet, so the days are served
+ * correctly during the migration. The last migrated day is saved after each batch, so a migration
+ * interrupted by the end of the process resumes after it. Once all the days are migrated, the
+ * migration is marked as done and never runs again.
+ * <br />
+ * A day whose file can't be read is skipped and counted, so it doesn't stop the migration.
+ */
+public class LegacyDayMigration {
+
+    /** the name of the file holding the progress of the migration */
+    static final String PROGRESS_FILENAME = "timeLogMigration";
+
+    /** the number of days migrated between two saves of the progress */
+    static final int BATCH_SIZE = 64;
+
+    /** the progress once all the days are migrated */
+    private static final int DONE = Integer.MAX_VALUE;
+
+    /** the day before the earliest day looked for */
+    private static final int EARLIEST_DAY = EpochDays.of(1900, 1, 1);
+
+    /** the day files */
+    private final ConcurrentStorageServiceImpl dayFiles;
+
+    /** the journal receiving the days */
+    private final JournalStorageServiceImpl journal;
+
+    /** performs the migration */
+    private final ExecutorService migrator;
+
+    public LegacyDayMigration(@NonNull ConcurrentStorageServiceImpl dayFiles, @NonNull JournalStorageServiceImpl journal) {
+        this.dayFiles = dayFiles;
+        this.journal = journal;
+        this.migrator = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "TimeLog-migration");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Migrates the legacy days in the background, from where the previous migration stopped
+     * @param context the context (not null)
+     * @return the handle of the migration
+     */
+    @NonNull
+    public SaveHandle migrateAsync(@NonNull Context context) {
+        final Context appContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+        final SaveHandle handle = new SaveHandle();
+        migrator.execute(new Runnable() {
+            @Override
+            public void run() {
+                IOException error = null;
+                try {
+                    while (migrateBatch(appContext)) {
+                        // the batches are small : the other threads get the locks in between
+                        Thread.yield();
+                    }
+                } catch (IOException ex) {
+                    Logger.getLogger(LegacyDayMigration.class.getName()).log(Level.WARNING, null, ex);
+                    error = ex;
+                }
+                handle.complete(error);
+            }
+        });
+        return handle;
+    }
+
+    /**
+     * Migrates the next batch of logged days, then saves the progress. A day which can't be
+     * migrated is logged and skipped : its day file is kept, and still read.
+     * @param context the application context (not null)
+     * @return true if some days may remain to migrate, false if the migration is done
+     * @throws IOException if the progress couldn't have been saved : the batch will be migrated again
+     */
+    public boolean migrateBatch(@NonNull Context context) throws IOException {
+        int[] progress = readProgress(context);
+        int lastDay = progress[0];
+        int skipped = progress[1];
+        if (lastDay == DONE) {
+            return false;
+        }
+        int day = dayFiles.findNextLoggedDay(lastDay, context);
+        int migrated = 0;
+        for (int i = 0; i < BATCH_SIZE && day != StorageService.NO_DAY; i++) {
+            try {
+                if (journal.migrateDayFile(day, context)) {
+                    migrated++;
+                }
+            } catch (IOException ex) {
+                Logger.getLogger(LegacyDayMigration.class.getName()).log(Level.WARNING,
+                        "Skipped the legacy day " + StorageServiceImpl.buildFilename(day), ex);
+                skipped++;
+            }
+            lastDay = day;
+            day = dayFiles.findNextLoggedDay(day, context);
+        }
+        if (migrated > 0) {
+            Logger.getLogger(LegacyDayMigration.class.getName()).log(Level.INFO,
+                    "Migrated {0} day files", migrated);
+        }
+        boolean done = day == StorageService.NO_DAY;
+        writeProgress(done ? DONE : lastDay, skipped, context);
+        return !done;
+    }
+
+    /**
+     * @param context the application context (not null)
+     * @return true if all the legacy days have been migrated or skipped
+     */
+    public boolean isDone(@NonNull Context context) {
+        return readProgress(context)[0] == DONE;
+    }
+
+    /**
+     * @param context the application context (not null)
+     * @return the number of days which couldn't have been migrated, and are left in their day file
+     */
+    public int getSkippedDays(@NonNull Context context) {
+        return readProgress(context)[1];
+    }
+
+    // the last migrated day (DONE, or the day before the earliest one if the migration hasn't
+    // started or its progress is unreadable : the migrated days are then skipped quickly), then the
+    // number of skipped days
+    @NonNull
+    private static int[] readProgress(@NonNull Context context) {
+        File file = new File(context.getFilesDir(), PROGRESS_FILENAME);
+        int[] progress = {EARLIEST_DAY, 0};
+        try (DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+            progress[0] = input.readInt();
+            progress[1] = input.readInt();
+        } catch (FileNotFoundException e) {
+            // not started
+        } catch (EOFException e) {
+            // written before the skipped days were counted
+        } catch (IOException ex) {
+            Logger.getLogger(LegacyDayMigration.class.getName()).log(Level.WARNING, null, ex);
+            progress[0] = EARLIEST_DAY;
+            progress[1] = 0;
+        }
+        return progress;
+    }
+
+    // the progress is written in a temporary file, then renamed over the previous one
+    private static void writeProgress(int lastDay, int skipped, @NonNull Context context) throws IOException {
+        File file = new File(context.getFilesDir(), PROGRESS_FILENAME);
+        File temporaryFile = new File(context.getFilesDir(), PROGRESS_FILENAME + ".tmp");
+        try (FileOutputStream output = new FileOutputStream(temporaryFile)) {
+            DataOutputStream data = new DataOutputStream(output);
+            data.writeInt(lastDay);
+            data.writeInt(skipped);
+            data.flush();
+            output.getFD().sync();
+        }
+        if (!temporaryFile.renameTo(file)) {
+            temporaryFile.delete();
+            throw new IOException("Couldn't replace " + PROGRESS_FILENAME);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package eu.leneurone.timelog.services.impl;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.services.codec.DayWorklogCodec;
+import eu.leneurone.timelog.utils.EpochDays;
+
+/**
+ * Implements storage on private local storage, with one memory-mapped file per year.
+ * <br />
+ * A year file contains {@link #SLOTS_PER_YEAR} fixed-size slots, one per day of the year, each
+ * holding the day worklog encoded with {@link DayWorklogCodec}. A slot filled with zeros means that
+ * no data has been saved for the day, or that it has been emptied. Reading a day is a bounds check
+ * plus a read in the mapped buffer; saving days writes their slots and forces each changed year to
+ * the storage.
+ */
+public class MappedYearStorageServiceImpl extends AbstractStorageService {
+
+    /** the filename prefix of the year files */
+    private static final String FILENAME_PREFIX = "timeLogYear_";
+
+    /** number of days slots in a year file (leap years have 366 days) */
+    static final int SLOTS_PER_YEAR = 366;
+
+    /** size in bytes of a year file */
+    static final int YEAR_FILE_SIZE = SLOTS_PER_YEAR * DayWorklogCodec.RECORD_SIZE;
+
+    /** the mapped year files, by year */
+    private final Map<Integer, MappedByteBuffer> years = new HashMap<>();
+
+    /** reused to read and write the slots */
+    private final byte[] record = new byte[DayWorklogCodec.RECORD_SIZE];
+
+    @Override
+    public void storeDay(int epochDay, @NonNull DayWorklog worklog, @NonNull Context context) throws IOException {
+        storeDays(Collections.singletonMap(epochDay, worklog), context);
+    }
+
+    /**
+     * Saves several days with a single force of each year
+     */
+    @Override
+    public synchronized void storeDays(@NonNull Map<Integer, DayWorklog> worklogs, @NonNull Context context) throws IOException {
+        Set<Integer> changedYears = new HashSet<>();
+        for (Map.Entry<Integer, DayWorklog> entry : worklogs.entrySet()) {
+            int year = EpochDays.year(entry.getKey());
+            MappedByteBuffer buffer = mapYear(year, true, context);
+            int position = slotPosition(EpochDays.dayOfYear(entry.getKey()));
+            if (entry.getValue().isEmpty()) {
+                // an emptied day is an empty slot, so it isn't found as a logged day
+                Arrays.fill(record, (byte) 0);
+            } else {
+                DayWorklogCodec.encode(entry.getValue(), record, 0);
+            }
+            for (int i = 0; i < record.length; i++) {
+                buffer.put(position + i, record[i]);
+            }
+            changedYears.add(year);
+        }
+        for (int year : changedYears) {
+            years.get(year).force();
+        }
+    }
+
+    @NonNull
+    @Override
+    public synchronized Map<Integer, DayWorklog> loadDays(int fromEpochDay, int toEpochDay, @NonNull Context context) {
+        // the lock is held during the whole range reading
+        return super.loadDays(fromEpochDay, toEpochDay, context);
+    }
+
+    @Override
+    @NonNull
+    protected synchronized DayWorklog readDay(int epochDay, @NonNull Context context) {
+        try {
+            MappedByteBuffer buffer = mapYear(EpochDays.year(epochDay), false, context);
+            if (buffer == null) {
+                // this is normal if no data has been saved for this year
+                return new DayWorklog();
+            }
+            int position = slotPosition(EpochDays.dayOfYear(epochDay));
+            for (int i = 0; i < record.length; i++) {
+                record[i] = buffer.get(position + i);
+            }
+            if (record[0] == 0) {
+                // empty slot : no data has been saved for this day
+                return new DayWorklog();
+            }
+            return DayWorklogCodec.decode(record, 0);
+        } catch (IOException ex) {
+            Logger.getLogger(MappedYearStorageServiceImpl.class.getName()).log(Level.SEVERE, null, ex);
+            return new DayWorklog();
+        }
+    }
+
+    @Override
+    public synchronized int findPreviousLoggedDay(int epochDay, @NonNull Context context) {
+        int year = EpochDays.year(epochDay);
+        try {
+            for (int fileYear : listYears(context).headSet(year, true).descendingSet()) {
+                MappedByteBuffer buffer = mapYear(fileYear, false, context);
+                int dayOfYear = fileYear == year ? EpochDays.dayOfYear(epochDay) - 1 : SLOTS_PER_YEAR;
+                for (; dayOfYear >= 1; dayOfYear--) {
+                    if (buffer.get(slotPosition(dayOfYear)) != 0) {
+                        return EpochDays.of(fileYear, 1, 1) + dayOfYear - 1;
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(MappedYearStorageServiceImpl.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        return NO_DAY;
+    }
+
+    @Override
+    public synchronized int findNextLoggedDay(int epochDay, @NonNull Context context) {
+        int year = EpochDays.year(epochDay);
+        try {
+            for (int fileYear : listYears(context).tailSet(year, true)) {
+                MappedByteBuffer buffer = mapYear(fileYear, false, context);
+                int dayOfYear = fileYear == year ? EpochDays.dayOfYear(epochDay) + 1 : 1;
+                for (; dayOfYear <= SLOTS_PER_YEAR; dayOfYear++) {
+                    if (buffer.get(slotPosition(dayOfYear)) != 0) {
+                        return EpochDays.of(fileYear, 1, 1) + dayOfYear - 1;
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(MappedYearStorageServiceImpl.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        return NO_DAY;
+    }
+
+    // the years having a file
+    @NonNull
+    private static TreeSet<Integer> listYears(@NonNull Context context) {
+        TreeSet<Integer> fileYears = new TreeSet<>();
+        String[] filenames = context.getFilesDir().list();
+        if (filenames != null) {
+            for (String filename : filenames) {
+                if (filename.startsWith(FILENAME_PREFIX)) {
+                    try {
+                        fileYears.add(Integer.parseInt(filename.substring(FILENAME_PREFIX.length())));
+                    } catch (NumberFormatException e) {
+                        // not a year file
+                    }
+                }
+            }
+        }
+        return fileYears;
+    }
+
+    // position in the year file of the slot of a day
+    private static int slotPosition(int dayOfYear) throws IOException {
+        if (dayOfYear < 1 || dayOfYear > SLOTS_PER_YEAR) {
+            throw new IOException("Invalid day of year : " + dayOfYear);
+        }
+        return (dayOfYear - 1) * DayWorklogCodec.RECORD_SIZE;
+    }
+
+    // maps the file of a year if it's not already done. Returns null if the file doesn't exist and
+    // mustn't be created.
+    private MappedByteBuffer mapYear(int year, boolean create, @NonNull Context context) throws IOException {
+        MappedByteBuffer buffer = years.get(year);
+        if (buffer != null) {
+            return buffer;
+        }
+        File file = new File(context.getFilesDir(), FILENAME_PREFIX + year);
+        if (!create && !file.exists()) {
+            return null;
+        }
+        try (RandomAccessFile yearFile = new RandomAccessFile(file, "rw")) {
+            if (yearFile.length() != YEAR_FILE_SIZE) {
+                // new file (filled with zeros, so all the slots are empty)
+                yearFile.setLength(YEAR_FILE_SIZE);
+            }
+            // the mapping stays valid after the channel is closed
+            buffer = yearFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, YEAR_FILE_SIZE);
+        }
+        years.put(year, buffer);
+        return buffer;
+    }
+}
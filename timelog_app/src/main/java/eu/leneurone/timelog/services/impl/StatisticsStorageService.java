@@ -0,0 +1,158 @@
+package eu.leneurone.timelog.services.impl;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import eu.leneurone.timelog.math.WorklogStatistics;
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.services.StorageService;
+import eu.leneurone.timelog.utils.EpochDays;
+
+/**
+ * Storage service computing the {@link WorklogStatistics} of the stored days, in front of another
+ * storage service.
+ * <br />
+ * The statistics of a range of days are computed in a single pass over the days, read one month at
+ * a time. The statistics of all the days are computed on first use, then kept in memory and updated
+ * each time a day is saved : the previous worklog of the day is uncounted, and the new one counted.
+ * <br />
+ * The first computation doesn't hold the lock of the saves : its result is only kept if no day has
+ * been saved meanwhile, otherwise it's computed again on the next use.
+ */
+public class StatisticsStorageService extends AbstractStorageService {
+
+    /** the earliest day looked for */
+    private static final int EARLIEST_DAY = EpochDays.of(1900, 1, 1);
+
+    /** the latest day looked for */
+    private static final int LATEST_DAY = EpochDays.of(2200, 1, 1);
+
+    /** the underlying storage */
+    private final StorageService delegate;
+
+    /** the statistics of all the days, guarded by this. Null until they're needed. */
+    private WorklogStatistics statistics;
+
+    /** incremented each time days are saved, to drop the statistics computed meanwhile. Guarded by this. */
+    private long writeVersion;
+
+    public StatisticsStorageService(@NonNull StorageService delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void storeDay(int epochDay, @NonNull DayWorklog worklog, @NonNull Context context) throws IOException {
+        storeDays(Collections.singletonMap(epochDay, worklog), context);
+    }
+
+    @Override
+    public synchronized void storeDays(@NonNull Map<Integer, DayWorklog> worklogs, @NonNull Context context) throws IOException {
+        writeVersion++;
+        if (statistics == null) {
+            // nothing to update
+            delegate.storeDays(worklogs, context);
+            return;
+        }
+        Map<Integer, DayWorklog> previousWorklogs = new HashMap<>();
+        for (int epochDay : worklogs.keySet()) {
+            previousWorklogs.put(epochDay, delegate.loadDay(epochDay, context));
+        }
+        try {
+            delegate.storeDays(worklogs, context);
+        } catch (IOException ex) {
+            // some days may have been stored : the statistics will be computed again
+            statistics = null;
+            throw ex;
+        }
+        for (Map.Entry<Integer, DayWorklog> entry : worklogs.entrySet()) {
+            statistics.remove(entry.getKey(), previousWorklogs.get(entry.getKey()));
+            statistics.add(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @param context the application context (not null)
+     * @return the statistics of all the stored days : a copy, which isn't updated
+     */
+    @NonNull
+    public WorklogStatistics getStatistics(@NonNull Context context) {
+        long version;
+        synchronized (this) {
+            if (statistics != null) {
+                return new WorklogStatistics(statistics);
+            }
+            version = writeVersion;
+        }
+        // the saves aren't blocked during the pass over all the days
+        WorklogStatistics computed = computeStatistics(EARLIEST_DAY, LATEST_DAY, context);
+        synchronized (this) {
+            if (statistics == null && version == writeVersion) {
+                statistics = computed;
+            }
+        }
+        return new WorklogStatistics(computed);
+    }
+
+    /**
+     * Computes the statistics of a range of days, in a single pass which doesn't fill the caches
+     * @param fromEpochDay the first day
+     * @param toEpochDay the last day
+     * @param context the application context (not null)
+     * @return the statistics of the logged days of the range
+     */
+    @NonNull
+    public WorklogStatistics computeStatistics(int fromEpochDay, int toEpochDay, @NonNull Context context) {
+        WorklogStatistics rangeStatistics = new WorklogStatistics();
+        int day = delegate.findNextLoggedDay(fromEpochDay - 1, context);
+        while (day != NO_DAY && day <= toEpochDay) {
+            // the days are read one month at a time, and the months without data are skipped
+            int year = EpochDays.year(day);
+            int month = EpochDays.month(day);
+            int monthEnd = Math.min(toEpochDay, month == 12 ? EpochDays.of(year + 1, 1, 1) - 1 : EpochDays.of(year, month + 1, 1) - 1);
+            for (Map.Entry<Integer, DayWorklog> entry : delegate.scanDays(day, monthEnd, context).entrySet()) {
+                rangeStatistics.add(entry.getKey(), entry.getValue());
+            }
+            day = delegate.findNextLoggedDay(monthEnd, context);
+        }
+        return rangeStatistics;
+    }
+
+    @NonNull
+    @Override
+    public DayWorklog loadDay(int epochDay, @NonNull Context context) {
+        return delegate.loadDay(epochDay, context);
+    }
+
+    @NonNull
+    @Override
+    public Map<Integer, DayWorklog> loadDays(int fromEpochDay, int toEpochDay, @NonNull Context context) {
+        return delegate.loadDays(fromEpochDay, toEpochDay, context);
+    }
+
+    @NonNull
+    @Override
+    public Map<Integer, DayWorklog> scanDays(int fromEpochDay, int toEpochDay, @NonNull Context context) {
+        return delegate.scanDays(fromEpochDay, toEpochDay, context);
+    }
+
+    @NonNull
+    @Override
+    protected DayWorklog readDay(int epochDay, @NonNull Context context) {
+        return delegate.loadDay(epochDay, context);
+    }
+
+    @Override
+    public int findPreviousLoggedDay(int epochDay, @NonNull Context context) {
+        return delegate.findPreviousLoggedDay(epochDay, context);
+    }
+
+    @Override
+    public int findNextLoggedDay(int epochDay, @NonNull Context context) {
+        return delegate.findNextLoggedDay(epochDay, context);
+    }
+}
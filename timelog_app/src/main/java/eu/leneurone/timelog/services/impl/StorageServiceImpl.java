@@ -1,105 +1,102 @@
 package eu.leneurone.timelog.services.impl;
 
-import android.app.AlertDialog;
 import android.content.Context;
-import android.content.DialogInterface;
 import android.support.annotation.NonNull;
 
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.Locale;
-import java.util.Map;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import eu.leneurone.timelog.R;
-import eu.leneurone.timelog.model.Marker;
-import eu.leneurone.timelog.model.Time;
-import eu.leneurone.timelog.services.StorageService;
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.services.codec.DayWorklogCodec;
+import eu.leneurone.timelog.services.codec.LegacyDayWorklogReader;
+import eu.leneurone.timelog.utils.EpochDays;
 
 /**
- * Implements storage on private local storage
+ * Implements storage on private local storage, with one file per day. The days are written using
+ * {@link DayWorklogCodec}, and the days written by the previous versions of the app (Java
+ * serialization) are still readable. The days having a file are kept in a {@link DayPresenceIndex},
+ * so the days without data are answered without trying to open their file.
  */
-public class StorageServiceImpl implements StorageService {
+public class StorageServiceImpl extends AbstractStorageService {
 
     /** the filename prefix of the data files */
-    private static final String FILENAME_PREFIX = "timeLog_";
+    static final String FILENAME_PREFIX = "timeLog_";
+
+    /** the days having a file */
+    private final DayPresenceIndex presenceIndex = new DayPresenceIndex(FILENAME_PREFIX);
 
     @Override
-    public void storeDayWorklog(@NonNull Date day, @NonNull Map<Marker, Time> times, @NonNull Context context) {
-        try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(context.openFileOutput(buildFilename(day), Context.MODE_PRIVATE))) {
-            objectOutputStream.writeObject(times);
-        } catch (IOException ex) {
-            new AlertDialog.Builder(context)
-                    .setTitle(R.string.technical_error)
-                    .setMessage(R.string.technical_error_msg)
-                    .setNeutralButton(android.R.string.ok, new DialogInterface.OnClickListener() {
-                        public void onClick(DialogInterface dialog, int which) {
-                            dialog.dismiss();
-                        }
-                    })
-                    .setIcon(android.R.drawable.ic_dialog_alert)
-                    .show();
+    public void storeDay(int epochDay, @NonNull DayWorklog worklog, @NonNull Context context) throws IOException {
+        if (!worklog.isEmpty()) {
+            // the index is updated first, so it never misses a day having data
+            presenceIndex.add(epochDay, context);
+        }
+        byte[] record = new byte[DayWorklogCodec.RECORD_SIZE];
+        DayWorklogCodec.encode(worklog, record, 0);
+        try (OutputStream output = context.openFileOutput(buildFilename(epochDay), Context.MODE_PRIVATE)) {
+            output.write(record);
+        }
+        if (worklog.isEmpty()) {
+            presenceIndex.remove(epochDay, context);
         }
     }
 
     @Override
     @NonNull
-    public Map<Marker, Time> loadDayWorklog(@NonNull Date day, @NonNull Context context) {
-        try (ObjectInputStream objectInputStream = new ObjectInputStream(context.openFileInput(buildFilename(day)))) {
-            //noinspection unchecked
-            return  (Map<Marker, Time>) objectInputStream.readObject();
+    protected DayWorklog readDay(int epochDay, @NonNull Context context) {
+        if (!presenceIndex.contains(epochDay, context)) {
+            // no file for this day : no need to try to open it
+            return new DayWorklog();
+        }
+        try (InputStream input = context.openFileInput(buildFilename(epochDay))) {
+            return decodeDayFile(input);
         } catch (FileNotFoundException e) {
             // do nothing : this is normal if no data has been saved for this day
-            return new HashMap<>();
-        } catch (ClassNotFoundException | IOException ex) {
+            return new DayWorklog();
+        } catch (IOException ex) {
             Logger.getLogger(StorageServiceImpl.class.getName()).log(Level.SEVERE, null, ex);
-            return new HashMap<>();
+            return new DayWorklog();
         }
     }
 
-    @NonNull
     @Override
-    public Map<Calendar, Map<Marker, Time>> loadWeekWorklog(@NonNull Calendar givenDay, @NonNull Context context) {
-        int givenDayOfWeek = givenDay.get(Calendar.DAY_OF_WEEK);
+    public int findPreviousLoggedDay(int epochDay, @NonNull Context context) {
+        return presenceIndex.previous(epochDay, context);
+    }
+
+    @Override
+    public int findNextLoggedDay(int epochDay, @NonNull Context context) {
+        return presenceIndex.next(epochDay, context);
+    }
 
-        if(givenDayOfWeek == Calendar.MONDAY) {
-            // since the given day is monday, there is no previous day in this week.
-            new HashMap<>();
+    // reads a day file, either in the current format or in the legacy one
+    @NonNull
+    static DayWorklog decodeDayFile(@NonNull InputStream input) throws IOException {
+        byte[] record = new byte[DayWorklogCodec.RECORD_SIZE];
+        int length = 0;
+        int read;
+        while (length < record.length && (read = input.read(record, length, record.length - length)) != -1) {
+            length += read;
         }
-
-        if(givenDayOfWeek == Calendar.SUNDAY) {
-            // in Calendar : SUNDAY = 1, MONDAY = 2, ..., SATURDAY = 7
-            // if givenDayOfWeek = SYNDAY, we should use givenDayOfWeek = 8 instead of 1 to avoid
-            // negative values when calculating the difference between the givenDayOfWeek and monday
-            givenDayOfWeek = 8;
+        if (DayWorklogCodec.isLegacy(record, length)) {
+            // give back the bytes already read to the legacy reader
+            return LegacyDayWorklogReader.read(new SequenceInputStream(new ByteArrayInputStream(record, 0, length), input));
         }
-
-        // we want days between the day before givenDay and the previous monday
-        // the index of monday in Calendar is 2, so the number of days to remove from givenDay to
-        // have the previous monday is : givenDayOfWeek - MONDAY(2)
-        // so we get days from givenDay-1 to givenDay-(givenDayOfWeek-2)
-
-        int nbOfDaysToRemove = givenDayOfWeek - Calendar.MONDAY;
-
-        // load data for each of the days
-        Map<Calendar, Map<Marker, Time>> data = new HashMap<>();
-        for(int i = 1; i <= nbOfDaysToRemove; i++) {
-            Calendar computeDay = (Calendar) givenDay.clone();
-            computeDay.add(Calendar.DAY_OF_YEAR, -i);
-            data.put(computeDay, this.loadDayWorklog(computeDay.getTime(), context));
+        if (length < record.length) {
+            throw new EOFException("Truncated day worklog");
         }
-        return data;
+        return DayWorklogCodec.decode(record, 0);
     }
 
-    private static String buildFilename(Date date) {
-        SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd", Locale.FRANCE);
-        return FILENAME_PREFIX + format.format(date);
+    // the filename is the prefix followed by the day : yyyyMMdd
+    static String buildFilename(int epochDay) {
+        return FILENAME_PREFIX + EpochDays.toDayKey(epochDay);
     }
 }
@@ -0,0 +1,283 @@
+package eu.leneurone.timelog.services.impl;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import eu.leneurone.timelog.exceptions.IncoherentMarkersException;
+import eu.leneurone.timelog.math.TotalCalculator;
+import eu.leneurone.timelog.math.WorkRules;
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.model.Time;
+import eu.leneurone.timelog.services.SaveHandle;
+import eu.leneurone.timelog.services.StorageService;
+import eu.leneurone.timelog.utils.EpochDays;
+
+/**
+ * Storage service keeping a {@link DailyTotalsIndex} of the total work time of each saved day, in
+ * front of another storage service. The total time and the overtime balance of any range of days
+ * are then computed without reading the days.
+ * <br />
+ * The indexed totals follow the rules of the days other than today (see
+ * {@link TotalCalculator#calculatePastDayTotalMinutes(DayWorklog)}). The index is updated each time
+ * a day is saved, and rebuilt from the stored days when it's missing or inconsistent, or when the
+ * calculation rules change (see {@link #rebuildAsync(Context)}). The index records the rules of
+ * its totals, so it's also rebuilt if the rules have changed since it was written.
+ */
+public class TotalsIndexStorageService extends AbstractStorageService {
+
+    /** the earliest day looked for when rebuilding the index */
+    private static final int EARLIEST_DAY = EpochDays.of(1900, 1, 1);
+
+    /** the latest day looked for when rebuilding the index */
+    private static final int LATEST_DAY = EpochDays.of(2200, 1, 1);
+
+    /** the underlying storage */
+    private final StorageService delegate;
+
+    /** the index. Its lock guards all the accesses to the index. */
+    private final DailyTotalsIndex index = new DailyTotalsIndex();
+
+    /** whether the index is opened and consistent with the stored data */
+    private boolean indexReady;
+
+    /** rebuilds the index in the background */
+    private final ExecutorService rebuildExecutor;
+
+    public TotalsIndexStorageService(@NonNull StorageService delegate) {
+        this.delegate = delegate;
+        this.rebuildExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "TimeLog-totals-index");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public void storeDay(int epochDay, @NonNull DayWorklog worklog, @NonNull Context context) throws IOException {
+        storeDays(Collections.singletonMap(epochDay, worklog), context);
+    }
+
+    @Override
+    public void storeDays(@NonNull Map<Integer, DayWorklog> worklogs, @NonNull Context context) throws IOException {
+        Map<Integer, Integer> totals = new HashMap<>();
+        for (Map.Entry<Integer, DayWorklog> entry : worklogs.entrySet()) {
+            totals.put(entry.getKey(), calculateTotalMinutes(entry.getKey(), entry.getValue()));
+        }
+        synchronized (index) {
+            boolean indexed = prepareIndexUpdate(context);
+            boolean stored = false;
+            try {
+                delegate.storeDays(worklogs, context);
+                stored = true;
+            } finally {
+                if (!stored && indexed) {
+                    // the stored data may have changed : the index, left dirty, will be rebuilt
+                    invalidateIndex();
+                }
+            }
+            if (indexed) {
+                try {
+                    for (Map.Entry<Integer, Integer> entry : totals.entrySet()) {
+                        index.set(entry.getKey(), entry.getValue());
+                    }
+                    index.endUpdate();
+                } catch (IOException ex) {
+                    // the data is saved anyway : the index, left dirty, will be rebuilt
+                    Logger.getLogger(TotalsIndexStorageService.class.getName()).log(Level.WARNING, null, ex);
+                    invalidateIndex();
+                }
+            }
+        }
+    }
+
+    @NonNull
+    @Override
+    public DayWorklog loadDay(int epochDay, @NonNull Context context) {
+        return delegate.loadDay(epochDay, context);
+    }
+
+    @NonNull
+    @Override
+    public Map<Integer, DayWorklog> loadDays(int fromEpochDay, int toEpochDay, @NonNull Context context) {
+        return delegate.loadDays(fromEpochDay, toEpochDay, context);
+    }
+
+    @NonNull
+    @Override
+    protected DayWorklog readDay(int epochDay, @NonNull Context context) {
+        return delegate.loadDay(epochDay, context);
+    }
+
+    @Override
+    public int findPreviousLoggedDay(int epochDay, @NonNull Context context) {
+        return delegate.findPreviousLoggedDay(epochDay, context);
+    }
+
+    @Override
+    public int findNextLoggedDay(int epochDay, @NonNull Context context) {
+        return delegate.findNextLoggedDay(epochDay, context);
+    }
+
+    /**
+     * Calculates the total work time of a range of days in O(log n)
+     * @param fromEpochDay the first day of the range
+     * @param toEpochDay the last day of the range
+     * @param context the context (not null)
+     * @return the total time
+     * @throws IOException if the index couldn't have been read nor rebuilt
+     */
+    @NonNull
+    public Time getTotalTime(int fromEpochDay, int toEpochDay, @NonNull Context context) throws IOException {
+        synchronized (index) {
+            ensureIndex(context);
+            return Time.ofMinutes((int) index.sumMinutes(fromEpochDay, toEpochDay));
+        }
+    }
+
+    /**
+     * Calculates the overtime balance of a range of days in O(log n) : the total work time, minus
+     * the target of the day of the week for each worked day
+     * @param fromEpochDay the first day of the range
+     * @param toEpochDay the last day of the range
+     * @param rules gives the work time expected for each day of the week (not null)
+     * @param context the context (not null)
+     * @return the balance, negative if less time than expected has been worked
+     * @throws IOException if the index couldn't have been read nor rebuilt
+     */
+    @NonNull
+    public Time getBalance(int fromEpochDay, int toEpochDay, @NonNull WorkRules rules, @NonNull Context context) throws IOException {
+        synchronized (index) {
+            ensureIndex(context);
+            long balance = index.sumMinutes(fromEpochDay, toEpochDay);
+            for (int dayOfWeek = 1; dayOfWeek <= 7; dayOfWeek++) {
+                balance -= (long) rules.getDailyTargetMinutes(dayOfWeek) * index.countWorkedDays(fromEpochDay, toEpochDay, dayOfWeek);
+            }
+            return Time.ofMinutes((int) balance);
+        }
+    }
+
+    /**
+     * Calculates the overtime balance of all the days before a day
+     * @see #getBalance(int, int, WorkRules, Context)
+     */
+    @NonNull
+    public Time getBalanceBefore(int epochDay, @NonNull WorkRules rules, @NonNull Context context) throws IOException {
+        return getBalance(EARLIEST_DAY, epochDay - 1, rules, context);
+    }
+
+    /**
+     * Rebuilds the index from the stored days, in the background. The saves and the index queries
+     * wait for the end of the rebuild.
+     * @param context the context (not null)
+     * @return the handle of the rebuild
+     */
+    @NonNull
+    public SaveHandle rebuildAsync(@NonNull Context context) {
+        final Context appContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+        final SaveHandle handle = new SaveHandle();
+        rebuildExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                IOException error = null;
+                synchronized (index) {
+                    try {
+                        rebuild(appContext);
+                    } catch (IOException ex) {
+                        error = ex;
+                    }
+                }
+                handle.complete(error);
+            }
+        });
+        return handle;
+    }
+
+    // opens the index, and rebuilds it if needed : the index of other rules (e.g. left by a process
+    // killed before the end of the rebuild following a change of the settings) is rebuilt too
+    private void ensureIndex(@NonNull Context context) throws IOException {
+        int fingerprint = rulesFingerprint(TotalCalculator.getWorkRules());
+        if (indexReady && index.getRulesFingerprint() == fingerprint) {
+            return;
+        }
+        if (!index.open(context, fingerprint)) {
+            rebuild(context);
+        }
+        indexReady = true;
+    }
+
+    // the fingerprint of the rules the indexed totals depend on : the totals of the days other
+    // than today only depend on the lunch duration
+    static int rulesFingerprint(@NonNull WorkRules rules) {
+        return rules.getLunchDurationMinutes();
+    }
+
+    // marks the index as being updated. Returns false if the index isn't usable : it will be
+    // rebuilt later.
+    private boolean prepareIndexUpdate(@NonNull Context context) {
+        try {
+            ensureIndex(context);
+            index.beginUpdate();
+            return true;
+        } catch (IOException ex) {
+            Logger.getLogger(TotalsIndexStorageService.class.getName()).log(Level.WARNING, null, ex);
+            invalidateIndex();
+            return false;
+        }
+    }
+
+    private void invalidateIndex() {
+        index.close();
+        indexReady = false;
+    }
+
+    // reads all the stored days, year by year, and replaces the index
+    private void rebuild(@NonNull Context context) throws IOException {
+        indexReady = false;
+        index.open(context, rulesFingerprint(TotalCalculator.getWorkRules()));
+        index.beginUpdate();
+        int first = delegate.findNextLoggedDay(EARLIEST_DAY - 1, context);
+        if (first == NO_DAY) {
+            index.replaceAll(0, new int[0]);
+            indexReady = true;
+            return;
+        }
+        int last = delegate.findPreviousLoggedDay(LATEST_DAY + 1, context);
+        int origin = EpochDays.firstDayOfYear(first);
+        int end = EpochDays.of(EpochDays.year(last) + 1, 1, 1);
+        int[] totals = new int[end - origin];
+        for (int yearStart = origin; yearStart < end; yearStart = EpochDays.of(EpochDays.year(yearStart) + 1, 1, 1)) {
+            int yearEnd = EpochDays.of(EpochDays.year(yearStart) + 1, 1, 1) - 1;
+            for (Map.Entry<Integer, DayWorklog> entry : delegate.loadDays(yearStart, yearEnd, context).entrySet()) {
+                totals[entry.getKey() - origin] = calculateTotalMinutes(entry.getKey(), entry.getValue());
+            }
+        }
+        index.replaceAll(origin, totals);
+        indexReady = true;
+    }
+
+    // the total of a day, as indexed
+    private static int calculateTotalMinutes(int epochDay, @NonNull DayWorklog worklog) {
+        try {
+            return TotalCalculator.calculatePastDayTotalMinutes(worklog);
+        } catch (IncoherentMarkersException e) {
+            // not counted
+            Logger.getLogger(TotalsIndexStorageService.class.getName()).log(Level.WARNING,
+                    "Incoherent markers on day {0}", EpochDays.toDayKey(epochDay));
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package eu.leneurone.timelog.services.impl;
+
+import android.support.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.services.codec.DayWorklogCodec;
+
+/**
+ * Write-ahead log of the saved days : a save is durable once its record is in the log, even if the
+ * crash happens while the day file is written.
+ * <br />
+ * Each record holds the day, the day worklog encoded with {@link DayWorklogCodec}, and the CRC32 of
+ * both. The records of a batch of saves are appended, then synced once (group commit). On recovery,
+ * the valid records are returned, and the torn or corrupted tail left by a crash is truncated.
+ * <br />
+ * This class isn't thread safe : the callers must synchronize the calls.
+ */
+public class WriteAheadLog {
+
+    /** size of a record : day (int), encoded day worklog, CRC32 (int) */
+    static final int RECORD_SIZE = 4 + DayWorklogCodec.RECORD_SIZE + 4;
+
+    /** the log file */
+    private final File file;
+
+    /** the opened log, positioned at its end. Null until opened. */
+    private RandomAccessFile log;
+
+    /** number of records in the log */
+    private int recordCount;
+
+    /**
+     * @param file the log file (not null)
+     */
+    public WriteAheadLog(@NonNull File file) {
+        this.file = file;
+    }
+
+    /**
+     * Opens the log and reads its valid records. The records following a torn or corrupted one are
+     * dropped.
+     * @return the latest logged worklog of each day, by epoch day
+     * @throws IOException if the log couldn't have been read
+     */
+    @NonNull
+    public Map<Integer, DayWorklog> recover() throws IOException {
+        close();
+        log = new RandomAccessFile(file, "rw");
+        Map<Integer, DayWorklog> worklogs = new TreeMap<>();
+        long length = log.length();
+        byte[] bytes = new byte[(int) Math.min(length, Integer.MAX_VALUE)];
+        log.readFully(bytes);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        CRC32 checksum = new CRC32();
+        int count = 0;
+        while (buffer.remaining() >= RECORD_SIZE) {
+            int offset = buffer.position();
+            checksum.reset();
+            checksum.update(bytes, offset, RECORD_SIZE - 4);
+            int day = buffer.getInt();
+            buffer.position(offset + RECORD_SIZE - 4);
+            if (buffer.getInt() != (int) checksum.getValue()) {
+                break;
+            }
+            worklogs.put(day, DayWorklogCodec.decode(bytes, offset + 4));
+            count++;
+        }
+        long validLength = (long) count * RECORD_SIZE;
+        if (validLength != length) {
+            // the tail was being written during a crash
+            Logger.getLogger(WriteAheadLog.class.getName()).log(Level.WARNING,
+                    "Truncating the log tail : {0} bytes", length - validLength);
+            log.setLength(validLength);
+            log.getFD().sync();
+        }
+        log.seek(validLength);
+        recordCount = count;
+        return worklogs;
+    }
+
+    /**
+     * Appends the records of a batch of saves, and syncs them to the disk
+     * @param worklogs the saved worklogs, by epoch day (not null)
+     * @throws IOException if the records couldn't have been written
+     */
+    public void append(@NonNull Map<Integer, DayWorklog> worklogs) throws IOException {
+        if (log == null) {
+            recover();
+        }
+        byte[] bytes = new byte[RECORD_SIZE * worklogs.size()];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        CRC32 checksum = new CRC32();
+        for (Map.Entry<Integer, DayWorklog> entry : worklogs.entrySet()) {
+            int offset = buffer.position();
+            buffer.putInt(entry.getKey());
+            DayWorklogCodec.encode(entry.getValue(), bytes, offset + 4);
+            checksum.reset();
+            checksum.update(bytes, offset, RECORD_SIZE - 4);
+            buffer.position(offset + RECORD_SIZE - 4);
+            buffer.putInt((int) checksum.getValue());
+        }
+        long end = log.getFilePointer();
+        try {
+            log.write(bytes);
+            // a single sync for the whole batch
+            log.getFD().sync();
+        } catch (IOException ex) {
+            // the batch isn't durable : it mustn't be replayed after the next records
+            log.setLength(end);
+            log.seek(end);
+            throw ex;
+        }
+        recordCount += worklogs.size();
+    }
+
+    /**
+     * @return the number of records in the log
+     */
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Empties the log. Must only be called once the logged days are durable in their files.
+     * @throws IOException if the log couldn't have been truncated
+     */
+    public void truncate() throws IOException {
+        if (log == null) {
+            recover();
+        }
+        log.setLength(0);
+        log.getFD().sync();
+        log.seek(0);
+        recordCount = 0;
+    }
+
+    /**
+     * Closes the log. It will be recovered again on next use.
+     */
+    public void close() {
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                // nothing more can be done
+            }
+            log = null;
+        }
+    }
+}
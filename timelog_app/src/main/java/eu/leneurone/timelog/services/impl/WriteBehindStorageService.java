@@ -0,0 +1,286 @@
+package eu.leneurone.timelog.services.impl;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.services.SaveHandle;
+import eu.leneurone.timelog.services.StorageService;
+
+/**
+ * Storage service saving the days in the background, in front of another storage service.
+ * <br />
+ * The saves are performed by a single writer thread. While a save is waiting for the writer, a new
+ * save of the same day replaces its data : only the latest data is written. The saves waiting
+ * together are written at once, so the underlying storage syncs them once. The
+ * reads take the saves not written yet into account, so they always return the latest saved data.
+ */
+public class WriteBehindStorageService extends AbstractStorageService {
+
+    /** the underlying storage */
+    private final StorageService delegate;
+
+    /** the saves waiting for the writer, by epoch day */
+    private final Map<Integer, PendingSave> pendingSaves = new HashMap<>();
+
+    /** the saves being written, by epoch day. Guarded by the lock of pendingSaves. */
+    private final Map<Integer, PendingSave> writingSaves = new HashMap<>();
+
+    /** performs the saves */
+    private final ExecutorService writer;
+
+    public WriteBehindStorageService(@NonNull StorageService delegate) {
+        this.delegate = delegate;
+        this.writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "TimeLog-writer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Saves the worklog of a day in the background
+     * @param epochDay the day, as an epoch day
+     * @param worklog the worklog (not null). It is copied, so it can be modified once this method
+     *                returns.
+     * @param context the application context (not null)
+     * @return the handle of the save. If a save of the same day was still waiting for the writer,
+     * its handle is returned, since both saves are done at once.
+     */
+    @NonNull
+    public SaveHandle storeDayAsync(final int epochDay, @NonNull DayWorklog worklog, @NonNull Context context) {
+        synchronized (pendingSaves) {
+            PendingSave pendingSave = pendingSaves.get(epochDay);
+            if (pendingSave != null) {
+                // coalesce with the save not performed yet
+                pendingSave.worklog = new DayWorklog(worklog);
+                return pendingSave.handle;
+            }
+            pendingSave = new PendingSave(new DayWorklog(worklog), context);
+            // if other saves are waiting, the task scheduled for them will write this one too
+            boolean scheduled = !pendingSaves.isEmpty();
+            pendingSaves.put(epochDay, pendingSave);
+            if (!scheduled) {
+                writer.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        writePendingSaves();
+                    }
+                });
+            }
+            return pendingSave.handle;
+        }
+    }
+
+    // writes all the saves waiting for the writer at once (group commit) : the saves requested
+    // while the previous write was running share a single write of the underlying storage
+    private void writePendingSaves() {
+        synchronized (pendingSaves) {
+            if (pendingSaves.isEmpty()) {
+                // already written by a previous task
+                return;
+            }
+            // from now on, a new save of these days will need another write
+            writingSaves.putAll(pendingSaves);
+            pendingSaves.clear();
+        }
+        IOException error = null;
+        try {
+            if (writingSaves.size() == 1) {
+                Map.Entry<Integer, PendingSave> entry = writingSaves.entrySet().iterator().next();
+                delegate.storeDay(entry.getKey(), entry.getValue().worklog, entry.getValue().context);
+            } else {
+                Map<Integer, DayWorklog> worklogs = new HashMap<>();
+                Context context = null;
+                for (Map.Entry<Integer, PendingSave> entry : writingSaves.entrySet()) {
+                    worklogs.put(entry.getKey(), entry.getValue().worklog);
+                    context = entry.getValue().context;
+                }
+                delegate.storeDays(worklogs, context);
+            }
+        } catch (IOException ex) {
+            error = ex;
+        }
+        List<PendingSave> writtenSaves;
+        synchronized (pendingSaves) {
+            // the reads can now be served by the underlying storage
+            writtenSaves = new ArrayList<>(writingSaves.values());
+            writingSaves.clear();
+        }
+        for (PendingSave save : writtenSaves) {
+            save.handle.complete(error);
+        }
+    }
+
+    /**
+     * Saves the worklog of a day, and waits for the end of the save
+     */
+    @Override
+    public void storeDay(int epochDay, @NonNull DayWorklog worklog, @NonNull Context context) throws IOException {
+        SaveHandle handle = storeDayAsync(epochDay, worklog, context);
+        try {
+            handle.await(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while saving", e);
+        }
+        IOException error = handle.getError();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Saves the worklogs of several days, and waits for the end of the saves. The days are queued
+     * together, so the writer stores them in a single write.
+     */
+    @Override
+    public void storeDays(@NonNull Map<Integer, DayWorklog> worklogs, @NonNull Context context) throws IOException {
+        List<SaveHandle> handles = new ArrayList<>(worklogs.size());
+        // the writer can't take the pending saves before they're all queued
+        synchronized (pendingSaves) {
+            for (Map.Entry<Integer, DayWorklog> entry : worklogs.entrySet()) {
+                handles.add(storeDayAsync(entry.getKey(), entry.getValue(), context));
+            }
+        }
+        IOException error = null;
+        for (SaveHandle handle : handles) {
+            try {
+                handle.await(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while saving", e);
+            }
+            if (error == null) {
+                error = handle.getError();
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    @NonNull
+    @Override
+    public DayWorklog loadDay(int epochDay, @NonNull Context context) {
+        DayWorklog pendingWorklog = getPendingWorklog(epochDay);
+        return pendingWorklog != null ? pendingWorklog : delegate.loadDay(epochDay, context);
+    }
+
+    @NonNull
+    @Override
+    public Map<Integer, DayWorklog> loadDays(int fromEpochDay, int toEpochDay, @NonNull Context context) {
+        // the saves not written yet are collected first : the ones which are written meanwhile
+        // will be read from the underlying storage
+        Map<Integer, DayWorklog> unwrittenWorklogs = getUnwrittenWorklogs();
+        return withUnwrittenWorklogs(delegate.loadDays(fromEpochDay, toEpochDay, context), unwrittenWorklogs);
+    }
+
+    @NonNull
+    @Override
+    public Map<Integer, DayWorklog> scanDays(int fromEpochDay, int toEpochDay, @NonNull Context context) {
+        Map<Integer, DayWorklog> unwrittenWorklogs = getUnwrittenWorklogs();
+        return withUnwrittenWorklogs(delegate.scanDays(fromEpochDay, toEpochDay, context), unwrittenWorklogs);
+    }
+
+    // replaces the read days by their saves not written yet
+    @NonNull
+    private static Map<Integer, DayWorklog> withUnwrittenWorklogs(@NonNull Map<Integer, DayWorklog> data,
+                                                                  @NonNull Map<Integer, DayWorklog> unwrittenWorklogs) {
+        if (!unwrittenWorklogs.isEmpty()) {
+            for (Map.Entry<Integer, DayWorklog> entry : data.entrySet()) {
+                DayWorklog worklog = unwrittenWorklogs.get(entry.getKey());
+                if (worklog != null) {
+                    entry.setValue(new DayWorklog(worklog));
+                }
+            }
+        }
+        return data;
+    }
+
+    @NonNull
+    @Override
+    protected DayWorklog readDay(int epochDay, @NonNull Context context) {
+        return loadDay(epochDay, context);
+    }
+
+    @Override
+    public int findPreviousLoggedDay(int epochDay, @NonNull Context context) {
+        return findLoggedDay(epochDay, false, context);
+    }
+
+    @Override
+    public int findNextLoggedDay(int epochDay, @NonNull Context context) {
+        return findLoggedDay(epochDay, true, context);
+    }
+
+    // the nearest logged day in the given direction, taking the saves not written yet into account
+    private int findLoggedDay(int epochDay, boolean next, @NonNull Context context) {
+        Map<Integer, DayWorklog> unwrittenWorklogs = getUnwrittenWorklogs();
+        int found = next ? delegate.findNextLoggedDay(epochDay, context) : delegate.findPreviousLoggedDay(epochDay, context);
+        DayWorklog unwritten;
+        while (found != NO_DAY && (unwritten = unwrittenWorklogs.get(found)) != null && unwritten.isEmpty()) {
+            // the day is being emptied
+            found = next ? delegate.findNextLoggedDay(found, context) : delegate.findPreviousLoggedDay(found, context);
+        }
+        for (Map.Entry<Integer, DayWorklog> entry : unwrittenWorklogs.entrySet()) {
+            int day = entry.getKey();
+            if (!entry.getValue().isEmpty() && (next ? day > epochDay : day < epochDay)
+                    && (found == NO_DAY || (next ? day < found : day > found))) {
+                found = day;
+            }
+        }
+        return found;
+    }
+
+    // the latest data saved for each day and not written yet
+    @NonNull
+    private Map<Integer, DayWorklog> getUnwrittenWorklogs() {
+        Map<Integer, DayWorklog> unwrittenWorklogs = new HashMap<>();
+        synchronized (pendingSaves) {
+            for (Map.Entry<Integer, PendingSave> entry : writingSaves.entrySet()) {
+                unwrittenWorklogs.put(entry.getKey(), entry.getValue().worklog);
+            }
+            for (Map.Entry<Integer, PendingSave> entry : pendingSaves.entrySet()) {
+                unwrittenWorklogs.put(entry.getKey(), entry.getValue().worklog);
+            }
+        }
+        return unwrittenWorklogs;
+    }
+
+    // a copy of the latest data saved for this day and not written yet, or null if there's none
+    private DayWorklog getPendingWorklog(int epochDay) {
+        synchronized (pendingSaves) {
+            PendingSave save = pendingSaves.get(epochDay);
+            if (save == null) {
+                save = writingSaves.get(epochDay);
+            }
+            return save != null ? new DayWorklog(save.worklog) : null;
+        }
+    }
+
+    // a save waiting for the writer
+    private static class PendingSave {
+        private DayWorklog worklog;
+        private final Context context;
+        private final SaveHandle handle = new SaveHandle();
+
+        PendingSave(@NonNull DayWorklog worklog, @NonNull Context context) {
+            this.worklog = worklog;
+            this.context = context;
+        }
+    }
+}
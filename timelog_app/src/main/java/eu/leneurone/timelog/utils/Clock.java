@@ -0,0 +1,88 @@
+package eu.leneurone.timelog.utils;
+
+import android.support.annotation.NonNull;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Source of the current day and time. The calculations depending on the current time take a clock,
+ * so they can be given a fixed one (e.g. in the tests).
+ */
+public abstract class Clock {
+
+    /** number of milliseconds in a minute */
+    private static final long MILLIS_PER_MINUTE = 60 * 1000;
+
+    /** the clock of the system, in the default time zone */
+    public static final Clock SYSTEM = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+
+        @NonNull
+        @Override
+        public TimeZone getTimeZone() {
+            return TimeZone.getDefault();
+        }
+    };
+
+    /**
+     * @param now the instant and the time zone of the clock (not null)
+     * @return a clock always returning the given instant
+     */
+    @NonNull
+    public static Clock fixed(@NonNull Calendar now) {
+        final long millis = now.getTimeInMillis();
+        final TimeZone zone = now.getTimeZone();
+        return new Clock() {
+            @Override
+            public long currentTimeMillis() {
+                return millis;
+            }
+
+            @NonNull
+            @Override
+            public TimeZone getTimeZone() {
+                return zone;
+            }
+        };
+    }
+
+    /**
+     * @return the current instant, in milliseconds since the epoch
+     */
+    public abstract long currentTimeMillis();
+
+    /**
+     * @return the time zone of the clock
+     */
+    @NonNull
+    public abstract TimeZone getTimeZone();
+
+    /**
+     * @return the current day, as an epoch day
+     */
+    public int today() {
+        return EpochDays.ofMillis(currentTimeMillis(), getTimeZone());
+    }
+
+    /**
+     * @return the current time, in minutes from midnight
+     */
+    public int minutesOfDay() {
+        long millis = currentTimeMillis();
+        long localMillis = millis + getTimeZone().getOffset(millis);
+        return (int) (EpochDays.floorMod(localMillis, EpochDays.MILLIS_PER_DAY) / MILLIS_PER_MINUTE);
+    }
+
+    /**
+     * @return the time left until the next minute, in milliseconds (from 1 to 60000)
+     */
+    public long millisToNextMinute() {
+        long millis = currentTimeMillis();
+        long localMillis = millis + getTimeZone().getOffset(millis);
+        return MILLIS_PER_MINUTE - EpochDays.floorMod(localMillis, MILLIS_PER_MINUTE);
+    }
+}
@@ -0,0 +1,178 @@
+package eu.leneurone.timelog.utils;
+
+import android.support.annotation.NonNull;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Utils for identifying the days by their number of days since 1970-01-01 (the epoch day), in
+ * the proleptic Gregorian calendar. Unlike Calendar, an epoch day is a plain int : comparing two
+ * days, moving to the next one or to the start of the week is an integer operation.
+ */
+public final class EpochDays {
+
+    /** number of days in a 400 years cycle */
+    private static final int DAYS_PER_CYCLE = 146097;
+
+    /** number of days from 0000-03-01 to 1970-01-01 */
+    private static final int DAYS_0000_TO_1970 = 719468;
+
+    /** number of milliseconds in a day */
+    static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private EpochDays() {
+    }
+
+    /**
+     * @param day the day (not null). Only its year, month and day of month are used.
+     * @return the epoch day
+     */
+    public static int of(@NonNull Calendar day) {
+        return of(day.get(Calendar.YEAR), day.get(Calendar.MONTH) + 1, day.get(Calendar.DAY_OF_MONTH));
+    }
+
+    /**
+     * @param year the year
+     * @param month the month, from 1 (January) to 12
+     * @param dayOfMonth the day of the month, from 1
+     * @return the epoch day
+     */
+    public static int of(int year, int month, int dayOfMonth) {
+        // the years are counted from March, so the leap day is the last day of the year
+        int marchYear = month <= 2 ? year - 1 : year;
+        int cycle = (marchYear >= 0 ? marchYear : marchYear - 399) / 400;
+        int yearOfCycle = marchYear - cycle * 400;
+        int dayOfYear = (153 * ((month + 9) % 12) + 2) / 5 + dayOfMonth - 1;
+        int dayOfCycle = yearOfCycle * 365 + yearOfCycle / 4 - yearOfCycle / 100 + dayOfYear;
+        return cycle * DAYS_PER_CYCLE + dayOfCycle - DAYS_0000_TO_1970;
+    }
+
+    /**
+     * @param date the instant (not null)
+     * @return the epoch day of the instant, in the default time zone
+     */
+    public static int of(@NonNull Date date) {
+        return ofMillis(date.getTime(), TimeZone.getDefault());
+    }
+
+    /**
+     * @param millis the instant, in milliseconds since the epoch
+     * @param zone the time zone (not null)
+     * @return the epoch day of the instant in the time zone
+     */
+    public static int ofMillis(long millis, @NonNull TimeZone zone) {
+        return (int) floorDiv(millis + zone.getOffset(millis), MILLIS_PER_DAY);
+    }
+
+    /**
+     * @param epochDay the day
+     * @return the day as an int : yyyyMMdd
+     */
+    public static int toDayKey(int epochDay) {
+        // the years are counted from March, so the leap day is the last day of the year
+        int shifted = epochDay + DAYS_0000_TO_1970;
+        int cycle = (shifted >= 0 ? shifted : shifted - DAYS_PER_CYCLE + 1) / DAYS_PER_CYCLE;
+        int dayOfCycle = shifted - cycle * DAYS_PER_CYCLE;
+        int yearOfCycle = (dayOfCycle - dayOfCycle / 1460 + dayOfCycle / 36524 - dayOfCycle / 146096) / 365;
+        int dayOfYear = dayOfCycle - (365 * yearOfCycle + yearOfCycle / 4 - yearOfCycle / 100);
+        int marchMonth = (5 * dayOfYear + 2) / 153;
+        int dayOfMonth = dayOfYear - (153 * marchMonth + 2) / 5 + 1;
+        int month = marchMonth < 10 ? marchMonth + 3 : marchMonth - 9;
+        int year = yearOfCycle + cycle * 400 + (month <= 2 ? 1 : 0);
+        return year * 10000 + month * 100 + dayOfMonth;
+    }
+
+    /**
+     * @param epochDay the day
+     * @return the year of the day
+     */
+    public static int year(int epochDay) {
+        return toDayKey(epochDay) / 10000;
+    }
+
+    /**
+     * @param epochDay the day
+     * @return the month of the day, from 1 (January) to 12
+     */
+    public static int month(int epochDay) {
+        return toDayKey(epochDay) / 100 % 100;
+    }
+
+    /**
+     * @param epochDay the day
+     * @return the day of the month, from 1
+     */
+    public static int dayOfMonth(int epochDay) {
+        return toDayKey(epochDay) % 100;
+    }
+
+    /**
+     * @param epochDay the day
+     * @return the day of the year, from 1
+     */
+    public static int dayOfYear(int epochDay) {
+        return epochDay - firstDayOfYear(epochDay) + 1;
+    }
+
+    /**
+     * @param epochDay the day
+     * @return the day of the week, from 1 (Monday) to 7 (Sunday)
+     */
+    public static int dayOfWeek(int epochDay) {
+        // 1970-01-01 was a Thursday
+        return (int) floorMod(epochDay + 3, 7) + 1;
+    }
+
+    /**
+     * @param epochDay the day
+     * @return the Monday of the week of the day
+     */
+    public static int mondayOf(int epochDay) {
+        return epochDay - dayOfWeek(epochDay) + 1;
+    }
+
+    /**
+     * @param epochDay the day
+     * @return the first day of the month of the day
+     */
+    public static int firstDayOfMonth(int epochDay) {
+        return epochDay - dayOfMonth(epochDay) + 1;
+    }
+
+    /**
+     * @param epochDay the day
+     * @return the first day of the year of the day
+     */
+    public static int firstDayOfYear(int epochDay) {
+        return of(year(epochDay), 1, 1);
+    }
+
+    /**
+     * @param epochDay the day
+     * @return the day at midnight, in the default time zone
+     */
+    @NonNull
+    public static Calendar toCalendar(int epochDay) {
+        int key = toDayKey(epochDay);
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(key / 10000, key / 100 % 100 - 1, key % 100);
+        return calendar;
+    }
+
+    // integer division rounding towards negative infinity (Math.floorDiv needs Java 8)
+    static long floorDiv(long dividend, long divisor) {
+        long quotient = dividend / divisor;
+        if ((dividend % divisor != 0) && ((dividend < 0) != (divisor < 0))) {
+            quotient--;
+        }
+        return quotient;
+    }
+
+    // remainder of floorDiv, of the sign of the divisor
+    static long floorMod(long dividend, long divisor) {
+        return dividend - floorDiv(dividend, divisor) * divisor;
+    }
+}
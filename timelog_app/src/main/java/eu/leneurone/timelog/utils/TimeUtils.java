@@ -19,4 +19,44 @@ public class TimeUtils {
     public static String formatTime(@NonNull Time time) {
         return String.format(Locale.FRANCE, "%02d:%02d", time.getHour(), time.getMinute());
     }
+
+    /**
+     * Format a signed duration for display
+     * @param duration the duration, possibly negative
+     * @return the string, using format +hh:mm or -hh:mm
+     */
+    public static String formatDuration(@NonNull Time duration) {
+        int minutes = Math.abs(duration.toMinutes());
+        return String.format(Locale.FRANCE, "%s%02d:%02d", duration.toMinutes() < 0 ? "-" : "+",
+                minutes / 60, minutes % 60);
+    }
+
+    /**
+     * Parse a time or a duration entered by the user
+     * @param text the string, using format hh:mm or h:mm (not null)
+     * @return the number of minutes, or -1 if the string isn't valid
+     */
+    public static int parseMinutes(@NonNull String text) {
+        String trimmed = text.trim();
+        int separator = trimmed.indexOf(':');
+        if (separator < 1 || separator > 2 || trimmed.length() != separator + 3) {
+            return -1;
+        }
+        int hours = parseDigits(trimmed, 0, separator);
+        int minutes = parseDigits(trimmed, separator + 1, trimmed.length());
+        return hours < 0 || minutes < 0 || minutes >= 60 ? -1 : hours * 60 + minutes;
+    }
+
+    // the value of a run of digits, or -1
+    private static int parseDigits(@NonNull String text, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
 }
@@ -0,0 +1,63 @@
+package eu.leneurone.timelog.validators;
+
+import android.support.annotation.NonNull;
+
+import eu.leneurone.timelog.exceptions.IncoherentMarkersException;
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.model.IntervalDay;
+import eu.leneurone.timelog.model.Marker;
+
+/**
+ * Validates the coherency of the intervals of a day
+ */
+public final class IntervalsValidator {
+
+    /** the markers, in chronologic order (Marker.values() returns a new array on each call) */
+    private static final Marker[] MARKERS = Marker.values();
+
+    private IntervalsValidator() {
+    }
+
+    /**
+     * check in a single pass that the intervals are ordered, don't overlap, and don't end before
+     * they start : each punch must be greater or equal to the previous one.
+     *
+     * @param day the intervals (not null)
+     * @throws IncoherentMarkersException if a punch is earlier than the previous one. If the day
+     *                                    comes from the markers model, the exception gives the
+     *                                    incoherent markers, as {@link TimesValidator} does :
+     *                                    otherwise, its markers are null.
+     *                                    Nothing is allocated when the intervals are coherent.
+     */
+    public static void validateIntervals(@NonNull IntervalDay day) throws IncoherentMarkersException {
+        int count = day.getPunchCount();
+        for (int i = 1; i < count; i++) {
+            if (day.getPunch(i) < day.getPunch(i - 1)) {
+                throw buildException(day, i);
+            }
+        }
+        // no error found : each punch is greater or equal to the previous one
+    }
+
+    // the exception about the punch and the previous one
+    @NonNull
+    private static IncoherentMarkersException buildException(@NonNull IntervalDay day, int punch) {
+        int mask = day.getMarkerMask();
+        if (mask == 0) {
+            return new IncoherentMarkersException(null, null);
+        }
+        // the punches are the set markers, in the chronologic order
+        Marker previous = null;
+        int index = 0;
+        for (Marker marker : MARKERS) {
+            if ((mask & DayWorklog.bit(marker)) != 0) {
+                if (index == punch) {
+                    return new IncoherentMarkersException(previous, marker);
+                }
+                previous = marker;
+                index++;
+            }
+        }
+        return new IncoherentMarkersException(null, null);
+    }
+}
@@ -0,0 +1,65 @@
+package eu.leneurone.timelog.widgets;
+
+import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
+import android.appwidget.AppWidgetProvider;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.support.annotation.NonNull;
+import android.widget.RemoteViews;
+
+import eu.leneurone.timelog.R;
+import eu.leneurone.timelog.activities.MainActivity;
+import eu.leneurone.timelog.exceptions.IncoherentMarkersException;
+import eu.leneurone.timelog.math.TotalCalculator;
+import eu.leneurone.timelog.services.LastStateSnapshot;
+import eu.leneurone.timelog.services.WorkRulesPreferences;
+import eu.leneurone.timelog.utils.Clock;
+import eu.leneurone.timelog.utils.TimeUtils;
+
+/**
+ * Home screen widget displaying the total time of the current day and week. It only reads the
+ * {@link LastStateSnapshot} written by the app, never the stored worklogs.
+ */
+public class TodayWidgetProvider extends AppWidgetProvider {
+
+    @Override
+    public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
+        // the process may have been started for the widget only : the rules aren't loaded yet
+        TotalCalculator.setWorkRules(WorkRulesPreferences.read(context));
+        RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.widget_today);
+        LastStateSnapshot snapshot = LastStateSnapshot.read(context);
+        if (snapshot == null) {
+            views.setTextViewText(R.id.widgetDayTotal, context.getString(R.string.time_placeholder));
+            views.setTextViewText(R.id.widgetWeekTotal, context.getString(R.string.time_placeholder));
+        } else {
+            try {
+                views.setTextViewText(R.id.widgetDayTotal, TimeUtils.formatTime(snapshot.calculateTodayTime(Clock.SYSTEM)));
+                views.setTextViewText(R.id.widgetWeekTotal, TimeUtils.formatTime(snapshot.calculateWeekTime(Clock.SYSTEM)));
+            } catch (IncoherentMarkersException e) {
+                views.setTextViewText(R.id.widgetDayTotal, context.getString(R.string.time_placeholder));
+                views.setTextViewText(R.id.widgetWeekTotal, context.getString(R.string.time_placeholder));
+            }
+        }
+        // a click opens the app
+        views.setOnClickPendingIntent(R.id.widgetLayout,
+                PendingIntent.getActivity(context, 0, new Intent(context, MainActivity.class), 0));
+        appWidgetManager.updateAppWidget(appWidgetIds, views);
+    }
+
+    /**
+     * Asks the widgets to display the last stored snapshot
+     * @param context the context (not null)
+     */
+    public static void requestUpdate(@NonNull Context context) {
+        int[] ids = AppWidgetManager.getInstance(context).getAppWidgetIds(new ComponentName(context, TodayWidgetProvider.class));
+        if (ids == null || ids.length == 0) {
+            // no widget on the home screen
+            return;
+        }
+        context.sendBroadcast(new Intent(context, TodayWidgetProvider.class)
+                .setAction(AppWidgetManager.ACTION_APPWIDGET_UPDATE)
+                .putExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS, ids));
+    }
+}
@@ -0,0 +1,72 @@
+package eu.leneurone.timelog;
+
+import android.content.Context;
+
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.model.Marker;
+
+/**
+ * Objects shared by the unit tests
+ */
+public final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    /**
+     * @param root the folder holding the private files of the app (not null)
+     * @return a mocked context whose private files are stored in the given folder
+     */
+    public static Context mockContext(final File root) {
+        Context context = Mockito.mock(Context.class);
+        try {
+            Mockito.when(context.getFilesDir()).thenReturn(root);
+            Mockito.when(context.openFileInput(Mockito.anyString())).thenAnswer(new Answer<FileInputStream>() {
+                @Override
+                public FileInputStream answer(InvocationOnMock invocation) throws Throwable {
+                    return new FileInputStream(new File(root, (String) invocation.getArguments()[0]));
+                }
+            });
+            Mockito.when(context.openFileOutput(Mockito.anyString(), Mockito.anyInt())).thenAnswer(new Answer<FileOutputStream>() {
+                @Override
+                public FileOutputStream answer(InvocationOnMock invocation) throws Throwable {
+                    return new FileOutputStream(new File(root, (String) invocation.getArguments()[0]));
+                }
+            });
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        Mockito.when(context.fileList()).thenAnswer(new Answer<String[]>() {
+            @Override
+            public String[] answer(InvocationOnMock invocation) throws Throwable {
+                return root.list();
+            }
+        });
+        return context;
+    }
+
+    /**
+     * @param seed varies the times of the day : the same seed gives the same worklog
+     * @param lunch whether the day has a lunch break
+     * @return a coherent worklog, from about 8:00 to about 17:00
+     */
+    public static DayWorklog getWorklog(int seed, boolean lunch) {
+        DayWorklog worklog = new DayWorklog();
+        worklog.setMinutes(Marker.MORNING, 8 * 60 + seed % 40);
+        if (lunch) {
+            worklog.setMinutes(Marker.LUNCH_START, 12 * 60 + seed % 15);
+            worklog.setMinutes(Marker.LUNCH_END, 13 * 60 + seed % 20);
+        }
+        worklog.setMinutes(Marker.EVENING, 17 * 60 + seed % 50);
+        return worklog;
+    }
+}
@@ -0,0 +1,48 @@
+package eu.leneurone.timelog.model;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Unit tests for DayWorklog
+ */
+public class DayWorklogTest {
+
+    @Test
+    public void testSetAndRemove() {
+        DayWorklog worklog = new DayWorklog();
+        Assert.assertTrue(worklog.isEmpty());
+
+        worklog.set(Marker.MORNING, Time.of(8, 15));
+        worklog.set(Marker.EVENING, Time.of(0, 0));
+        Assert.assertEquals(2, worklog.size());
+        Assert.assertEquals(0b1001, worklog.getMask());
+        Assert.assertSame(Time.of(8, 15), worklog.get(Marker.MORNING));
+        // a marker set at midnight is still set
+        Assert.assertTrue(worklog.contains(Marker.EVENING));
+        Assert.assertNull(worklog.get(Marker.LUNCH_START));
+
+        worklog.remove(Marker.MORNING);
+        Assert.assertFalse(worklog.contains(Marker.MORNING));
+        Assert.assertEquals(1, worklog.size());
+        worklog.clear();
+        Assert.assertEquals(new DayWorklog(), worklog);
+    }
+
+    @Test
+    public void testMapAdapters() {
+        Map<Marker, Time> times = new HashMap<>();
+        times.put(Marker.MORNING, new Time(8, 15));
+        times.put(Marker.LUNCH_END, new Time(13, 45));
+
+        DayWorklog worklog = DayWorklog.fromMap(times);
+
+        Assert.assertEquals(13 * 60 + 45, worklog.getMinutes(Marker.LUNCH_END));
+        Assert.assertEquals(times, worklog.toMap());
+        Assert.assertEquals(worklog, new DayWorklog(worklog));
+    }
+}
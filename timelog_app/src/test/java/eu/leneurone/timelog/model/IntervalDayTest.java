@@ -0,0 +1,80 @@
+package eu.leneurone.timelog.model;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for IntervalDay, and its mapping from the markers model
+ */
+public class IntervalDayTest {
+
+    @Test
+    public void testFromWorklog_AllMasks() {
+        // every set of markers, coherent or not, maps back to the same worklog
+        for (int mask = 0; mask <= DayWorklog.ALL_MARKERS; mask++) {
+            DayWorklog worklog = new DayWorklog();
+            for (Marker marker : Marker.values()) {
+                if ((mask & DayWorklog.bit(marker)) != 0) {
+                    // the lunch start is after the lunch end
+                    worklog.setMinutes(marker, marker == Marker.LUNCH_START ? 14 * 60 : 8 * 60 + 60 * marker.ordinal());
+                }
+            }
+            IntervalDay day = IntervalDay.fromWorklog(worklog);
+            Assert.assertEquals(worklog.size(), day.getPunchCount());
+            Assert.assertEquals(mask, day.getMarkerMask());
+            Assert.assertEquals(worklog, day.toWorklog());
+            Assert.assertEquals(day, new IntervalDay(day));
+        }
+    }
+
+    @Test
+    public void testIntervals() {
+        IntervalDay day = new IntervalDay();
+        day.punch(7 * 60);
+        Assert.assertTrue(day.isOpen());
+        day.punch(9 * 60);
+        day.punch(17 * 60);
+        // inserted in the chronologic order, before the open interval
+        day.addInterval(13 * 60, 15 * 60);
+        day.addInterval(10 * 60, 12 * 60);
+
+        Assert.assertEquals(4, day.getIntervalCount());
+        Assert.assertTrue(day.isOpen());
+        int[] expected = {7 * 60, 9 * 60, 10 * 60, 12 * 60, 13 * 60, 15 * 60, 17 * 60};
+        Assert.assertEquals(expected.length, day.getPunchCount());
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertEquals(expected[i], day.getPunch(i));
+        }
+        Assert.assertEquals("[7:0 - 9:0, 10:0 - 12:0, 13:0 - 15:0, 17:0 - ...]", day.toString());
+        // more than the markers can hold
+        Assert.assertNull(day.toWorklog());
+    }
+
+    @Test
+    public void testEditedWorklog() {
+        DayWorklog worklog = new DayWorklog();
+        worklog.set(Marker.MORNING, Time.of(8, 0));
+        IntervalDay day = IntervalDay.fromWorklog(worklog);
+        // the markers of the day would be lost
+        try {
+            day.punch(12 * 60);
+            Assert.fail("the day comes from the markers");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            day.addInterval(13 * 60, 17 * 60);
+            Assert.fail("the day comes from the markers");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        Assert.assertEquals(worklog, day.toWorklog());
+
+        // once cleared, the day is free
+        day.clear();
+        day.punch(9 * 60);
+        Assert.assertTrue(day.isOpen());
+        Assert.assertNull(day.toWorklog());
+    }
+}
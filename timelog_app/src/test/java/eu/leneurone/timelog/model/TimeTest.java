@@ -0,0 +1,92 @@
+package eu.leneurone.timelog.model;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Unit tests for Time
+ */
+public class TimeTest {
+
+    /** Time(8, 15) serialized by the former implementation (with an Integer hour and an Integer minute) */
+    private static final String FORMER_SERIALIZED_TIME = "aced00057372001f65752e6c656e6575726f6e652e74696d656c6f672e"
+            + "6d6f64656c2e54696d65f1018da0dae4c2b90200024c0004686f75727400134c6a6176612f6c616e672f496e7465676572"
+            + "3b4c00066d696e75746571007e00017870737200116a6176612e6c616e672e496e746567657212e2a0a4f7818738020001"
+            + "49000576616c7565787200106a6176612e6c616e672e4e756d62657286ac951d0b94e08b0200007870000000087371007e"
+            + "00030000000f";
+
+    @Test
+    public void testOf_SharedInstances() {
+        Assert.assertSame(Time.of(8, 15), Time.of(8, 15));
+        Assert.assertSame(Time.of(0, 0), Time.ofMinutes(0));
+        Assert.assertSame(Time.of(23, 59), Time.ofMinutes(23 * 60 + 59));
+        Assert.assertEquals(new Time(8, 15), Time.of(8, 15));
+    }
+
+    @Test
+    public void testOfMinutes_Durations() {
+        // more than a day
+        Time weekTotal = Time.ofMinutes(38 * 60 + 20);
+        Assert.assertEquals(38, weekTotal.getHour());
+        Assert.assertEquals(20, weekTotal.getMinute());
+        Assert.assertEquals(new Time(38, 20), weekTotal);
+        // negative, as before : both the hour and the minute are negative
+        Time negative = Time.ofMinutes(-75);
+        Assert.assertEquals(-1, negative.getHour());
+        Assert.assertEquals(-15, negative.getMinute());
+        Assert.assertEquals(new Time(-1, -15), negative);
+    }
+
+    @Test
+    public void testCompareTo() {
+        Assert.assertTrue(Time.of(8, 15).compareTo(Time.of(9, 0)) < 0);
+        Assert.assertTrue(Time.of(9, 1).compareTo(Time.of(9, 0)) > 0);
+        Assert.assertEquals(0, Time.of(9, 0).compareTo(new Time(9, 0)));
+    }
+
+    @Test
+    public void testSerialization_SameFields() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(Time.of(8, 15));
+        out.writeObject(Time.ofMinutes(40 * 60));
+        out.close();
+
+        // the class descriptor declares the former fields
+        Assert.assertTrue(toHex(bytes.toByteArray()).contains("4c0004686f75727400134c6a6176612f6c616e672f496e74656765723b"));
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        Assert.assertSame(Time.of(8, 15), in.readObject());
+        Assert.assertEquals(Time.ofMinutes(40 * 60), in.readObject());
+    }
+
+    @Test
+    public void testDeserialization_FormerForm() throws IOException, ClassNotFoundException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(fromHex(FORMER_SERIALIZED_TIME)));
+        Object time = in.readObject();
+
+        Assert.assertSame(Time.of(8, 15), time);
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder();
+        for (byte b : bytes) {
+            builder.append(String.format("%02x", b));
+        }
+        return builder.toString();
+    }
+
+    private static byte[] fromHex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,55 @@
+package eu.leneurone.timelog.services;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.model.Marker;
+import eu.leneurone.timelog.model.Time;
+import eu.leneurone.timelog.utils.Clock;
+import eu.leneurone.timelog.utils.EpochDays;
+
+/**
+ * Unit tests for the totals computed from a LastStateSnapshot, as displayed by the widget
+ */
+public class LastStateSnapshotTest {
+
+    @Test
+    public void testTotals_Today() throws Exception {
+        // Wednesday, 15:30
+        Calendar now = new GregorianCalendar(2016, Calendar.NOVEMBER, 2, 15, 30);
+        LastStateSnapshot snapshot = new LastStateSnapshot(EpochDays.of(now), getWorklog(), Time.of(16, 0));
+
+        Assert.assertEquals(EpochDays.of(now), snapshot.getEpochDay());
+        // 4:00 in the morning, then 2:30 since the end of the lunch break
+        Assert.assertEquals(Time.of(6, 30), snapshot.calculateTodayTime(Clock.fixed(now)));
+        Assert.assertEquals(Time.of(22, 30), snapshot.calculateWeekTime(Clock.fixed(now)));
+    }
+
+    @Test
+    public void testTotals_PreviousDay() throws Exception {
+        // the snapshot is about Wednesday, it's now Thursday
+        Calendar now = new GregorianCalendar(2016, Calendar.NOVEMBER, 3, 9, 0);
+        LastStateSnapshot snapshot = new LastStateSnapshot(EpochDays.of(now) - 1, getWorklog(), Time.of(16, 0));
+
+        Assert.assertEquals(Time.of(0, 0), snapshot.calculateTodayTime(Clock.fixed(now)));
+        // the time since the end of the lunch break isn't counted anymore
+        Assert.assertEquals(Time.of(20, 0), snapshot.calculateWeekTime(Clock.fixed(now)));
+
+        // next week
+        now.add(Calendar.DAY_OF_YEAR, 4);
+        Assert.assertEquals(Time.of(0, 0), snapshot.calculateWeekTime(Clock.fixed(now)));
+    }
+
+    private DayWorklog getWorklog() {
+        DayWorklog worklog = new DayWorklog();
+        worklog.set(Marker.MORNING, Time.of(8, 0));
+        worklog.set(Marker.LUNCH_START, Time.of(12, 0));
+        worklog.set(Marker.LUNCH_END, Time.of(13, 0));
+        return worklog;
+    }
+}
@@ -0,0 +1,179 @@
+package eu.leneurone.timelog.services;
+
+import android.content.Context;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Map;
+import java.util.TreeMap;
+
+import eu.leneurone.timelog.Fixtures;
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.model.Marker;
+import eu.leneurone.timelog.model.Time;
+import eu.leneurone.timelog.services.impl.AbstractStorageService;
+import eu.leneurone.timelog.utils.Clock;
+import eu.leneurone.timelog.utils.EpochDays;
+
+/**
+ * Unit tests for WorklogExporter
+ */
+public class WorklogExporterTest {
+
+    /** Wednesday, 2 November 2016, 15:30 */
+    private static final Calendar NOW = new GregorianCalendar(2016, Calendar.NOVEMBER, 2, 15, 30);
+
+    private Context appCtx;
+
+    private MemoryStorageService service;
+
+    @Before
+    public void prepare() {
+        appCtx = Mockito.mock(Context.class);
+        service = new MemoryStorageService();
+    }
+
+    @Test
+    public void testCsv() throws IOException {
+        storeSampleDays();
+        StringWriter output = new StringWriter();
+        int count = new WorklogExporter(service, WorklogExporter.Format.CSV, Clock.fixed(NOW)).export(output, null, appCtx);
+
+        Assert.assertEquals(3, count);
+        Assert.assertEquals("date,morning,lunch_start,lunch_end,evening,total\n"
+                + "2015-12-31,08:00,12:00,13:00,17:30,08:30\n"
+                + "2016-01-04,09:00,08:00,,,\n"
+                + "2016-11-02,08:00,12:00,13:00,,06:30\n", output.toString());
+    }
+
+    @Test
+    public void testJson() throws IOException {
+        storeSampleDays();
+        StringWriter output = new StringWriter();
+        new WorklogExporter(service, WorklogExporter.Format.JSON, Clock.fixed(NOW)).export(output, null, appCtx);
+
+        Assert.assertEquals("[\n"
+                + "{\"date\":\"2015-12-31\",\"morning\":\"08:00\",\"lunchStart\":\"12:00\",\"lunchEnd\":\"13:00\",\"evening\":\"17:30\",\"total\":\"08:30\"},\n"
+                + "{\"date\":\"2016-01-04\",\"morning\":\"09:00\",\"lunchStart\":\"08:00\",\"total\":null},\n"
+                + "{\"date\":\"2016-11-02\",\"morning\":\"08:00\",\"lunchStart\":\"12:00\",\"lunchEnd\":\"13:00\",\"total\":\"06:30\"}\n"
+                + "]\n", output.toString());
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        StringWriter output = new StringWriter();
+        Assert.assertEquals(0, new WorklogExporter(service, WorklogExporter.Format.JSON, Clock.fixed(NOW)).export(output, null, appCtx));
+        Assert.assertEquals("[\n]\n", output.toString());
+    }
+
+    @Test
+    public void testProgressAndCancel() throws IOException {
+        for (int day = EpochDays.of(2016, 1, 1); day < EpochDays.of(2016, 7, 1); day++) {
+            service.storeDay(day, Fixtures.getWorklog(day, true), appCtx);
+        }
+        final WorklogExporter exporter = new WorklogExporter(service, WorklogExporter.Format.CSV, Clock.fixed(NOW));
+        final int[] lastPercent = {-1};
+        int count = exporter.export(new StringWriter(), new WorklogExporter.ProgressListener() {
+            @Override
+            public void onProgress(int exportedDays, int percent) {
+                Assert.assertTrue(percent > lastPercent[0]);
+                lastPercent[0] = percent;
+                if (exportedDays >= 60) {
+                    // after february : march isn't exported
+                    exporter.cancel();
+                }
+            }
+        }, appCtx);
+        Assert.assertEquals(-1, count);
+        Assert.assertEquals(60 * 100 / 182, lastPercent[0]);
+    }
+
+    @Test
+    public void testTenYears() throws IOException {
+        for (int day = EpochDays.of(2007, 1, 1); day < EpochDays.of(2017, 1, 1); day++) {
+            if (EpochDays.dayOfWeek(day) <= 5) {
+                service.storeDay(day, Fixtures.getWorklog(day, true), appCtx);
+            }
+        }
+        // the output isn't kept : only its length
+        final long[] length = {0};
+        Writer output = new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int count) {
+                length[0] += count;
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        int count = new WorklogExporter(service, WorklogExporter.Format.CSV, Clock.fixed(NOW)).export(output, null, appCtx);
+
+        Assert.assertEquals(service.days.size(), count);
+        Assert.assertEquals(49 + 41L * count, length[0]);
+    }
+
+    private void storeSampleDays() throws IOException {
+        DayWorklog full = new DayWorklog();
+        full.set(Marker.MORNING, Time.of(8, 0));
+        full.set(Marker.LUNCH_START, Time.of(12, 0));
+        full.set(Marker.LUNCH_END, Time.of(13, 0));
+        full.set(Marker.EVENING, Time.of(17, 30));
+        service.storeDay(EpochDays.of(2015, 12, 31), full, appCtx);
+        // incoherent : no total
+        DayWorklog incoherent = new DayWorklog();
+        incoherent.set(Marker.MORNING, Time.of(9, 0));
+        incoherent.set(Marker.LUNCH_START, Time.of(8, 0));
+        service.storeDay(EpochDays.of(2016, 1, 4), incoherent, appCtx);
+        // today : counted until now
+        DayWorklog today = new DayWorklog(full);
+        today.remove(Marker.EVENING);
+        service.storeDay(EpochDays.of(NOW), today, appCtx);
+    }
+
+    // the days in memory
+    private static class MemoryStorageService extends AbstractStorageService {
+
+        private final TreeMap<Integer, DayWorklog> days = new TreeMap<>();
+
+        @Override
+        public void storeDay(int epochDay, DayWorklog worklog, Context context) {
+            if (worklog.isEmpty()) {
+                days.remove(epochDay);
+            } else {
+                days.put(epochDay, new DayWorklog(worklog));
+            }
+        }
+
+        @Override
+        protected DayWorklog readDay(int epochDay, Context context) {
+            DayWorklog worklog = days.get(epochDay);
+            return worklog != null ? new DayWorklog(worklog) : new DayWorklog();
+        }
+
+        @Override
+        public int findPreviousLoggedDay(int epochDay, Context context) {
+            Map.Entry<Integer, DayWorklog> entry = days.lowerEntry(epochDay);
+            return entry != null ? entry.getKey() : NO_DAY;
+        }
+
+        @Override
+        public int findNextLoggedDay(int epochDay, Context context) {
+            Map.Entry<Integer, DayWorklog> entry = days.higherEntry(epochDay);
+            return entry != null ? entry.getKey() : NO_DAY;
+        }
+    }
+}
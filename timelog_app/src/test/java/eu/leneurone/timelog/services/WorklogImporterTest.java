@@ -0,0 +1,146 @@
+package eu.leneurone.timelog.services;
+
+import android.content.Context;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Map;
+
+import eu.leneurone.timelog.Fixtures;
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.model.Marker;
+import eu.leneurone.timelog.model.Time;
+import eu.leneurone.timelog.services.impl.ConcurrentStorageServiceImpl;
+import eu.leneurone.timelog.services.impl.WriteBehindStorageService;
+import eu.leneurone.timelog.utils.Clock;
+import eu.leneurone.timelog.utils.EpochDays;
+
+/**
+ * Unit tests for WorklogImporter
+ */
+public class WorklogImporterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Context appCtx;
+
+    private StorageService service;
+
+    @Before
+    public void prepare() {
+        appCtx = Fixtures.mockContext(folder.getRoot());
+        service = new WriteBehindStorageService(new ConcurrentStorageServiceImpl());
+    }
+
+    @Test
+    public void testImport() throws Exception {
+        String csv = "date,morning,lunch_start,lunch_end,evening,total\n"
+                + "2016-03-01,8:00,12:00,13:00,17:30,08:30\n"
+                + "2016-03-02,08:15,,,\n"
+                + "\n"
+                + "2016-03-03,08:00,12:00\n"
+                + "2016-02-30,08:00,12:00,13:00,17:00\n"
+                + "2016-03-04,08:00,12:60,13:00,17:00\n"
+                + "2016-03-05,,,,\n"
+                + "2016-03-07,09:00,08:00,,\n"
+                + "2016-03-02,\"08:30\",,,\"17:00\"\n";
+        WorklogImporter.Report report = new WorklogImporter(service).importDays(new StringReader(csv), appCtx);
+
+        Assert.assertEquals(2, report.getImportedDays());
+        Assert.assertEquals(5, report.getRejectedRows());
+        Assert.assertEquals("[line 5 : MISSING_COLUMNS, line 6 : INVALID_DATE, line 7 : INVALID_TIME, line 8 : NO_TIME, line 9 : INCOHERENT_MARKERS]",
+                report.getErrors().toString());
+
+        DayWorklog first = new DayWorklog();
+        first.set(Marker.MORNING, Time.of(8, 0));
+        first.set(Marker.LUNCH_START, Time.of(12, 0));
+        first.set(Marker.LUNCH_END, Time.of(13, 0));
+        first.set(Marker.EVENING, Time.of(17, 30));
+        Assert.assertEquals(first, service.loadDay(EpochDays.of(2016, 3, 1), appCtx));
+        // the last line of the day wins
+        DayWorklog second = new DayWorklog();
+        second.set(Marker.MORNING, Time.of(8, 30));
+        second.set(Marker.EVENING, Time.of(17, 0));
+        Assert.assertEquals(second, service.loadDay(EpochDays.of(2016, 3, 2), appCtx));
+        Assert.assertTrue(service.loadDay(EpochDays.of(2016, 3, 7), appCtx).isEmpty());
+    }
+
+    @Test
+    public void testSpreadsheetFormat() throws Exception {
+        String csv = "31/12/2015;08:00;12:00;13:00;17:00\r\n"
+                + "29/02/2016;08:00;;;17:00\r\n"
+                + "29/02/2015;08:00;;;17:00\r\n";
+        WorklogImporter.Report report = new WorklogImporter(service).importDays(new StringReader(csv), appCtx);
+
+        Assert.assertEquals(2, report.getImportedDays());
+        Assert.assertEquals(1, report.getRejectedRows());
+        Assert.assertEquals(3, report.getErrors().get(0).getRow());
+        Assert.assertEquals(WorklogImporter.Reason.INVALID_DATE, report.getErrors().get(0).getReason());
+        Assert.assertEquals(17 * 60, service.loadDay(EpochDays.of(2016, 2, 29), appCtx).getMinutes(Marker.EVENING));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testBatches() throws Exception {
+        StorageService storage = Mockito.mock(StorageService.class);
+        StringBuilder csv = new StringBuilder();
+        for (int day = EpochDays.of(2010, 1, 1), i = 0; i < 2 * WorklogImporter.BATCH_SIZE + 10; day++, i++) {
+            appendRow(csv, day);
+        }
+        WorklogImporter.Report report = new WorklogImporter(storage).importDays(new StringReader(csv.toString()), appCtx);
+
+        Assert.assertEquals(2 * WorklogImporter.BATCH_SIZE + 10, report.getImportedDays());
+        Mockito.verify(storage, Mockito.times(3)).storeDays(Matchers.<Map<Integer, DayWorklog>>any(), Matchers.eq(appCtx));
+        Mockito.verify(storage, Mockito.never()).storeDay(Matchers.anyInt(), Matchers.any(DayWorklog.class), Matchers.any(Context.class));
+    }
+
+    @Test
+    public void testExportedFile() throws Exception {
+        for (int day = EpochDays.of(2016, 1, 1); day < EpochDays.of(2016, 3, 1); day += 3) {
+            service.storeDay(day, Fixtures.getWorklog(day, true), appCtx);
+        }
+        StringWriter exported = new StringWriter();
+        int count = new WorklogExporter(service, WorklogExporter.Format.CSV, Clock.SYSTEM).export(exported, null, appCtx);
+
+        StorageService otherService = new ConcurrentStorageServiceImpl();
+        Context otherCtx = Fixtures.mockContext(folder.newFolder());
+        WorklogImporter.Report report = new WorklogImporter(otherService).importDays(new StringReader(exported.toString()), otherCtx);
+
+        Assert.assertEquals(count, report.getImportedDays());
+        Assert.assertEquals(0, report.getRejectedRows());
+        Assert.assertEquals(service.loadDays(EpochDays.of(2016, 1, 1), EpochDays.of(2016, 2, 29), appCtx),
+                otherService.loadDays(EpochDays.of(2016, 1, 1), EpochDays.of(2016, 2, 29), otherCtx));
+    }
+
+    @Test
+    public void testFiveThousandDays() throws Exception {
+        StringBuilder csv = new StringBuilder("date,morning,lunch_start,lunch_end,evening\n");
+        for (int day = EpochDays.of(2000, 1, 1), i = 0; i < 5000; day++, i++) {
+            appendRow(csv, day);
+        }
+        WorklogImporter.Report report = new WorklogImporter(service).importDays(new StringReader(csv.toString()), appCtx);
+
+        Assert.assertEquals(5000, report.getImportedDays());
+        Assert.assertEquals(Fixtures.getWorklog(EpochDays.of(2005, 6, 15), true), service.loadDay(EpochDays.of(2005, 6, 15), appCtx));
+    }
+
+    private static void appendRow(StringBuilder csv, int epochDay) {
+        DayWorklog worklog = Fixtures.getWorklog(epochDay, true);
+        csv.append(String.format("%04d-%02d-%02d", EpochDays.year(epochDay), EpochDays.month(epochDay), EpochDays.dayOfMonth(epochDay)));
+        for (Marker marker : Marker.values()) {
+            int minutes = worklog.getMinutes(marker);
+            csv.append(',').append(minutes / 60).append(':').append(String.format("%02d", minutes % 60));
+        }
+        csv.append('\n');
+    }
+}
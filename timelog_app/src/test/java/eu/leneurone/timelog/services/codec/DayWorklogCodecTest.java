@@ -0,0 +1,70 @@
+package eu.leneurone.timelog.services.codec;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.model.Marker;
+import eu.leneurone.timelog.model.Time;
+
+/**
+ * Unit tests for DayWorklogCodec and LegacyDayWorklogReader
+ */
+public class DayWorklogCodecTest {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        DayWorklog worklog = new DayWorklog();
+        worklog.set(Marker.MORNING, new Time(8, 15));
+        worklog.set(Marker.LUNCH_START, new Time(12, 30));
+        worklog.set(Marker.EVENING, new Time(23, 59));
+
+        byte[] buffer = new byte[3 + DayWorklogCodec.RECORD_SIZE];
+        DayWorklogCodec.encode(worklog, buffer, 3);
+
+        Assert.assertEquals(worklog, DayWorklogCodec.decode(buffer, 3));
+        Assert.assertEquals(0b1011, DayWorklogCodec.readMask(buffer, 3));
+        Assert.assertEquals(12 * 60 + 30, DayWorklogCodec.readMinutes(buffer, 3, Marker.LUNCH_START));
+        Assert.assertFalse(DayWorklogCodec.isLegacy(buffer, buffer.length));
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        byte[] buffer = new byte[DayWorklogCodec.RECORD_SIZE];
+        DayWorklogCodec.encode(new DayWorklog(), buffer, 0);
+
+        Assert.assertTrue(DayWorklogCodec.decode(buffer, 0).isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnknownVersion() throws IOException {
+        byte[] buffer = new byte[DayWorklogCodec.RECORD_SIZE];
+        buffer[0] = 42;
+        DayWorklogCodec.decode(buffer, 0);
+    }
+
+    @Test
+    public void testLegacy() throws IOException {
+        Map<Marker, Time> times = new HashMap<>();
+        times.put(Marker.MORNING, new Time(8, 15));
+        times.put(Marker.LUNCH_END, new Time(13, 45));
+
+        // written the way the first versions of the app did
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(bytes)) {
+            objectOutputStream.writeObject(times);
+        }
+        byte[] data = bytes.toByteArray();
+
+        Assert.assertTrue(DayWorklogCodec.isLegacy(data, data.length));
+        Assert.assertEquals(times, LegacyDayWorklogReader.read(new ByteArrayInputStream(data)).toMap());
+    }
+}
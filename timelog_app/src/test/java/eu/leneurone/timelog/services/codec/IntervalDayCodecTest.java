@@ -0,0 +1,75 @@
+package eu.leneurone.timelog.services.codec;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.model.IntervalDay;
+import eu.leneurone.timelog.model.Marker;
+import eu.leneurone.timelog.model.Time;
+
+/**
+ * Unit tests for IntervalDayCodec
+ */
+public class IntervalDayCodecTest {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        IntervalDay day = new IntervalDay();
+        for (int start = 6 * 60; start < 20 * 60; start += 90) {
+            day.addInterval(start, start + 75);
+        }
+        day.punch(23 * 60 + 59);
+
+        byte[] record = IntervalDayCodec.encode(day);
+        // 2 bytes per punch at most, since the punches are minutes of a day
+        Assert.assertTrue(record.length <= 3 + 2 * day.getPunchCount());
+        Assert.assertEquals(day, IntervalDayCodec.decode(record, 0, record.length));
+    }
+
+    @Test
+    public void testRoundTrip_Worklog() throws IOException {
+        // incoherent markers are kept as they are
+        DayWorklog worklog = new DayWorklog();
+        worklog.set(Marker.MORNING, Time.of(9, 0));
+        worklog.set(Marker.LUNCH_START, Time.of(8, 30));
+        worklog.set(Marker.EVENING, Time.of(18, 0));
+        IntervalDay day = IntervalDay.fromWorklog(worklog);
+
+        byte[] record = IntervalDayCodec.encode(day);
+        IntervalDay decoded = IntervalDayCodec.decode(record, 0, record.length);
+        Assert.assertEquals(day, decoded);
+        Assert.assertEquals(worklog, decoded.toWorklog());
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        byte[] record = IntervalDayCodec.encode(new IntervalDay());
+        Assert.assertEquals(3, record.length);
+        Assert.assertTrue(IntervalDayCodec.decode(record, 0, record.length).isEmpty());
+    }
+
+    @Test
+    public void testDayWorklogRecord() throws IOException {
+        // the records of the day files written before the intervals
+        DayWorklog worklog = new DayWorklog();
+        worklog.set(Marker.MORNING, Time.of(8, 15));
+        worklog.set(Marker.LUNCH_START, Time.of(12, 0));
+        byte[] buffer = new byte[1 + DayWorklogCodec.RECORD_SIZE];
+        DayWorklogCodec.encode(worklog, buffer, 1);
+
+        IntervalDay day = IntervalDayCodec.decode(buffer, 1, DayWorklogCodec.RECORD_SIZE);
+        Assert.assertEquals(IntervalDay.fromWorklog(worklog), day);
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncated() throws IOException {
+        IntervalDay day = new IntervalDay();
+        day.addInterval(8 * 60, 12 * 60);
+        byte[] record = IntervalDayCodec.encode(day);
+        IntervalDayCodec.decode(record, 0, record.length - 1);
+    }
+}
@@ -0,0 +1,67 @@
+package eu.leneurone.timelog.services.codec;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import eu.leneurone.timelog.Fixtures;
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.model.Marker;
+import eu.leneurone.timelog.utils.EpochDays;
+
+/**
+ * Unit tests for YearArchiveCodec
+ */
+public class YearArchiveCodecTest {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        // a leap year, with days at both ends and partial days
+        Map<Integer, DayWorklog> worklogs = new HashMap<>();
+        for (int day = EpochDays.of(2016, 1, 1); day <= EpochDays.of(2016, 12, 31); day += 3) {
+            worklogs.put(day, Fixtures.getWorklog(day, true));
+        }
+        DayWorklog partial = new DayWorklog();
+        partial.setMinutes(Marker.LUNCH_END, 23 * 60 + 59);
+        worklogs.put(EpochDays.of(2016, 12, 31), partial);
+        worklogs.put(EpochDays.of(2016, 2, 29), Fixtures.getWorklog(0, true));
+        // ignored : empty, or in another year
+        worklogs.put(EpochDays.of(2016, 6, 2), new DayWorklog());
+        worklogs.put(EpochDays.of(2017, 1, 1), Fixtures.getWorklog(1, true));
+
+        byte[] archive = YearArchiveCodec.encode(2016, worklogs);
+        Assert.assertEquals(2016, YearArchiveCodec.check(archive));
+
+        worklogs.remove(EpochDays.of(2016, 6, 2));
+        worklogs.remove(EpochDays.of(2017, 1, 1));
+        Assert.assertEquals(worklogs, YearArchiveCodec.decodeAll(archive));
+        for (int day = EpochDays.of(2016, 1, 1); day <= EpochDays.of(2016, 12, 31); day++) {
+            Assert.assertEquals(worklogs.get(day), YearArchiveCodec.decodeDay(archive, day));
+        }
+    }
+
+    @Test
+    public void testCompression() throws IOException {
+        Map<Integer, DayWorklog> worklogs = new HashMap<>();
+        for (int day = EpochDays.of(2015, 1, 1); day <= EpochDays.of(2015, 12, 31); day++) {
+            worklogs.put(day, Fixtures.getWorklog(day, true));
+        }
+        byte[] archive = YearArchiveCodec.encode(2015, worklogs);
+        // close times : apart from the first day of the months, the differences fit in 1 byte, so a
+        // day takes the mask plus 1 byte per marker, instead of a whole record
+        Assert.assertTrue(archive.length < worklogs.size() * (1 + 4) + 12 * 4 + 100);
+    }
+
+    @Test(expected = IOException.class)
+    public void testCorrupted() throws IOException {
+        Map<Integer, DayWorklog> worklogs = new HashMap<>();
+        worklogs.put(EpochDays.of(2015, 3, 4), Fixtures.getWorklog(0, true));
+        byte[] archive = YearArchiveCodec.encode(2015, worklogs);
+        archive[archive.length - 6] ^= 1;
+        YearArchiveCodec.check(archive);
+    }
+}
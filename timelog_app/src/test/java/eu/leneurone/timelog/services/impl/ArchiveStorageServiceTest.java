@@ -0,0 +1,125 @@
+package eu.leneurone.timelog.services.impl;
+
+import android.content.Context;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import eu.leneurone.timelog.Fixtures;
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.services.SaveHandle;
+import eu.leneurone.timelog.services.StorageService;
+import eu.leneurone.timelog.utils.Clock;
+import eu.leneurone.timelog.utils.EpochDays;
+
+/**
+ * Unit tests for ArchiveStorageService : the archived years must be read as if they were still in
+ * the journal
+ */
+public class ArchiveStorageServiceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Context appCtx;
+
+    private ArchiveStorageService service;
+
+    @Before
+    public void prepare() throws Exception {
+        // the private files of the app are stored in a temporary folder
+        appCtx = Fixtures.mockContext(folder.getRoot());
+        service = new ArchiveStorageService(new JournalStorageServiceImpl(new MappedYearStorageServiceImpl(), new ConcurrentStorageServiceImpl()));
+    }
+
+    @Test
+    public void testArchiveOldYears() throws Exception {
+        Map<Integer, DayWorklog> worklogs = new HashMap<>();
+        for (int day = EpochDays.of(2013, 12, 20); day <= EpochDays.of(2016, 1, 10); day += 2) {
+            worklogs.put(day, Fixtures.getWorklog(day, false));
+        }
+        service.storeDays(worklogs, appCtx);
+
+        // in 2016, keeping 2 years : 2013 and 2014 are archived, 2015 is kept
+        Clock clock = Clock.fixed(new GregorianCalendar(2016, 5, 1));
+        SaveHandle handle = service.archiveAsync(2, clock, appCtx);
+        Assert.assertTrue(handle.await(5, TimeUnit.SECONDS));
+        Assert.assertNull(handle.getError());
+        Assert.assertTrue(new File(folder.getRoot(), ArchiveStorageService.FILENAME_PREFIX + "2013").exists());
+        Assert.assertTrue(new File(folder.getRoot(), ArchiveStorageService.FILENAME_PREFIX + "2014").exists());
+        Assert.assertFalse(new File(folder.getRoot(), ArchiveStorageService.FILENAME_PREFIX + "2015").exists());
+        // only 2015 is left in the journal
+        JournalStorageServiceImpl journal = new JournalStorageServiceImpl();
+        Assert.assertEquals(StorageService.NO_DAY, journal.findPreviousLoggedDay(EpochDays.of(2015, 1, 1), appCtx));
+        Assert.assertEquals(EpochDays.of(2015, 1, 2), journal.findNextLoggedDay(EpochDays.of(2014, 12, 31), appCtx));
+
+        // the reads fall through to the archives, also after a restart
+        assertSameDays(worklogs, service);
+        assertSameDays(worklogs, new ArchiveStorageService(new JournalStorageServiceImpl(new MappedYearStorageServiceImpl(), new ConcurrentStorageServiceImpl())));
+    }
+
+    @Test
+    public void testSaveInArchivedYear() throws Exception {
+        int day = EpochDays.of(2014, 3, 3);
+        service.storeDay(day, Fixtures.getWorklog(1, false), appCtx);
+        service.storeDay(day + 1, Fixtures.getWorklog(2, false), appCtx);
+        service.archive(2014, appCtx);
+
+        // the year is moved back to the journal
+        service.storeDay(day + 1, new DayWorklog(), appCtx);
+        Assert.assertFalse(new File(folder.getRoot(), ArchiveStorageService.FILENAME_PREFIX + "2014").exists());
+        Assert.assertEquals(Fixtures.getWorklog(1, false), service.loadDay(day, appCtx));
+        Assert.assertTrue(service.loadDay(day + 1, appCtx).isEmpty());
+        Assert.assertEquals(day, service.findPreviousLoggedDay(day + 10, appCtx));
+        Assert.assertEquals(StorageService.NO_DAY, service.findNextLoggedDay(day, appCtx));
+    }
+
+    @Test
+    public void testLeftoverDays() throws Exception {
+        int day = EpochDays.of(2014, 3, 3);
+        service.storeDay(day, Fixtures.getWorklog(1, false), appCtx);
+        service.archive(2014, appCtx);
+        // a crash happened before the days were removed from the journal
+        new JournalStorageServiceImpl().storeDay(day, Fixtures.getWorklog(1, false), appCtx);
+
+        service = new ArchiveStorageService(new JournalStorageServiceImpl(new MappedYearStorageServiceImpl(), new ConcurrentStorageServiceImpl()));
+        Assert.assertEquals(Fixtures.getWorklog(1, false), service.loadDay(day, appCtx));
+        service.archive(2014, appCtx);
+        Assert.assertEquals(StorageService.NO_DAY, new JournalStorageServiceImpl().findNextLoggedDay(day - 1, appCtx));
+        Assert.assertEquals(Fixtures.getWorklog(1, false), service.loadDay(day, appCtx));
+    }
+
+    // the service holds the same days, found in the same order
+    private void assertSameDays(Map<Integer, DayWorklog> expected, ArchiveStorageService archiveService) {
+        int from = EpochDays.of(2013, 12, 1);
+        int to = EpochDays.of(2016, 1, 31);
+        Map<Integer, DayWorklog> loaded = archiveService.loadDays(from, to, appCtx);
+        for (int day = from; day <= to; day++) {
+            DayWorklog worklog = expected.get(day);
+            Assert.assertEquals(worklog != null ? worklog : new DayWorklog(), loaded.get(day));
+            Assert.assertEquals(loaded.get(day), archiveService.loadDay(day, appCtx));
+        }
+        int day = archiveService.findNextLoggedDay(from, appCtx);
+        int count = 0;
+        while (day != StorageService.NO_DAY) {
+            Assert.assertTrue(expected.containsKey(day));
+            count++;
+            int next = archiveService.findNextLoggedDay(day, appCtx);
+            if (next != StorageService.NO_DAY) {
+                Assert.assertEquals(day, archiveService.findPreviousLoggedDay(next, appCtx));
+            }
+            day = next;
+        }
+        Assert.assertEquals(expected.size(), count);
+    }
+}
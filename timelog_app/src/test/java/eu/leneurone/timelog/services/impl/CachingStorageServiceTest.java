@@ -0,0 +1,139 @@
+package eu.leneurone.timelog.services.impl;
+
+import android.content.Context;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Map;
+
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.model.Marker;
+import eu.leneurone.timelog.model.Time;
+import eu.leneurone.timelog.services.StorageService;
+import eu.leneurone.timelog.utils.EpochDays;
+
+/**
+ * Unit tests for CachingStorageService
+ */
+public class CachingStorageServiceTest {
+
+    private StorageService delegate;
+
+    private CachingStorageService service;
+
+    private Context appCtx;
+
+    @Before
+    public void prepare() {
+        appCtx = Mockito.mock(Context.class);
+        delegate = Mockito.mock(StorageService.class);
+        // the underlying storage returns the same times for every day
+        Mockito.when(delegate.loadDays(Mockito.anyInt(), Mockito.anyInt(), Mockito.any(Context.class)))
+                .thenAnswer(new Answer<Map<Integer, DayWorklog>>() {
+                    @Override
+                    public Map<Integer, DayWorklog> answer(InvocationOnMock invocation) throws Throwable {
+                        int from = (Integer) invocation.getArguments()[0];
+                        int to = (Integer) invocation.getArguments()[1];
+                        Map<Integer, DayWorklog> data = new HashMap<>();
+                        for (int day = from; day <= to; day++) {
+                            data.put(day, DayWorklog.fromMap(getTimes()));
+                        }
+                        return data;
+                    }
+                });
+        service = new CachingStorageService(delegate);
+    }
+
+    @Test
+    public void testHitAndMiss() {
+        GregorianCalendar wednesday = new GregorianCalendar(2016, Calendar.NOVEMBER, 2);
+
+        Map<Calendar, Map<Marker, Time>> data = service.loadRange(wednesday, wednesday, appCtx);
+        Assert.assertEquals(getTimes(), data.get(wednesday));
+        Assert.assertEquals(0, service.getHitCount());
+        Assert.assertEquals(1, service.getMissCount());
+
+        data = service.loadRange(wednesday, wednesday, appCtx);
+        Assert.assertEquals(getTimes(), data.get(wednesday));
+        Assert.assertEquals(1, service.getHitCount());
+        Assert.assertEquals(1, service.getMissCount());
+    }
+
+    @Test
+    public void testReturnedDataCanBeModified() {
+        GregorianCalendar wednesday = new GregorianCalendar(2016, Calendar.NOVEMBER, 2);
+
+        service.loadRange(wednesday, wednesday, appCtx).get(wednesday).clear();
+
+        Assert.assertEquals(getTimes(), service.loadRange(wednesday, wednesday, appCtx).get(wednesday));
+    }
+
+    @Test
+    public void testStoreInvalidates() throws IOException {
+        GregorianCalendar wednesday = new GregorianCalendar(2016, Calendar.NOVEMBER, 2);
+        service.loadRange(wednesday, wednesday, appCtx);
+
+        Map<Marker, Time> times = new HashMap<>();
+        times.put(Marker.MORNING, new Time(9, 5));
+        service.storeDayWorklog(wednesday.getTime(), times, appCtx);
+
+        Mockito.verify(delegate).storeDay(EpochDays.of(wednesday), DayWorklog.fromMap(times), appCtx);
+        service.loadRange(wednesday, wednesday, appCtx);
+        Assert.assertEquals(0, service.getHitCount());
+        Assert.assertEquals(2, service.getMissCount());
+    }
+
+    @Test
+    public void testLruEviction() {
+        service = new CachingStorageService(delegate, 2);
+        GregorianCalendar monday = new GregorianCalendar(2016, Calendar.OCTOBER, 31);
+        GregorianCalendar tuesday = new GregorianCalendar(2016, Calendar.NOVEMBER, 1);
+        GregorianCalendar wednesday = new GregorianCalendar(2016, Calendar.NOVEMBER, 2);
+
+        service.loadRange(monday, monday, appCtx);
+        service.loadRange(tuesday, tuesday, appCtx);
+        // monday becomes the most recently used day
+        service.loadRange(monday, monday, appCtx);
+        // tuesday is evicted
+        service.loadRange(wednesday, wednesday, appCtx);
+        service.loadRange(monday, monday, appCtx);
+        Assert.assertEquals(2, service.getHitCount());
+        service.loadRange(tuesday, tuesday, appCtx);
+        Assert.assertEquals(4, service.getMissCount());
+    }
+
+    @Test
+    public void testScanBypassesCache() {
+        service = new CachingStorageService(delegate, 2);
+        int wednesday = EpochDays.of(2016, 11, 2);
+        Mockito.when(delegate.scanDays(Mockito.anyInt(), Mockito.anyInt(), Mockito.any(Context.class)))
+                .thenReturn(new HashMap<Integer, DayWorklog>());
+        service.loadDays(wednesday, wednesday, appCtx);
+
+        // a long scan goes to the underlying storage, and doesn't evict the cached day
+        service.scanDays(wednesday - 365, wednesday, appCtx);
+        Mockito.verify(delegate).scanDays(wednesday - 365, wednesday, appCtx);
+        service.loadDays(wednesday, wednesday, appCtx);
+        Assert.assertEquals(1, service.getHitCount());
+        Assert.assertEquals(1, service.getMissCount());
+    }
+
+    private Map<Marker, Time> getTimes() {
+        Map<Marker, Time> times = new HashMap<>();
+        times.put(Marker.MORNING, new Time(8, 15));
+        times.put(Marker.LUNCH_START, new Time(12, 30));
+        times.put(Marker.LUNCH_END, new Time(13, 45));
+        times.put(Marker.EVENING, new Time(17, 10));
+        return times;
+    }
+}
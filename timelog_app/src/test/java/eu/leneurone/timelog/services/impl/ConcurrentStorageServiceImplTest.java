@@ -0,0 +1,195 @@
+package eu.leneurone.timelog.services.impl;
+
+import android.content.Context;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import eu.leneurone.timelog.Fixtures;
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.model.Marker;
+import eu.leneurone.timelog.model.Time;
+import eu.leneurone.timelog.utils.EpochDays;
+
+/**
+ * Stress test of ConcurrentStorageServiceImpl : readers and writers work on the same days, and the
+ * readers must never get a half-written day
+ */
+public class ConcurrentStorageServiceImplTest {
+
+    private static final int FIRST_DAY = EpochDays.of(2016, 1, 20);
+
+    /** the days span 2 months */
+    private static final int DAY_COUNT = 20;
+
+    private static final int THREAD_COUNT = 4;
+
+    private static final int OPERATIONS_PER_THREAD = 300;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Context appCtx;
+
+    private ConcurrentStorageServiceImpl service;
+
+    @Before
+    public void prepare() throws Exception {
+        // the private files of the app are stored in a temporary folder
+        appCtx = Fixtures.mockContext(folder.getRoot());
+        service = new ConcurrentStorageServiceImpl();
+    }
+
+    @Test
+    public void testConcurrentReadsAndWrites() throws Exception {
+        for (int day = FIRST_DAY; day < FIRST_DAY + DAY_COUNT; day++) {
+            service.storeDay(day, getWorklog(0), appCtx);
+        }
+
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREAD_COUNT; t++) {
+            final Random random = new Random(t);
+            // writers
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                            service.storeDay(FIRST_DAY + random.nextInt(DAY_COUNT), getWorklog(random.nextInt(120)), appCtx);
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            }));
+            // readers, of single days and of ranges
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                            int day = FIRST_DAY + random.nextInt(DAY_COUNT);
+                            if (i % 10 == 0) {
+                                for (Map.Entry<Integer, DayWorklog> entry : service.loadDays(FIRST_DAY, FIRST_DAY + DAY_COUNT - 1, appCtx).entrySet()) {
+                                    assertComplete(entry.getValue());
+                                }
+                            } else {
+                                assertComplete(service.loadDay(day, appCtx));
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+
+        // no temporary file left, and the days are readable by the single threaded implementation
+        for (String filename : folder.getRoot().list()) {
+            Assert.assertFalse(filename, filename.endsWith(".tmp"));
+        }
+        StorageServiceImpl reader = new StorageServiceImpl();
+        for (int day = FIRST_DAY; day < FIRST_DAY + DAY_COUNT; day++) {
+            Assert.assertEquals(service.loadDay(day, appCtx), reader.loadDay(day, appCtx));
+        }
+        Assert.assertEquals(FIRST_DAY, service.findNextLoggedDay(FIRST_DAY - 1, appCtx));
+    }
+
+    @Test
+    public void testEmptiedDay() throws Exception {
+        int day = EpochDays.of(2016, 2, 29);
+        service.storeDay(day, getWorklog(10), appCtx);
+        Assert.assertEquals(getWorklog(10), service.loadDay(day, appCtx));
+        service.storeDay(day, new DayWorklog(), appCtx);
+        Assert.assertTrue(service.loadDay(day, appCtx).isEmpty());
+        Assert.assertEquals(ConcurrentStorageServiceImpl.NO_DAY, service.findNextLoggedDay(day - 1, appCtx));
+    }
+
+    @Test
+    public void testStoreDays_Recovery() throws Exception {
+        Map<Integer, DayWorklog> worklogs = new HashMap<>();
+        worklogs.put(FIRST_DAY, getWorklog(10));
+        worklogs.put(FIRST_DAY + 15, getWorklog(20));
+        service.storeDays(worklogs, appCtx);
+        Assert.assertEquals(2 * WriteAheadLog.RECORD_SIZE, new File(folder.getRoot(), ConcurrentStorageServiceImpl.LOG_FILENAME).length());
+
+        // the crash happened before the file of the second day was written
+        new File(folder.getRoot(), StorageServiceImpl.buildFilename(FIRST_DAY + 15)).delete();
+
+        // the log is replayed on the first access after the restart
+        ConcurrentStorageServiceImpl restarted = new ConcurrentStorageServiceImpl();
+        Assert.assertEquals(worklogs, filterLogged(restarted.loadDays(FIRST_DAY, FIRST_DAY + 15, appCtx)));
+        Assert.assertEquals(FIRST_DAY + 15, restarted.findPreviousLoggedDay(FIRST_DAY + 20, appCtx));
+        Assert.assertEquals(0, new File(folder.getRoot(), ConcurrentStorageServiceImpl.LOG_FILENAME).length());
+    }
+
+    @Test
+    public void testCheckpoint() throws Exception {
+        for (int i = 0; i < ConcurrentStorageServiceImpl.CHECKPOINT_THRESHOLD - 1; i++) {
+            service.storeDay(FIRST_DAY + i % DAY_COUNT, getWorklog(i % 60), appCtx);
+        }
+        File logFile = new File(folder.getRoot(), ConcurrentStorageServiceImpl.LOG_FILENAME);
+        Assert.assertEquals((ConcurrentStorageServiceImpl.CHECKPOINT_THRESHOLD - 1) * WriteAheadLog.RECORD_SIZE, logFile.length());
+        // the log is emptied once it's full
+        service.storeDay(FIRST_DAY, getWorklog(0), appCtx);
+        Assert.assertEquals(0, logFile.length());
+        Assert.assertEquals(getWorklog(0), new StorageServiceImpl().loadDay(FIRST_DAY, appCtx));
+    }
+
+    // the logged days of a range
+    private static Map<Integer, DayWorklog> filterLogged(Map<Integer, DayWorklog> worklogs) {
+        Map<Integer, DayWorklog> logged = new HashMap<>();
+        for (Map.Entry<Integer, DayWorklog> entry : worklogs.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                logged.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return logged;
+    }
+
+    // every written worklog has 4 markers, spaced by 4:00, 1:00 and 4:00
+    private static void assertComplete(DayWorklog worklog) {
+        Assert.assertEquals(DayWorklog.ALL_MARKERS, worklog.getMask());
+        int morning = worklog.getMinutes(Marker.MORNING);
+        Assert.assertEquals(morning + 4 * 60, worklog.getMinutes(Marker.LUNCH_START));
+        Assert.assertEquals(morning + 5 * 60, worklog.getMinutes(Marker.LUNCH_END));
+        Assert.assertEquals(morning + 9 * 60, worklog.getMinutes(Marker.EVENING));
+    }
+
+    private static DayWorklog getWorklog(int offsetMinutes) {
+        int morning = 7 * 60 + offsetMinutes;
+        DayWorklog worklog = new DayWorklog();
+        worklog.set(Marker.MORNING, Time.ofMinutes(morning));
+        worklog.set(Marker.LUNCH_START, Time.ofMinutes(morning + 4 * 60));
+        worklog.set(Marker.LUNCH_END, Time.ofMinutes(morning + 5 * 60));
+        worklog.set(Marker.EVENING, Time.ofMinutes(morning + 9 * 60));
+        return worklog;
+    }
+}
@@ -0,0 +1,159 @@
+package eu.leneurone.timelog.services.impl;
+
+import android.content.Context;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Map;
+
+import eu.leneurone.timelog.Fixtures;
+import eu.leneurone.timelog.model.Marker;
+import eu.leneurone.timelog.model.Time;
+import eu.leneurone.timelog.services.StorageService;
+import eu.leneurone.timelog.utils.EpochDays;
+
+/**
+ * Unit tests for JournalStorageServiceImpl
+ */
+public class JournalStorageServiceImplTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private JournalStorageServiceImpl service;
+
+    private Context appCtx;
+
+    @Before
+    public void prepare() {
+        appCtx = Fixtures.mockContext(folder.getRoot());
+        service = new JournalStorageServiceImpl();
+    }
+
+    @Test
+    public void testStoreAndLoad() throws IOException {
+        Date day = new GregorianCalendar(2016, Calendar.NOVEMBER, 2).getTime();
+        Date otherDay = new GregorianCalendar(2016, Calendar.NOVEMBER, 3).getTime();
+        Map<Marker, Time> times = getTimes();
+
+        service.storeDayWorklog(day, times, appCtx);
+
+        Assert.assertEquals(times, service.loadDayWorklog(day, appCtx));
+        Assert.assertTrue(service.loadDayWorklog(otherDay, appCtx).isEmpty());
+    }
+
+    @Test
+    public void testIndexRebuiltOnOpen() throws IOException {
+        Date day = new GregorianCalendar(2016, Calendar.NOVEMBER, 2).getTime();
+        Map<Marker, Time> times = getTimes();
+        Map<Marker, Time> partialTimes = new HashMap<>();
+        partialTimes.put(Marker.MORNING, new Time(9, 5));
+
+        service.storeDayWorklog(day, times, appCtx);
+        service.storeDayWorklog(day, partialTimes, appCtx);
+        service.close();
+
+        // the latest record of the day must be used
+        JournalStorageServiceImpl reopened = new JournalStorageServiceImpl();
+        Assert.assertEquals(partialTimes, reopened.loadDayWorklog(day, appCtx));
+    }
+
+    @Test
+    public void testCheckpoint() throws IOException {
+        Calendar calendar = new GregorianCalendar(2016, Calendar.NOVEMBER, 2);
+        Map<Marker, Time> times = getTimes();
+        // save the same 2 days again and again
+        int saves = JournalStorageServiceImpl.CHECKPOINT_RECORDS + 10;
+        for (int i = 0; i < saves; i++) {
+            calendar.add(Calendar.DAY_OF_YEAR, i % 2 == 0 ? 1 : -1);
+            service.storeDayWorklog(calendar.getTime(), times, appCtx);
+        }
+
+        // the journal has been emptied into the year files
+        File journal = new File(folder.getRoot(), JournalStorageServiceImpl.JOURNAL_FILENAME);
+        Assert.assertEquals(10 * JournalStorageServiceImpl.RECORD_SIZE, journal.length());
+        Assert.assertEquals(times, new MappedYearStorageServiceImpl().loadDayWorklog(calendar.getTime(), appCtx));
+        Assert.assertEquals(times, service.loadDayWorklog(calendar.getTime(), appCtx));
+        calendar.add(Calendar.DAY_OF_YEAR, 1);
+        Assert.assertEquals(times, service.loadDayWorklog(calendar.getTime(), appCtx));
+    }
+
+    @Test
+    public void testEmptiedDayAfterCheckpoint() throws IOException {
+        int epochDay = EpochDays.of(2016, 11, 2);
+        Date day = new GregorianCalendar(2016, Calendar.NOVEMBER, 2).getTime();
+        service.storeDayWorklog(day, getTimes(), appCtx);
+        for (int i = 1; i < JournalStorageServiceImpl.CHECKPOINT_RECORDS; i++) {
+            service.storeDayWorklog(new GregorianCalendar(2017, Calendar.JANUARY, 2).getTime(), getTimes(), appCtx);
+        }
+        Assert.assertEquals(0, new File(folder.getRoot(), JournalStorageServiceImpl.JOURNAL_FILENAME).length());
+
+        // the slot of the day is outdated by the journal, then emptied by the next checkpoint
+        service.storeDayWorklog(day, new HashMap<Marker, Time>(), appCtx);
+        Assert.assertTrue(service.loadDayWorklog(day, appCtx).isEmpty());
+        Assert.assertEquals(EpochDays.of(2017, 1, 2), service.findNextLoggedDay(epochDay - 1, appCtx));
+        service.close();
+        Assert.assertTrue(service.loadDayWorklog(day, appCtx).isEmpty());
+        for (int i = 1; i < JournalStorageServiceImpl.CHECKPOINT_RECORDS; i++) {
+            service.storeDayWorklog(new GregorianCalendar(2017, Calendar.JANUARY, 2).getTime(), getTimes(), appCtx);
+        }
+        Assert.assertTrue(new MappedYearStorageServiceImpl().loadDayWorklog(day, appCtx).isEmpty());
+        Assert.assertEquals(StorageService.NO_DAY, service.findPreviousLoggedDay(EpochDays.of(2017, 1, 2), appCtx));
+    }
+
+    @Test
+    public void testTornTail() throws IOException {
+        Date day = new GregorianCalendar(2016, Calendar.NOVEMBER, 2).getTime();
+        Map<Marker, Time> times = getTimes();
+        service.storeDayWorklog(day, times, appCtx);
+        service.close();
+
+        // a record of the same day, interrupted by the end of the process
+        File journal = new File(folder.getRoot(), JournalStorageServiceImpl.JOURNAL_FILENAME);
+        try (FileOutputStream output = new FileOutputStream(journal, true)) {
+            output.write(new byte[JournalStorageServiceImpl.RECORD_SIZE - 3]);
+        }
+
+        JournalStorageServiceImpl reopened = new JournalStorageServiceImpl();
+        Assert.assertEquals(times, reopened.loadDayWorklog(day, appCtx));
+        // the incomplete record is truncated
+        Assert.assertEquals(JournalStorageServiceImpl.RECORD_SIZE, journal.length());
+    }
+
+    @Test
+    public void testEmptyDayNotLogged() throws IOException {
+        Date day = new GregorianCalendar(2016, Calendar.NOVEMBER, 2).getTime();
+        int epochDay = EpochDays.of(2016, 11, 2);
+        service.storeDayWorklog(day, getTimes(), appCtx);
+        service.storeDayWorklog(day, new HashMap<Marker, Time>(), appCtx);
+
+        Assert.assertEquals(StorageService.NO_DAY, service.findNextLoggedDay(epochDay - 1, appCtx));
+        Assert.assertEquals(StorageService.NO_DAY, service.findPreviousLoggedDay(epochDay + 1, appCtx));
+        service.close();
+
+        JournalStorageServiceImpl reopened = new JournalStorageServiceImpl();
+        Assert.assertEquals(StorageService.NO_DAY, reopened.findNextLoggedDay(epochDay - 1, appCtx));
+        Assert.assertTrue(reopened.loadDayWorklog(day, appCtx).isEmpty());
+    }
+
+    private Map<Marker, Time> getTimes() {
+        Map<Marker, Time> times = new HashMap<>();
+        times.put(Marker.MORNING, new Time(8, 15));
+        times.put(Marker.LUNCH_START, new Time(12, 30));
+        times.put(Marker.LUNCH_END, new Time(13, 45));
+        times.put(Marker.EVENING, new Time(17, 10));
+        return times;
+    }
+}
@@ -0,0 +1,180 @@
+package eu.leneurone.timelog.services.impl;
+
+import android.content.Context;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import eu.leneurone.timelog.Fixtures;
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.services.SaveHandle;
+import eu.leneurone.timelog.utils.EpochDays;
+
+/**
+ * Unit tests for LegacyDayMigration : the day files must be moved to the journal without changing
+ * the days, and the days must be readable during the migration
+ */
+public class LegacyDayMigrationTest {
+
+    /** the first legacy day */
+    private static final int FIRST_DAY = EpochDays.of(2014, 11, 3);
+
+    /** the number of legacy days : several batches */
+    private static final int DAY_COUNT = 3 * LegacyDayMigration.BATCH_SIZE + 5;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Context appCtx;
+
+    private ConcurrentStorageServiceImpl dayFiles;
+
+    private JournalStorageServiceImpl journal;
+
+    private Map<Integer, DayWorklog> worklogs;
+
+    @Before
+    public void prepare() throws Exception {
+        // the private files of the app are stored in a temporary folder
+        appCtx = Fixtures.mockContext(folder.getRoot());
+        // the days written by the previous versions of the app, before the first access, in both
+        // formats
+        worklogs = new HashMap<>();
+        for (int i = 0; i < DAY_COUNT; i++) {
+            int day = FIRST_DAY + 2 * i;
+            worklogs.put(day, Fixtures.getWorklog(day, day % 3 != 0));
+            if (i % 2 == 0) {
+                writeLegacyDay(day, Fixtures.getWorklog(day, day % 3 != 0));
+            } else {
+                new StorageServiceImpl().storeDay(day, Fixtures.getWorklog(day, day % 3 != 0), appCtx);
+            }
+        }
+        // the legacy days have been written without the index : it's rebuilt from the files
+        new File(folder.getRoot(), DayPresenceIndex.INDEX_FILENAME).delete();
+        dayFiles = new ConcurrentStorageServiceImpl();
+        journal = new JournalStorageServiceImpl(new MappedYearStorageServiceImpl(), dayFiles);
+    }
+
+    @Test
+    public void testMigration() throws Exception {
+        LegacyDayMigration migration = new LegacyDayMigration(dayFiles, journal);
+        Assert.assertTrue(migration.migrateBatch(appCtx));
+        Assert.assertFalse(migration.isDone(appCtx));
+        Assert.assertEquals(DAY_COUNT - LegacyDayMigration.BATCH_SIZE, countDayFiles());
+
+        // the process is killed : the migration resumes after the migrated batch
+        dayFiles = new ConcurrentStorageServiceImpl();
+        journal = new JournalStorageServiceImpl(new MappedYearStorageServiceImpl(), dayFiles);
+        migration = new LegacyDayMigration(dayFiles, journal);
+        SaveHandle handle = migration.migrateAsync(appCtx);
+        Assert.assertTrue(handle.await(5, TimeUnit.SECONDS));
+        Assert.assertNull(handle.getError());
+        Assert.assertTrue(migration.isDone(appCtx));
+        Assert.assertFalse(migration.migrateBatch(appCtx));
+
+        // all the days are in the journal
+        Assert.assertEquals(0, countDayFiles());
+        assertSameDays(new JournalStorageServiceImpl());
+    }
+
+    @Test
+    public void testCorruptLegacyDaySkipped() throws Exception {
+        // a truncated legacy file, in the middle of the second batch
+        int corruptDay = FIRST_DAY + 2 * (LegacyDayMigration.BATCH_SIZE + 10);
+        try (FileOutputStream output = new FileOutputStream(new File(folder.getRoot(), StorageServiceImpl.buildFilename(corruptDay)))) {
+            output.write(new byte[]{(byte) 0xAC, (byte) 0xED, 0, 5, 0x73});
+        }
+        worklogs.remove(corruptDay);
+
+        LegacyDayMigration migration = new LegacyDayMigration(dayFiles, journal);
+        SaveHandle handle = migration.migrateAsync(appCtx);
+        Assert.assertTrue(handle.await(5, TimeUnit.SECONDS));
+        Assert.assertNull(handle.getError());
+        Assert.assertTrue(migration.isDone(appCtx));
+        Assert.assertEquals(1, migration.getSkippedDays(appCtx));
+
+        // the other days of the batch and the following batches are migrated, the corrupt file is
+        // kept
+        Assert.assertEquals(0, countDayFiles());
+        Assert.assertTrue(new File(folder.getRoot(), StorageServiceImpl.buildFilename(corruptDay)).exists());
+        assertSameDays(new JournalStorageServiceImpl());
+    }
+
+    @Test
+    public void testReadsDuringMigration() throws Exception {
+        LegacyDayMigration migration = new LegacyDayMigration(dayFiles, journal);
+        migration.migrateBatch(appCtx);
+        migration.migrateBatch(appCtx);
+
+        // the journal and the day files are read
+        Assert.assertEquals(DAY_COUNT - 2 * LegacyDayMigration.BATCH_SIZE, countDayFiles());
+        assertSameDays(journal);
+        Assert.assertEquals(FIRST_DAY + 2 * (DAY_COUNT - 1), journal.findPreviousLoggedDay(FIRST_DAY + 2 * DAY_COUNT, appCtx));
+        Assert.assertEquals(FIRST_DAY, journal.findNextLoggedDay(FIRST_DAY - 1, appCtx));
+    }
+
+    @Test
+    public void testSavedDayNotMigrated() throws Exception {
+        int day = FIRST_DAY + 2;
+        DayWorklog worklog = Fixtures.getWorklog(1, true);
+        journal.storeDay(day, worklog, appCtx);
+        Assert.assertFalse(new File(folder.getRoot(), StorageServiceImpl.buildFilename(day)).exists());
+
+        Assert.assertFalse(journal.migrateDayFile(day, appCtx));
+        Assert.assertTrue(journal.migrateDayFile(FIRST_DAY, appCtx));
+        Assert.assertFalse(journal.migrateDayFile(FIRST_DAY, appCtx));
+        // a day without file
+        Assert.assertFalse(journal.migrateDayFile(FIRST_DAY + 1, appCtx));
+        Assert.assertEquals(worklog, journal.loadDay(day, appCtx));
+        Assert.assertEquals(Fixtures.getWorklog(FIRST_DAY, FIRST_DAY % 3 != 0), journal.loadDay(FIRST_DAY, appCtx));
+    }
+
+    @Test
+    public void testEmptiedDayNotMigrated() throws Exception {
+        journal.storeDay(FIRST_DAY, new DayWorklog(), appCtx);
+        Assert.assertTrue(journal.loadDay(FIRST_DAY, appCtx).isEmpty());
+
+        new LegacyDayMigration(dayFiles, journal).migrateBatch(appCtx);
+        Assert.assertTrue(journal.loadDay(FIRST_DAY, appCtx).isEmpty());
+        Assert.assertEquals(FIRST_DAY + 2, journal.findNextLoggedDay(FIRST_DAY - 1, appCtx));
+    }
+
+    // the storage holds the legacy days
+    private void assertSameDays(JournalStorageServiceImpl storage) {
+        int last = FIRST_DAY + 2 * DAY_COUNT;
+        Map<Integer, DayWorklog> loaded = storage.loadDays(FIRST_DAY, last, appCtx);
+        for (int day = FIRST_DAY; day <= last; day++) {
+            DayWorklog worklog = worklogs.get(day);
+            Assert.assertEquals(worklog != null ? worklog : new DayWorklog(), loaded.get(day));
+        }
+    }
+
+    // the number of days left in their day file
+    private int countDayFiles() {
+        int count = 0;
+        for (int day : worklogs.keySet()) {
+            if (new File(folder.getRoot(), StorageServiceImpl.buildFilename(day)).exists()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void writeLegacyDay(int epochDay, DayWorklog worklog) throws IOException {
+        try (ObjectOutputStream output = new ObjectOutputStream(appCtx.openFileOutput(StorageServiceImpl.buildFilename(epochDay), Context.MODE_PRIVATE))) {
+            output.writeObject(worklog.toMap());
+        }
+    }
+}
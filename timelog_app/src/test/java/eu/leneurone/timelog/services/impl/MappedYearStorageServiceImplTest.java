@@ -0,0 +1,93 @@
+package eu.leneurone.timelog.services.impl;
+
+import android.content.Context;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Map;
+
+import eu.leneurone.timelog.Fixtures;
+import eu.leneurone.timelog.model.Marker;
+import eu.leneurone.timelog.model.Time;
+import eu.leneurone.timelog.services.StorageService;
+import eu.leneurone.timelog.utils.EpochDays;
+
+/**
+ * Unit tests for MappedYearStorageServiceImpl
+ */
+public class MappedYearStorageServiceImplTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Context appCtx;
+
+    @Before
+    public void prepare() {
+        appCtx = Fixtures.mockContext(folder.getRoot());
+    }
+
+    @Test
+    public void testStoreAndLoad() throws IOException {
+        MappedYearStorageServiceImpl service = new MappedYearStorageServiceImpl();
+        // last day of a leap year : last slot of the file
+        Date lastDay = new GregorianCalendar(2016, Calendar.DECEMBER, 31).getTime();
+        Date firstDay = new GregorianCalendar(2017, Calendar.JANUARY, 1).getTime();
+        Map<Marker, Time> times = getTimes();
+
+        service.storeDayWorklog(lastDay, times, appCtx);
+        service.storeDayWorklog(firstDay, times, appCtx);
+
+        Assert.assertEquals(times, service.loadDayWorklog(lastDay, appCtx));
+        Assert.assertEquals(times, service.loadDayWorklog(firstDay, appCtx));
+        Assert.assertTrue(service.loadDayWorklog(new GregorianCalendar(2016, Calendar.DECEMBER, 30).getTime(), appCtx).isEmpty());
+        Assert.assertEquals(MappedYearStorageServiceImpl.YEAR_FILE_SIZE, new File(folder.getRoot(), "timeLogYear_2016").length());
+
+        // data is read back from the files by a new instance
+        Assert.assertEquals(times, new MappedYearStorageServiceImpl().loadDayWorklog(lastDay, appCtx));
+    }
+
+    @Test
+    public void testLoadMissingYear() {
+        MappedYearStorageServiceImpl service = new MappedYearStorageServiceImpl();
+
+        Assert.assertTrue(service.loadDayWorklog(new GregorianCalendar(2015, Calendar.MARCH, 3).getTime(), appCtx).isEmpty());
+        // reading doesn't create the year file
+        Assert.assertFalse(new File(folder.getRoot(), "timeLogYear_2015").exists());
+    }
+
+    @Test
+    public void testEmptiedDay() throws IOException {
+        MappedYearStorageServiceImpl service = new MappedYearStorageServiceImpl();
+        Date day = new GregorianCalendar(2016, Calendar.MARCH, 3).getTime();
+        int epochDay = EpochDays.of(2016, 3, 3);
+        service.storeDayWorklog(day, getTimes(), appCtx);
+        Assert.assertEquals(epochDay, service.findNextLoggedDay(epochDay - 1, appCtx));
+
+        // an emptied day isn't found as a logged day
+        service.storeDayWorklog(day, new HashMap<Marker, Time>(), appCtx);
+        Assert.assertTrue(service.loadDayWorklog(day, appCtx).isEmpty());
+        Assert.assertEquals(StorageService.NO_DAY, service.findNextLoggedDay(epochDay - 1, appCtx));
+        Assert.assertEquals(StorageService.NO_DAY, service.findPreviousLoggedDay(epochDay + 1, appCtx));
+    }
+
+    private Map<Marker, Time> getTimes() {
+        Map<Marker, Time> times = new HashMap<>();
+        times.put(Marker.MORNING, new Time(8, 15));
+        times.put(Marker.LUNCH_START, new Time(12, 30));
+        times.put(Marker.LUNCH_END, new Time(13, 45));
+        times.put(Marker.EVENING, new Time(17, 10));
+        return times;
+    }
+}
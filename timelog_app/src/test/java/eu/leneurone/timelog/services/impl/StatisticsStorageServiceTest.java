@@ -0,0 +1,184 @@
+package eu.leneurone.timelog.services.impl;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import eu.leneurone.timelog.Fixtures;
+import eu.leneurone.timelog.math.MinuteHistogram;
+import eu.leneurone.timelog.math.WorklogStatistics;
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.model.Marker;
+import eu.leneurone.timelog.utils.EpochDays;
+
+/**
+ * Unit tests for StatisticsStorageService : the statistics updated by the saves must be the ones
+ * computed from the stored days
+ */
+public class StatisticsStorageServiceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Context appCtx;
+
+    private StatisticsStorageService service;
+
+    @Before
+    public void prepare() throws Exception {
+        // the private files of the app are stored in a temporary folder
+        appCtx = Fixtures.mockContext(folder.getRoot());
+        service = new StatisticsStorageService(new ConcurrentStorageServiceImpl());
+    }
+
+    @Test
+    public void testIncrementalUpdates() throws Exception {
+        Random random = new Random(42);
+        int first = EpochDays.of(2015, 1, 1);
+        int last = EpochDays.of(2016, 12, 31);
+        Map<Integer, DayWorklog> worklogs = new HashMap<>();
+        for (int day = first; day <= last; day++) {
+            if (EpochDays.dayOfWeek(day) <= 5) {
+                worklogs.put(day, getRandomWorklog(random));
+            }
+        }
+        service.storeDays(worklogs, appCtx);
+        WorklogStatistics before = service.getStatistics(appCtx);
+
+        // some days are changed, emptied, or made incoherent
+        for (int i = 0; i < 200; i++) {
+            int day = first + random.nextInt(last - first + 1);
+            DayWorklog worklog = getRandomWorklog(random);
+            if (i % 10 == 0) {
+                worklog.clear();
+            } else if (i % 10 == 1) {
+                worklog.setMinutes(Marker.EVENING, 6 * 60);
+            }
+            service.storeDay(day, worklog, appCtx);
+        }
+
+        WorklogStatistics updated = service.getStatistics(appCtx);
+        assertSameStatistics(service.computeStatistics(first, last, appCtx), updated);
+        // and with a service computing them from the files
+        assertSameStatistics(new StatisticsStorageService(new ConcurrentStorageServiceImpl()).getStatistics(appCtx), updated);
+        Assert.assertTrue(before.getDayCount() != updated.getDayCount());
+    }
+
+    @Test
+    public void testRange() throws Exception {
+        int monday = EpochDays.of(2016, 10, 31);
+        Map<Integer, DayWorklog> worklogs = new HashMap<>();
+        for (int i = 0; i < 14; i++) {
+            DayWorklog worklog = new DayWorklog();
+            worklog.setMinutes(Marker.MORNING, 8 * 60 + i);
+            worklog.setMinutes(Marker.EVENING, 17 * 60);
+            worklogs.put(monday + i, worklog);
+        }
+        service.storeDays(worklogs, appCtx);
+
+        // only the days of the first week
+        WorklogStatistics statistics = service.computeStatistics(monday, monday + 6, appCtx);
+        Assert.assertEquals(7, statistics.getDayCount());
+        MinuteHistogram arrivals = statistics.get(WorklogStatistics.Measure.MORNING);
+        Assert.assertEquals(8 * 60, arrivals.getMin());
+        Assert.assertEquals(8 * 60 + 3, arrivals.getPercentile(50));
+        Assert.assertEquals(8 * 60 + 6, arrivals.getMax());
+        Assert.assertEquals(9 * 60 - 3, (int) statistics.get(WorklogStatistics.Measure.DAY_LENGTH).getMean());
+        Assert.assertEquals(0, statistics.get(WorklogStatistics.Measure.LUNCH_LENGTH).getCount());
+    }
+
+    @Test(timeout = 10000)
+    public void testSaveDuringComputation() throws Exception {
+        final int monday = EpochDays.of(2016, 10, 31);
+        Map<Integer, DayWorklog> worklogs = new HashMap<>();
+        for (int i = 0; i < 5; i++) {
+            worklogs.put(monday + i, getRandomWorklog(new Random(i)));
+        }
+        final CountDownLatch scanning = new CountDownLatch(1);
+        final CountDownLatch saved = new CountDownLatch(1);
+        // the computation waits in the middle of the pass over the days
+        service = new StatisticsStorageService(new ConcurrentStorageServiceImpl() {
+            @NonNull
+            @Override
+            public Map<Integer, DayWorklog> scanDays(int fromEpochDay, int toEpochDay, @NonNull Context context) {
+                scanning.countDown();
+                try {
+                    saved.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.scanDays(fromEpochDay, toEpochDay, context);
+            }
+        });
+        service.storeDays(worklogs, appCtx);
+        Thread computation = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                service.getStatistics(appCtx);
+            }
+        });
+        computation.start();
+        scanning.await();
+
+        // the save isn't blocked by the computation
+        service.storeDay(monday + 7, getRandomWorklog(new Random(7)), appCtx);
+        saved.countDown();
+        computation.join();
+
+        // the statistics computed meanwhile aren't kept
+        Assert.assertEquals(6, service.getStatistics(appCtx).getDayCount());
+    }
+
+    @Test
+    public void testTenYears() throws Exception {
+        Random random = new Random(7);
+        Map<Integer, DayWorklog> worklogs = new HashMap<>();
+        for (int day = EpochDays.of(2007, 1, 1); day < EpochDays.of(2017, 1, 1); day++) {
+            if (EpochDays.dayOfWeek(day) <= 5) {
+                worklogs.put(day, getRandomWorklog(random));
+            }
+        }
+        service.storeDays(worklogs, appCtx);
+
+        WorklogStatistics statistics = new StatisticsStorageService(new ConcurrentStorageServiceImpl()).getStatistics(appCtx);
+
+        Assert.assertEquals(worklogs.size(), statistics.getDayCount());
+    }
+
+    private static void assertSameStatistics(WorklogStatistics expected, WorklogStatistics actual) {
+        Assert.assertEquals(expected.getDayCount(), actual.getDayCount());
+        for (WorklogStatistics.Measure measure : WorklogStatistics.Measure.values()) {
+            for (int dayOfWeek = 1; dayOfWeek <= 7; dayOfWeek++) {
+                MinuteHistogram expectedHistogram = expected.get(measure, dayOfWeek);
+                MinuteHistogram actualHistogram = actual.get(measure, dayOfWeek);
+                Assert.assertEquals(expectedHistogram.getCount(), actualHistogram.getCount());
+                Assert.assertEquals(expectedHistogram.getMean(), actualHistogram.getMean());
+                for (int percent = 0; percent <= 100; percent += 10) {
+                    Assert.assertEquals(expectedHistogram.getPercentile(percent), actualHistogram.getPercentile(percent));
+                }
+            }
+        }
+    }
+
+    private static DayWorklog getRandomWorklog(Random random) {
+        DayWorklog worklog = new DayWorklog();
+        worklog.setMinutes(Marker.MORNING, 7 * 60 + random.nextInt(120));
+        if (random.nextInt(4) != 0) {
+            worklog.setMinutes(Marker.LUNCH_START, 11 * 60 + 30 + random.nextInt(60));
+            worklog.setMinutes(Marker.LUNCH_END, 12 * 60 + 45 + random.nextInt(45));
+        }
+        worklog.setMinutes(Marker.EVENING, 16 * 60 + random.nextInt(180));
+        return worklog;
+    }
+}
@@ -5,33 +5,43 @@ import android.content.Context;
 import junit.framework.Assert;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.Mockito;
 
+import java.io.File;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.IOException;
 import java.util.Calendar;
-import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.Map;
 
+import eu.leneurone.timelog.Fixtures;
 import eu.leneurone.timelog.model.Marker;
 import eu.leneurone.timelog.model.Time;
+import eu.leneurone.timelog.services.StorageService;
+import eu.leneurone.timelog.utils.EpochDays;
 
 /**
  * Unit tests for StorageServiceImpl complex methods
  */
 public class StorageServiceImplTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     private StorageServiceImpl service;
 
     private Context appCtx;
 
     @Before
-    public void prepare() {
-        appCtx = Mockito.mock(Context.class);
-        service = Mockito.mock(StorageServiceImpl.class);
-        // disable the mock for the loadWeekWorklog method, since we want to test it
-        Mockito.when(service.loadWeekWorklog(Mockito.any(Calendar.class), Mockito.any(Context.class))).thenCallRealMethod();
+    public void prepare() throws Exception {
+        // the private files of the app are stored in a temporary folder
+        appCtx = Fixtures.mockContext(folder.getRoot());
+        service = new StorageServiceImpl();
     }
 
     @Test
@@ -46,20 +56,17 @@ public class StorageServiceImplTest {
         Assert.assertNotNull(data);
         Assert.assertTrue(data.isEmpty());
         Mockito.verifyNoMoreInteractions(appCtx);
-        Mockito.verify(service).loadWeekWorklog(Mockito.any(Calendar.class), Mockito.any(Context.class));
-        Mockito.verifyNoMoreInteractions(service);
     }
 
     @Test
-    public void testLoadWeek_Tuesday() {
+    public void testLoadWeek_Tuesday() throws IOException {
         // the 1/11/2016 was a tuesday
         GregorianCalendar tuesday = new GregorianCalendar(2016, Calendar.NOVEMBER, 1);
 
         // prepare stub
         GregorianCalendar monday = new GregorianCalendar(2016, Calendar.OCTOBER, 31);
         Map<Marker, Time> times = getTimes();
-        Mockito.when(service.loadDayWorklog(Mockito.any(Date.class), Mockito.any(Context.class)))
-                .thenReturn(times);
+        service.storeDayWorklog(monday.getTime(), times, appCtx);
 
         // do
         Map<Calendar, Map<Marker, Time>> data = service.loadWeekWorklog(tuesday, appCtx);
@@ -72,7 +79,7 @@ public class StorageServiceImplTest {
     }
 
     @Test
-    public void testLoadWeek_Wednesday() {
+    public void testLoadWeek_Wednesday() throws IOException {
         // the 2/11/2016 was a wednesday
         GregorianCalendar wednesday = new GregorianCalendar(2016, Calendar.NOVEMBER, 2);
 
@@ -80,8 +87,8 @@ public class StorageServiceImplTest {
         GregorianCalendar monday = new GregorianCalendar(2016, Calendar.OCTOBER, 31);
         GregorianCalendar tuesday = new GregorianCalendar(2016, Calendar.NOVEMBER, 1);
         Map<Marker, Time> times = getTimes();
-        Mockito.when(service.loadDayWorklog(Mockito.any(Date.class), Mockito.any(Context.class)))
-                .thenReturn(times);
+        service.storeDayWorklog(monday.getTime(), times, appCtx);
+        service.storeDayWorklog(tuesday.getTime(), times, appCtx);
 
         // do
         Map<Calendar, Map<Marker, Time>> data = service.loadWeekWorklog(wednesday, appCtx);
@@ -94,7 +101,7 @@ public class StorageServiceImplTest {
     }
 
     @Test
-    public void testLoadWeek_Sunday() {
+    public void testLoadWeek_Sunday() throws IOException {
         // the 6/11/2016 was a sunday
         GregorianCalendar sunday = new GregorianCalendar(2016, Calendar.NOVEMBER, 6);
 
@@ -109,12 +116,12 @@ public class StorageServiceImplTest {
         Map<Marker, Time> times2 = getTimes();
         // total time for times2 : 6:40
         times2.put(Marker.MORNING, new Time(9, 15));
-        Mockito.when(service.loadDayWorklog(Mockito.eq(monday.getTime()), Mockito.any(Context.class))).thenReturn(times);
-        Mockito.when(service.loadDayWorklog(Mockito.eq(tuesday.getTime()), Mockito.any(Context.class))).thenReturn(times2);
-        Mockito.when(service.loadDayWorklog(Mockito.eq(wednesday.getTime()), Mockito.any(Context.class))).thenReturn(times);
-        Mockito.when(service.loadDayWorklog(Mockito.eq(thursday.getTime()), Mockito.any(Context.class))).thenReturn(times2);
-        Mockito.when(service.loadDayWorklog(Mockito.eq(friday.getTime()), Mockito.any(Context.class))).thenReturn(times);
-        Mockito.when(service.loadDayWorklog(Mockito.eq(saturday.getTime()), Mockito.any(Context.class))).thenReturn(times2);
+        service.storeDayWorklog(monday.getTime(), times, appCtx);
+        service.storeDayWorklog(tuesday.getTime(), times2, appCtx);
+        service.storeDayWorklog(wednesday.getTime(), times, appCtx);
+        service.storeDayWorklog(thursday.getTime(), times2, appCtx);
+        service.storeDayWorklog(friday.getTime(), times, appCtx);
+        service.storeDayWorklog(saturday.getTime(), times2, appCtx);
 
         // do
         Map<Calendar, Map<Marker, Time>> data = service.loadWeekWorklog(sunday, appCtx);
@@ -130,6 +137,84 @@ public class StorageServiceImplTest {
         Assert.assertTrue(data.get(saturday).equals(times2));
     }
 
+    @Test
+    public void testLoadRange_Month() throws IOException {
+        GregorianCalendar first = new GregorianCalendar(2016, Calendar.FEBRUARY, 1);
+        GregorianCalendar last = new GregorianCalendar(2016, Calendar.FEBRUARY, 29);
+        GregorianCalendar someDay = new GregorianCalendar(2016, Calendar.FEBRUARY, 15);
+        Map<Marker, Time> times = getTimes();
+        service.storeDayWorklog(someDay.getTime(), times, appCtx);
+        service.storeDayWorklog(last.getTime(), times, appCtx);
+
+        // do
+        Map<Calendar, Map<Marker, Time>> data = service.loadRange(first, last, appCtx);
+
+        // validate : one entry per day, empty for the days without data
+        Assert.assertEquals(29, data.size());
+        Assert.assertTrue(data.get(first).isEmpty());
+        Assert.assertEquals(times, data.get(someDay));
+        Assert.assertEquals(times, data.get(last));
+        Assert.assertTrue(service.loadRange(last, first, appCtx).isEmpty());
+    }
+
+    @Test
+    public void testLoadDay_Legacy() throws Exception {
+        GregorianCalendar day = new GregorianCalendar(2016, Calendar.NOVEMBER, 2);
+        Map<Marker, Time> times = getTimes();
+        // file written by the first versions of the app
+        try (ObjectOutputStream output = new ObjectOutputStream(appCtx.openFileOutput("timeLog_20161102", Context.MODE_PRIVATE))) {
+            output.writeObject(times);
+        }
+
+        Assert.assertEquals(times, service.loadDayWorklog(day.getTime(), appCtx));
+    }
+
+    @Test
+    public void testLoadDay_NoFileOpenedForEmptyDays() throws Exception {
+        GregorianCalendar day = new GregorianCalendar(2016, Calendar.NOVEMBER, 2);
+        GregorianCalendar otherDay = new GregorianCalendar(2016, Calendar.NOVEMBER, 3);
+        service.storeDayWorklog(day.getTime(), getTimes(), appCtx);
+
+        Assert.assertTrue(service.loadDayWorklog(otherDay.getTime(), appCtx).isEmpty());
+        Mockito.verify(appCtx, Mockito.never()).openFileInput("timeLog_20161103");
+        Assert.assertEquals(getTimes(), service.loadDayWorklog(day.getTime(), appCtx));
+    }
+
+    @Test
+    public void testFindLoggedDays() throws Exception {
+        int day = EpochDays.of(2016, 11, 2);
+        service.storeDayWorklog(new GregorianCalendar(2015, Calendar.DECEMBER, 31).getTime(), getTimes(), appCtx);
+        service.storeDayWorklog(new GregorianCalendar(2016, Calendar.NOVEMBER, 2).getTime(), getTimes(), appCtx);
+        service.storeDayWorklog(new GregorianCalendar(2017, Calendar.JANUARY, 3).getTime(), getTimes(), appCtx);
+
+        Assert.assertEquals(EpochDays.of(2015, 12, 31), service.findPreviousLoggedDay(day, appCtx));
+        Assert.assertEquals(EpochDays.of(2017, 1, 3), service.findNextLoggedDay(day, appCtx));
+        Assert.assertEquals(day, service.findNextLoggedDay(day - 1, appCtx));
+        Assert.assertEquals(StorageService.NO_DAY, service.findPreviousLoggedDay(EpochDays.of(2015, 12, 31), appCtx));
+
+        // an emptied day isn't a logged day anymore
+        service.storeDayWorklog(new GregorianCalendar(2016, Calendar.NOVEMBER, 2).getTime(), new HashMap<Marker, Time>(), appCtx);
+        Assert.assertEquals(EpochDays.of(2017, 1, 3), service.findNextLoggedDay(day - 1, appCtx));
+    }
+
+    @Test
+    public void testPresenceIndexRebuilt() throws Exception {
+        GregorianCalendar day = new GregorianCalendar(2016, Calendar.NOVEMBER, 2);
+        service.storeDayWorklog(day.getTime(), getTimes(), appCtx);
+
+        // missing index : it is rebuilt from the files
+        Assert.assertTrue(new File(folder.getRoot(), DayPresenceIndex.INDEX_FILENAME).delete());
+        Assert.assertEquals(getTimes(), new StorageServiceImpl().loadDayWorklog(day.getTime(), appCtx));
+
+        // corrupted index
+        try (RandomAccessFile index = new RandomAccessFile(new File(folder.getRoot(), DayPresenceIndex.INDEX_FILENAME), "rw")) {
+            // clears the bits of the days 257 to 320 of the first year : version, count, year, 4 longs
+            index.seek(4 + 4 + 4 + 4 * 8);
+            index.writeLong(0);
+        }
+        Assert.assertEquals(getTimes(), new StorageServiceImpl().loadDayWorklog(day.getTime(), appCtx));
+    }
+
     private Map<Marker, Time> getTimes() {
         // total time : 7:40
         Map<Marker, Time> times = new HashMap<>();
@@ -0,0 +1,157 @@
+package eu.leneurone.timelog.services.impl;
+
+import android.content.Context;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+
+import eu.leneurone.timelog.Fixtures;
+import eu.leneurone.timelog.math.TotalCalculator;
+import eu.leneurone.timelog.math.WorkRules;
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.model.Marker;
+import eu.leneurone.timelog.model.Time;
+import eu.leneurone.timelog.services.SaveHandle;
+import eu.leneurone.timelog.utils.EpochDays;
+
+/**
+ * Unit tests for TotalsIndexStorageService : the indexed totals must follow the saves, and survive
+ * a lost or interrupted index
+ */
+public class TotalsIndexStorageServiceTest {
+
+    private static final WorkRules RULES = WorkRules.DEFAULT;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Context appCtx;
+
+    private TotalsIndexStorageService service;
+
+    @Before
+    public void prepare() throws Exception {
+        // the private files of the app are stored in a temporary folder
+        appCtx = Fixtures.mockContext(folder.getRoot());
+        service = new TotalsIndexStorageService(new StorageServiceImpl());
+    }
+
+    @After
+    public void restoreRules() {
+        TotalCalculator.setWorkRules(WorkRules.DEFAULT);
+    }
+
+    @Test
+    public void testIncrementalUpdates() throws Exception {
+        int day1 = EpochDays.of(2016, 12, 30);
+        int day2 = EpochDays.of(2017, 1, 2);
+        service.storeDay(day1, getWorklog(8, 30), appCtx);
+        service.storeDay(day2, getWorklog(7, 0), appCtx);
+
+        Assert.assertEquals(Time.of(15, 30), service.getTotalTime(day1, day2, appCtx));
+        Assert.assertEquals(Time.of(7, 0), service.getTotalTime(day1 + 1, day2, appCtx));
+        Assert.assertEquals(Time.ofMinutes(-30), service.getBalance(day1, day2, RULES, appCtx));
+        Assert.assertEquals(Time.ofMinutes(30), service.getBalanceBefore(day2, RULES, appCtx));
+
+        // the day is modified, then emptied
+        service.storeDay(day1, getWorklog(9, 0), appCtx);
+        Assert.assertEquals(Time.ofMinutes(0), service.getBalance(day1, day2, RULES, appCtx));
+        service.storeDay(day1, new DayWorklog(), appCtx);
+        Assert.assertEquals(Time.ofMinutes(-60), service.getBalance(day1, day2, RULES, appCtx));
+        Assert.assertEquals(Time.ofMinutes(0), service.getBalanceBefore(day2, RULES, appCtx));
+    }
+
+    @Test
+    public void testBalance_TargetsByDayOfWeek() throws Exception {
+        // Friday, then Saturday : no work time is expected on Saturday by default
+        int friday = EpochDays.of(2016, 11, 4);
+        service.storeDay(friday, getWorklog(7, 30), appCtx);
+        service.storeDay(friday + 1, getWorklog(4, 0), appCtx);
+        Assert.assertEquals(Time.of(3, 30), service.getBalance(friday, friday + 1, RULES, appCtx));
+
+        WorkRules rules = new WorkRules(60, 13 * 60, new int[]{420, 420, 420, 420, 420, 240, 0});
+        Assert.assertEquals(Time.ofMinutes(30), service.getBalance(friday, friday + 1, rules, appCtx));
+    }
+
+    @Test
+    public void testRebuild_IndexDeleted() throws Exception {
+        storeDays();
+        Assert.assertTrue(new File(folder.getRoot(), DailyTotalsIndex.INDEX_FILENAME).delete());
+
+        // read by a new service, as when the app starts
+        TotalsIndexStorageService newService = new TotalsIndexStorageService(new StorageServiceImpl());
+        Assert.assertEquals(Time.of(23, 0), newService.getTotalTime(EpochDays.of(2015, 1, 1), EpochDays.of(2018, 1, 1), appCtx));
+        Assert.assertEquals(Time.ofMinutes(-60), newService.getBalanceBefore(EpochDays.of(2018, 1, 1), RULES, appCtx));
+    }
+
+    @Test
+    public void testRebuild_IndexInterrupted() throws Exception {
+        storeDays();
+        // the index is left dirty, with a wrong total
+        try (RandomAccessFile file = new RandomAccessFile(new File(folder.getRoot(), DailyTotalsIndex.INDEX_FILENAME), "rw")) {
+            file.seek(4);
+            file.writeInt(1);
+            file.seek(DailyTotalsIndex.HEADER_SIZE);
+            file.writeInt(1000);
+        }
+
+        TotalsIndexStorageService newService = new TotalsIndexStorageService(new StorageServiceImpl());
+        Assert.assertEquals(Time.of(23, 0), newService.getTotalTime(EpochDays.of(2015, 1, 1), EpochDays.of(2018, 1, 1), appCtx));
+    }
+
+    @Test
+    public void testRebuild_RulesChanged() throws Exception {
+        int day = EpochDays.of(2016, 6, 1);
+        // no lunch markers : the lunch duration is deducted
+        DayWorklog worklog = new DayWorklog();
+        worklog.set(Marker.MORNING, Time.of(8, 0));
+        worklog.set(Marker.EVENING, Time.of(17, 0));
+        service.storeDay(day, worklog, appCtx);
+        Assert.assertEquals(Time.of(8, 0), service.getTotalTime(day, day, appCtx));
+
+        // the process is killed after the settings are changed, before the index is rebuilt
+        TotalCalculator.setWorkRules(new WorkRules(30, 13 * 60, new int[7]));
+        TotalsIndexStorageService newService = new TotalsIndexStorageService(new StorageServiceImpl());
+        Assert.assertEquals(Time.of(8, 30), newService.getTotalTime(day, day, appCtx));
+
+        // the settings are changed while the index is opened
+        TotalCalculator.setWorkRules(RULES);
+        Assert.assertEquals(Time.of(8, 0), newService.getTotalTime(day, day, appCtx));
+    }
+
+    @Test
+    public void testRebuildAsync() throws Exception {
+        storeDays();
+        SaveHandle handle = service.rebuildAsync(appCtx);
+        Assert.assertTrue(handle.await(10, TimeUnit.SECONDS));
+        Assert.assertNull(handle.getError());
+        Assert.assertEquals(Time.of(23, 0), service.getTotalTime(EpochDays.of(2015, 1, 1), EpochDays.of(2018, 1, 1), appCtx));
+        Assert.assertEquals(Time.of(8, 0), service.getTotalTime(EpochDays.of(2016, 1, 1), EpochDays.of(2016, 12, 31), appCtx));
+    }
+
+    // 23:00 over 3 days, on 2 years
+    private void storeDays() throws Exception {
+        service.storeDay(EpochDays.of(2015, 6, 1), getWorklog(8, 0), appCtx);
+        service.storeDay(EpochDays.of(2015, 6, 2), getWorklog(7, 0), appCtx);
+        service.storeDay(EpochDays.of(2016, 6, 1), getWorklog(8, 0), appCtx);
+    }
+
+    // a full day, with a one-hour lunch break
+    private DayWorklog getWorklog(int hours, int minutes) {
+        DayWorklog worklog = new DayWorklog();
+        worklog.set(Marker.MORNING, Time.of(8, 0));
+        worklog.set(Marker.LUNCH_START, Time.of(12, 0));
+        worklog.set(Marker.LUNCH_END, Time.of(13, 0));
+        worklog.set(Marker.EVENING, Time.ofMinutes(13 * 60 + (hours - 4) * 60 + minutes));
+        return worklog;
+    }
+}
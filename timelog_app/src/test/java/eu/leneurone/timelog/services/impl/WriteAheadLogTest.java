@@ -0,0 +1,111 @@
+package eu.leneurone.timelog.services.impl;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.model.Marker;
+import eu.leneurone.timelog.model.Time;
+
+/**
+ * Unit tests for WriteAheadLog, and its recovery after a crash
+ */
+public class WriteAheadLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void prepare() throws Exception {
+        file = new File(folder.getRoot(), "wal");
+    }
+
+    @Test
+    public void testAppendAndRecover() throws Exception {
+        WriteAheadLog log = new WriteAheadLog(file);
+        Assert.assertTrue(log.recover().isEmpty());
+        log.append(getWorklogs(100, 101, 102));
+        log.append(getWorklogs(101));
+        Assert.assertEquals(4, log.getRecordCount());
+        Assert.assertEquals(4 * WriteAheadLog.RECORD_SIZE, file.length());
+        log.close();
+
+        Map<Integer, DayWorklog> recovered = new WriteAheadLog(file).recover();
+        Assert.assertEquals(getWorklogs(100, 101, 102), recovered);
+    }
+
+    @Test
+    public void testRecover_TornTail() throws Exception {
+        WriteAheadLog log = new WriteAheadLog(file);
+        log.append(getWorklogs(100, 101));
+        log.close();
+        // the crash happened while the third record was written
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.setLength(raw.length() + WriteAheadLog.RECORD_SIZE / 2);
+        }
+
+        log = new WriteAheadLog(file);
+        Assert.assertEquals(getWorklogs(100, 101), log.recover());
+        Assert.assertEquals(2 * WriteAheadLog.RECORD_SIZE, file.length());
+
+        // the next records follow the valid ones
+        log.append(getWorklogs(102));
+        log.close();
+        Assert.assertEquals(getWorklogs(100, 101, 102), new WriteAheadLog(file).recover());
+    }
+
+    @Test
+    public void testRecover_CorruptedRecord() throws Exception {
+        WriteAheadLog log = new WriteAheadLog(file);
+        log.append(getWorklogs(100));
+        log.append(getWorklogs(101));
+        log.append(getWorklogs(102));
+        log.close();
+        // a byte of the second record is corrupted : the following records can't be trusted
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(WriteAheadLog.RECORD_SIZE + 6);
+            int value = raw.read();
+            raw.seek(WriteAheadLog.RECORD_SIZE + 6);
+            raw.write(value ^ 0x5A);
+        }
+
+        log = new WriteAheadLog(file);
+        Assert.assertEquals(getWorklogs(100), log.recover());
+        Assert.assertEquals(1, log.getRecordCount());
+        Assert.assertEquals(WriteAheadLog.RECORD_SIZE, file.length());
+    }
+
+    @Test
+    public void testTruncate() throws Exception {
+        WriteAheadLog log = new WriteAheadLog(file);
+        log.append(getWorklogs(100, 101));
+        log.truncate();
+        Assert.assertEquals(0, log.getRecordCount());
+        Assert.assertEquals(0, file.length());
+        log.close();
+        Assert.assertTrue(new WriteAheadLog(file).recover().isEmpty());
+    }
+
+    // a different worklog for each day
+    private static Map<Integer, DayWorklog> getWorklogs(int... epochDays) {
+        Map<Integer, DayWorklog> worklogs = new HashMap<>();
+        for (int epochDay : epochDays) {
+            DayWorklog worklog = new DayWorklog();
+            worklog.set(Marker.MORNING, Time.ofMinutes(7 * 60 + epochDay % 60));
+            worklog.set(Marker.EVENING, Time.ofMinutes(17 * 60));
+            worklogs.put(epochDay, worklog);
+        }
+        return worklogs;
+    }
+}
@@ -0,0 +1,143 @@
+package eu.leneurone.timelog.services.impl;
+
+import android.content.Context;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.model.Marker;
+import eu.leneurone.timelog.model.Time;
+import eu.leneurone.timelog.services.SaveHandle;
+import eu.leneurone.timelog.services.StorageService;
+import eu.leneurone.timelog.utils.EpochDays;
+
+/**
+ * Unit tests for WriteBehindStorageService
+ */
+public class WriteBehindStorageServiceTest {
+
+    private StorageService delegate;
+
+    private WriteBehindStorageService service;
+
+    private Context appCtx;
+
+    /** blocks the writer until released */
+    private CountDownLatch writerReleased;
+
+    /** released once the writer is blocked */
+    private CountDownLatch writerBusy;
+
+    @Before
+    public void prepare() throws IOException {
+        appCtx = Mockito.mock(Context.class);
+        delegate = Mockito.mock(StorageService.class);
+        writerReleased = new CountDownLatch(1);
+        writerBusy = new CountDownLatch(1);
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                writerBusy.countDown();
+                writerReleased.await();
+                return null;
+            }
+        }).when(delegate).storeDay(Mockito.anyInt(), Mockito.any(DayWorklog.class), Mockito.any(Context.class));
+        Mockito.when(delegate.loadDay(Mockito.anyInt(), Mockito.any(Context.class))).thenReturn(new DayWorklog());
+        service = new WriteBehindStorageService(delegate);
+    }
+
+    @Test
+    public void testCoalescing() throws Exception {
+        int busyDay = EpochDays.of(2016, 11, 1);
+        int day = EpochDays.of(2016, 11, 2);
+        // keeps the writer busy
+        SaveHandle busyHandle = service.storeDayAsync(busyDay, getTimes(9), appCtx);
+        Assert.assertTrue(writerBusy.await(5, TimeUnit.SECONDS));
+
+        SaveHandle firstHandle = service.storeDayAsync(day, getTimes(8), appCtx);
+        SaveHandle secondHandle = service.storeDayAsync(day, getTimes(10), appCtx);
+        Assert.assertSame(firstHandle, secondHandle);
+        Assert.assertFalse(secondHandle.isDone());
+
+        // the reads return the latest saved data, even if it isn't written yet
+        Assert.assertEquals(getTimes(10), service.loadDay(day, appCtx));
+
+        writerReleased.countDown();
+        Assert.assertTrue(busyHandle.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(secondHandle.await(5, TimeUnit.SECONDS));
+        Assert.assertNull(secondHandle.getError());
+        // the day is written only once, with the latest data
+        Mockito.verify(delegate).storeDay(day, getTimes(10), appCtx);
+        Mockito.verify(delegate, Mockito.never()).storeDay(day, getTimes(8), appCtx);
+    }
+
+    @Test
+    public void testGroupCommit() throws Exception {
+        int busyDay = EpochDays.of(2016, 11, 1);
+        int firstDay = EpochDays.of(2016, 11, 2);
+        int secondDay = EpochDays.of(2016, 11, 3);
+        // keeps the writer busy
+        service.storeDayAsync(busyDay, getTimes(9), appCtx);
+        Assert.assertTrue(writerBusy.await(5, TimeUnit.SECONDS));
+
+        SaveHandle firstHandle = service.storeDayAsync(firstDay, getTimes(8), appCtx);
+        SaveHandle secondHandle = service.storeDayAsync(secondDay, getTimes(10), appCtx);
+        Assert.assertNotSame(firstHandle, secondHandle);
+
+        writerReleased.countDown();
+        Assert.assertTrue(firstHandle.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(secondHandle.await(5, TimeUnit.SECONDS));
+        // the saves waiting together are written at once
+        Map<Integer, DayWorklog> expected = new HashMap<>();
+        expected.put(firstDay, getTimes(8));
+        expected.put(secondDay, getTimes(10));
+        Mockito.verify(delegate).storeDays(expected, appCtx);
+        Mockito.verify(delegate, Mockito.never()).storeDay(Mockito.eq(firstDay), Mockito.any(DayWorklog.class), Mockito.any(Context.class));
+    }
+
+    @Test
+    public void testError() throws Exception {
+        writerReleased.countDown();
+        int day = EpochDays.of(2016, 11, 2);
+        IOException error = new IOException("disk full");
+        Mockito.doThrow(error).when(delegate).storeDay(Mockito.eq(day), Mockito.any(DayWorklog.class), Mockito.any(Context.class));
+
+        final CountDownLatch notified = new CountDownLatch(1);
+        final IOException[] notifiedError = new IOException[1];
+        service.storeDayAsync(day, getTimes(8), appCtx).addListener(new SaveHandle.Listener() {
+            @Override
+            public void onSaveCompleted(IOException error) {
+                notifiedError[0] = error;
+                notified.countDown();
+            }
+        });
+
+        Assert.assertTrue(notified.await(5, TimeUnit.SECONDS));
+        Assert.assertSame(error, notifiedError[0]);
+        try {
+            service.storeDay(day, getTimes(8), appCtx);
+            Assert.fail("the error must be thrown by the synchronous save");
+        } catch (IOException e) {
+            Assert.assertSame(error, e);
+        }
+    }
+
+    private DayWorklog getTimes(int morningHour) {
+        DayWorklog worklog = new DayWorklog();
+        worklog.set(Marker.MORNING, new Time(morningHour, 15));
+        worklog.set(Marker.EVENING, new Time(17, 10));
+        return worklog;
+    }
+}
@@ -0,0 +1,179 @@
+package eu.leneurone.timelog.services.impl;
+
+import android.content.Context;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import eu.leneurone.timelog.Fixtures;
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.model.Marker;
+import eu.leneurone.timelog.utils.EpochDays;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Compares the size of the days kept in the journal and in the yearly archives, and checks the
+ * days read from both.
+ * <br />
+ * The benchmark printing their size and their read latency only runs when the build is run with
+ * -Ptimelog.benchmarks.
+ */
+public class YearArchiveBenchmarkTest {
+
+    /** the archived years */
+    private static final int FIRST_YEAR = 2011;
+    private static final int YEARS = 5;
+
+    /** number of random days read from each storage */
+    private static final int READS = 20000;
+
+    /** the usual block size of the file systems : the minimum space taken by a file */
+    private static final int BLOCK_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Context appCtx;
+
+    @Before
+    public void prepare() throws Exception {
+        // the private files of the app are stored in a temporary folder
+        appCtx = Fixtures.mockContext(folder.getRoot());
+    }
+
+    @Test
+    public void testArchiveSize() throws Exception {
+        Random random = new Random(42);
+        Map<Integer, DayWorklog> worklogs = buildWorklogs(random);
+        ArchiveStorageService service = new ArchiveStorageService(new JournalStorageServiceImpl());
+        service.storeDays(worklogs, appCtx);
+        long hotBytes = worklogs.size() * (long) JournalStorageServiceImpl.RECORD_SIZE;
+
+        int[] days = randomDays(random);
+        readDays(service, days, worklogs);
+
+        long archiveBytes = archive(service);
+        // the archives are read on first use : restart
+        service = new ArchiveStorageService(new JournalStorageServiceImpl());
+        readDays(service, days, worklogs);
+
+        // the archives are smaller than the journal records, and take less than one block per year
+        // on disk
+        assertTrue(archiveBytes < hotBytes);
+        assertTrue(archiveBytes < YEARS * (long) BLOCK_SIZE);
+    }
+
+    @Test
+    public void benchmarkArchive() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("timelog.benchmarks"));
+
+        Random random = new Random(42);
+        Map<Integer, DayWorklog> worklogs = buildWorklogs(random);
+        ArchiveStorageService service = new ArchiveStorageService(new JournalStorageServiceImpl());
+        service.storeDays(worklogs, appCtx);
+        long hotBytes = worklogs.size() * (long) JournalStorageServiceImpl.RECORD_SIZE;
+        long hotDiskBytes = diskBytes();
+
+        int[] days = randomDays(random);
+        // warm up
+        readDays(service, days, worklogs);
+        long hotTime = readDays(service, days, worklogs);
+
+        long archiveBytes = archive(service);
+        long archiveDiskBytes = 0;
+        for (int year = FIRST_YEAR; year < FIRST_YEAR + YEARS; year++) {
+            archiveDiskBytes += toBlocks(new File(folder.getRoot(), ArchiveStorageService.FILENAME_PREFIX + year).length());
+        }
+        // the archives are read on first use : restart to measure it
+        service = new ArchiveStorageService(new JournalStorageServiceImpl());
+        long start = System.nanoTime();
+        service.loadDay(EpochDays.of(FIRST_YEAR, 1, 1), appCtx);
+        long openTime = System.nanoTime() - start;
+        long archiveTime = readDays(service, days, worklogs);
+
+        System.out.println(String.format("%d days in %d years", worklogs.size(), YEARS));
+        System.out.println(String.format("journal  : %d bytes of records (%d bytes on disk), %d ns per read",
+                hotBytes, hotDiskBytes, hotTime / READS));
+        System.out.println(String.format("archives : %d files, %d bytes, ratio %.1f (%.1f on disk), %d ns per read, %d us to open",
+                YEARS, archiveBytes, (double) hotBytes / archiveBytes, (double) hotDiskBytes / archiveDiskBytes,
+                archiveTime / READS, openTime / 1000));
+    }
+
+    // the working days of 5 years, with times varying a bit from day to day
+    private static Map<Integer, DayWorklog> buildWorklogs(Random random) {
+        Map<Integer, DayWorklog> worklogs = new HashMap<>();
+        int firstDay = EpochDays.of(FIRST_YEAR, 1, 1);
+        int lastDay = EpochDays.of(FIRST_YEAR + YEARS, 1, 1) - 1;
+        for (int day = firstDay; day <= lastDay; day++) {
+            if (EpochDays.dayOfWeek(day) <= 5) {
+                DayWorklog worklog = new DayWorklog();
+                worklog.setMinutes(Marker.MORNING, 8 * 60 + random.nextInt(60));
+                worklog.setMinutes(Marker.LUNCH_START, 12 * 60 + random.nextInt(30));
+                worklog.setMinutes(Marker.LUNCH_END, 13 * 60 + random.nextInt(30));
+                worklog.setMinutes(Marker.EVENING, 17 * 60 + random.nextInt(90));
+                worklogs.put(day, worklog);
+            }
+        }
+        return worklogs;
+    }
+
+    // the days read by the tests, logged or not
+    private static int[] randomDays(Random random) {
+        int firstDay = EpochDays.of(FIRST_YEAR, 1, 1);
+        int lastDay = EpochDays.of(FIRST_YEAR + YEARS, 1, 1) - 1;
+        int[] days = new int[READS];
+        for (int i = 0; i < READS; i++) {
+            days[i] = firstDay + random.nextInt(lastDay - firstDay + 1);
+        }
+        return days;
+    }
+
+    // archives all the years, and returns the size of the archives
+    private long archive(ArchiveStorageService service) throws Exception {
+        for (int year = FIRST_YEAR; year < FIRST_YEAR + YEARS; year++) {
+            service.archive(year, appCtx);
+        }
+        long archiveBytes = 0;
+        for (int year = FIRST_YEAR; year < FIRST_YEAR + YEARS; year++) {
+            archiveBytes += new File(folder.getRoot(), ArchiveStorageService.FILENAME_PREFIX + year).length();
+        }
+        return archiveBytes;
+    }
+
+    // the space taken on disk by all the files of the app
+    private long diskBytes() {
+        long bytes = 0;
+        File[] files = folder.getRoot().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                bytes += toBlocks(file.length());
+            }
+        }
+        return bytes;
+    }
+
+    // the size of a file, rounded up to whole blocks
+    private static long toBlocks(long length) {
+        return (length + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+    }
+
+    // reads the days, checks them, and returns the elapsed time
+    private long readDays(ArchiveStorageService service, int[] days, Map<Integer, DayWorklog> worklogs) {
+        long start = System.nanoTime();
+        for (int day : days) {
+            DayWorklog expected = worklogs.get(day);
+            assertEquals(expected != null ? expected : new DayWorklog(), service.loadDay(day, appCtx));
+        }
+        return System.nanoTime() - start;
+    }
+}
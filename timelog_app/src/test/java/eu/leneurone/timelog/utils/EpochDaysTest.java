@@ -0,0 +1,87 @@
+package eu.leneurone.timelog.utils;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for EpochDays
+ */
+public class EpochDaysTest {
+
+    @Test
+    public void testOf() {
+        Assert.assertEquals(0, EpochDays.of(1970, 1, 1));
+        Assert.assertEquals(-1, EpochDays.of(1969, 12, 31));
+        Assert.assertEquals(11016, EpochDays.of(2000, 2, 29));
+    }
+
+    @Test
+    public void testOf_SameAsCalendar() {
+        Calendar day = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+        day.clear();
+        day.set(1990, Calendar.JANUARY, 1);
+        for (int i = 0; i < 20000; i++) {
+            Assert.assertEquals(TimeUnit.MILLISECONDS.toDays(day.getTimeInMillis()), EpochDays.of(day));
+            day.add(Calendar.DAY_OF_YEAR, 1);
+        }
+    }
+
+    @Test
+    public void testFields_SameAsCalendar() {
+        Calendar day = new GregorianCalendar(1899, Calendar.DECEMBER, 25);
+        for (int epochDay = EpochDays.of(day); epochDay < EpochDays.of(2150, 1, 1); epochDay++) {
+            Assert.assertEquals(day.get(Calendar.YEAR), EpochDays.year(epochDay));
+            Assert.assertEquals(day.get(Calendar.MONTH) + 1, EpochDays.month(epochDay));
+            Assert.assertEquals(day.get(Calendar.DAY_OF_MONTH), EpochDays.dayOfMonth(epochDay));
+            Assert.assertEquals(day.get(Calendar.DAY_OF_YEAR), EpochDays.dayOfYear(epochDay));
+            // in Calendar : SUNDAY = 1, MONDAY = 2, ..., SATURDAY = 7
+            Assert.assertEquals((day.get(Calendar.DAY_OF_WEEK) + 5) % 7 + 1, EpochDays.dayOfWeek(epochDay));
+            Assert.assertEquals(day, EpochDays.toCalendar(epochDay));
+            day.add(Calendar.DAY_OF_YEAR, 1);
+        }
+    }
+
+    @Test
+    public void testWeekMonthYear() {
+        // Wednesday
+        int day = EpochDays.of(2016, 11, 2);
+        Assert.assertEquals(20161102, EpochDays.toDayKey(day));
+        Assert.assertEquals(EpochDays.of(2016, 10, 31), EpochDays.mondayOf(day));
+        Assert.assertEquals(EpochDays.of(2016, 11, 1), EpochDays.firstDayOfMonth(day));
+        Assert.assertEquals(EpochDays.of(2016, 1, 1), EpochDays.firstDayOfYear(day));
+        // Sunday
+        Assert.assertEquals(EpochDays.of(2016, 10, 31), EpochDays.mondayOf(EpochDays.of(2016, 11, 6)));
+        Assert.assertEquals(EpochDays.of(2016, 11, 7), EpochDays.mondayOf(EpochDays.of(2016, 11, 7)));
+        // before the epoch
+        Assert.assertEquals(EpochDays.of(1969, 12, 29), EpochDays.mondayOf(EpochDays.of(1970, 1, 1)));
+    }
+
+    @Test
+    public void testOfMillis() {
+        TimeZone paris = TimeZone.getTimeZone("Europe/Paris");
+        Calendar calendar = new GregorianCalendar(paris);
+        calendar.clear();
+        calendar.set(2016, Calendar.NOVEMBER, 2, 23, 59);
+        Assert.assertEquals(EpochDays.of(2016, 11, 2), EpochDays.ofMillis(calendar.getTimeInMillis(), paris));
+        calendar.set(2016, Calendar.NOVEMBER, 3, 0, 0);
+        Assert.assertEquals(EpochDays.of(2016, 11, 3), EpochDays.ofMillis(calendar.getTimeInMillis(), paris));
+        Assert.assertEquals(EpochDays.of(2016, 11, 2), EpochDays.ofMillis(calendar.getTimeInMillis(), TimeZone.getTimeZone("UTC")));
+    }
+
+    @Test
+    public void testFixedClock() {
+        Calendar now = new GregorianCalendar(2016, Calendar.NOVEMBER, 2, 15, 30);
+        Clock clock = Clock.fixed(now);
+        Assert.assertEquals(EpochDays.of(2016, 11, 2), clock.today());
+        Assert.assertEquals(15 * 60 + 30, clock.minutesOfDay());
+        Assert.assertEquals(60 * 1000, clock.millisToNextMinute());
+        now.add(Calendar.MILLISECOND, 59 * 1000 + 999);
+        Assert.assertEquals(1, Clock.fixed(now).millisToNextMinute());
+    }
+}
@@ -0,0 +1,94 @@
+package eu.leneurone.timelog.validators;
+
+import junit.framework.Assert;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+
+import eu.leneurone.timelog.exceptions.IncoherentMarkersException;
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.model.Marker;
+
+/**
+ * Microbenchmark checking that a successful validation allocates nothing. It relies on the
+ * allocation counters of the HotSpot JVM, and is skipped when they aren't available. They are
+ * accessed by reflection, since the unit tests are compiled against the Android API.
+ */
+public class TimesValidatorAllocationTest {
+
+    /** number of validations performed before measuring, so the code is compiled */
+    private static final int WARM_UP_ITERATIONS = 200000;
+
+    /** number of measured validations */
+    private static final int ITERATIONS = 100000;
+
+    /** number of measures */
+    private static final int ROUNDS = 5;
+
+    @Test
+    public void testNoAllocationOnSuccess() throws Exception {
+        Object threadBean = Class.forName("java.lang.management.ManagementFactory").getMethod("getThreadMXBean").invoke(null);
+        Method allocatedBytes;
+        try {
+            Class<?> allocationBeanClass = Class.forName("com.sun.management.ThreadMXBean");
+            Assume.assumeTrue(allocationBeanClass.isInstance(threadBean));
+            allocationBeanClass.getMethod("setThreadAllocatedMemoryEnabled", boolean.class).invoke(threadBean, true);
+            allocatedBytes = allocationBeanClass.getMethod("getThreadAllocatedBytes", long.class);
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            Assume.assumeNoException(e);
+            return;
+        }
+        Long threadId = Thread.currentThread().getId();
+
+        DayWorklog full = new DayWorklog();
+        full.setMinutes(Marker.MORNING, 8 * 60);
+        full.setMinutes(Marker.LUNCH_START, 12 * 60);
+        full.setMinutes(Marker.LUNCH_END, 13 * 60);
+        full.setMinutes(Marker.EVENING, 17 * 60);
+        DayWorklog partial = new DayWorklog();
+        partial.setMinutes(Marker.MORNING, 8 * 60);
+        partial.setMinutes(Marker.EVENING, 17 * 60);
+
+        for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+            TimesValidator.validateMarkersCoherency(full);
+            TimesValidator.validateMarkersCoherency(partial);
+        }
+
+        // the cost of the measure itself, once the reflective call is optimized too
+        for (int i = 0; i < WARM_UP_ITERATIONS / 1000; i++) {
+            allocatedBytes.invoke(threadBean, threadId);
+        }
+        long start = (Long) allocatedBytes.invoke(threadBean, threadId);
+        long overhead = (Long) allocatedBytes.invoke(threadBean, threadId) - start;
+
+        // the best of several rounds is kept : the JIT compiler may allocate during the first ones
+        long allocated = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            start = (Long) allocatedBytes.invoke(threadBean, threadId);
+            for (int i = 0; i < ITERATIONS; i++) {
+                TimesValidator.validateMarkersCoherency(full);
+                TimesValidator.validateMarkersCoherency(partial);
+            }
+            allocated = Math.min(allocated, (Long) allocatedBytes.invoke(threadBean, threadId) - start - overhead);
+        }
+
+        Assert.assertEquals(0, allocated);
+    }
+
+    @Test
+    public void testStacklessException() {
+        DayWorklog worklog = new DayWorklog();
+        worklog.setMinutes(Marker.MORNING, 9 * 60);
+        worklog.setMinutes(Marker.LUNCH_START, 8 * 60);
+        try {
+            TimesValidator.validateMarkersCoherency(worklog);
+            Assert.fail("the markers are incoherent");
+        } catch (IncoherentMarkersException e) {
+            Assert.assertEquals(Marker.MORNING, e.getEarliest());
+            Assert.assertEquals(Marker.LUNCH_START, e.getLatest());
+            Assert.assertEquals(0, e.getStackTrace().length);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package math;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import eu.leneurone.timelog.exceptions.IncoherentMarkersException;
+import eu.leneurone.timelog.math.BatchTotalCalculator;
+import eu.leneurone.timelog.math.TotalCalculator;
+import eu.leneurone.timelog.math.WorklogColumns;
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.model.Marker;
+import eu.leneurone.timelog.model.Time;
+import eu.leneurone.timelog.utils.Clock;
+import eu.leneurone.timelog.utils.EpochDays;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.fail;
+
+/**
+ * Unit tests for BatchTotalCalculator : the results must be the ones of TotalCalculator
+ */
+public class BatchTotalCalculatorTest {
+
+    @Test
+    public void testSameResultsAsScalar_SeveralYears() throws IncoherentMarkersException {
+        // large enough to be computed in parallel
+        Map<Integer, DayWorklog> data = buildRandomDays(EpochDays.of(2005, 3, 1), 12 * 366, new Random(42));
+
+        Time expected = TotalCalculator.calculateTotalTimeOfDays(data);
+
+        WorklogColumns columns = WorklogColumns.of(data);
+        assertEquals(expected, BatchTotalCalculator.calculateTotalTime(columns, Clock.SYSTEM));
+        // whatever the number of processors
+        assertEquals(expected, BatchTotalCalculator.calculateTotalTime(columns, Clock.SYSTEM, 1));
+        assertEquals(expected, BatchTotalCalculator.calculateTotalTime(columns, Clock.SYSTEM, 3));
+        assertEquals(expected, BatchTotalCalculator.calculateTotalTime(columns, Clock.SYSTEM, 8));
+    }
+
+    @Test
+    public void testSameResultsAsScalar_Month() throws IncoherentMarkersException {
+        Map<Integer, DayWorklog> data = buildRandomDays(EpochDays.of(2016, 11, 1), 30, new Random(7));
+
+        Time expected = TotalCalculator.calculateTotalTimeOfDays(data);
+
+        assertEquals(expected, BatchTotalCalculator.calculateTotalTime(WorklogColumns.of(data), Clock.SYSTEM));
+    }
+
+    @Test
+    public void testToday() throws IncoherentMarkersException {
+        Calendar now = new GregorianCalendar(2016, Calendar.NOVEMBER, 2, 15, 30);
+        WorklogColumns columns = new WorklogColumns(2);
+        // yesterday : only the morning is counted
+        DayWorklog yesterday = new DayWorklog();
+        yesterday.setMinutes(Marker.MORNING, 8 * 60);
+        yesterday.setMinutes(Marker.LUNCH_START, 12 * 60);
+        yesterday.setMinutes(Marker.LUNCH_END, 13 * 60);
+        columns.add(EpochDays.of(2016, 11, 1), yesterday);
+        // today : the afternoon is counted until now
+        columns.add(EpochDays.of(2016, 11, 2), yesterday);
+
+        assertEquals(new Time(4 + 4 + 2, 30), BatchTotalCalculator.calculateTotalTime(columns, Clock.fixed(now)));
+    }
+
+    @Test
+    public void testIncoherentDay() {
+        Map<Integer, DayWorklog> data = buildRandomDays(EpochDays.of(2005, 3, 1), 12 * 366, new Random(3));
+        DayWorklog incoherent = new DayWorklog();
+        incoherent.setMinutes(Marker.MORNING, 9 * 60);
+        incoherent.setMinutes(Marker.LUNCH_START, 8 * 60);
+        data.put(EpochDays.of(2014, 7, 14), incoherent);
+
+        try {
+            BatchTotalCalculator.calculateTotalTime(WorklogColumns.of(data), Clock.SYSTEM, 4);
+            fail("the markers of a day are incoherent");
+        } catch (IncoherentMarkersException e) {
+            assertEquals(Marker.MORNING, e.getEarliest());
+            assertEquals(Marker.LUNCH_START, e.getLatest());
+        }
+    }
+
+    // builds days in the past, with all the combinations of markers
+    private static Map<Integer, DayWorklog> buildRandomDays(int first, int count, Random random) {
+        Map<Integer, DayWorklog> data = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            int mask = random.nextInt(DayWorklog.ALL_MARKERS + 1);
+            DayWorklog worklog = new DayWorklog();
+            int minutes = 7 * 60 + random.nextInt(120);
+            for (Marker marker : Marker.values()) {
+                // chronologic times
+                minutes += random.nextInt(200);
+                if ((mask & DayWorklog.bit(marker)) != 0) {
+                    worklog.setMinutes(marker, minutes);
+                }
+            }
+            data.put(first + i, worklog);
+        }
+        return data;
+    }
+}
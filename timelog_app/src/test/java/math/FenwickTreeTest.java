@@ -0,0 +1,56 @@
+package math;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import eu.leneurone.timelog.math.FenwickTree;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Unit tests for FenwickTree : the sums must be the ones of a plain loop
+ */
+public class FenwickTreeTest {
+
+    @Test
+    public void testRangeSum() {
+        Random random = new Random(42);
+        for (int size : new int[]{0, 1, 2, 7, 365, 1000}) {
+            int[] values = new int[size];
+            for (int i = 0; i < size; i++) {
+                values[i] = random.nextInt(600) - 100;
+            }
+            FenwickTree tree = new FenwickTree(values);
+            assertEquals(size, tree.size());
+            // updates
+            for (int k = 0; k < size; k++) {
+                int i = random.nextInt(size);
+                int delta = random.nextInt(200) - 100;
+                values[i] += delta;
+                tree.add(i, delta);
+            }
+            for (int from = -1; from <= size + 1; from += 1 + size / 50) {
+                for (int to = from; to <= size + 1; to += 1 + size / 50) {
+                    assertEquals(naiveSum(values, from, to), tree.rangeSum(from, to));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEmptyRange() {
+        FenwickTree tree = new FenwickTree(new int[]{1, 2, 3});
+        assertEquals(0, tree.rangeSum(2, 2));
+        assertEquals(0, tree.rangeSum(3, 1));
+        assertEquals(6, tree.prefixSum(10));
+    }
+
+    private static long naiveSum(int[] values, int from, int to) {
+        long sum = 0;
+        for (int i = Math.max(from, 0); i < Math.min(to, values.length); i++) {
+            sum += values[i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,81 @@
+package math;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+
+import eu.leneurone.timelog.exceptions.IncoherentMarkersException;
+import eu.leneurone.timelog.math.TotalCalculator;
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.model.IntervalDay;
+import eu.leneurone.timelog.model.Marker;
+import eu.leneurone.timelog.model.Time;
+import eu.leneurone.timelog.utils.Clock;
+import eu.leneurone.timelog.utils.EpochDays;
+import eu.leneurone.timelog.validators.IntervalsValidator;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.fail;
+
+/**
+ * Unit tests for the validation and the total of the days of intervals
+ */
+public class IntervalTotalCalculatorTest {
+
+    @Test
+    public void testIntervals() throws IncoherentMarkersException {
+        Calendar now = new GregorianCalendar(2016, Calendar.NOVEMBER, 2, 16, 30);
+        IntervalDay day = new IntervalDay();
+        day.addInterval(8 * 60, 10 * 60);
+        day.addInterval(10 * 60 + 15, 12 * 60);
+        day.addInterval(14 * 60, 14 * 60);
+        day.punch(15 * 60);
+
+        // the open interval counts until now for today only
+        assertEquals(Time.of(5, 15), TotalCalculator.calculateTotalTime(EpochDays.of(now), day, Clock.fixed(now)));
+        assertEquals(Time.of(3, 45), TotalCalculator.calculateTotalTime(EpochDays.of(now) - 1, day, Clock.fixed(now)));
+    }
+
+    @Test
+    public void testMappedWorklog() throws IncoherentMarkersException {
+        // the markers without the lunch break keep their rules : the lunch duration is deducted
+        Calendar now = new GregorianCalendar(2016, Calendar.NOVEMBER, 2, 20, 0);
+        DayWorklog worklog = new DayWorklog();
+        worklog.set(Marker.MORNING, Time.of(8, 0));
+        worklog.set(Marker.EVENING, Time.of(17, 0));
+        IntervalDay day = IntervalDay.fromWorklog(worklog);
+
+        assertEquals(TotalCalculator.calculateTotalTime(EpochDays.of(now), worklog, Clock.fixed(now)),
+                TotalCalculator.calculateTotalTime(EpochDays.of(now), day, Clock.fixed(now)));
+        assertEquals(Time.of(8, 0), TotalCalculator.calculateTotalTime(EpochDays.of(now), day, Clock.fixed(now)));
+    }
+
+    @Test
+    public void testOverlappingIntervals() {
+        IntervalDay day = new IntervalDay();
+        day.addInterval(8 * 60, 12 * 60);
+        day.addInterval(11 * 60, 13 * 60);
+        try {
+            IntervalsValidator.validateIntervals(day);
+            fail("overlapping intervals");
+        } catch (IncoherentMarkersException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testIncoherentMarkers() {
+        DayWorklog worklog = new DayWorklog();
+        worklog.set(Marker.MORNING, Time.of(9, 0));
+        worklog.set(Marker.LUNCH_END, Time.of(8, 0));
+        try {
+            IntervalsValidator.validateIntervals(IntervalDay.fromWorklog(worklog));
+            fail("incoherent markers");
+        } catch (IncoherentMarkersException e) {
+            // the markers are reported as by the markers validation
+            assertEquals(Marker.MORNING, e.getEarliest());
+            assertEquals(Marker.LUNCH_END, e.getLatest());
+        }
+    }
+}
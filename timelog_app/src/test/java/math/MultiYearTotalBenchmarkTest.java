@@ -0,0 +1,129 @@
+package math;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Map;
+
+import eu.leneurone.timelog.exceptions.IncoherentMarkersException;
+import eu.leneurone.timelog.math.TotalCalculator;
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.model.Marker;
+import eu.leneurone.timelog.model.Time;
+import eu.leneurone.timelog.utils.EpochDays;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Compares the total calculation over several years, with the days held as maps of marker - time
+ * pairs and as DayWorklog : both must give the same total.
+ * <br />
+ * The benchmark printing their footprint and their throughput only runs when the build is run with
+ * -Ptimelog.benchmarks.
+ */
+public class MultiYearTotalBenchmarkTest {
+
+    /** number of days of the data set (about 5 years) */
+    private static final int DAYS = 5 * 365;
+
+    /** number of total calculations per measure */
+    private static final int ITERATIONS = 20;
+
+    @Test
+    public void testMultiYearTotal() throws IncoherentMarkersException {
+        Map<Calendar, Map<Marker, Time>> maps = new HashMap<>();
+        Map<Integer, DayWorklog> worklogs = new HashMap<>();
+        Calendar day = new GregorianCalendar(2012, Calendar.JANUARY, 2);
+        for (int i = 0; i < DAYS; i++) {
+            maps.put((Calendar) day.clone(), buildMap(i));
+            worklogs.put(EpochDays.of(day), buildWorklog(i));
+            day.add(Calendar.DAY_OF_YEAR, 1);
+        }
+
+        assertEquals(TotalCalculator.calculateTotalTime(maps), TotalCalculator.calculateTotalTimeOfDays(worklogs));
+    }
+
+    @Test
+    public void benchmarkMultiYearTotal() throws IncoherentMarkersException {
+        Assume.assumeTrue(Boolean.getBoolean("timelog.benchmarks"));
+
+        // the days are the same in both versions : only the worklogs are measured
+        usedMemory();
+        long before = usedMemory();
+        Object[] mapValues = new Object[DAYS];
+        for (int i = 0; i < DAYS; i++) {
+            mapValues[i] = buildMap(i);
+        }
+        long mapsFootprint = usedMemory() - before;
+
+        before = usedMemory();
+        Object[] worklogValues = new Object[DAYS];
+        for (int i = 0; i < DAYS; i++) {
+            worklogValues[i] = buildWorklog(i);
+        }
+        long worklogsFootprint = usedMemory() - before;
+
+        Map<Calendar, Map<Marker, Time>> maps = new HashMap<>();
+        Map<Integer, DayWorklog> worklogs = new HashMap<>();
+        Calendar day = new GregorianCalendar(2012, Calendar.JANUARY, 2);
+        for (int i = 0; i < DAYS; i++) {
+            //noinspection unchecked
+            maps.put((Calendar) day.clone(), (Map<Marker, Time>) mapValues[i]);
+            worklogs.put(EpochDays.of(day), (DayWorklog) worklogValues[i]);
+            day.add(Calendar.DAY_OF_YEAR, 1);
+        }
+
+        // warm up
+        Time expected = TotalCalculator.calculateTotalTime(maps);
+        TotalCalculator.calculateTotalTimeOfDays(worklogs);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            assertEquals(expected, TotalCalculator.calculateTotalTime(maps));
+        }
+        long mapsTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            assertEquals(expected, TotalCalculator.calculateTotalTimeOfDays(worklogs));
+        }
+        long worklogsTime = System.nanoTime() - start;
+
+        System.out.println(String.format("%d days, total %s", DAYS, expected));
+        System.out.println(String.format("maps     : ~%d bytes per day, %d days/ms",
+                mapsFootprint / DAYS, DAYS * ITERATIONS * 1000000L / Math.max(mapsTime, 1)));
+        System.out.println(String.format("worklogs : ~%d bytes per day, %d days/ms",
+                worklogsFootprint / DAYS, DAYS * ITERATIONS * 1000000L / Math.max(worklogsTime, 1)));
+    }
+
+    private static Map<Marker, Time> buildMap(int i) {
+        Map<Marker, Time> times = new HashMap<>();
+        times.put(Marker.MORNING, Time.of(8, i % 60));
+        times.put(Marker.LUNCH_START, Time.of(12, 0));
+        times.put(Marker.LUNCH_END, Time.of(13, i % 30));
+        times.put(Marker.EVENING, Time.of(17, i % 45));
+        return times;
+    }
+
+    private static DayWorklog buildWorklog(int i) {
+        DayWorklog worklog = new DayWorklog();
+        worklog.setMinutes(Marker.MORNING, 8 * 60 + i % 60);
+        worklog.setMinutes(Marker.LUNCH_START, 12 * 60);
+        worklog.setMinutes(Marker.LUNCH_END, 13 * 60 + i % 30);
+        worklog.setMinutes(Marker.EVENING, 17 * 60 + i % 45);
+        return worklog;
+    }
+
+    // approximate heap usage, after a garbage collection
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            System.runFinalization();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
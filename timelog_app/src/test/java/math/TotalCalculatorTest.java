@@ -1,32 +1,35 @@
 package math;
 
+import org.junit.After;
 import org.junit.Test;
-import org.junit.runner.RunWith;
-import org.mockito.Mockito;
-import org.powermock.api.mockito.PowerMockito;
-import org.powermock.core.classloader.annotations.PrepareForTest;
-import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.util.Calendar;
+import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.Map;
 
 import eu.leneurone.timelog.exceptions.IncoherentMarkersException;
 import eu.leneurone.timelog.math.TotalCalculator;
+import eu.leneurone.timelog.math.WorkRules;
+import eu.leneurone.timelog.model.DayWorklog;
 import eu.leneurone.timelog.model.Marker;
 import eu.leneurone.timelog.model.Time;
+import eu.leneurone.timelog.utils.Clock;
+import eu.leneurone.timelog.utils.EpochDays;
 
 import static junit.framework.Assert.assertEquals;
 
 /**
  * Unit tests for totalCalculator
- * PowerMockrunner and PrepareFortest are necessary to mock static method Calendar.getInstance
- * to simulate hours of the current day
+ * The hours of the current day are simulated with a fixed clock
  */
-@RunWith(PowerMockRunner.class)
-@PrepareForTest({TotalCalculator.class})
 public class TotalCalculatorTest {
 
+    @After
+    public void resetRules() {
+        TotalCalculator.setWorkRules(WorkRules.DEFAULT);
+    }
+
     @Test
     public void testFullNormalDataToday() throws IncoherentMarkersException {
         Map<Marker, Time> times = new HashMap<>();
@@ -79,33 +82,39 @@ public class TotalCalculatorTest {
 
     @Test
     public void testIncompleteDataToday() throws IncoherentMarkersException {
-        Calendar calendar = Calendar.getInstance();
-        calendar.set(Calendar.HOUR_OF_DAY, 11);
-        calendar.set(Calendar.MINUTE, 30);
-
-        PowerMockito.mockStatic(Calendar.class);
-        Mockito.when(Calendar.getInstance()).thenReturn(calendar);
+        Calendar calendar = new GregorianCalendar(2016, Calendar.NOVEMBER, 2, 11, 30);
 
         Map<Marker, Time> times = new HashMap<>();
         times.put(Marker.MORNING, new Time(8, 0));
-        assertEquals(new Time(3, 30), TotalCalculator.calculateTotalTime(calendar, times));
+        assertEquals(new Time(3, 30), calculateTotalTimeAt(calendar, times));
 
         calendar.set(Calendar.HOUR_OF_DAY, 15);
         calendar.set(Calendar.MINUTE, 30);
-        Mockito.when(Calendar.getInstance()).thenReturn(calendar);
-        assertEquals(new Time(6, 30), TotalCalculator.calculateTotalTime(calendar, times));
+        assertEquals(new Time(6, 30), calculateTotalTimeAt(calendar, times));
 
         times.put(Marker.LUNCH_START, new Time(12, 30));
-        assertEquals(new Time(4, 30), TotalCalculator.calculateTotalTime(calendar, times));
+        assertEquals(new Time(4, 30), calculateTotalTimeAt(calendar, times));
 
         times.put(Marker.LUNCH_END, new Time(13, 45));
-        assertEquals(new Time(6, 15), TotalCalculator.calculateTotalTime(calendar, times));
+        assertEquals(new Time(6, 15), calculateTotalTimeAt(calendar, times));
 
         // special test case : when current time = lunch_end, total = lunch_start - morning
         calendar.set(Calendar.HOUR_OF_DAY, 13);
         calendar.set(Calendar.MINUTE, 45);
-        Mockito.when(Calendar.getInstance()).thenReturn(calendar);
-        assertEquals(new Time(4, 30), TotalCalculator.calculateTotalTime(calendar, times));
+        assertEquals(new Time(4, 30), calculateTotalTimeAt(calendar, times));
+    }
+
+    @Test
+    public void testIncompleteDataYesterday() throws IncoherentMarkersException {
+        Calendar now = new GregorianCalendar(2016, Calendar.NOVEMBER, 2, 15, 30);
+
+        DayWorklog worklog = new DayWorklog();
+        worklog.set(Marker.MORNING, new Time(8, 0));
+        worklog.set(Marker.LUNCH_START, new Time(12, 30));
+        worklog.set(Marker.LUNCH_END, new Time(13, 45));
+        // the current time is only used for today
+        assertEquals(new Time(4, 30), TotalCalculator.calculateTotalTime(EpochDays.of(now) - 1, worklog, Clock.fixed(now)));
+        assertEquals(new Time(6, 15), TotalCalculator.calculateTotalTime(EpochDays.of(now), worklog, Clock.fixed(now)));
     }
 
     @Test
@@ -150,8 +159,36 @@ public class TotalCalculatorTest {
 
     }
 
+    @Test
+    public void testConfiguredRules() throws IncoherentMarkersException {
+        // 45 minutes of lunch break, from 12:30
+        TotalCalculator.setWorkRules(new WorkRules(45, 12 * 60 + 30, new int[7]));
+        Calendar now = new GregorianCalendar(2016, Calendar.NOVEMBER, 2, 12, 15);
+
+        Map<Marker, Time> times = new HashMap<>();
+        times.put(Marker.MORNING, new Time(8, 0));
+        assertEquals(new Time(4, 15), calculateTotalTimeAt(now, times));
+        now.set(Calendar.MINUTE, 45);
+        assertEquals(new Time(4, 0), calculateTotalTimeAt(now, times));
+
+        times.put(Marker.EVENING, new Time(17, 0));
+        assertEquals(new Time(8, 15), calculateTotalTimeAt(now, times));
+        now.add(Calendar.DAY_OF_YEAR, 1);
+        assertEquals(new Time(8, 15), calculateTotalTimeAt(now, times));
+
+        // the logged lunch break takes precedence
+        times.put(Marker.LUNCH_START, new Time(12, 0));
+        times.put(Marker.LUNCH_END, new Time(13, 0));
+        assertEquals(new Time(8, 0), calculateTotalTimeAt(now, times));
+    }
+
     @Test
     public void testNoData() throws IncoherentMarkersException {
         assertEquals(new Time(0, 0), TotalCalculator.calculateTotalTime(Calendar.getInstance(), new HashMap<Marker, Time>()));
     }
+
+    // the total time of a day, the current day and time being the given ones
+    private static Time calculateTotalTimeAt(Calendar now, Map<Marker, Time> times) throws IncoherentMarkersException {
+        return TotalCalculator.calculateTotalTime(EpochDays.of(now), DayWorklog.fromMap(times), Clock.fixed(now));
+    }
 }
@@ -1,9 +1,6 @@
 package math;
 
 import org.junit.Test;
-import org.junit.runner.RunWith;
-import org.powermock.core.classloader.annotations.PrepareForTest;
-import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.util.Calendar;
 import java.util.HashMap;
@@ -18,14 +15,10 @@ import static junit.framework.Assert.assertEquals;
 
 /**
  * Unit tests for totalCalculator week total time function
- * PowerMockRunner and PrepareForTest are necessary to mock static method Calendar.getInstance
- * to simulate hours of the current day
  * In this test, we assume the {@link TotalCalculatorTest} tests are all OK, since the result of
  * the total week time is almost only an addition of the total times of the days of the week.
  * We also assume the {@link eu.leneurone.timelog.validators.TimesValidatorTest} tests are all OK.
  */
-@RunWith(PowerMockRunner.class)
-@PrepareForTest({TotalCalculator.class})
 public class WeekTotalCalculatorTest {
 
     @Test
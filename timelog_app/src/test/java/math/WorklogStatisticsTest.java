@@ -0,0 +1,111 @@
+package math;
+
+import org.junit.Test;
+
+import eu.leneurone.timelog.math.MinuteHistogram;
+import eu.leneurone.timelog.math.WorklogStatistics;
+import eu.leneurone.timelog.model.DayWorklog;
+import eu.leneurone.timelog.model.Marker;
+import eu.leneurone.timelog.model.Time;
+import eu.leneurone.timelog.utils.EpochDays;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Unit tests for WorklogStatistics and MinuteHistogram
+ */
+public class WorklogStatisticsTest {
+
+    /** a Monday */
+    private static final int MONDAY = EpochDays.of(2016, 10, 31);
+
+    @Test
+    public void testHistogram() {
+        MinuteHistogram histogram = new MinuteHistogram();
+        assertEquals(-1, histogram.getPercentile(50));
+        assertEquals(-1.0, histogram.getMean());
+        for (int minutes : new int[]{480, 490, 500, 510, 600}) {
+            histogram.add(minutes);
+        }
+        assertEquals(5, histogram.getCount());
+        assertEquals(516.0, histogram.getMean());
+        assertEquals(480, histogram.getMin());
+        assertEquals(500, histogram.getPercentile(50));
+        assertEquals(510, histogram.getPercentile(80));
+        assertEquals(600, histogram.getPercentile(90));
+        assertEquals(600, histogram.getMax());
+
+        histogram.remove(600);
+        assertEquals(4, histogram.getCount());
+        assertEquals(510, histogram.getMax());
+        assertEquals(495.0, histogram.getMean());
+
+        // the values out of the day are kept in the first or the last bucket
+        histogram.add(-5);
+        histogram.add(2000);
+        assertEquals(0, histogram.getMin());
+        assertEquals(MinuteHistogram.BUCKET_COUNT - 1, histogram.getMax());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRemoveMissingValue() {
+        MinuteHistogram histogram = new MinuteHistogram();
+        histogram.add(480);
+        histogram.remove(481);
+    }
+
+    @Test
+    public void testStatistics() {
+        WorklogStatistics statistics = new WorklogStatistics();
+        // 2 Mondays and a Tuesday
+        statistics.add(MONDAY, getWorklog(8, 0, 12, 0, 13, 0, 17, 0));
+        statistics.add(MONDAY + 7, getWorklog(9, 0, 12, 30, 13, 0, 18, 0));
+        statistics.add(MONDAY + 1, getWorklog(8, 30, 12, 0, 13, 30, 17, 30));
+        // an incomplete day : only its markers are counted
+        DayWorklog incomplete = new DayWorklog();
+        incomplete.set(Marker.MORNING, Time.of(7, 30));
+        statistics.add(MONDAY + 2, incomplete);
+        // an incoherent day isn't counted
+        DayWorklog incoherent = new DayWorklog();
+        incoherent.set(Marker.MORNING, Time.of(9, 0));
+        incoherent.set(Marker.EVENING, Time.of(8, 0));
+        statistics.add(MONDAY + 3, incoherent);
+
+        assertEquals(4, statistics.getDayCount());
+        MinuteHistogram arrivals = statistics.get(WorklogStatistics.Measure.of(Marker.MORNING));
+        assertEquals(4, arrivals.getCount());
+        assertEquals(7 * 60 + 30, arrivals.getMin());
+        assertEquals(8 * 60, arrivals.getPercentile(50));
+        assertEquals(9 * 60, arrivals.getMax());
+        MinuteHistogram dayLengths = statistics.get(WorklogStatistics.Measure.DAY_LENGTH);
+        assertEquals(3, dayLengths.getCount());
+        assertEquals(9 * 60.0, dayLengths.getMean());
+        MinuteHistogram lunchLengths = statistics.get(WorklogStatistics.Measure.LUNCH_LENGTH);
+        assertEquals(30, lunchLengths.getMin());
+        assertEquals(90, lunchLengths.getMax());
+
+        // by day of the week
+        assertEquals(2, statistics.get(WorklogStatistics.Measure.EVENING, 1).getCount());
+        assertEquals(17 * 60 + 30, (int) statistics.get(WorklogStatistics.Measure.EVENING, 1).getMean());
+        assertEquals(17 * 60 + 30, statistics.get(WorklogStatistics.Measure.EVENING, 2).getMax());
+        assertEquals(0, statistics.get(WorklogStatistics.Measure.EVENING, 7).getCount());
+
+        // a day saved again
+        WorklogStatistics copy = new WorklogStatistics(statistics);
+        statistics.remove(MONDAY + 7, getWorklog(9, 0, 12, 30, 13, 0, 18, 0));
+        statistics.add(MONDAY + 7, getWorklog(8, 0, 12, 0, 13, 0, 17, 0));
+        assertEquals(4, statistics.getDayCount());
+        assertEquals(8 * 60, statistics.get(WorklogStatistics.Measure.MORNING, 1).getMax());
+        assertEquals(60, statistics.get(WorklogStatistics.Measure.LUNCH_LENGTH, 1).getMin());
+        // the copy isn't changed
+        assertEquals(9 * 60, copy.get(WorklogStatistics.Measure.MORNING, 1).getMax());
+    }
+
+    private static DayWorklog getWorklog(int... hoursAndMinutes) {
+        DayWorklog worklog = new DayWorklog();
+        for (Marker marker : Marker.values()) {
+            worklog.set(marker, Time.of(hoursAndMinutes[2 * marker.ordinal()], hoursAndMinutes[2 * marker.ordinal() + 1]));
+        }
+        return worklog;
+    }
+}